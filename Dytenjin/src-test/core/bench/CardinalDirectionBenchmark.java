@@ -0,0 +1,142 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package core.bench;
+
+import java.util.Random;
+
+import core.geography.CardinalDirection;
+
+/**
+ * Compares the throughput of CardinalDirection.getDirFromCoords against
+ * the original Math.atan implementation, after checking that both agree
+ * on every offset in a square around the origin, on random offsets
+ * spread over the whole int range and on random offsets next to the
+ * angles halfway between two directions.
+ * @author SuperSimpleGuy
+ */
+public class CardinalDirectionBenchmark {
+
+	private static final int CHECK_RADIUS = 2000;
+	private static final int RANDOM_CHECKS = 10000000;
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int MEASURED_ROUNDS = 10;
+	private static final int CALLS_PER_ROUND = 4000000;
+	
+	public static void main(String[] args) {
+		for (int x = -CHECK_RADIUS; x <= CHECK_RADIUS; x++) {
+			for (int y = -CHECK_RADIUS; y <= CHECK_RADIUS; y++) {
+				if (!check(x, y)) {
+					return;
+				}
+			}
+		}
+		Random rand = new Random(16);
+		for (int i = 0; i < RANDOM_CHECKS; i++) {
+			int bits = 1 + rand.nextInt(30);
+			if (!check(rand.nextInt() >> (31 - bits), rand.nextInt() >> (31 - bits))) {
+				return;
+			}
+		}
+		for (int i = 0; i < RANDOM_CHECKS; i++) {
+			int x = 1 + (rand.nextInt(Integer.MAX_VALUE) >> rand.nextInt(31));
+			double tan = Math.tan((2 * rand.nextInt(4) + 1) * Math.PI / 16);
+			long y = Math.round(x * tan) + rand.nextInt(7) - 3;
+			if (y <= Integer.MAX_VALUE && !check(x, (int)y)) {
+				return;
+			}
+		}
+		
+		int[] xs = new int[CALLS_PER_ROUND];
+		int[] ys = new int[CALLS_PER_ROUND];
+		for (int i = 0; i < CALLS_PER_ROUND; i++) {
+			xs[i] = rand.nextInt(2001) - 1000;
+			ys[i] = rand.nextInt(2001) - 1000;
+		}
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			runLegacy(xs, ys);
+			runCurrent(xs, ys);
+		}
+		long legacyNanos = 0;
+		long currentNanos = 0;
+		for (int i = 0; i < MEASURED_ROUNDS; i++) {
+			legacyNanos += runLegacy(xs, ys);
+			currentNanos += runCurrent(xs, ys);
+		}
+		long total = (long)MEASURED_ROUNDS * CALLS_PER_ROUND;
+		System.out.printf("atan:     %6.2f ns/call%n", legacyNanos / (double)total);
+		System.out.printf("no trig:  %6.2f ns/call%n", currentNanos / (double)total);
+	}
+	
+	private static boolean check(int x, int y) {
+		CardinalDirection expected = legacyGetDirFromCoords(0, 0, x, y);
+		CardinalDirection actual = CardinalDirection.getDirFromCoords(0, 0, x, y);
+		if (expected != actual) {
+			System.out.println("Mismatch at (" + x + ", " + y + "): " + expected + " vs " + actual);
+			return false;
+		}
+		return true;
+	}
+	
+	private static long runLegacy(int[] xs, int[] ys) {
+		long start = System.nanoTime();
+		int sink = 0;
+		for (int i = 0; i < xs.length; i++) {
+			sink += legacyGetDirFromCoords(0, 0, xs[i], ys[i]).getDir();
+		}
+		long nanos = System.nanoTime() - start;
+		if (sink == 42) {
+			System.out.print("");
+		}
+		return nanos;
+	}
+	
+	private static long runCurrent(int[] xs, int[] ys) {
+		long start = System.nanoTime();
+		int sink = 0;
+		for (int i = 0; i < xs.length; i++) {
+			sink += CardinalDirection.getDirFromCoords(0, 0, xs[i], ys[i]).getDir();
+		}
+		long nanos = System.nanoTime() - start;
+		if (sink == 42) {
+			System.out.print("");
+		}
+		return nanos;
+	}
+	
+	/**
+	 * The original implementation of CardinalDirection.getDirFromCoords
+	 */
+	private static CardinalDirection legacyGetDirFromCoords(int xFrom, int yFrom, int xTo, int yTo) {
+		int deltaX = xTo - xFrom;
+		int deltaY = yTo - yFrom;
+		if (deltaX == 0 && deltaY ==0) {
+			return CardinalDirection.SAME;
+		}
+		double angle = Math.atan(deltaY/(double)deltaX);
+		int dir = (int)Math.round(Math.abs(angle) / ((Math.PI/2)*(1/4.0)));
+		if (angle <= 0) {
+			dir += 4;
+		} else {
+			dir = Math.abs(dir - 4);
+		}
+		if (deltaX < 0) {
+			dir += 8;
+		}
+		return CardinalDirection.values()[dir % 16];
+	}
+}
@@ -0,0 +1,183 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.bench;
+
+import core.CoreEventHandler;
+import core.event.ICoreEvent;
+import core.management.game.UniqueId;
+import core.management.ingame.AspectManager;
+import core.temporal.AWorldDay;
+import core.temporal.AWorldMonth;
+import core.temporal.AWorldTime;
+import core.temporal.AWorldYear;
+import core.temporal.WorldCalendar;
+import core.temporal.WorldCompleteDate;
+import core.temporal.WorldDate;
+import core.temporal.WorldTimeDuration;
+
+/**
+ * Keeps 100k events triggering at once, with durations that run out on
+ * different steps, and times each step of the CoreEventHandler while a
+ * slice of the active events is removed and added back every step.
+ * @author SuperSimpleGuy
+ */
+public class CoreEventHandlerBenchmark {
+
+	private static final int EVENTS = 100000;
+	private static final int MAX_DURATION = 8;
+	private static final int REMOVED_PER_STEP = 1000;
+	private static final int STEPS = 20;
+	
+	public static void main(String[] args) {
+		WorldCalendar calendar = new BenchCalendar();
+		WorldCompleteDate date = createDate(calendar);
+		WorldTimeDuration step = new WorldTimeDuration(calendar, 1, 0, 0);
+		CoreEventHandler handler = new CoreEventHandler();
+		ActiveEvent[] events = new ActiveEvent[EVENTS];
+		for (int i = 0; i < EVENTS; i++) {
+			events[i] = new ActiveEvent(calendar, i);
+			handler.addDailyEvent(events[i]);
+		}
+		int next = 0;
+		for (int s = 0; s < STEPS; s++) {
+			long start = System.nanoTime();
+			handler.triggerDateEvents(new WorldTimeDuration(calendar, 2, 0, 0), step, date);
+			long stepNanos = System.nanoTime() - start;
+			int active = handler.getActiveEventCount();
+			
+			start = System.nanoTime();
+			for (int r = 0; r < REMOVED_PER_STEP; r++) {
+				ActiveEvent e = events[next];
+				handler.removeDailyEvent(next);
+				e.reset();
+				handler.addDailyEvent(e);
+				next = (next + 1) % EVENTS;
+			}
+			long removeNanos = System.nanoTime() - start;
+			System.out.printf("step %2d %8.2f ms, %6d active   remove+add %d %8.2f ms%n",
+					s, stepNanos / 1e6, active, REMOVED_PER_STEP, removeNanos / 1e6);
+		}
+	}
+	
+	static WorldCompleteDate createDate(WorldCalendar calendar) {
+		AWorldYear year = new AWorldYear(0, "year", new AspectManager()) {
+			@Override
+			public AspectManager getSpecialAspects(AWorldMonth month) {
+				return null;
+			}
+		};
+		AWorldMonth month = new AWorldMonth(0, "month", new AspectManager()) {
+			@Override
+			public AspectManager getSpecialAspects(AWorldDay day) {
+				return null;
+			}
+		};
+		AWorldDay day = new AWorldDay(0, "day", new AspectManager()) {
+			@Override
+			public boolean isHoliday() {
+				return false;
+			}
+			
+			@Override
+			public String getHolidayName() {
+				return null;
+			}
+			
+			@Override
+			public AspectManager getSpecialAspects(AWorldTime time) {
+				return null;
+			}
+		};
+		year.setParent(calendar);
+		month.setParent(year);
+		day.setParent(month);
+		return new StepDate(calendar, year, month, day);
+	}
+	
+	/**
+	 * Triggers whenever it is not already triggering, lasting between one
+	 * and MAX_DURATION steps depending on its id
+	 */
+	private static class ActiveEvent implements ICoreEvent {
+		private WorldCalendar calendar;
+		private UniqueId id;
+		private WorldTimeDuration duration;
+		private boolean triggering;
+		
+		public ActiveEvent(WorldCalendar calendar, int id) {
+			this.calendar = calendar;
+			this.id = new UniqueId(id, 0);
+			reset();
+		}
+		
+		public void reset() {
+			duration = new WorldTimeDuration(calendar, id.getId() % MAX_DURATION, 0, 0);
+			triggering = false;
+		}
+		
+		@Override
+		public boolean triggerEvent() {
+			if (triggering) {
+				return false;
+			}
+			triggering = true;
+			return true;
+		}
+
+		@Override
+		public UniqueId getUniqueId() {
+			return id;
+		}
+
+		@Override
+		public void endTriggerEvent() {
+			reset();
+		}
+
+		@Override
+		public WorldTimeDuration getDurationLength() {
+			return duration;
+		}
+
+		@Override
+		public void decreaseDuration(WorldTimeDuration d) {
+			duration.decreaseDuration(d);
+		}
+	}
+	
+	static class BenchCalendar extends WorldCalendar {
+		public BenchCalendar() {
+			super(new UniqueId(0, 0), "bench", 60, 24);
+		}
+	}
+	
+	/**
+	 * A date that stays the same however much time passes
+	 */
+	private static class StepDate extends WorldCompleteDate {
+		public StepDate(WorldCalendar calendar, AWorldYear year, AWorldMonth month, AWorldDay day) {
+			super(calendar, year, month, day, null);
+		}
+		
+		@Override
+		public WorldDate getDateAfterDuration(WorldTimeDuration duration) {
+			return this;
+		}
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.bench;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import core.CoreEventHandler;
+import core.event.ICategorizedEvent;
+import core.event.ICoreEvent;
+import core.event.ISideEffectFreeEvent;
+import core.management.game.UniqueId;
+import core.temporal.WorldCalendar;
+import core.temporal.WorldCompleteDate;
+import core.temporal.WorldTimeDuration;
+
+/**
+ * Times trigger steps over four categories of 25k side-effect-free events,
+ * three depending on each other in a chain and one independent, asked on
+ * the calling thread and then on a thread pool, printing the time spent
+ * on each category.
+ * @author SuperSimpleGuy
+ */
+public class CoreEventHandlerCategoryBenchmark {
+
+	private static final String[] CATEGORIES = {"weather", "crops", "market", "wildlife"};
+	private static final int EVENTS_PER_CATEGORY = 25000;
+	private static final int PREDICATE_WORK = 200;
+	private static final int STEPS = 10;
+	
+	public static void main(String[] args) {
+		WorldCalendar calendar = new CoreEventHandlerBenchmark.BenchCalendar();
+		WorldCompleteDate date = CoreEventHandlerBenchmark.createDate(calendar);
+		WorldTimeDuration step = new WorldTimeDuration(calendar, 1, 0, 0);
+		int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+		
+		run(calendar, date, step, null, "sequential");
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			run(calendar, date, step, executor, threads + " threads");
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	private static void run(WorldCalendar calendar, WorldCompleteDate date, WorldTimeDuration step, ExecutorService executor, String label) {
+		CoreEventHandler handler = new CoreEventHandler();
+		handler.setParallelExecutor(executor);
+		handler.addCategoryDependency("crops", "weather");
+		handler.addCategoryDependency("market", "crops");
+		for (int i = 0; i < EVENTS_PER_CATEGORY * CATEGORIES.length; i++) {
+			handler.addDailyEvent(new CategoryEvent(calendar, i, CATEGORIES[i % CATEGORIES.length]));
+		}
+		long best = Long.MAX_VALUE;
+		for (int s = 0; s < STEPS; s++) {
+			long start = System.nanoTime();
+			handler.triggerDateEvents(new WorldTimeDuration(calendar, 2, 0, 0), step, date);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.printf("%-12s best step %8.2f ms, order %s%n", label, best / 1e6, handler.getCategoryOrder());
+		for (String category : handler.getCategoryOrder()) {
+			System.out.printf("  %-10s last step %8.2f ms, all steps %8.2f ms%n", category,
+					handler.getCategoryStepNanos(category) / 1e6, handler.getCategoryTotalNanos(category) / 1e6);
+		}
+	}
+	
+	/**
+	 * Steps a generator of its own a number of times each time it is
+	 * asked, triggering for a step about one time in eight
+	 */
+	private static class CategoryEvent implements ICoreEvent, ICategorizedEvent, ISideEffectFreeEvent {
+		private WorldCalendar calendar;
+		private UniqueId id;
+		private String category;
+		private long seed;
+		
+		public CategoryEvent(WorldCalendar calendar, int id, String category) {
+			this.calendar = calendar;
+			this.id = new UniqueId(id, 0);
+			this.category = category;
+			this.seed = id;
+		}
+		
+		@Override
+		public boolean triggerEvent() {
+			for (int i = 0; i < PREDICATE_WORK; i++) {
+				seed = seed * 6364136223846793005L + 1442695040888963407L;
+			}
+			return (seed >>> 61) == 0;
+		}
+
+		@Override
+		public String getEventCategory() {
+			return category;
+		}
+
+		@Override
+		public UniqueId getUniqueId() {
+			return id;
+		}
+
+		@Override
+		public void endTriggerEvent() {
+		}
+
+		@Override
+		public WorldTimeDuration getDurationLength() {
+			return new WorldTimeDuration(calendar, 0, 0, 0);
+		}
+
+		@Override
+		public void decreaseDuration(WorldTimeDuration d) {
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.bench;
+
+import core.CoreEventHandler;
+import core.event.ICoreEvent;
+import core.event.IFastForwardEvent;
+import core.management.game.UniqueId;
+import core.temporal.WorldCalendar;
+import core.temporal.WorldCompleteDate;
+import core.temporal.WorldTimeDuration;
+
+/**
+ * Triggers events one minute at a time over a month of game time, as after
+ * a long sleep, with events that can only be stepped and then with the
+ * same events able to be fast-forwarded.
+ * @author SuperSimpleGuy
+ */
+public class CoreEventHandlerFastForwardBenchmark {
+
+	private static final int EVENTS = 2000;
+	private static final int MIN_PERIOD = 20000;
+	private static final int DAYS = 30;
+	private static final int ROUNDS = 3;
+	
+	public static void main(String[] args) {
+		WorldCalendar calendar = new CoreEventHandlerBenchmark.BenchCalendar();
+		WorldCompleteDate date = CoreEventHandlerBenchmark.createDate(calendar);
+		WorldTimeDuration step = new WorldTimeDuration(calendar, 0, 0, 1);
+		for (int round = 0; round < ROUNDS; round++) {
+			String stepped = run(calendar, date, step, false);
+			String fast = run(calendar, date, step, true);
+			if (!stepped.equals(fast)) {
+				throw new IllegalStateException("Fast-forwarding gave " + fast + ", stepping " + stepped);
+			}
+		}
+	}
+	
+	private static String run(WorldCalendar calendar, WorldCompleteDate date, WorldTimeDuration step, boolean fastForward) {
+		CoreEventHandler handler = new CoreEventHandler();
+		SparseEvent[] events = new SparseEvent[EVENTS];
+		for (int i = 0; i < EVENTS; i++) {
+			events[i] = fastForward ? new FastSparseEvent(calendar, i) : new SparseEvent(calendar, i);
+			handler.addDailyEvent(events[i]);
+		}
+		long start = System.nanoTime();
+		handler.triggerDateEvents(new WorldTimeDuration(calendar, DAYS, 0, 1), step, date);
+		long nanos = System.nanoTime() - start;
+		long triggers = 0;
+		for (SparseEvent e : events) {
+			triggers += e.triggers;
+		}
+		System.out.printf("%-9s %9.2f ms, %d steps, %d skipped, %d triggers%n",
+				fastForward ? "fast" : "stepped", nanos / 1e6, handler.getStepCount(), handler.getFastForwardedStepCount(), triggers);
+		return handler.getStepCount() + " steps, " + triggers + " triggers";
+	}
+	
+	/**
+	 * Triggers for a few minutes once every period times it is asked while
+	 * not triggering
+	 */
+	private static class SparseEvent implements ICoreEvent {
+		private WorldCalendar calendar;
+		private UniqueId id;
+		private WorldTimeDuration duration;
+		protected int period;
+		protected long asks;
+		protected boolean triggering;
+		protected int triggers;
+		
+		public SparseEvent(WorldCalendar calendar, int id) {
+			this.calendar = calendar;
+			this.id = new UniqueId(id, 0);
+			this.period = MIN_PERIOD + id * 37;
+		}
+		
+		@Override
+		public boolean triggerEvent() {
+			asks++;
+			if (triggering || asks % period != 0) {
+				return false;
+			}
+			triggering = true;
+			triggers++;
+			duration = new WorldTimeDuration(calendar, 0, 0, 5);
+			return true;
+		}
+
+		@Override
+		public UniqueId getUniqueId() {
+			return id;
+		}
+
+		@Override
+		public void endTriggerEvent() {
+			triggering = false;
+		}
+
+		@Override
+		public WorldTimeDuration getDurationLength() {
+			return duration;
+		}
+
+		@Override
+		public void decreaseDuration(WorldTimeDuration d) {
+			duration.decreaseDuration(d);
+		}
+	}
+	
+	/**
+	 * A SparseEvent that can be advanced over the steps before it next
+	 * triggers. While triggering it is asked twice a step
+	 */
+	private static class FastSparseEvent extends SparseEvent implements IFastForwardEvent {
+		public FastSparseEvent(WorldCalendar calendar, int id) {
+			super(calendar, id);
+		}
+
+		@Override
+		public long getStepsWithoutChange(WorldCompleteDate d, WorldTimeDuration triggerStep) {
+			if (triggering) {
+				return Long.MAX_VALUE;
+			}
+			return period - asks % period - 1;
+		}
+
+		@Override
+		public void advanceSteps(long steps, WorldCompleteDate d, WorldTimeDuration triggerStep) {
+			asks += triggering ? 2 * steps : steps;
+		}
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.bench;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import core.CoreEventHandler;
+import core.event.ICoreEvent;
+import core.event.ISideEffectFreeEvent;
+import core.management.game.UniqueId;
+import core.temporal.WorldCalendar;
+import core.temporal.WorldCompleteDate;
+import core.temporal.WorldTimeDuration;
+
+/**
+ * Times trigger steps over 100k side-effect-free events with a costly
+ * predicate, asked on the calling thread and then on thread pools of
+ * increasing size.
+ * @author SuperSimpleGuy
+ */
+public class CoreEventHandlerParallelBenchmark {
+
+	private static final int EVENTS = 100000;
+	private static final int PREDICATE_WORK = 200;
+	private static final int STEPS = 10;
+	
+	public static void main(String[] args) throws InterruptedException {
+		WorldCalendar calendar = new CoreEventHandlerBenchmark.BenchCalendar();
+		WorldCompleteDate date = CoreEventHandlerBenchmark.createDate(calendar);
+		WorldTimeDuration step = new WorldTimeDuration(calendar, 1, 0, 0);
+		int cores = Runtime.getRuntime().availableProcessors();
+		System.out.printf("%d available processors%n", cores);
+		
+		int sequentialActive = run(calendar, date, step, null, "sequential");
+		for (int threads = 1; threads <= Math.max(4, cores); threads *= 2) {
+			ExecutorService executor = Executors.newFixedThreadPool(threads);
+			try {
+				int active = run(calendar, date, step, executor, threads + " threads");
+				if (active != sequentialActive) {
+					throw new IllegalStateException("Parallel run triggered " + active + " events, sequential run " + sequentialActive);
+				}
+			} finally {
+				executor.shutdown();
+			}
+		}
+	}
+	
+	private static int run(WorldCalendar calendar, WorldCompleteDate date, WorldTimeDuration step, ExecutorService executor, String label) {
+		CoreEventHandler handler = new CoreEventHandler();
+		handler.setParallelExecutor(executor);
+		for (int i = 0; i < EVENTS; i++) {
+			handler.addDailyEvent(new CostlyEvent(calendar, i));
+		}
+		long best = Long.MAX_VALUE;
+		for (int s = 0; s < STEPS; s++) {
+			long start = System.nanoTime();
+			handler.triggerDateEvents(new WorldTimeDuration(calendar, 2, 0, 0), step, date);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.printf("%-12s best step %8.2f ms, %6d active%n", label, best / 1e6, handler.getActiveEventCount());
+		return handler.getActiveEventCount();
+	}
+	
+	/**
+	 * Steps a generator of its own a number of times each time it is
+	 * asked, triggering for a step about one time in eight
+	 */
+	private static class CostlyEvent implements ICoreEvent, ISideEffectFreeEvent {
+		private WorldCalendar calendar;
+		private UniqueId id;
+		private long seed;
+		
+		public CostlyEvent(WorldCalendar calendar, int id) {
+			this.calendar = calendar;
+			this.id = new UniqueId(id, 0);
+			this.seed = id;
+		}
+		
+		@Override
+		public boolean triggerEvent() {
+			for (int i = 0; i < PREDICATE_WORK; i++) {
+				seed = seed * 6364136223846793005L + 1442695040888963407L;
+			}
+			return (seed >>> 61) == 0;
+		}
+
+		@Override
+		public UniqueId getUniqueId() {
+			return id;
+		}
+
+		@Override
+		public void endTriggerEvent() {
+		}
+
+		@Override
+		public WorldTimeDuration getDurationLength() {
+			return new WorldTimeDuration(calendar, 0, 0, 0);
+		}
+
+		@Override
+		public void decreaseDuration(WorldTimeDuration d) {
+		}
+	}
+}
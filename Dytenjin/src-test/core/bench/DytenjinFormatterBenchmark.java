@@ -0,0 +1,129 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package core.bench;
+
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+import core.system.DytenjinFormatter;
+
+/**
+ * Compares the throughput of DytenjinFormatter against the original
+ * SimpleFormatter plus String concatenation implementation, and checks
+ * that both produce the same text.
+ * @author SuperSimpleGuy
+ */
+public class DytenjinFormatterBenchmark {
+
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int MEASURED_ROUNDS = 10;
+	private static final int RECORDS_PER_ROUND = 200000;
+	
+	public static void main(String[] args) {
+		LogRecord[] records = createRecords();
+		SimpleFormatter legacy = new LegacyFormatter();
+		SimpleFormatter current = new DytenjinFormatter();
+		
+		for (LogRecord r : records) {
+			if (!legacy.format(r).equals(current.format(r))) {
+				System.out.println("Output mismatch:\n" + legacy.format(r) + "---\n" + current.format(r));
+				return;
+			}
+		}
+		
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			run(legacy, records);
+			run(current, records);
+		}
+		long legacyNanos = 0;
+		long currentNanos = 0;
+		for (int i = 0; i < MEASURED_ROUNDS; i++) {
+			legacyNanos += run(legacy, records);
+			currentNanos += run(current, records);
+		}
+		long total = (long)MEASURED_ROUNDS * RECORDS_PER_ROUND;
+		System.out.println("legacy:  " + (total * 1000000000L / legacyNanos) + " records/s");
+		System.out.println("current: " + (total * 1000000000L / currentNanos) + " records/s");
+	}
+	
+	private static long run(SimpleFormatter f, LogRecord[] records) {
+		int sink = 0;
+		long start = System.nanoTime();
+		for (int i = 0; i < RECORDS_PER_ROUND; i++) {
+			sink += f.format(records[i % records.length]).length();
+		}
+		long elapsed = System.nanoTime() - start;
+		if (sink == 0) {
+			System.out.println();
+		}
+		return elapsed;
+	}
+	
+	private static LogRecord[] createRecords() {
+		Object[][] params = {
+				null,
+				{},
+				{"test", "this", "array"},
+				{42, 7L, true},
+				{"really.long.one", "really.long.two", "really.long.three", "very.very.very.very.long.four", "long.five", "6", "7", "8", "9", "10", "11"}
+		};
+		LogRecord[] records = new LogRecord[params.length * 4];
+		for (int i = 0; i < records.length; i++) {
+			LogRecord r = new LogRecord(Level.FINEST, "Triggering event & reducing duration");
+			r.setSourceClassName("class core.CoreEventHandler");
+			r.setSourceMethodName("triggerEvents(IWorldTimeDuration triggerStep)");
+			r.setMillis(1350000000000L + i * 250L);
+			r.setParameters(params[i % params.length]);
+			records[i] = r;
+		}
+		return records;
+	}
+	
+	/**
+	 * The formatter as it was before it reused its buffer
+	 */
+	private static class LegacyFormatter extends SimpleFormatter {
+		@Override
+		public String format(LogRecord lRecord) {
+			String formattedString = super.format(lRecord);
+			
+			Object[] params = lRecord.getParameters();
+			if (params == null || params.length == 0) {
+				return formattedString;
+			}
+			String temp = params[0].toString();
+			formattedString += "PARAMS: " + temp;
+			int count = temp.length();
+			int i = 1;
+			for (; i < params.length; i++) {
+				temp = params[i].toString();
+				if (count + temp.length() >= 70) {
+					break;
+				}
+				formattedString += " " + temp;
+				count += temp.length();
+			}
+			if (i != params.length) {
+				formattedString += "... ["+ (params.length-i) +" more]";
+			}
+			return formattedString + "\n";
+		}
+	}
+	
+}
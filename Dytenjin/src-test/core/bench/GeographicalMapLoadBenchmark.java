@@ -0,0 +1,206 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.bench;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import core.geography.GeographicalLoadReport;
+import core.geography.GeographicalLocation;
+import core.geography.GeographicalMap;
+import core.geography.GeographicalMapLoader;
+import core.geography.GeographicalRegion;
+import core.geography.LocationLink;
+import core.geography.RegionLink;
+import core.management.game.UniqueId;
+import core.management.ingame.AspectManager;
+
+/**
+ * Builds the same map of about 10k regions and 80k locations one item at a
+ * time and with a GeographicalMapLoader, sequentially and on a thread pool,
+ * and checks that the resulting maps are the same.
+ * @author SuperSimpleGuy
+ */
+public class GeographicalMapLoadBenchmark {
+
+	private static final int SIDE = 100;
+	private static final int LOCS_PER_REGION = 8;
+	private static final int SPACING = 100;
+	private static final int ROUNDS = 5;
+	
+	public static void main(String[] args) {
+		ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+		GeographicalMap reference = buildIncrementally();
+		try {
+			for (int round = 0; round < ROUNDS; round++) {
+				long start = System.nanoTime();
+				GeographicalMap incremental = buildIncrementally();
+				long incrementalNanos = System.nanoTime() - start;
+				
+				start = System.nanoTime();
+				GeographicalMap bulk = buildInBulk(null);
+				long bulkNanos = System.nanoTime() - start;
+				
+				start = System.nanoTime();
+				GeographicalMap parallel = buildInBulk(executor);
+				long parallelNanos = System.nanoTime() - start;
+				
+				if (!sameStructure(reference, incremental) || !sameStructure(reference, bulk) || !sameStructure(reference, parallel)) {
+					throw new IllegalStateException("Maps built in bulk differ from the incremental map");
+				}
+				System.out.printf("incremental %8.2f ms   bulk %8.2f ms   bulk parallel %8.2f ms%n",
+						incrementalNanos / 1e6, bulkNanos / 1e6, parallelNanos / 1e6);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	private static GeographicalMap buildIncrementally() {
+		GeographicalMap map = new GeographicalMap("bench", new UniqueId(0, 1));
+		for (int r = 0; r < SIDE * SIDE; r++) {
+			map.registerGeoRegion(createRegion(r));
+		}
+		for (int r = 0; r < SIDE * SIDE; r++) {
+			for (int l = 0; l < LOCS_PER_REGION; l++) {
+				map.registerGeoLocation(createLocation(r, l), regionId(r));
+			}
+		}
+		for (int r = 0; r < SIDE * SIDE; r++) {
+			if (r % SIDE + 1 < SIDE) {
+				map.putRegLinkBetween(createRegionLink(r, 0), regionId(r), regionId(r + 1));
+			}
+			if (r + SIDE < SIDE * SIDE) {
+				map.putRegLinkBetween(createRegionLink(r, 1), regionId(r), regionId(r + SIDE));
+			}
+			for (int l = 0; l + 1 < LOCS_PER_REGION; l++) {
+				map.putLocationLink(createLocationLink(r, l), regionId(r), locationId(r, l), regionId(r), locationId(r, l + 1));
+			}
+		}
+		return map;
+	}
+	
+	private static GeographicalMap buildInBulk(ExecutorService executor) {
+		GeographicalMap map = new GeographicalMap("bench", new UniqueId(0, 1));
+		GeographicalMapLoader loader = new GeographicalMapLoader(map);
+		for (int r = 0; r < SIDE * SIDE; r++) {
+			loader.addRegion(createRegion(r));
+			for (int l = 0; l < LOCS_PER_REGION; l++) {
+				loader.addLocation(createLocation(r, l), regionId(r));
+			}
+			if (r % SIDE + 1 < SIDE) {
+				loader.addRegionLink(createRegionLink(r, 0), regionId(r), regionId(r + 1));
+			}
+			if (r + SIDE < SIDE * SIDE) {
+				loader.addRegionLink(createRegionLink(r, 1), regionId(r), regionId(r + SIDE));
+			}
+			for (int l = 0; l + 1 < LOCS_PER_REGION; l++) {
+				loader.addLocationLink(createLocationLink(r, l), regionId(r), locationId(r, l), regionId(r), locationId(r, l + 1));
+			}
+		}
+		GeographicalLoadReport report = executor == null ? loader.load() : loader.load(executor);
+		if (!report.isComplete()) {
+			throw new IllegalStateException("Bulk load rejected " + report.getRejectedCount() + " items: " + report.getRejectionReason(0));
+		}
+		return map;
+	}
+	
+	private static boolean sameStructure(GeographicalMap expected, GeographicalMap actual) {
+		if (!expected.getGeoRegions().keySet().equals(actual.getGeoRegions().keySet())
+				|| !expected.getRegLinks().keySet().equals(actual.getRegLinks().keySet())) {
+			return false;
+		}
+		for (RegionLink rL : expected.getRegLinks().values()) {
+			RegionLink other = actual.getRegLinks().get(rL.getUniqueId().getId());
+			if (rL.getLength() != other.getLength()
+					|| rL.getLoc1().getUniqueId().getId() != other.getLoc1().getUniqueId().getId()
+					|| rL.getLoc2().getUniqueId().getId() != other.getLoc2().getUniqueId().getId()) {
+				return false;
+			}
+		}
+		for (GeographicalRegion gR : expected.getGeoRegions().values()) {
+			GeographicalRegion other = actual.getGeoRegions().get(gR.getUniqueId().getId());
+			if (!gR.getPaths().keySet().equals(other.getPaths().keySet())
+					|| !gR.getChildLocs().keySet().equals(other.getChildLocs().keySet())) {
+				return false;
+			}
+			for (GeographicalLocation gL : gR.getChildLocs().values()) {
+				GeographicalLocation otherLoc = other.getChildLocs().get(gL.getUniqueId().getId());
+				if (!gL.getPaths().keySet().equals(otherLoc.getPaths().keySet())
+						|| actual.getOwnerOfLocation(gL.getUniqueId().getId()) != other) {
+					return false;
+				}
+				if (gL instanceof LocationLink && ((LocationLink)gL).getLength() != ((LocationLink)otherLoc).getLength()) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+	
+	private static int regionId(int r) {
+		return r;
+	}
+	
+	private static int locationId(int r, int l) {
+		return SIDE * SIDE + r * LOCS_PER_REGION + l;
+	}
+	
+	private static GeographicalRegion createRegion(int r) {
+		return new BenchRegion(regionId(r), (r % SIDE) * SPACING, (r / SIDE) * SPACING);
+	}
+	
+	private static GeographicalLocation createLocation(int r, int l) {
+		return new BenchLocation(locationId(r, l), (r % SIDE) * SPACING + l * 10, (r / SIDE) * SPACING + l);
+	}
+	
+	private static RegionLink createRegionLink(int r, int direction) {
+		int id = SIDE * SIDE * (LOCS_PER_REGION + 1) + 2 * r + direction;
+		return new BenchRegionLink(id, (r % SIDE) * SPACING + SPACING / 2, (r / SIDE) * SPACING + SPACING / 2);
+	}
+	
+	private static LocationLink createLocationLink(int r, int l) {
+		int id = SIDE * SIDE * (LOCS_PER_REGION + 3) + r * LOCS_PER_REGION + l;
+		return new BenchLocationLink(id, (r % SIDE) * SPACING + l * 10 + 5, (r / SIDE) * SPACING + l);
+	}
+	
+	private static class BenchRegion extends GeographicalRegion {
+		public BenchRegion(int id, int xCoord, int yCoord) {
+			super("region" + id, new UniqueId(id, 1), xCoord, yCoord, new AspectManager());
+		}
+	}
+	
+	private static class BenchRegionLink extends RegionLink {
+		public BenchRegionLink(int id, int xCoord, int yCoord) {
+			super("regionLink" + id, new UniqueId(id, 1), xCoord, yCoord, new AspectManager());
+		}
+	}
+	
+	private static class BenchLocation extends GeographicalLocation {
+		public BenchLocation(int id, int xCoord, int yCoord) {
+			super("location" + id, new UniqueId(id, 1), xCoord, yCoord, new AspectManager(), null);
+		}
+	}
+	
+	private static class BenchLocationLink extends LocationLink {
+		public BenchLocationLink(int id, int xCoord, int yCoord) {
+			super("locationLink" + id, new UniqueId(id, 1), xCoord, yCoord, new AspectManager(), null);
+		}
+	}
+}
@@ -0,0 +1,173 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.bench;
+
+import java.io.File;
+import java.io.IOException;
+
+import core.geography.GeographicalLoadReport;
+import core.geography.GeographicalLocation;
+import core.geography.GeographicalMap;
+import core.geography.GeographicalMapLoader;
+import core.geography.GeographicalMapSerializer;
+import core.geography.GeographicalRegion;
+import core.geography.IGeographicalMapFactory;
+import core.geography.LocationLink;
+import core.geography.RegionLink;
+import core.management.game.UniqueId;
+import core.management.ingame.Aspect;
+import core.management.ingame.AspectManager;
+
+/**
+ * Saves a map of about 10k regions and 80k locations, then times building
+ * it again with a GeographicalMapLoader against reading the saved file
+ * back by streaming and by mapping it into memory.
+ * @author SuperSimpleGuy
+ */
+public class GeographicalMapSerializerBenchmark {
+
+	private static final int SIDE = 100;
+	private static final int LOCS_PER_REGION = 8;
+	private static final int SPACING = 100;
+	private static final int ROUNDS = 5;
+	
+	public static void main(String[] args) throws IOException {
+		GeographicalMapSerializer serializer = new GeographicalMapSerializer(new BenchFactory());
+		File file = File.createTempFile("dytenjin-bench", ".map");
+		file.deleteOnExit();
+		try {
+			GeographicalMap original = build();
+			long start = System.nanoTime();
+			serializer.write(original, file.getPath());
+			System.out.printf("write %8.2f ms, %d bytes%n", (System.nanoTime() - start) / 1e6, file.length());
+			for (int round = 0; round < ROUNDS; round++) {
+				start = System.nanoTime();
+				GeographicalMap built = build();
+				long buildNanos = System.nanoTime() - start;
+				
+				start = System.nanoTime();
+				GeographicalMap streamed = serializer.read(file.getPath());
+				long streamNanos = System.nanoTime() - start;
+				
+				start = System.nanoTime();
+				GeographicalMap mapped = serializer.readMapped(file.getPath());
+				long mappedNanos = System.nanoTime() - start;
+				
+				if (!streamed.getRegLinks().keySet().equals(built.getRegLinks().keySet())
+						|| !mapped.getGeoRegions().keySet().equals(built.getGeoRegions().keySet())) {
+					throw new IllegalStateException("Maps read back differ from the map built");
+				}
+				System.out.printf("build %8.2f ms   read %8.2f ms   read mapped %8.2f ms%n",
+						buildNanos / 1e6, streamNanos / 1e6, mappedNanos / 1e6);
+			}
+		} finally {
+			file.delete();
+		}
+	}
+	
+	private static GeographicalMap build() {
+		GeographicalMap map = new GeographicalMap("bench", new UniqueId(0, 1));
+		GeographicalMapLoader loader = new GeographicalMapLoader(map);
+		int nextLinkId = SIDE * SIDE * (LOCS_PER_REGION + 1);
+		for (int r = 0; r < SIDE * SIDE; r++) {
+			int x = (r % SIDE) * SPACING;
+			int y = (r / SIDE) * SPACING;
+			loader.addRegion(new BenchRegion("region" + r, new UniqueId(r, 1), x, y, new AspectManager()));
+			for (int l = 0; l < LOCS_PER_REGION; l++) {
+				int id = locationId(r, l);
+				loader.addLocation(new BenchLocation("location" + id, new UniqueId(id, 1), x + l * 10, y + l, new AspectManager()), r);
+			}
+			if (r % SIDE + 1 < SIDE) {
+				loader.addRegionLink(new BenchRegionLink("regionLink", new UniqueId(nextLinkId++, 1), x + SPACING / 2, y, new AspectManager()), r, r + 1);
+			}
+			if (r + SIDE < SIDE * SIDE) {
+				loader.addRegionLink(new BenchRegionLink("regionLink", new UniqueId(nextLinkId++, 1), x, y + SPACING / 2, new AspectManager()), r, r + SIDE);
+			}
+			for (int l = 0; l + 1 < LOCS_PER_REGION; l++) {
+				LocationLink lL = new BenchLocationLink("locationLink", new UniqueId(nextLinkId++, 1), x + l * 10 + 5, y + l, new AspectManager());
+				loader.addLocationLink(lL, r, locationId(r, l), r, locationId(r, l + 1));
+			}
+		}
+		GeographicalLoadReport report = loader.load();
+		if (!report.isComplete()) {
+			throw new IllegalStateException("Bulk load rejected " + report.getRejectedCount() + " items: " + report.getRejectionReason(0));
+		}
+		return map;
+	}
+	
+	private static int locationId(int r, int l) {
+		return SIDE * SIDE + r * LOCS_PER_REGION + l;
+	}
+	
+	private static class BenchFactory implements IGeographicalMapFactory {
+		@Override
+		public GeographicalMap createMap(String name, UniqueId id) {
+			return new GeographicalMap(name, id);
+		}
+
+		@Override
+		public GeographicalRegion createRegion(String kind, String name, UniqueId id, int xCoord, int yCoord, AspectManager aspMan) {
+			return new BenchRegion(name, id, xCoord, yCoord, aspMan);
+		}
+
+		@Override
+		public RegionLink createRegionLink(String kind, String name, UniqueId id, int xCoord, int yCoord, AspectManager aspMan) {
+			return new BenchRegionLink(name, id, xCoord, yCoord, aspMan);
+		}
+
+		@Override
+		public GeographicalLocation createLocation(String kind, String name, UniqueId id, int xCoord, int yCoord, AspectManager aspMan) {
+			return new BenchLocation(name, id, xCoord, yCoord, aspMan);
+		}
+
+		@Override
+		public LocationLink createLocationLink(String kind, String name, UniqueId id, int xCoord, int yCoord, AspectManager aspMan) {
+			return new BenchLocationLink(name, id, xCoord, yCoord, aspMan);
+		}
+
+		@Override
+		public Aspect findAspect(int idType, int id) {
+			return null;
+		}
+	}
+	
+	private static class BenchRegion extends GeographicalRegion {
+		public BenchRegion(String name, UniqueId id, int xCoord, int yCoord, AspectManager aspMan) {
+			super(name, id, xCoord, yCoord, aspMan);
+		}
+	}
+	
+	private static class BenchRegionLink extends RegionLink {
+		public BenchRegionLink(String name, UniqueId id, int xCoord, int yCoord, AspectManager aspMan) {
+			super(name, id, xCoord, yCoord, aspMan);
+		}
+	}
+	
+	private static class BenchLocation extends GeographicalLocation {
+		public BenchLocation(String name, UniqueId id, int xCoord, int yCoord, AspectManager aspMan) {
+			super(name, id, xCoord, yCoord, aspMan, null);
+		}
+	}
+	
+	private static class BenchLocationLink extends LocationLink {
+		public BenchLocationLink(String name, UniqueId id, int xCoord, int yCoord, AspectManager aspMan) {
+			super(name, id, xCoord, yCoord, aspMan, null);
+		}
+	}
+}
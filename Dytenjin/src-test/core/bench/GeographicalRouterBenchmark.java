@@ -0,0 +1,110 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package core.bench;
+
+import java.util.Random;
+
+import core.geography.GeographicalRegion;
+import core.geography.GeographicalRouter;
+import core.geography.RegionLink;
+import core.geography.RoutingAlgorithm;
+import core.management.game.UniqueId;
+import core.management.ingame.AspectManager;
+
+/**
+ * Measures GeographicalRouter queries on a grid of about 100k regions
+ * joined by RegionLinks, comparing Dijkstra with A*.
+ * @author SuperSimpleGuy
+ */
+public class GeographicalRouterBenchmark {
+
+	private static final int SIDE = 317;
+	private static final int SPACING = 10;
+	private static final int WARMUP_QUERIES = 20;
+	private static final int MEASURED_QUERIES = 50;
+	
+	public static void main(String[] args) {
+		GeographicalRegion[] grid = createGrid();
+		GeographicalRouter router = new GeographicalRouter(grid.length);
+		Random rand = new Random(42);
+		int[] from = new int[MEASURED_QUERIES];
+		int[] to = new int[MEASURED_QUERIES];
+		for (int i = 0; i < MEASURED_QUERIES; i++) {
+			from[i] = rand.nextInt(grid.length);
+			to[i] = rand.nextInt(grid.length);
+		}
+		
+		for (int i = 0; i < WARMUP_QUERIES; i++) {
+			router.findRoute(grid[from[i]], grid[to[i]], RoutingAlgorithm.DIJKSTRA);
+			router.findRoute(grid[from[i]], grid[to[i]], RoutingAlgorithm.A_STAR);
+		}
+		for (RoutingAlgorithm algorithm : RoutingAlgorithm.values()) {
+			long expanded = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < MEASURED_QUERIES; i++) {
+				router.findRoute(grid[from[i]], grid[to[i]], algorithm);
+				expanded += router.getLastExpandedCount();
+			}
+			long nanos = System.nanoTime() - start;
+			System.out.printf("%-8s %8.2f ms/query %10d regions expanded/query%n", algorithm,
+					nanos / 1e6 / MEASURED_QUERIES, expanded / MEASURED_QUERIES);
+		}
+	}
+	
+	private static GeographicalRegion[] createGrid() {
+		GeographicalRegion[] grid = new GeographicalRegion[SIDE * SIDE];
+		for (int y = 0; y < SIDE; y++) {
+			for (int x = 0; x < SIDE; x++) {
+				grid[y * SIDE + x] = new BenchRegion(y * SIDE + x, x * SPACING, y * SPACING);
+			}
+		}
+		int linkId = grid.length;
+		for (int y = 0; y < SIDE; y++) {
+			for (int x = 0; x < SIDE; x++) {
+				GeographicalRegion gR = grid[y * SIDE + x];
+				if (x + 1 < SIDE) {
+					link(linkId++, gR, grid[y * SIDE + x + 1]);
+				}
+				if (y + 1 < SIDE) {
+					link(linkId++, gR, grid[(y + 1) * SIDE + x]);
+				}
+			}
+		}
+		return grid;
+	}
+	
+	private static void link(int id, GeographicalRegion gR1, GeographicalRegion gR2) {
+		RegionLink l = new BenchRegionLink(id, (gR1.getxCoord() + gR2.getxCoord()) / 2, (gR1.getyCoord() + gR2.getyCoord()) / 2);
+		l.setLoc1(gR1);
+		l.setLoc2(gR2);
+		gR1.registerRegionLink(l);
+		gR2.registerRegionLink(l);
+	}
+	
+	private static class BenchRegion extends GeographicalRegion {
+		public BenchRegion(int id, int xCoord, int yCoord) {
+			super("region" + id, new UniqueId(id, 1), xCoord, yCoord, new AspectManager());
+		}
+	}
+	
+	private static class BenchRegionLink extends RegionLink {
+		public BenchRegionLink(int id, int xCoord, int yCoord) {
+			super("link" + id, new UniqueId(id, 1), xCoord, yCoord, new AspectManager());
+		}
+	}
+}
@@ -0,0 +1,229 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.After;
+import org.junit.Test;
+
+import core.system.AsyncLogHandler;
+import core.system.AsyncLogWriter;
+import core.system.LogOverflowPolicy;
+
+/**
+ * @author SuperSimpleGuy
+ */
+public class AsyncLogWriterTest {
+	
+	private static final long TIMEOUT_MILLIS = 10000;
+	
+	private AsyncLogWriter writer;
+	private final GatedHandler target = new GatedHandler();
+	
+	@After
+	public void tearDown() {
+		target.open();
+		if (writer != null) {
+			writer.shutdown();
+		}
+	}
+	
+	@Test(timeout = TIMEOUT_MILLIS)
+	public void testDropPolicyCounters() throws Exception {
+		writer = new AsyncLogWriter(2, LogOverflowPolicy.DROP, 1);
+		fillBuffer(2);
+		assertTrue(writer.enqueue(target, record()));
+		assertTrue(writer.enqueue(target, record()));
+		assertEquals(3, writer.getEnqueuedCount());
+		assertEquals(0, writer.getWrittenCount());
+		assertEquals(2, writer.getDroppedCount());
+		
+		target.open();
+		writer.flush(null);
+		assertEquals(3, writer.getWrittenCount());
+		assertEquals(2, writer.getDroppedCount());
+		assertEquals(3, target.published.size());
+	}
+	
+	@Test(timeout = TIMEOUT_MILLIS)
+	public void testBlockPolicyCounters() throws Exception {
+		writer = new AsyncLogWriter(2, LogOverflowPolicy.BLOCK, 1);
+		fillBuffer(2);
+		Thread blocked = enqueueInBackground();
+		awaitWaiting(blocked);
+		assertEquals(3, writer.getEnqueuedCount());
+		assertEquals(0, writer.getDroppedCount());
+		
+		target.open();
+		blocked.join();
+		writer.flush(null);
+		assertEquals(4, writer.getEnqueuedCount());
+		assertEquals(4, writer.getWrittenCount());
+		assertEquals(0, writer.getDroppedCount());
+		assertEquals(4, target.published.size());
+	}
+	
+	@Test(timeout = TIMEOUT_MILLIS)
+	public void testSamplePolicyCounters() throws Exception {
+		writer = new AsyncLogWriter(2, LogOverflowPolicy.SAMPLE, 3);
+		fillBuffer(2);
+		Thread sampled = enqueueInBackground();
+		awaitWaiting(sampled);
+		assertTrue(writer.enqueue(target, record()));
+		assertTrue(writer.enqueue(target, record()));
+		assertEquals(3, writer.getEnqueuedCount());
+		assertEquals(2, writer.getDroppedCount());
+		
+		target.open();
+		sampled.join();
+		writer.flush(null);
+		assertEquals(4, writer.getEnqueuedCount());
+		assertEquals(4, writer.getWrittenCount());
+		assertEquals(2, writer.getDroppedCount());
+		assertEquals(4, target.published.size());
+	}
+	
+	@Test(timeout = TIMEOUT_MILLIS)
+	public void testFlushWaitsForQueuedRecords() throws Exception {
+		writer = new AsyncLogWriter(4, LogOverflowPolicy.BLOCK, 1);
+		fillBuffer(4);
+		Thread flushing = new Thread() {
+			@Override
+			public void run() {
+				writer.flush(target);
+			}
+		};
+		flushing.start();
+		awaitWaiting(flushing);
+		assertEquals(0, target.flushes);
+		
+		target.open();
+		flushing.join();
+		assertEquals(writer.getEnqueuedCount(), writer.getWrittenCount());
+		assertEquals(5, target.published.size());
+		assertTrue(target.flushes > 0);
+	}
+	
+	@Test(timeout = TIMEOUT_MILLIS)
+	public void testCloseDrainsAndStopsWriter() throws Exception {
+		writer = new AsyncLogWriter(8, LogOverflowPolicy.BLOCK, 1);
+		AsyncLogHandler handler = new AsyncLogHandler(target, writer);
+		target.open();
+		for (int i = 0; i < 100; i++) {
+			handler.publish(record());
+		}
+		handler.close();
+		assertEquals(100, target.published.size());
+		assertTrue(target.closed);
+		
+		writer.shutdown();
+		assertFalse(target.writerThread.isAlive());
+		assertEquals(100, writer.getWrittenCount());
+		assertFalse(writer.enqueue(target, record()));
+		assertEquals(100, writer.getEnqueuedCount());
+	}
+	
+	/**
+	 * Parks the writer thread on its first record, then fills the
+	 * buffer behind it so that the next record overflows
+	 */
+	private void fillBuffer(int capacity) throws InterruptedException {
+		assertTrue(writer.enqueue(target, record()));
+		assertTrue(target.entered.await(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+		while (writer.getEnqueuedCount() < 1 + capacity) {
+			assertTrue(writer.enqueue(target, record()));
+		}
+	}
+	
+	private Thread enqueueInBackground() {
+		Thread t = new Thread() {
+			@Override
+			public void run() {
+				writer.enqueue(target, record());
+			}
+		};
+		t.start();
+		return t;
+	}
+	
+	private static void awaitWaiting(Thread t) throws InterruptedException {
+		while (t.getState() != Thread.State.WAITING) {
+			assertTrue(t.isAlive());
+			Thread.sleep(1);
+		}
+	}
+	
+	private static LogRecord record() {
+		return new LogRecord(Level.INFO, "Record");
+	}
+	
+	/**
+	 * Holds the writer thread in publish until opened
+	 */
+	private static class GatedHandler extends Handler {
+		
+		private final CountDownLatch entered = new CountDownLatch(1);
+		private final CountDownLatch gate = new CountDownLatch(1);
+		private final List<LogRecord> published = new ArrayList<LogRecord>();
+		private volatile Thread writerThread;
+		private volatile int flushes;
+		private volatile boolean closed;
+		
+		public void open() {
+			gate.countDown();
+		}
+		
+		@Override
+		public void publish(LogRecord record) {
+			writerThread = Thread.currentThread();
+			entered.countDown();
+			try {
+				gate.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			synchronized (published) {
+				published.add(record);
+			}
+		}
+		
+		@Override
+		public void flush() {
+			flushes++;
+		}
+		
+		@Override
+		public void close() throws SecurityException {
+			closed = true;
+		}
+		
+	}
+	
+}
@@ -0,0 +1,129 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.logging.ErrorManager;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import core.system.BinaryLogHandler;
+import core.system.BinaryLogReader;
+
+/**
+ * @author SuperSimpleGuy
+ */
+public class BinaryLogHandlerTest {
+	
+	private static final String testFileName = "logs/test.binarylog.bin";
+	
+	private BinaryLogHandler handler;
+	private int errors;
+	
+	@Before
+	public void setUp() throws Exception {
+		new File(testFileName).delete();
+		handler = new BinaryLogHandler(testFileName);
+		handler.setErrorManager(new ErrorManager() {
+			@Override
+			public synchronized void error(String msg, Exception ex, int code) {
+				errors++;
+			}
+		});
+	}
+	
+	@After
+	public void tearDown() {
+		handler.close();
+		new File(testFileName).delete();
+	}
+	
+	@Test
+	public void testRoundTrip() throws Exception {
+		LogRecord first = record(Level.WARNING, "First {0}", new Object[] {null, 7, -3L, 2.5, true, false, "text", 'c'});
+		LogRecord second = record(Level.FINE, "Second", null);
+		LogRecord third = record(Level.WARNING, "First {0}", new Object[] {Integer.MIN_VALUE, Long.MAX_VALUE});
+		handler.publish(first);
+		handler.publish(second);
+		handler.publish(third);
+		handler.close();
+		
+		BinaryLogReader reader = new BinaryLogReader(testFileName);
+		try {
+			assertDecoded(first, new Object[] {null, 7, -3L, 2.5, true, false, "text", "c"}, reader.next());
+			assertDecoded(second, null, reader.next());
+			assertDecoded(third, new Object[] {Integer.MIN_VALUE, Long.MAX_VALUE}, reader.next());
+			assertNull(reader.next());
+		} finally {
+			reader.close();
+		}
+		assertEquals(0, errors);
+	}
+	
+	@Test
+	public void testRecordFailingToEncodeLeavesNothingBehind() throws Exception {
+		Object broken = new Object() {
+			@Override
+			public String toString() {
+				throw new IllegalStateException("Broken parameter");
+			}
+		};
+		LogRecord failed = record(Level.SEVERE, "Never written", new Object[] {"before", broken});
+		failed.setSourceMethodName("neverSeen");
+		LogRecord written = record(Level.INFO, "Written", new Object[] {"after"});
+		handler.publish(failed);
+		handler.publish(written);
+		handler.close();
+		assertEquals(1, errors);
+		
+		BinaryLogReader reader = new BinaryLogReader(testFileName);
+		try {
+			assertDecoded(written, new Object[] {"after"}, reader.next());
+			assertNull(reader.next());
+		} finally {
+			reader.close();
+		}
+	}
+	
+	private static LogRecord record(Level level, String message, Object[] params) {
+		LogRecord r = new LogRecord(level, message);
+		r.setSourceClassName(BinaryLogHandlerTest.class.getName());
+		r.setSourceMethodName("record");
+		r.setParameters(params);
+		return r;
+	}
+	
+	private static void assertDecoded(LogRecord expected, Object[] expectedParams, LogRecord actual) {
+		assertEquals(expected.getLevel(), actual.getLevel());
+		assertEquals(expected.getMessage(), actual.getMessage());
+		assertEquals(expected.getMillis(), actual.getMillis());
+		assertEquals(expected.getSourceClassName(), actual.getSourceClassName());
+		assertEquals(expected.getSourceMethodName(), actual.getSourceMethodName());
+		assertArrayEquals(expectedParams, actual.getParameters());
+	}
+	
+}
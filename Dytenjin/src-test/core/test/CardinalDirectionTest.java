@@ -180,5 +180,33 @@ public class CardinalDirectionTest {
 		CardinalDirection e = CardinalDirection.getDirFromCoords(0, 0, -1, 0);
 		assertTrue("e.getDir = "+e.getDir(), e == CardinalDirection.W);
 	}
+	
+	@Test
+	public void testGetDirFromCoordsAllDirections() {
+		for (int d = 0; d < 16; d++) {
+			double angle = d * Math.PI / 8;
+			int x = (int)Math.round(Math.sin(angle) * 100000);
+			int y = (int)Math.round(Math.cos(angle) * 100000);
+			CardinalDirection e = CardinalDirection.getDirFromCoords(50, -20, 50 + x, -20 + y);
+			assertTrue("d = " + d + ", e.getDir = " + e.getDir(), e.getDir() == d);
+		}
+	}
+	
+	@Test
+	public void testGetDirFromCoordsLargeOffsetsNearHalfwayAngles() {
+		int[][] cases = {
+				{291933181, 195063515, CardinalDirection.NEE.getDir()},
+				{1268363543, 252293195, CardinalDirection.E.getDir()},
+				{1087665297, 726754716, CardinalDirection.NEE.getDir()},
+				{-1087665297, 726754716, CardinalDirection.NWW.getDir()},
+				{1087665297, -726754716, CardinalDirection.SEE.getDir()},
+				{-1087665297, -726754716, CardinalDirection.SWW.getDir()},
+				{726754717, 1087665297, CardinalDirection.NE.getDir()},
+				{-345837908, 68791437, CardinalDirection.W.getDir()}};
+		for (int[] c : cases) {
+			CardinalDirection e = CardinalDirection.getDirFromCoords(0, 0, c[0], c[1]);
+			assertTrue("(" + c[0] + ", " + c[1] + "), e.getDir = " + e.getDir(), e.getDir() == c[2]);
+		}
+	}
 
 }
@@ -0,0 +1,619 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import core.CoreEventHandler;
+import core.event.ICategorizedEvent;
+import core.event.ICoreEvent;
+import core.event.IFastForwardEvent;
+import core.event.ISchedulableEvent;
+import core.event.ISideEffectFreeEvent;
+import core.management.game.UniqueId;
+import core.management.ingame.AspectManager;
+import core.temporal.AWorldDay;
+import core.temporal.AWorldMonth;
+import core.temporal.AWorldTime;
+import core.temporal.AWorldYear;
+import core.temporal.WorldCalendar;
+import core.temporal.WorldCompleteDate;
+import core.temporal.WorldDate;
+import core.temporal.WorldTimeDuration;
+
+/**
+ * @author SuperSimpleGuy
+ */
+public class CoreEventHandlerTest {
+
+	private CoreEventHandler handler;
+	private WorldCalendar calendar;
+	private WorldCompleteDate date;
+	private WorldTimeDuration step;
+
+	@Before
+	public void setUp() throws Exception {
+		handler = new CoreEventHandler();
+		calendar = new TestCalendar();
+		AWorldYear year = new AWorldYear(0, "year", new AspectManager()) {
+			@Override
+			public AspectManager getSpecialAspects(AWorldMonth month) {
+				return null;
+			}
+		};
+		AWorldMonth month = new AWorldMonth(0, "month", new AspectManager()) {
+			@Override
+			public AspectManager getSpecialAspects(AWorldDay day) {
+				return null;
+			}
+		};
+		AWorldDay day = new AWorldDay(0, "day", new AspectManager()) {
+			@Override
+			public boolean isHoliday() {
+				return false;
+			}
+			
+			@Override
+			public String getHolidayName() {
+				return null;
+			}
+			
+			@Override
+			public AspectManager getSpecialAspects(AWorldTime time) {
+				return null;
+			}
+		};
+		year.setParent(calendar);
+		month.setParent(year);
+		day.setParent(month);
+		date = new StepDate(calendar, year, month, day);
+		step = new WorldTimeDuration(calendar, 1, 0, 0);
+	}
+	
+	@Test
+	public void testScheduledEventsOnlyAskedWhenDue() {
+		PeriodicEvent[] events = new PeriodicEvent[1000];
+		for (int i = 0; i < events.length; i++) {
+			events[i] = new PeriodicEvent(i, 10);
+			assertTrue(handler.addDailyEvent(events[i]));
+		}
+		PolledEvent polled = new PolledEvent(events.length);
+		handler.addDailyEvent(polled);
+		assertEquals(events.length, handler.getScheduledEventCount());
+		
+		runSteps(1);
+		assertEquals(events.length + 1, handler.getLastStepEvaluationCount());
+		runSteps(9);
+		assertEquals(1, handler.getLastStepEvaluationCount());
+		runSteps(1);
+		assertEquals(events.length + 1, handler.getLastStepEvaluationCount());
+		assertEquals(11, handler.getStepCount());
+		assertEquals(11, polled.asks);
+		for (PeriodicEvent e : events) {
+			assertEquals(2, e.asks);
+		}
+	}
+	
+	@Test
+	public void testDormantEventWaitsForReschedule() {
+		PeriodicEvent dormant = new PeriodicEvent(1, 0);
+		PeriodicEvent removed = new PeriodicEvent(2, 1);
+		handler.addDailyEvent(dormant);
+		handler.addDailyEvent(removed);
+		runSteps(3);
+		assertEquals(1, dormant.asks);
+		assertEquals(3, removed.asks);
+		assertEquals(1, handler.getScheduledEventCount());
+		
+		assertTrue(handler.rescheduleEvent(1));
+		assertTrue(!handler.rescheduleEvent(3));
+		handler.removeDailyEvent(2);
+		runSteps(2);
+		assertEquals(2, dormant.asks);
+		assertEquals(3, removed.asks);
+		assertEquals(0, handler.getScheduledEventCount());
+	}
+	
+	@Test
+	public void testEventsEndingTogetherAllEnd() {
+		EndingEvent[] events = new EndingEvent[5];
+		for (int i = 0; i < events.length; i++) {
+			events[i] = new EndingEvent(i, -1);
+			handler.addDailyEvent(events[i]);
+		}
+		runSteps(1);
+		assertEquals(events.length, handler.getActiveEventCount());
+		runSteps(1);
+		assertEquals(0, handler.getActiveEventCount());
+		for (EndingEvent e : events) {
+			assertEquals(1, e.ends);
+		}
+	}
+	
+	@Test
+	public void testEventRemovedWhileEndingIsSkipped() {
+		EndingEvent first = new EndingEvent(1, 2);
+		EndingEvent second = new EndingEvent(2, -1);
+		handler.addDailyEvent(first);
+		handler.addDailyEvent(second);
+		runSteps(1);
+		assertEquals(2, handler.getActiveEventCount());
+		runSteps(1);
+		assertEquals(0, handler.getActiveEventCount());
+		assertEquals(1, first.ends);
+		assertEquals(0, second.ends);
+	}
+	
+	@Test
+	public void testParallelEvaluationMatchesSequential() {
+		ArrayList<String> sequentialLog = new ArrayList<String>();
+		ArrayList<String> parallelLog = new ArrayList<String>();
+		CoreEventHandler sequential = handler;
+		CoreEventHandler parallel = new CoreEventHandler();
+		for (int i = 0; i < 3000; i++) {
+			sequential.addDailyEvent(createRandomEvent(i, sequentialLog));
+			parallel.addDailyEvent(createRandomEvent(i, parallelLog));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			parallel.setParallelExecutor(executor);
+			for (int s = 0; s < 20; s++) {
+				handler = sequential;
+				runSteps(1);
+				handler = parallel;
+				runSteps(1);
+				assertEquals(sequential.getLastStepEvaluationCount(), parallel.getLastStepEvaluationCount());
+				assertEquals(sequential.getActiveEventCount(), parallel.getActiveEventCount());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertTrue(!sequentialLog.isEmpty());
+		assertEquals(sequentialLog, parallelLog);
+	}
+	
+	@Test
+	public void testFastForwardMatchesStepping() {
+		ArrayList<String> steppedLog = new ArrayList<String>();
+		ArrayList<String> fastLog = new ArrayList<String>();
+		CoreEventHandler stepped = handler;
+		CoreEventHandler fast = new CoreEventHandler();
+		stepped.addDailyEvent(new CountingEvent(stepped, 1, 10, 3, steppedLog));
+		stepped.addDailyEvent(new CountingEvent(stepped, 2, 7, 30, steppedLog));
+		fast.addDailyEvent(new FastCountingEvent(fast, 1, 10, 3, fastLog));
+		fast.addDailyEvent(new FastCountingEvent(fast, 2, 7, 30, fastLog));
+		PeriodicEvent steppedPeriodic = new PeriodicEvent(3, 50);
+		PeriodicEvent fastPeriodic = new PeriodicEvent(3, 50);
+		stepped.addDailyEvent(steppedPeriodic);
+		fast.addDailyEvent(fastPeriodic);
+		
+		runSteps(1000);
+		handler = fast;
+		runSteps(1000);
+		assertEquals(steppedLog, fastLog);
+		assertEquals(steppedPeriodic.asks, fastPeriodic.asks);
+		assertEquals(1000, fast.getStepCount());
+		assertEquals(0, stepped.getFastForwardedStepCount());
+		assertTrue(fast.getFastForwardedStepCount() > 500);
+	}
+	
+	@Test
+	public void testFastForwardMatchesSteppingWithinADay() {
+		WorldTimeDuration subDayStep = new WorldTimeDuration(calendar, 0, 7, 45);
+		ArrayList<String> steppedLog = new ArrayList<String>();
+		ArrayList<String> fastLog = new ArrayList<String>();
+		CoreEventHandler stepped = handler;
+		CoreEventHandler fast = new CoreEventHandler();
+		stepped.addDailyEvent(new CountingEvent(stepped, 1, 10, 3, steppedLog));
+		stepped.addDailyEvent(new CountingEvent(stepped, 2, 7, 30, steppedLog));
+		fast.addDailyEvent(new FastCountingEvent(fast, 1, 10, 3, fastLog));
+		fast.addDailyEvent(new FastCountingEvent(fast, 2, 7, 30, fastLog));
+		
+		runSteps(1000, subDayStep);
+		handler = fast;
+		runSteps(1000, subDayStep);
+		assertEquals(steppedLog, fastLog);
+		assertEquals(1000, fast.getStepCount());
+		assertTrue(fast.getFastForwardedStepCount() > 500);
+	}
+	
+	@Test
+	public void testCategoriesAskedInDependencyOrder() {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			for (int mode = 0; mode < 2; mode++) {
+				handler = new CoreEventHandler();
+				handler.setParallelExecutor(mode == 0 ? null : executor);
+				assertTrue(handler.addCategoryDependency("crops", "weather"));
+				assertTrue(handler.addCategoryDependency("market", "crops"));
+				assertTrue(!handler.addCategoryDependency("weather", "market"));
+				assertTrue(!handler.addCategoryDependency("crops", "crops"));
+				
+				ArrayList<String> log = new ArrayList<String>();
+				String[] names = {"market", "crops", "weather", null};
+				for (int i = 0; i < 40; i++) {
+					handler.addDailyEvent(new CategoryEvent(i, names[i % names.length], log));
+				}
+				runSteps(2);
+				assertEquals(80, log.size());
+				assertEquals("[default, weather, crops, market]", handler.getCategoryOrder().toString());
+				for (int step = 0; step < 2; step++) {
+					int rank = 0;
+					for (String category : log.subList(step * 40, step * 40 + 40)) {
+						int next = handler.getCategoryOrder().indexOf(category);
+						assertTrue(next >= rank);
+						rank = next;
+					}
+				}
+				assertTrue(handler.getCategoryStepNanos("crops") >= 0);
+				assertTrue(handler.getCategoryTotalNanos("crops") >= handler.getCategoryStepNanos("crops"));
+				assertEquals(-1, handler.getCategoryStepNanos("unknown"));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testFailedBatchAsksEachEventOnce() {
+		FreePolledEvent[] events = new FreePolledEvent[100];
+		for (int i = 0; i < events.length; i++) {
+			events[i] = new FreePolledEvent(i, i == 40);
+			handler.addDailyEvent(events[i]);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			handler.setParallelExecutor(executor);
+			runSteps(1);
+		} finally {
+			executor.shutdown();
+		}
+		for (FreePolledEvent e : events) {
+			assertEquals(1, e.asks);
+		}
+	}
+	
+	private RandomEvent createRandomEvent(int id, ArrayList<String> log) {
+		if (id % 5 == 0) {
+			return new SharedRandomEvent(id, log);
+		} else if (id % 3 == 0) {
+			return new PeriodicRandomEvent(id, log);
+		}
+		return new FreeRandomEvent(id, log);
+	}
+	
+	private void runSteps(int steps) {
+		runSteps(steps, step);
+	}
+	
+	private void runSteps(int steps, WorldTimeDuration triggerStep) {
+		handler.triggerDateEvents(triggerStep.getMultiple(steps + 1), triggerStep, date);
+	}
+	
+	/**
+	 * Never triggers, counting how often it is asked
+	 */
+	private class PolledEvent implements ICoreEvent {
+		private UniqueId id;
+		protected int asks;
+		
+		public PolledEvent(int id) {
+			this.id = new UniqueId(id, 0);
+		}
+		
+		@Override
+		public boolean triggerEvent() {
+			asks++;
+			return false;
+		}
+
+		@Override
+		public UniqueId getUniqueId() {
+			return id;
+		}
+
+		@Override
+		public void endTriggerEvent() {
+		}
+
+		@Override
+		public WorldTimeDuration getDurationLength() {
+			return new WorldTimeDuration(calendar, 0, 0, 0);
+		}
+
+		@Override
+		public void decreaseDuration(WorldTimeDuration d) {
+		}
+	}
+	
+	/**
+	 * Asks to be checked again after a fixed number of steps
+	 */
+	private class PeriodicEvent extends PolledEvent implements ISchedulableEvent {
+		private long period;
+		
+		public PeriodicEvent(int id, long period) {
+			super(id);
+			this.period = period;
+		}
+
+		@Override
+		public long getStepsUntilNextCheck(WorldCompleteDate d, WorldTimeDuration triggerStep) {
+			return period;
+		}
+	}
+	
+	/**
+	 * Triggers once and ends on the following step, optionally removing
+	 * another event from the handler as it ends
+	 */
+	private class EndingEvent extends PolledEvent {
+		private int removeOnEnd;
+		protected int ends;
+		
+		public EndingEvent(int id, int removeOnEnd) {
+			super(id);
+			this.removeOnEnd = removeOnEnd;
+		}
+		
+		@Override
+		public boolean triggerEvent() {
+			return ++asks == 1;
+		}
+		
+		@Override
+		public void endTriggerEvent() {
+			ends++;
+			if (removeOnEnd >= 0) {
+				handler.removeDailyEvent(removeOnEnd);
+			}
+		}
+	}
+	
+	/**
+	 * Triggers at random from its own generator, lasting a few steps and
+	 * logging the steps it continues and ends on
+	 */
+	private class RandomEvent extends PolledEvent {
+		private Random random;
+		private ArrayList<String> log;
+		private WorldTimeDuration duration;
+		
+		public RandomEvent(int id, ArrayList<String> log) {
+			super(id);
+			this.random = new Random(id);
+			this.log = log;
+			this.duration = new WorldTimeDuration(calendar, id % 4, 0, 0);
+		}
+		
+		@Override
+		public boolean triggerEvent() {
+			asks++;
+			return random.nextInt(4) == 0;
+		}
+		
+		@Override
+		public void endTriggerEvent() {
+			log.add("end " + getUniqueId().getId() + " after " + asks);
+			duration = new WorldTimeDuration(calendar, getUniqueId().getId() % 4, 0, 0);
+		}
+		
+		@Override
+		public WorldTimeDuration getDurationLength() {
+			return duration;
+		}
+		
+		@Override
+		public void decreaseDuration(WorldTimeDuration d) {
+			log.add("continue " + getUniqueId().getId());
+			duration.decreaseDuration(d);
+		}
+	}
+	
+	/**
+	 * Triggers on every period-th time it is asked while not triggering,
+	 * lasting a number of days and logging the steps it triggers and ends on
+	 */
+	private class CountingEvent extends PolledEvent {
+		private CoreEventHandler owner;
+		private int period;
+		private int days;
+		private ArrayList<String> log;
+		private WorldTimeDuration duration;
+		protected boolean triggering;
+		
+		public CountingEvent(CoreEventHandler owner, int id, int period, int days, ArrayList<String> log) {
+			super(id);
+			this.owner = owner;
+			this.period = period;
+			this.days = days;
+			this.log = log;
+		}
+		
+		@Override
+		public boolean triggerEvent() {
+			asks++;
+			if (triggering || asks % period != 0) {
+				return false;
+			}
+			triggering = true;
+			duration = new WorldTimeDuration(calendar, days, 0, 0);
+			log.add("trigger " + getUniqueId().getId() + " at " + owner.getStepCount());
+			return true;
+		}
+		
+		@Override
+		public void endTriggerEvent() {
+			triggering = false;
+			log.add("end " + getUniqueId().getId() + " at " + owner.getStepCount());
+		}
+		
+		@Override
+		public WorldTimeDuration getDurationLength() {
+			return duration;
+		}
+		
+		@Override
+		public void decreaseDuration(WorldTimeDuration d) {
+			duration.decreaseDuration(d);
+		}
+	}
+	
+	/**
+	 * A CountingEvent that can be advanced over the steps before it next
+	 * triggers. While triggering it is asked twice a step
+	 */
+	private class FastCountingEvent extends CountingEvent implements IFastForwardEvent {
+		public FastCountingEvent(CoreEventHandler owner, int id, int period, int days, ArrayList<String> log) {
+			super(owner, id, period, days, log);
+		}
+
+		@Override
+		public long getStepsWithoutChange(WorldCompleteDate d, WorldTimeDuration triggerStep) {
+			if (triggering) {
+				return Long.MAX_VALUE;
+			}
+			return super.period - asks % super.period - 1;
+		}
+
+		@Override
+		public void advanceSteps(long steps, WorldCompleteDate d, WorldTimeDuration triggerStep) {
+			asks += triggering ? 2 * steps : steps;
+		}
+	}
+	
+	/**
+	 * Logs its category each time it is asked, never triggering
+	 */
+	private class CategoryEvent extends PolledEvent implements ICategorizedEvent {
+		private String category;
+		private ArrayList<String> log;
+		
+		public CategoryEvent(int id, String category, ArrayList<String> log) {
+			super(id);
+			this.category = category;
+			this.log = log;
+		}
+		
+		@Override
+		public boolean triggerEvent() {
+			log.add(category == null ? CoreEventHandler.DEFAULT_EVENT_CATEGORY : category);
+			return false;
+		}
+
+		@Override
+		public String getEventCategory() {
+			return category;
+		}
+	}
+	
+	/**
+	 * A PolledEvent that may be asked on another thread, optionally throwing
+	 * each time it is asked
+	 */
+	private class FreePolledEvent extends PolledEvent implements ISideEffectFreeEvent {
+		private boolean failing;
+		
+		public FreePolledEvent(int id, boolean failing) {
+			super(id);
+			this.failing = failing;
+		}
+		
+		@Override
+		public boolean triggerEvent() {
+			super.triggerEvent();
+			if (failing) {
+				throw new IllegalStateException("event " + getUniqueId().getId() + " failed");
+			}
+			return false;
+		}
+	}
+	
+	/**
+	 * A RandomEvent that may be asked on another thread
+	 */
+	private class FreeRandomEvent extends RandomEvent implements ISideEffectFreeEvent {
+		public FreeRandomEvent(int id, ArrayList<String> log) {
+			super(id, log);
+		}
+	}
+	
+	/**
+	 * A FreeRandomEvent asked every few steps
+	 */
+	private class PeriodicRandomEvent extends FreeRandomEvent implements ISchedulableEvent {
+		public PeriodicRandomEvent(int id, ArrayList<String> log) {
+			super(id, log);
+		}
+
+		@Override
+		public long getStepsUntilNextCheck(WorldCompleteDate d, WorldTimeDuration triggerStep) {
+			return 1 + getUniqueId().getId() % 3;
+		}
+	}
+	
+	/**
+	 * A RandomEvent whose predicate also writes to the shared log, so it
+	 * must be asked on the calling thread
+	 */
+	private class SharedRandomEvent extends RandomEvent {
+		private ArrayList<String> log;
+		
+		public SharedRandomEvent(int id, ArrayList<String> log) {
+			super(id, log);
+			this.log = log;
+		}
+		
+		@Override
+		public boolean triggerEvent() {
+			boolean triggered = super.triggerEvent();
+			log.add("asked " + getUniqueId().getId());
+			return triggered;
+		}
+	}
+	
+	private static class TestCalendar extends WorldCalendar {
+		public TestCalendar() {
+			super(new UniqueId(0, 0), "test", 60, 24);
+		}
+	}
+	
+	/**
+	 * A date that stays the same however much time passes
+	 */
+	private static class StepDate extends WorldCompleteDate {
+		public StepDate(WorldCalendar calendar, AWorldYear year, AWorldMonth month, AWorldDay day) {
+			super(calendar, year, month, day, null);
+		}
+		
+		@Override
+		public WorldDate getDateAfterDuration(WorldTimeDuration duration) {
+			return this;
+		}
+	}
+}
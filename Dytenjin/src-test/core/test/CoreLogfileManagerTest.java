@@ -17,8 +17,15 @@
  */
 package core.test;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
 import java.io.File;
+import java.util.logging.Handler;
 import java.util.logging.Level;
+import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 
 import org.junit.After;
@@ -26,7 +33,10 @@ import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import core.system.BinaryLogReader;
 import core.system.CoreLogfileManager;
+import core.system.ILogSupplier;
+import core.system.LogOverflowPolicy;
 
 /**
  * @author SuperSimpleGuy
@@ -161,4 +171,93 @@ public class CoreLogfileManagerTest {
 		boolean b = testingManager.exitingWithoutResult(this.getClass(), testFileName, "testExitingWithoutResult", "Exit Success!");
 		assert(b == true);
 	}
+	
+	@Test
+	public void testLogCallsReuseOneHandler() {
+		testingManager.logWithoutParams(testFileName, Level.WARNING, this.getClass(), "testLogCallsReuseOneHandler", "First");
+		Handler[] first = Logger.getLogger(testFileName).getHandlers();
+		testingManager.logWithoutParams(testFileName, Level.WARNING, this.getClass(), "testLogCallsReuseOneHandler", "Second");
+		Handler[] second = Logger.getLogger(testFileName).getHandlers();
+		assertEquals(1, first.length);
+		assertEquals(1, second.length);
+		assertSame(first[0], second[0]);
+		assertTrue(lockFileExists());
+		
+		testingManager.close();
+		assertEquals(0, Logger.getLogger(testFileName).getHandlers().length);
+		assertFalse(lockFileExists());
+	}
+	
+	private static boolean lockFileExists() {
+		File logFile = new File(testFileName);
+		String[] names = logFile.getAbsoluteFile().getParentFile().list();
+		for (String name : names == null ? new String[0] : names) {
+			if (name.startsWith(logFile.getName()) && name.endsWith(".lck")) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	@Test
+	public void testSupplierNotCalledWhenLevelDisabled() {
+		testingManager.setLogLevelForFile(testFileName, Level.INFO);
+		final int[] calls = new int[1];
+		ILogSupplier<Object[]> args = new ILogSupplier<Object[]>() {
+			@Override
+			public Object[] get() {
+				calls[0]++;
+				return new Object[] {"arg"};
+			}
+		};
+		testingManager.logWithParams(testFileName, Level.FINEST, this.getClass(), "testSupplierNotCalledWhenLevelDisabled", "Disabled", args);
+		testingManager.enteringWithParams(this.getClass(), testFileName, "testSupplierNotCalledWhenLevelDisabled", "Disabled", args);
+		testingManager.exitingWithResult(this.getClass(), testFileName, "testSupplierNotCalledWhenLevelDisabled", "Disabled", args);
+		assertEquals(0, calls[0]);
+		
+		testingManager.logWithParams(testFileName, Level.WARNING, this.getClass(), "testSupplierNotCalledWhenLevelDisabled", "Enabled {0}", args);
+		assertEquals(1, calls[0]);
+		testingManager.close();
+	}
+	
+	@Test
+	public void testIsLoggableFollowsLogLevelForFile() {
+		testingManager.setLogLevelForFile(testFileName, Level.FINEST);
+		assertTrue(testingManager.isLoggable(testFileName, Level.FINEST));
+		assertTrue(testingManager.isLoggable(testFileName, Level.SEVERE));
+		
+		testingManager.setLogLevelForFile(testFileName, Level.SEVERE);
+		assertFalse(testingManager.isLoggable(testFileName, Level.WARNING));
+		assertTrue(testingManager.isLoggable(testFileName, Level.SEVERE));
+		
+		testingManager.setLogLevelForFile(testFileName, Level.OFF);
+		assertFalse(testingManager.isLoggable(testFileName, Level.SEVERE));
+	}
+	
+	@Test
+	public void testBinarySinkSurvivesAsyncSwitch() throws Exception {
+		String binaryFileName = "logs/test.logfilemanager.bin";
+		new File(binaryFileName).delete();
+		assertTrue(testingManager.addBinarySink(testFileName, binaryFileName));
+		try {
+			testingManager.enableAsyncLogging(LogOverflowPolicy.BLOCK);
+			testingManager.logWithoutParams(testFileName, Level.WARNING, this.getClass(), "testBinarySinkSurvivesAsyncSwitch", "Async");
+			testingManager.disableAsyncLogging();
+			testingManager.logWithoutParams(testFileName, Level.WARNING, this.getClass(), "testBinarySinkSurvivesAsyncSwitch", "Sync");
+		} finally {
+			testingManager.disableAsyncLogging();
+			assertTrue(testingManager.removeBinarySink(testFileName));
+		}
+		
+		BinaryLogReader reader = new BinaryLogReader(binaryFileName);
+		try {
+			LogRecord r = reader.next();
+			assertEquals("Async", r.getMessage());
+			r = reader.next();
+			assertEquals("Sync", r.getMessage());
+			assertEquals(null, reader.next());
+		} finally {
+			reader.close();
+		}
+	}
 }
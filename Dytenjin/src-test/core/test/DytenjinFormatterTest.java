@@ -0,0 +1,94 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import core.system.DytenjinFormatter;
+
+/**
+ * @author SuperSimpleGuy
+ */
+public class DytenjinFormatterTest {
+	
+	private Locale defaultLocale;
+	
+	@Before
+	public void setUp() {
+		defaultLocale = Locale.getDefault();
+	}
+	
+	@After
+	public void tearDown() {
+		Locale.setDefault(defaultLocale);
+	}
+	
+	@Test
+	public void testMatchesSimpleFormatter() {
+		assertMatchesSimpleFormatter(Locale.US);
+	}
+	
+	@Test
+	public void testMatchesSimpleFormatterInOtherLocales() {
+		assertMatchesSimpleFormatter(Locale.GERMANY);
+		assertMatchesSimpleFormatter(Locale.FRANCE);
+		assertMatchesSimpleFormatter(Locale.JAPAN);
+		assertMatchesSimpleFormatter(new Locale("ar", "EG"));
+		assertMatchesSimpleFormatter(new Locale("th", "TH"));
+		assertMatchesSimpleFormatter(new Locale("lv"));
+		assertMatchesSimpleFormatter(new Locale("en", "JM"));
+	}
+	
+	@Test
+	public void testAppendsParamsAfterSimpleFormatterLayout() {
+		LogRecord record = new LogRecord(Level.INFO, "Message {0} {1}");
+		record.setParameters(new Object[] {Integer.valueOf(7), "text"});
+		String simple = new SimpleFormatter().format(record);
+		String dytenjin = new DytenjinFormatter().format(record);
+		assertTrue(dytenjin.startsWith(simple));
+		assertEquals("PARAMS: 7 text\n", dytenjin.substring(simple.length()));
+	}
+	
+	private static void assertMatchesSimpleFormatter(Locale locale) {
+		Locale.setDefault(locale);
+		SimpleFormatter simple = new SimpleFormatter();
+		DytenjinFormatter dytenjin = new DytenjinFormatter();
+		
+		LogRecord record = new LogRecord(Level.WARNING, "Message");
+		record.setSourceClassName(DytenjinFormatterTest.class.getName());
+		record.setSourceMethodName("assertMatchesSimpleFormatter");
+		assertEquals(simple.format(record), dytenjin.format(record));
+		
+		record = new LogRecord(Level.SEVERE, "Thrown");
+		record.setLoggerName("logs/test.formatter.log");
+		record.setThrown(new IllegalStateException("Failure"));
+		assertEquals(simple.format(record), dytenjin.format(record));
+	}
+	
+}
@@ -0,0 +1,269 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import core.geography.GeographicalLocation;
+import core.geography.GeographicalMap;
+import core.geography.GeographicalMapSerializer;
+import core.geography.GeographicalRegion;
+import core.geography.IGeographicalMapFactory;
+import core.geography.LocationLink;
+import core.geography.RegionLink;
+import core.geography.RoutingAlgorithm;
+import core.management.game.UniqueId;
+import core.management.ingame.Aspect;
+import core.management.ingame.AspectManager;
+
+/**
+ * @author SuperSimpleGuy
+ */
+public class GeographicalMapSerializerTest {
+
+	private static final double EPSILON = 1e-9;
+	
+	private GeographicalMap mapTest;
+	private GeographicalMapSerializer serializer;
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		mapTest = new GeographicalMap("Serializer Test Map", new UniqueId(7, 0));
+		mapTest.registerGeoRegion(new TestGeographicalRegion("west", new UniqueId(0, 1), 0, 0, new AspectManager()));
+		mapTest.registerGeoRegion(new TestGeographicalRegion("middle", new UniqueId(1, 1), 10, 0, new AspectManager()));
+		mapTest.registerGeoRegion(new TestGeographicalRegion("east", new UniqueId(2, 1), 20, 0, new AspectManager()));
+		mapTest.putRegLinkBetween(new TestRegionLink("w-m", new UniqueId(10, 1), 5, 0, new AspectManager()), 0, 1);
+		mapTest.putRegLinkBetween(new TestRegionLink("m-e", new UniqueId(11, 1), 15, 3, new AspectManager()), 1, 2);
+		mapTest.getRegLinks().get(10).setLength(42);
+		
+		AspectManager marked = new AspectManager();
+		marked.addAspect(new TestAspect(new UniqueId(5, 9)));
+		mapTest.registerGeoLocation(new TestGeographicalLocation("sw", new UniqueId(0, 2), 0, 0, marked), 1);
+		mapTest.registerGeoLocation(new TestGeographicalLocation(null, new UniqueId(1, 2), 4, 0, new AspectManager()), 1);
+		mapTest.registerGeoLocation(new TestGeographicalLocation("ne", new UniqueId(2, 2), 4, 4, new AspectManager()), 1);
+		mapTest.registerGeoLocation(new TestGeographicalLocation("e0", new UniqueId(30, 2), 8, 4, new AspectManager()), 2);
+		mapTest.putLocationLink(new TestLocationLink("sw-se", new UniqueId(20, 2), 2, 0, new AspectManager()), 1, 0, 1, 1);
+		mapTest.putLocationLink(new TestLocationLink("se-ne", new UniqueId(21, 2), 4, 2, new AspectManager()), 1, 1, 1, 2);
+		GeographicalLocation ne = mapTest.getGeoRegions().get(1).getChildLocs().get(2);
+		GeographicalLocation e0 = mapTest.getGeoRegions().get(2).getChildLocs().get(30);
+		LocationLink edge = new TestLocationLink("ne-e0", new UniqueId(33, 2), 6, 4, new AspectManager());
+		edge.setParent(ne.getParent());
+		edge.setLoc1(ne);
+		edge.setLoc2(e0);
+		ne.registerLocationLink(edge);
+		e0.registerLocationLink(edge);
+		
+		serializer = new GeographicalMapSerializer(new TestFactory());
+		file = File.createTempFile("dytenjin", ".map");
+	}
+	
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void testStreamingRoundTrip() throws IOException {
+		serializer.write(mapTest, file.getPath());
+		assertSameMap(mapTest, serializer.read(file.getPath()));
+	}
+	
+	@Test
+	public void testMappedRoundTrip() throws IOException {
+		serializer.write(mapTest, file.getPath());
+		assertSameMap(mapTest, serializer.readMapped(file.getPath()));
+	}
+	
+	@Test
+	public void testRoundTripOfEmptyMap() throws IOException {
+		serializer.write(new GeographicalMap(new UniqueId(3, 0)), file.getPath());
+		GeographicalMap copy = serializer.read(file.getPath());
+		assertEquals(new UniqueId(3, 0), copy.getUniqueId());
+		assertTrue(copy.getGeoRegions().isEmpty());
+	}
+	
+	@Test
+	public void testRoundTripKeepsLocationsOfRegionLinks() throws IOException {
+		GeographicalLocation ford = new TestGeographicalLocation("ford", new UniqueId(40, 2), 5, 1, new AspectManager());
+		GeographicalLocation bank = new TestGeographicalLocation("bank", new UniqueId(41, 2), 3, 1, new AspectManager());
+		mapTest.getRegLinks().get(10).registerChildLoc(ford);
+		mapTest.registerGeoLocation(bank, 0);
+		LocationLink crossing = new TestLocationLink("bank-ford", new UniqueId(42, 2), 4, 1, new AspectManager());
+		crossing.setParent(bank.getParent());
+		crossing.setLoc1(bank);
+		crossing.setLoc2(ford);
+		bank.registerLocationLink(crossing);
+		ford.registerLocationLink(crossing);
+		assertEquals(10, mapTest.getOwnerOfLocation(40).getUniqueId().getId());
+		serializer.write(mapTest, file.getPath());
+		
+		GeographicalMap copy = serializer.read(file.getPath());
+		assertSameMap(mapTest, copy);
+		GeographicalRegion owner = copy.getOwnerOfLocation(40);
+		assertNotNull(owner);
+		assertEquals(copy.getRegLinks().get(10), owner);
+		assertEquals("ford", owner.getChildLocs().get(40).getName());
+		assertEquals(mapTest.findLocationRoute(41, 40, RoutingAlgorithm.DIJKSTRA).getLength(), copy.findLocationRoute(41, 40, RoutingAlgorithm.DIJKSTRA).getLength(), EPSILON);
+	}
+	
+	@Test
+	public void testRefusesRegionLinksJoiningRegionLinks() throws IOException {
+		mapTest.putRegLinkBetween(new TestRegionLink("spur", new UniqueId(12, 1), 10, 5, new AspectManager()), 11, 1);
+		assertEquals(3, mapTest.getRegLinks().size());
+		try {
+			serializer.write(mapTest, file.getPath());
+			fail("Wrote a RegionLink joined to another RegionLink");
+		} catch (IOException e) {
+			assertEquals("RegionLink 12 joins another RegionLink, which map files cannot hold", e.getMessage());
+		}
+	}
+	
+	@Test
+	public void testRejectsOtherFiles() throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+		out.close();
+		try {
+			serializer.read(file.getPath());
+			fail("Read a file that is not a saved map");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().startsWith("Not a supported map file"));
+		}
+	}
+	
+	private static void assertSameMap(GeographicalMap expected, GeographicalMap actual) {
+		assertEquals(expected.getName(), actual.getName());
+		assertEquals(expected.getUniqueId(), actual.getUniqueId());
+		assertEquals(expected.getGeoRegions().keySet(), actual.getGeoRegions().keySet());
+		assertEquals(expected.getRegLinks().keySet(), actual.getRegLinks().keySet());
+		for (GeographicalRegion gR : expected.getGeoRegions().values()) {
+			GeographicalRegion copy = actual.getGeoRegions().get(gR.getUniqueId().getId());
+			assertEquals(gR.getName(), copy.getName());
+			assertEquals(gR.getxCoord(), copy.getxCoord());
+			assertEquals(gR.getyCoord(), copy.getyCoord());
+			for (GeographicalLocation gL : gR.getChildLocs().values()) {
+				GeographicalLocation copyL = copy.getChildLocs().get(gL.getUniqueId().getId());
+				assertNotNull(copyL);
+				assertEquals(gL.getName(), copyL.getName());
+				assertEquals(gL.getxCoord(), copyL.getxCoord());
+				assertEquals(gL.getyCoord(), copyL.getyCoord());
+				assertEquals(gL.getPaths().keySet(), copyL.getPaths().keySet());
+				assertEquals(gL.getAspect().getAspectTypes(), copyL.getAspect().getAspectTypes());
+				for (LocationLink lL : gL.getPaths().values()) {
+					LocationLink copyLL = copyL.getPaths().get(lL.getUniqueId().getId());
+					assertEquals(lL.getLength(), copyLL.getLength(), EPSILON);
+					assertEquals(lL.getDirFromGeoLoc(gL), copyLL.getDirFromGeoLoc(copyL));
+				}
+			}
+		}
+		for (RegionLink rL : expected.getRegLinks().values()) {
+			RegionLink copy = actual.getRegLinks().get(rL.getUniqueId().getId());
+			assertEquals(rL.getLoc1().getUniqueId(), copy.getLoc1().getUniqueId());
+			assertEquals(rL.getLoc2().getUniqueId(), copy.getLoc2().getUniqueId());
+			assertEquals(rL.getLength(), copy.getLength(), EPSILON);
+			assertEquals(rL.getDirFromGeoReg(rL.getLoc1()), copy.getDirFromGeoReg(copy.getLoc1()));
+			assertEquals(rL.getDirFromGeoReg(rL.getLoc2()), copy.getDirFromGeoReg(copy.getLoc2()));
+		}
+		assertEquals(TestAspect.class, actual.getGeoRegions().get(1).getChildLocs().get(0).getAspect().getAspect(9).getClass());
+		assertEquals(expected.findRegionRoute(0, 2, RoutingAlgorithm.DIJKSTRA).getLength(), actual.findRegionRoute(0, 2, RoutingAlgorithm.DIJKSTRA).getLength(), EPSILON);
+		assertEquals(expected.findLocationRoute(0, 30, RoutingAlgorithm.DIJKSTRA).getLength(), actual.findLocationRoute(0, 30, RoutingAlgorithm.DIJKSTRA).getLength(), EPSILON);
+	}
+	
+	private class TestFactory implements IGeographicalMapFactory {
+		@Override
+		public GeographicalMap createMap(String name, UniqueId id) {
+			return new GeographicalMap(name, id);
+		}
+
+		@Override
+		public GeographicalRegion createRegion(String kind, String name, UniqueId id, int xCoord, int yCoord, AspectManager aspMan) {
+			assertEquals(TestGeographicalRegion.class.getName(), kind);
+			return new TestGeographicalRegion(name, id, xCoord, yCoord, aspMan);
+		}
+
+		@Override
+		public RegionLink createRegionLink(String kind, String name, UniqueId id, int xCoord, int yCoord, AspectManager aspMan) {
+			return new TestRegionLink(name, id, xCoord, yCoord, aspMan);
+		}
+
+		@Override
+		public GeographicalLocation createLocation(String kind, String name, UniqueId id, int xCoord, int yCoord, AspectManager aspMan) {
+			return new TestGeographicalLocation(name, id, xCoord, yCoord, aspMan);
+		}
+
+		@Override
+		public LocationLink createLocationLink(String kind, String name, UniqueId id, int xCoord, int yCoord, AspectManager aspMan) {
+			return new TestLocationLink(name, id, xCoord, yCoord, aspMan);
+		}
+
+		@Override
+		public Aspect findAspect(int idType, int id) {
+			return new TestAspect(new UniqueId(id, idType));
+		}
+	}
+	
+	private static class TestAspect extends Aspect {
+		private UniqueId id;
+		
+		public TestAspect(UniqueId id) {
+			this.id = id;
+		}
+		
+		@Override
+		public UniqueId getUniqueId() {
+			return id;
+		}
+	}
+	
+	private class TestGeographicalRegion extends GeographicalRegion {
+		public TestGeographicalRegion(String name, UniqueId id, int xCoord, int yCoord, AspectManager aspMan) {
+			super(name, id, xCoord, yCoord, aspMan);
+		}
+	}
+	
+	private class TestRegionLink extends RegionLink {
+		public TestRegionLink(String name, UniqueId id, int xCoord, int yCoord, AspectManager aspMan) {
+			super(name, id, xCoord, yCoord, aspMan);
+		}
+	}
+	
+	private class TestGeographicalLocation extends GeographicalLocation {
+		public TestGeographicalLocation(String name, UniqueId id, int xCoord, int yCoord, AspectManager aspMan) {
+			super(name, id, xCoord, yCoord, aspMan, null);
+		}
+	}
+	
+	private class TestLocationLink extends LocationLink {
+		public TestLocationLink(String name, UniqueId id, int xCoord, int yCoord, AspectManager aspMan) {
+			super(name, id, xCoord, yCoord, aspMan, null);
+		}
+	}
+}
@@ -17,14 +17,27 @@
  */
 package core.test;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.junit.Before;
 import org.junit.Test;
 
+import core.CoreConstants;
+import core.geography.GeographicalLoadReport;
 import core.geography.GeographicalLocation;
 import core.geography.GeographicalMap;
+import core.geography.GeographicalMapLoader;
+import core.geography.GeographicalMapView;
 import core.geography.GeographicalRegion;
 import core.geography.LocationLink;
 import core.geography.RegionLink;
+import core.geography.RoutingAlgorithm;
+import core.geography.SpatialGrid;
 import core.management.ingame.AspectManager;
 import core.management.game.UniqueId;
 
@@ -60,7 +73,7 @@ public class GeographicalMapTest {
 		lL = new TestLocationLink("LL", 3, -2, -3);
 		lL2 = new TestLocationLink("LL", 4, 2, 3);
 	}
-
+	
 	@Test
 	public void testSettingUp() {
 		assert(mapTest.getGeoRegions().size() == 0 && mapTest.getRegLinks().size() == 0);
@@ -281,6 +294,391 @@ public class GeographicalMapTest {
 				lL2.getParent() == null && lL2.getLoc1() == null && lL2.getLoc2() == null && gL2.getPathById(lL2.getUniqueId().getId()) == null && gL3.getPathById(lL2.getUniqueId().getId()) == null);
 	}
 	
+	@Test
+	public void testSpatialQueriesFollowRegistrationAndMoves() {
+		mapTest.registerGeoRegion(gR);
+		mapTest.registerGeoRegion(gR2);
+		mapTest.registerGeoLocation(gL, gR);
+		mapTest.registerGeoLocation(gL2, gR2);
+		mapTest.registerGeoLocation(gL3, gR2);
+		assert(mapTest.findRegionsInRange(0, 0, 1).size() == 1 && mapTest.findRegionsInRange(0, 0, 2).size() == 2);
+		assert(mapTest.findNearestLocations(-1, 2, 1).get(0) == gL3);
+		gL3.setCoords(100, 100);
+		assert(mapTest.findNearestLocations(-1, 2, 1).get(0) == gL && mapTest.findLocationsInBox(90, 90, 110, 110).get(0) == gL3);
+		gR2.setCoords(-50, -50);
+		assert(mapTest.findRegionsInBox(-60, -60, -40, -40).get(0) == gR2 && mapTest.findRegionsInRange(0, 0, 2).size() == 1);
+		mapTest.unregisterGeoLocation(gL);
+		assert(mapTest.findLocationsInRange(1, 1, 0).isEmpty());
+	}
+	
+	@Test
+	public void testLocationsAddedThroughRegionAreIndexed() {
+		mapTest.registerGeoRegion(gR);
+		gR.registerChildLoc(gL);
+		gR.registerChildLoc(gL2);
+		gR.registerChildLoc(gL3);
+		gR.putLocLinkBetween(lL, gL, gL2);
+		assert(mapTest.getOwnerOfLocation(0) == gR && mapTest.getOwnerOfLocation(1) == gR && mapTest.getOwnerOfLocation(3) == gR);
+		assert(mapTest.getConnectivity().areLocationsConnected(0, 1) && !mapTest.getConnectivity().areLocationsConnected(0, 2));
+		assert(mapTest.findLocationRoute(0, 1, RoutingAlgorithm.A_STAR).getStepCount() == 1);
+		assert(mapTest.findLocationsInRange(1, 1, 0).get(0) == gL);
+		mapTest.enableConcurrentReads();
+		assert(mapTest.getView().getOwnerOfLocation(1) == gR && mapTest.getView().getOwnerOfLocation(3) == gR);
+		
+		mapTest.beginWrite();
+		gR.unregisterChildLoc(1);
+		mapTest.endWrite();
+		assert(mapTest.getOwnerOfLocation(1) == null && gL2.getParent() == null);
+		assert(!mapTest.getConnectivity().areLocationsConnected(0, 1) && mapTest.findLocationRoute(0, 1, RoutingAlgorithm.A_STAR) == null);
+		assert(mapTest.findLocationsInRange(1, -1, 0).isEmpty() && mapTest.getView().getOwnerOfLocation(1) == null);
+		
+		mapTest.beginWrite();
+		assert(mapTest.unregisterGeoLocation(2) == gL3);
+		mapTest.endWrite();
+		assert(mapTest.getOwnerOfLocation(2) == null && !gR.getChildLocs().containsKey(2));
+	}
+	
+	@Test
+	public void testUnregisterLinkFromLocationLink() {
+		mapTest.registerGeoRegion(gR);
+		mapTest.registerGeoLocation(gL, gR);
+		mapTest.registerGeoLocation(gL2, gR);
+		mapTest.putLocationLink(lL, gR, gL, gR, gL2);
+		mapTest.enableConcurrentReads();
+		GeographicalMapView before = mapTest.getView();
+		mapTest.beginWrite();
+		assert(lL.registerLocationLink(lL2) && lL.getPathById(4) == lL2);
+		mapTest.endWrite();
+		GeographicalMapView linked = mapTest.getView();
+		assert(linked != before);
+		mapTest.beginWrite();
+		assert(lL.unregisterLocationLink(4) == lL2 && lL.getPathById(4) == null && lL.unregisterLocationLink(4) == null);
+		mapTest.endWrite();
+		assert(mapTest.getView() != linked);
+	}
+	
+	@Test
+	public void testSpatialGridMatchesFullScan() {
+		Random rand = new Random(7);
+		SpatialGrid<Integer> grid = new SpatialGrid<Integer>(10);
+		int[] xs = new int[500];
+		int[] ys = new int[500];
+		for (int i = 0; i < xs.length; i++) {
+			xs[i] = rand.nextInt(400) - 200;
+			ys[i] = rand.nextInt(400) - 200;
+			grid.insert(i, xs[i], ys[i]);
+		}
+		for (int q = 0; q < 50; q++) {
+			int x = rand.nextInt(500) - 250;
+			int y = rand.nextInt(500) - 250;
+			int r = rand.nextInt(60);
+			int inRange = 0;
+			double nearest = Double.MAX_VALUE;
+			for (int i = 0; i < xs.length; i++) {
+				double d = Math.sqrt((double)(xs[i] - x) * (xs[i] - x) + (double)(ys[i] - y) * (ys[i] - y));
+				if (d <= r) {
+					inRange++;
+				}
+				nearest = Math.min(nearest, d);
+			}
+			assert(grid.findInRange(x, y, r).size() == inRange);
+			ArrayList<Integer> found = grid.findNearest(x, y, 5);
+			int first = found.get(0);
+			assert(found.size() == 5 && Math.sqrt((double)(xs[first] - x) * (xs[first] - x) + (double)(ys[first] - y) * (ys[first] - y)) == nearest);
+		}
+	}
+	
+	@Test(timeout = 10000)
+	public void testSpatialGridNearestAcrossWideSpan() {
+		SpatialGrid<Integer> grid = new SpatialGrid<Integer>(CoreConstants.MAP_GRID_CELL_SIZE);
+		grid.insert(0, 1000000, 0);
+		grid.insert(1, -10000000, 0);
+		ArrayList<Integer> found = grid.findNearest(0, 0, 2);
+		assert(found.size() == 2 && found.get(0) == 0 && found.get(1) == 1);
+		grid.insert(2, Integer.MAX_VALUE, Integer.MIN_VALUE);
+		grid.insert(3, 3, 4);
+		found = grid.findNearest(0, 0, 4);
+		assert(found.size() == 4 && found.get(0) == 3 && found.get(1) == 0 && found.get(2) == 1 && found.get(3) == 2);
+		found = grid.findNearest(Integer.MAX_VALUE, Integer.MIN_VALUE + 1, 1);
+		assert(found.size() == 1 && found.get(0) == 2);
+	}
+	
+	@Test
+	public void testCoordinateBatchDefersLinkGeometry() {
+		mapTest.registerGeoRegion(gR);
+		mapTest.registerGeoRegion(gR2);
+		mapTest.putRegLinkBetween(rL, gR, gR2);
+		double before = rL.getLength();
+		mapTest.beginCoordinateBatch();
+		gR.setCoords(-10, 0);
+		gR2.setCoords(10, 0);
+		rL.setCoords(0, 0);
+		assert(rL.getLength() == before && mapTest.isBatchingCoordinates());
+		assert(mapTest.commitCoordinateBatch() == 1);
+		assert(rL.getLength() == 20.0 && !mapTest.isBatchingCoordinates());
+		gR.setCoords(-20, 0);
+		assert(rL.getLength() == 30.0);
+	}
+	
+	@Test
+	public void testParallelCoordinateBatch() throws Exception {
+		int side = 40;
+		GeographicalRegion[] grid = new GeographicalRegion[side * side];
+		for (int i = 0; i < grid.length; i++) {
+			grid[i] = new TestGeographicalRegion("grid" + i, 100 + i, (i % side) * 10, (i / side) * 10);
+			mapTest.registerGeoRegion(grid[i]);
+		}
+		ArrayList<RegionLink> links = new ArrayList<RegionLink>();
+		int id = 100 + grid.length;
+		for (int i = 0; i < grid.length; i++) {
+			if (i % side + 1 < side) {
+				RegionLink l = new TestRegionLink("gridLink" + id, id++, (i % side) * 10 + 5, (i / side) * 10);
+				mapTest.putRegLinkBetween(l, grid[i], grid[i + 1]);
+				links.add(l);
+			}
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			mapTest.beginCoordinateBatch();
+			for (GeographicalRegion r : grid) {
+				r.setCoords(r.getxCoord() * 2, r.getyCoord());
+			}
+			assert(mapTest.commitCoordinateBatch(executor) == links.size());
+		} finally {
+			executor.shutdown();
+		}
+		for (RegionLink l : links) {
+			double expected = Math.abs(l.getLoc1().getxCoord() - l.getxCoord()) + Math.abs(l.getLoc2().getxCoord() - l.getxCoord());
+			assert(l.getLength() == expected);
+		}
+	}
+	
+	@Test
+	public void testParallelCoordinateBatchRecomputesOnlyFailedChunksAgain() {
+		int clean = moveRegionWithManyLinks(false);
+		int failed = moveRegionWithManyLinks(true);
+		assert(failed > clean && failed - clean <= 3 * 1024);
+	}
+	
+	@Test
+	public void testLoaderAddsValidItemsAndReportsRejects() {
+		GeographicalMapLoader loader = new GeographicalMapLoader(mapTest);
+		loader.addRegion(gR);
+		loader.addRegion(gR2);
+		loader.addRegion(rL2);
+		loader.addLocation(gL, 0);
+		loader.addLocation(gL2, 1);
+		loader.addLocation(gL3, 9);
+		loader.addRegionLink(rL, 0, 1);
+		loader.addLocationLink(lL, 0, 0, 1, 1);
+		loader.addLocationLink(lL2, 0, 0, 0, 0);
+		GeographicalLoadReport report = loader.load();
+		assert(report.getRegionsAdded() == 2 && report.getLocationsAdded() == 2);
+		assert(report.getRegionLinksAdded() == 1 && report.getLocationLinksAdded() == 1);
+		assert(report.getRejectedCount() == 3 && !report.isComplete());
+		assert(report.getRejectedItem(0) == rL2 && report.getRejectedItem(1) == gL3 && report.getRejectedItem(2) == lL2);
+		assert(mapTest.getRegLinks().get(2) == rL && gR.getPaths().get(2) == rL && rL.getLoc2() == gR2);
+		assert(lL.getParent() == gR && gL2.getPaths().get(3) == lL && lL.getLength() > 0);
+		assert(mapTest.getOwnerOfLocation(3) == gR && mapTest.getOwnerOfLocation(1) == gR2);
+	}
+	
+	@Test
+	public void testLoaderChecksOnlyFailedChunksAgain() {
+		int clean = loadLinksBetweenCountingRegions(false);
+		int failed = loadLinksBetweenCountingRegions(true);
+		assert(failed > clean && failed - clean <= 4096);
+	}
+	
+	@Test
+	public void testViewIsPublishedWhenWriteEnds() {
+		mapTest.registerGeoRegion(gR);
+		mapTest.registerGeoLocation(gL, gR);
+		mapTest.enableConcurrentReads();
+		GeographicalMapView first = mapTest.getView();
+		assert(first.getGeoRegions().size() == 1 && first.getLocation(0) == gL);
+		mapTest.beginWrite();
+		mapTest.registerGeoRegion(gR2);
+		mapTest.putRegLinkBetween(rL, gR, gR2);
+		assert(mapTest.getView() == first);
+		mapTest.endWrite();
+		GeographicalMapView second = mapTest.getView();
+		assert(second.getVersion() == first.getVersion() + 1 && first.getRegion(1) == null);
+		assert(second.getPaths(0).get(2) == rL && second.getRegLinks().get(2) == rL);
+		assert(second.getChildLocs(0) == first.getChildLocs(0));
+		mapTest.beginWrite();
+		mapTest.endWrite();
+		assert(mapTest.getView() == second);
+	}
+	
+	@Test
+	public void testMapChangesWaitForWritesAndDirectChangesFailFast() throws Exception {
+		mapTest.registerGeoRegion(gR);
+		mapTest.enableConcurrentReads();
+		GeographicalMapView first = mapTest.getView();
+		Thread other = new Thread() {
+			@Override
+			public void run() {
+				mapTest.registerGeoLocation(gL, 0);
+			}
+		};
+		mapTest.beginWrite();
+		other.start();
+		other.join(200);
+		assert(other.isAlive() && gR.getChildLocs().isEmpty());
+		mapTest.endWrite();
+		other.join();
+		assert(mapTest.getView() != first && mapTest.getView().getOwnerOfLocation(0) == gR);
+		
+		boolean failed = false;
+		try {
+			gR.registerChildLoc(gL2);
+		} catch (IllegalStateException e) {
+			failed = true;
+		}
+		assert(failed);
+		mapTest.beginWrite();
+		gR.registerChildLoc(gL3);
+		mapTest.endWrite();
+		assert(mapTest.getView().getOwnerOfLocation(2) == gR);
+	}
+	
+	@Test
+	public void testViewFollowsChangesAndSharesUntouchedRegions() {
+		Random rand = new Random(11);
+		GeographicalRegion[] regions = new GeographicalRegion[20];
+		for (int i = 0; i < regions.length; i++) {
+			regions[i] = new TestGeographicalRegion("region" + i, 100 + i, i, i);
+			mapTest.registerGeoRegion(regions[i]);
+		}
+		GeographicalLocation[] locs = new GeographicalLocation[200];
+		for (int i = 0; i < locs.length; i++) {
+			locs[i] = new TestGeographicalLocation("loc" + i, 1000 + i, i, -i);
+		}
+		mapTest.enableConcurrentReads();
+		for (int write = 0; write < 300; write++) {
+			GeographicalMapView before = mapTest.getView();
+			GeographicalRegion target = regions[rand.nextInt(regions.length)];
+			GeographicalLocation gL = locs[rand.nextInt(locs.length)];
+			GeographicalRegion oldParent = gL.getParent();
+			mapTest.beginWrite();
+			if (gL.getParent() != null) {
+				mapTest.unregisterGeoLocation(gL);
+			} else if (write % 50 == 49) {
+				int idx = rand.nextInt(regions.length);
+				mapTest.unregisterGeoRegion(regions[idx]);
+				for (GeographicalLocation orphan : locs) {
+					if (orphan.getParent() == regions[idx]) {
+						orphan.setParent(null);
+					}
+				}
+				regions[idx] = new TestGeographicalRegion("replaced" + write, 100 + idx, idx, idx);
+				mapTest.registerGeoRegion(regions[idx]);
+			} else {
+				target.registerChildLoc(gL);
+			}
+			mapTest.endWrite();
+			GeographicalMapView after = mapTest.getView();
+			for (GeographicalRegion gR : regions) {
+				int id = gR.getUniqueId().getId();
+				assert(after.getRegion(id) == gR && after.getChildLocs(id).equals(gR.getChildLocs()));
+				if (gR != target && gR != oldParent && before.getRegion(id) == gR && write % 50 != 49) {
+					assert(after.getChildLocs(id) == before.getChildLocs(id));
+				}
+			}
+			for (GeographicalLocation loc : locs) {
+				int id = loc.getUniqueId().getId();
+				assert(after.getOwnerOfLocation(id) == mapTest.getOwnerOfLocation(id));
+			}
+			assert(after.getGeoRegions().equals(mapTest.getGeoRegions()));
+		}
+	}
+	
+	@Test
+	public void testReadersSeeWholeWrites() throws Exception {
+		mapTest.registerGeoRegion(gR);
+		mapTest.enableConcurrentReads();
+		final int writes = 500;
+		final boolean[] consistent = {true};
+		Thread reader = new Thread() {
+			@Override
+			public void run() {
+				long lastVersion = 0;
+				while (lastVersion < writes + 1) {
+					GeographicalMapView v = mapTest.getView();
+					for (RegionLink l : v.getRegLinks().values()) {
+						if (v.getPaths(l.getLoc2().getUniqueId().getId()).get(l.getUniqueId().getId()) != l) {
+							consistent[0] = false;
+						}
+					}
+					if (v.getGeoRegions().size() != v.getRegLinks().size() + 1) {
+						consistent[0] = false;
+					}
+					lastVersion = v.getVersion();
+				}
+			}
+		};
+		reader.start();
+		for (int i = 0; i < writes; i++) {
+			GeographicalRegion next = new TestGeographicalRegion("chain" + i, 100 + i, i, 0);
+			mapTest.beginWrite();
+			mapTest.registerGeoRegion(next);
+			mapTest.putRegLinkBetween(new TestRegionLink("chainLink" + i, 1000 + i, i, 0), i == 0 ? 0 : 99 + i, 100 + i);
+			mapTest.endWrite();
+		}
+		reader.join(10000);
+		assert(!reader.isAlive() && consistent[0]);
+	}
+	
+	
+	/**
+	 * Moves a counting region joined by enough RegionLinks to recompute them
+	 * in chunks, returning how often the test thread asked for the region's
+	 * x coordinate or paths
+	 */
+	private int moveRegionWithManyLinks(boolean failOnce) {
+		GeographicalMap map = new GeographicalMap("Counted Map", new UniqueId(0, 0));
+		CountingGeographicalRegion moved = new CountingGeographicalRegion("counted", 0, 0, 0, false);
+		map.registerGeoRegion(moved);
+		map.registerGeoRegion(new TestGeographicalRegion("other", 1, 10, 0));
+		int links = 3 * 1024;
+		for (int i = 0; i < links; i++) {
+			map.putRegLinkBetween(new TestRegionLink("countedLink" + i, 10 + i, 5, i), 0, 1);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			map.beginCoordinateBatch();
+			moved.setCoords(0, 1);
+			moved.asks = 0;
+			moved.failOnce.set(failOnce);
+			assert(map.commitCoordinateBatch(executor) == links);
+		} finally {
+			executor.shutdown();
+		}
+		return moved.asks;
+	}
+	
+	/**
+	 * Loads enough RegionLinks between two counting regions to check them in
+	 * chunks, returning how often the test thread asked for the first region's
+	 * paths
+	 */
+	private int loadLinksBetweenCountingRegions(boolean failOnce) {
+		CountingGeographicalRegion first = new CountingGeographicalRegion("counted", 0, 0, 0, failOnce);
+		GeographicalMapLoader loader = new GeographicalMapLoader(new GeographicalMap("Counted Map", new UniqueId(0, 0)));
+		loader.addRegion(first);
+		loader.addRegion(new TestGeographicalRegion("other", 1, 1, 1));
+		int links = 3 * 4096;
+		for (int i = 0; i < links; i++) {
+			loader.addRegionLink(new TestRegionLink("countedLink" + i, 10 + i, 0, 1), 0, 1);
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			assert(loader.load(executor).getRegionLinksAdded() == links);
+		} finally {
+			executor.shutdown();
+		}
+		return first.asks;
+	}
 	
 	private class TestGeographicalRegion extends GeographicalRegion {
 		public TestGeographicalRegion(String name, int id, int xCoord, int yCoord) {
@@ -288,6 +686,41 @@ public class GeographicalMapTest {
 		}
 	}
 	
+	/**
+	 * Counts how often the test thread asks for its paths or x coordinate,
+	 * failing once off the test thread if asked to
+	 */
+	private class CountingGeographicalRegion extends TestGeographicalRegion {
+		private int asks;
+		private AtomicBoolean failOnce;
+		private Thread owner = Thread.currentThread();
+		
+		public CountingGeographicalRegion(String name, int id, int xCoord, int yCoord, boolean failOnce) {
+			super(name, id, xCoord, yCoord);
+			this.failOnce = new AtomicBoolean(failOnce);
+		}
+		
+		@Override
+		public HashMap<Integer, RegionLink> getPaths() {
+			ask();
+			return super.getPaths();
+		}
+		
+		@Override
+		public int getxCoord() {
+			ask();
+			return super.getxCoord();
+		}
+		
+		private void ask() {
+			if (Thread.currentThread() == owner) {
+				asks++;
+			} else if (failOnce.compareAndSet(true, false)) {
+				throw new IllegalStateException("Failing one chunk");
+			}
+		}
+	}
+	
 	private class TestRegionLink extends RegionLink {
 		public TestRegionLink(String name, int id, int xCoord, int yCoord) {
 			super(name, new UniqueId(id, 1), xCoord, yCoord, new AspectManager());
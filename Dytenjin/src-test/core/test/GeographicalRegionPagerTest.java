@@ -0,0 +1,255 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package core.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import core.geography.GeographicalLocation;
+import core.geography.GeographicalMap;
+import core.geography.GeographicalRegion;
+import core.geography.GeographicalRegionPager;
+import core.geography.GeographicalRoute;
+import core.geography.IRegionStore;
+import core.geography.LocationLink;
+import core.geography.RegionContents;
+import core.geography.RegionLink;
+import core.geography.RoutingAlgorithm;
+import core.management.game.UniqueId;
+import core.management.ingame.AspectManager;
+
+/**
+ * @author SuperSimpleGuy
+ */
+public class GeographicalRegionPagerTest {
+	
+	private static final double EPSILON = 1e-9;
+	
+	private GeographicalMap mapTest;
+	private GeographicalRegion middle;
+	private GeographicalRegion east;
+	private GeographicalLocation[] locs;
+	private GeographicalLocation[] eastLocs;
+	private MemoryStore store;
+	
+	@Before
+	public void setUp() throws Exception {
+		mapTest = new GeographicalMap("Pager Test Map", new UniqueId(0, 0));
+		middle = new TestGeographicalRegion("middle", 1, 10, 0);
+		east = new TestGeographicalRegion("east", 2, 20, 0);
+		mapTest.registerGeoRegion(new TestGeographicalRegion("west", 0, 0, 0));
+		mapTest.registerGeoRegion(middle);
+		mapTest.registerGeoRegion(east);
+		mapTest.putRegLinkBetween(new TestRegionLink("w-m", 10, 5, 0), 0, 1);
+		mapTest.putRegLinkBetween(new TestRegionLink("m-e", 11, 15, 0), 1, 2);
+		
+		locs = new GeographicalLocation[4];
+		locs[0] = new TestGeographicalLocation("sw", 0, 0, 0);
+		locs[1] = new TestGeographicalLocation("se", 1, 4, 0);
+		locs[2] = new TestGeographicalLocation("ne", 2, 4, 4);
+		locs[3] = new TestGeographicalLocation("nw", 3, 0, 4);
+		for (GeographicalLocation gL : locs) {
+			mapTest.registerGeoLocation(gL, 1);
+		}
+		mapTest.putLocationLink(new TestLocationLink("sw-se", 20, 2, 0), 1, 0, 1, 1);
+		mapTest.putLocationLink(new TestLocationLink("se-ne", 21, 4, 2), 1, 1, 1, 2);
+		mapTest.putLocationLink(new TestLocationLink("sw-nw", 22, 0, 2), 1, 0, 1, 3);
+		mapTest.putLocationLink(new TestLocationLink("nw-ne", 23, 2, 5), 1, 3, 1, 2);
+		
+		eastLocs = new GeographicalLocation[2];
+		eastLocs[0] = new TestGeographicalLocation("e0", 30, 8, 4);
+		eastLocs[1] = new TestGeographicalLocation("e1", 31, 8, 10);
+		mapTest.registerGeoLocation(eastLocs[0], 2);
+		mapTest.registerGeoLocation(eastLocs[1], 2);
+		mapTest.putLocationLink(new TestLocationLink("e0-e1", 32, 8, 7), 2, 30, 2, 31);
+		LocationLink edge = new TestLocationLink("ne-e0", 33, 6, 4);
+		edge.setParent(middle);
+		edge.setLoc1(locs[2]);
+		edge.setLoc2(eastLocs[0]);
+		locs[2].registerLocationLink(edge);
+		eastLocs[0].registerLocationLink(edge);
+		
+		store = new MemoryStore();
+		store.edges.add(new int[] {33, 6, 4, 1, 2, 2, 30});
+	}
+	
+	@Test
+	public void testPagerLoadsAndEvictsRegions() {
+		GeographicalRegionPager pager = mapTest.enablePaging(store, 8);
+		assertEquals(1, pager.getEvictionCount());
+		assertEquals(1, pager.getSaveCount());
+		assertTrue(!pager.isResident(1));
+		assertTrue(pager.isResident(2));
+		assertTrue(middle.getChildLocs().isEmpty());
+		assertNull(mapTest.getOwnerOfLocation(0));
+		assertNull(eastLocs[0].getPathById(33));
+		assertEquals(20.0, mapTest.findRegionRoute(0, 2, RoutingAlgorithm.DIJKSTRA).getLength(), EPSILON);
+		
+		assertNotNull(middle.getChildLocById(0));
+		assertEquals(1, pager.getMissCount());
+		assertTrue(pager.isResident(1));
+		assertTrue(pager.ensureResident(1));
+		assertTrue(!pager.isResident(2));
+		assertTrue(pager.getResidentLocationCount() <= pager.getLocationBudget());
+		
+		GeographicalRoute<GeographicalLocation, LocationLink> route = pager.findLocationRoute(1, 0, 2, 31, RoutingAlgorithm.DIJKSTRA);
+		assertEquals(18.0, route.getLength(), EPSILON);
+		assertEquals(2, pager.getLoadCount());
+		assertEquals(3, pager.getEvictionCount());
+		assertTrue(!pager.isResident(1));
+		assertEquals(1, pager.getResidentRegionCount());
+		assertEquals(0, pager.getRejectedCount());
+	}
+	
+	@Test
+	public void testGettersLoadWithoutEvicting() {
+		GeographicalRegionPager pager = mapTest.enablePaging(store, 8);
+		GeographicalLocation held = east.getChildLocById(30);
+		assertNotNull(middle.getChildLocById(0));
+		assertNotNull(middle.getPathById(11));
+		assertEquals(1, pager.getEvictionCount());
+		assertTrue(pager.isResident(1) && pager.isResident(2));
+		assertEquals(east, mapTest.getOwnerOfLocation(30));
+		assertTrue(held.getPaths().containsKey(33));
+		assertTrue(pager.getResidentLocationCount() > pager.getLocationBudget());
+		
+		assertTrue(pager.ensureResident(1));
+		assertEquals(2, pager.getEvictionCount());
+		assertTrue(!pager.isResident(2));
+	}
+	
+	@Test
+	public void testPinnedRegionsStayResident() {
+		GeographicalRegionPager pager = mapTest.enablePaging(store, 8);
+		assertTrue(pager.pin(2));
+		assertTrue(pager.pin(2));
+		assertTrue(pager.isPinned(2));
+		assertTrue(pager.ensureResident(1));
+		assertTrue(pager.isResident(1) && pager.isResident(2));
+		
+		GeographicalRoute<GeographicalLocation, LocationLink> route = pager.findLocationRoute(1, 0, 2, 31, RoutingAlgorithm.DIJKSTRA);
+		assertEquals(18.0, route.getLength(), EPSILON);
+		assertTrue(pager.isPinned(2) && pager.isResident(2));
+		assertTrue(!pager.isPinned(1));
+		assertEquals(2, pager.getResidentRegionCount());
+		
+		assertTrue(pager.unpin(2));
+		assertTrue(pager.isPinned(2));
+		assertEquals(2, pager.getResidentRegionCount());
+		assertTrue(pager.unpin(2));
+		assertTrue(!pager.isPinned(2));
+		assertEquals(1, pager.getResidentRegionCount());
+		assertTrue(!pager.unpin(2));
+		assertTrue(!pager.pin(99));
+	}
+	
+	@Test
+	public void testUnregisteredRegionLeavesPager() {
+		GeographicalRegionPager pager = mapTest.enablePaging(store, 8);
+		assertTrue(pager.pin(2));
+		assertEquals(east, mapTest.unregisterGeoRegion(2));
+		assertTrue(!pager.isResident(2));
+		assertTrue(!pager.isPinned(2));
+		assertEquals(0, pager.getResidentRegionCount());
+		assertTrue(!pager.unpin(2));
+		
+		assertNotNull(middle.getChildLocById(0));
+		assertTrue(pager.ensureResident(1));
+		assertEquals(1, pager.getResidentRegionCount());
+		assertEquals(1, pager.getSaveCount());
+	}
+	
+	/**
+	 * Keeps the locations of paged out regions as plain numbers, recreating
+	 * them on every load
+	 */
+	private class MemoryStore implements IRegionStore {
+		private HashMap<Integer, ArrayList<int[]>> locations = new HashMap<Integer, ArrayList<int[]>>();
+		private HashMap<Integer, ArrayList<int[]>> links = new HashMap<Integer, ArrayList<int[]>>();
+		private ArrayList<int[]> edges = new ArrayList<int[]>();
+		
+		@Override
+		public void loadRegion(GeographicalRegion gR, RegionContents contents) {
+			int idOfGR = gR.getUniqueId().getId();
+			if (locations.containsKey(idOfGR)) {
+				for (int[] l : locations.get(idOfGR)) {
+					contents.addLocation(new TestGeographicalLocation("loaded", l[0], l[1], l[2]));
+				}
+				for (int[] l : links.get(idOfGR)) {
+					contents.addLocationLink(new TestLocationLink("loaded", l[0], l[1], l[2]), l[3], l[4], l[5], l[6]);
+				}
+			}
+			for (int[] l : edges) {
+				if (l[3] == idOfGR || l[5] == idOfGR) {
+					contents.addLocationLink(new TestLocationLink("loaded", l[0], l[1], l[2]), l[3], l[4], l[5], l[6]);
+				}
+			}
+		}
+		
+		@Override
+		public void saveRegion(GeographicalRegion gR) {
+			int idOfGR = gR.getUniqueId().getId();
+			ArrayList<int[]> savedLocations = new ArrayList<int[]>();
+			ArrayList<int[]> savedLinks = new ArrayList<int[]>();
+			for (GeographicalLocation gL : gR.getChildLocs().values()) {
+				int[] saved = {gL.getUniqueId().getId(), gL.getxCoord(), gL.getyCoord()};
+				if (!(gL instanceof LocationLink)) {
+					savedLocations.add(saved);
+				} else if (!((LocationLink)gL).isEdge()) {
+					LocationLink lL = (LocationLink)gL;
+					savedLinks.add(new int[] {saved[0], saved[1], saved[2], idOfGR, lL.getLoc1().getUniqueId().getId(), idOfGR, lL.getLoc2().getUniqueId().getId()});
+				}
+			}
+			locations.put(idOfGR, savedLocations);
+			links.put(idOfGR, savedLinks);
+		}
+	}
+	
+	private class TestGeographicalRegion extends GeographicalRegion {
+		public TestGeographicalRegion(String name, int id, int xCoord, int yCoord) {
+			super(name, new UniqueId(id, 1), xCoord, yCoord, new AspectManager());
+		}
+	}
+	
+	private class TestRegionLink extends RegionLink {
+		public TestRegionLink(String name, int id, int xCoord, int yCoord) {
+			super(name, new UniqueId(id, 1), xCoord, yCoord, new AspectManager());
+		}
+	}
+	
+	private class TestGeographicalLocation extends GeographicalLocation {
+		public TestGeographicalLocation(String name, int id, int xCoord, int yCoord) {
+			super(name, new UniqueId(id, 2), xCoord, yCoord, new AspectManager(), null);
+		}
+	}
+	
+	private class TestLocationLink extends LocationLink {
+		public TestLocationLink(String name, int id, int xCoord, int yCoord) {
+			super (name, new UniqueId(id, 2), xCoord, yCoord, new AspectManager(), null);
+		}
+	}
+	
+}
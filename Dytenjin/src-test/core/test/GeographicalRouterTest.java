@@ -0,0 +1,398 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package core.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import core.geography.CardinalDirection;
+import core.geography.GeographicalConnectivity;
+import core.geography.GeographicalGraphSnapshot;
+import core.geography.GeographicalLocation;
+import core.geography.GeographicalMap;
+import core.geography.GeographicalRegion;
+import core.geography.GeographicalRoute;
+import core.geography.GeographicalRouter;
+import core.geography.HierarchicalPathPlanner;
+import core.geography.ILinkCostFunction;
+import core.geography.LinkCostCache;
+import core.geography.LocationLink;
+import core.geography.RegionDistanceOracle;
+import core.geography.RegionLink;
+import core.geography.RoutingAlgorithm;
+import core.management.game.UniqueId;
+import core.management.ingame.AspectManager;
+import core.temporal.WorldCompleteDate;
+
+/**
+ * @author SuperSimpleGuy
+ */
+public class GeographicalRouterTest {
+
+	private static final double EPSILON = 1e-9;
+	
+	private GeographicalMap mapTest;
+	private GeographicalRegion west;
+	private GeographicalRegion middle;
+	private GeographicalRegion east;
+	private GeographicalRegion north;
+	private GeographicalRegion island;
+	private GeographicalLocation[] locs;
+
+	@Before
+	public void setUp() throws Exception {
+		mapTest = new GeographicalMap("Router Test Map", new UniqueId(0, 0));
+		west = new TestGeographicalRegion("west", 0, 0, 0);
+		middle = new TestGeographicalRegion("middle", 1, 10, 0);
+		east = new TestGeographicalRegion("east", 2, 20, 0);
+		north = new TestGeographicalRegion("north", 3, 10, 30);
+		island = new TestGeographicalRegion("island", 4, 50, 50);
+		mapTest.registerGeoRegion(west);
+		mapTest.registerGeoRegion(middle);
+		mapTest.registerGeoRegion(east);
+		mapTest.registerGeoRegion(north);
+		mapTest.registerGeoRegion(island);
+		mapTest.putRegLinkBetween(new TestRegionLink("w-m", 10, 5, 0), 0, 1);
+		mapTest.putRegLinkBetween(new TestRegionLink("m-e", 11, 15, 0), 1, 2);
+		mapTest.putRegLinkBetween(new TestRegionLink("w-n", 12, 5, 15), 0, 3);
+		mapTest.putRegLinkBetween(new TestRegionLink("n-e", 13, 15, 15), 3, 2);
+		
+		locs = new GeographicalLocation[4];
+		locs[0] = new TestGeographicalLocation("sw", 0, 0, 0);
+		locs[1] = new TestGeographicalLocation("se", 1, 4, 0);
+		locs[2] = new TestGeographicalLocation("ne", 2, 4, 4);
+		locs[3] = new TestGeographicalLocation("nw", 3, 0, 4);
+		for (GeographicalLocation gL : locs) {
+			mapTest.registerGeoLocation(gL, 1);
+		}
+		mapTest.putLocationLink(new TestLocationLink("sw-se", 20, 2, 0), 1, 0, 1, 1);
+		mapTest.putLocationLink(new TestLocationLink("se-ne", 21, 4, 2), 1, 1, 1, 2);
+		mapTest.putLocationLink(new TestLocationLink("sw-nw", 22, 0, 2), 1, 0, 1, 3);
+		mapTest.putLocationLink(new TestLocationLink("nw-ne", 23, 2, 5), 1, 3, 1, 2);
+	}
+
+	@Test
+	public void testRegionRouteTakesShortestPath() {
+		GeographicalRoute<GeographicalRegion, RegionLink> route = mapTest.findRegionRoute(0, 2, RoutingAlgorithm.A_STAR);
+		assertEquals(3, route.getPlaces().size());
+		assertEquals(middle, route.getPlaces().get(1));
+		assertEquals(2, route.getStepCount());
+		assertEquals(20.0, route.getLength(), EPSILON);
+		assertEquals(CardinalDirection.E, route.getDirections().get(0));
+		assertEquals(CardinalDirection.E, route.getDirections().get(1));
+	}
+	
+	@Test
+	public void testDijkstraAndAStarAgree() {
+		GeographicalRoute<GeographicalRegion, RegionLink> aStar = mapTest.findRegionRoute(3, 1, RoutingAlgorithm.A_STAR);
+		GeographicalRoute<GeographicalRegion, RegionLink> dijkstra = mapTest.findRegionRoute(3, 1, RoutingAlgorithm.DIJKSTRA);
+		assertEquals(dijkstra.getLength(), aStar.getLength(), EPSILON);
+		assertEquals(dijkstra.getStepCount(), aStar.getStepCount());
+	}
+	
+	@Test
+	public void testUnreachableRegion() {
+		assertNull(mapTest.findRegionRoute(0, 4, RoutingAlgorithm.A_STAR));
+		assertNull(mapTest.findRegionRoute(0, 99, RoutingAlgorithm.DIJKSTRA));
+	}
+	
+	@Test
+	public void testRouteToSelf() {
+		GeographicalRoute<GeographicalRegion, RegionLink> route = mapTest.findRegionRoute(2, 2, RoutingAlgorithm.A_STAR);
+		assertEquals(0, route.getStepCount());
+		assertEquals(0.0, route.getLength(), EPSILON);
+	}
+	
+	@Test
+	public void testLocationRoute() {
+		GeographicalRoute<GeographicalLocation, LocationLink> route = mapTest.findLocationRoute(0, 2, RoutingAlgorithm.DIJKSTRA);
+		assertEquals(2, route.getStepCount());
+		assertEquals(8.0, route.getLength(), EPSILON);
+		assertEquals(locs[1], route.getPlaces().get(1));
+		assertEquals(CardinalDirection.E, route.getDirections().get(0));
+		assertEquals(CardinalDirection.N, route.getDirections().get(1));
+	}
+	
+	@Test
+	public void testRouterIsReusable() {
+		GeographicalRouter router = new GeographicalRouter();
+		for (int i = 0; i < 3; i++) {
+			assertEquals(20.0, router.findRoute(west, east).getLength(), EPSILON);
+			assertEquals(4.0, router.findRoute(locs[3], locs[0]).getLength(), EPSILON);
+			assertNull(router.findRoute(west, island));
+		}
+	}
+	
+	@Test
+	public void testRouteStaysWithinRegion() {
+		GeographicalRouter router = new GeographicalRouter();
+		assertTrue(router.findRoute(locs[0], locs[2], middle, RoutingAlgorithm.A_STAR) != null);
+		assertNull(router.findRoute(locs[0], locs[2], west, RoutingAlgorithm.A_STAR));
+	}
+	
+	@Test
+	public void testHierarchicalMatchesFlatRoute() {
+		GeographicalLocation[] eastLocs = linkEastRegion();
+		HierarchicalPathPlanner planner = new HierarchicalPathPlanner();
+		GeographicalRouter router = new GeographicalRouter();
+		GeographicalRoute<GeographicalLocation, LocationLink> flat = router.findRoute(locs[3], eastLocs[1]);
+		GeographicalRoute<GeographicalLocation, LocationLink> planned = planner.findRoute(locs[3], eastLocs[1]);
+		assertEquals(flat.getLength(), planned.getLength(), EPSILON);
+		assertEquals(flat.getPlaces(), planned.getPlaces());
+		assertEquals(flat.getDirections(), planned.getDirections());
+		assertEquals(4.0, planner.findRoute(locs[0], locs[1]).getLength(), EPSILON);
+		assertNull(planner.findRoute(locs[0], new TestGeographicalLocation("lost", 40, 0, 0)));
+	}
+	
+	@Test
+	public void testHierarchicalCacheFollowsChanges() {
+		GeographicalLocation[] eastLocs = linkEastRegion();
+		HierarchicalPathPlanner planner = new HierarchicalPathPlanner();
+		double before = planner.findRoute(locs[0], eastLocs[1]).getLength();
+		int rebuilds = planner.getRebuildCount();
+		planner.findRoute(locs[3], eastLocs[0]);
+		assertEquals(rebuilds, planner.getRebuildCount());
+		
+		locs[1].setCoords(4, 1);
+		double after = planner.findRoute(locs[0], eastLocs[1]).getLength();
+		assertTrue(planner.getRebuildCount() > rebuilds);
+		assertEquals(new GeographicalRouter().findRoute(locs[0], eastLocs[1]).getLength(), after, EPSILON);
+		assertTrue(after != before);
+	}
+	
+	@Test
+	public void testSnapshotMatchesRouter() {
+		GeographicalGraphSnapshot<GeographicalRegion> regions = GeographicalGraphSnapshot.ofRegions(mapTest);
+		assertEquals(5, regions.getPlaceCount());
+		assertEquals(8, regions.getLinkCount());
+		assertEquals(20.0, regions.findDistance(0, 2), EPSILON);
+		assertTrue(!regions.isReachable(0, 4));
+		int[] path = regions.findPath(0, 2);
+		assertEquals(2, path.length);
+		assertEquals(10, regions.getLinkId(path[0]));
+		assertEquals(CardinalDirection.E, regions.getDirection(path[1]));
+		assertEquals(middle, regions.getPlace(regions.getNeighbour(path[0])));
+		
+		GeographicalLocation[] eastLocs = linkEastRegion();
+		GeographicalGraphSnapshot<GeographicalLocation> locations = GeographicalGraphSnapshot.ofLocations(mapTest);
+		assertEquals(mapTest.findLocationRoute(3, 31, RoutingAlgorithm.DIJKSTRA).getLength(), locations.findDistance(3, 31), EPSILON);
+		assertTrue(!locations.isStale(mapTest));
+		eastLocs[1].setCoords(9, 12);
+		assertTrue(locations.isStale(mapTest));
+		locations = locations.refresh(mapTest);
+		assertEquals(new GeographicalRouter().findRoute(locs[3], eastLocs[1]).getLength(), locations.findDistance(3, 31), EPSILON);
+		assertTrue(regions.refresh(mapTest) != regions);
+	}
+	
+	@Test
+	public void testConnectivityFollowsLinkChanges() {
+		GeographicalConnectivity connectivity = mapTest.getConnectivity();
+		assertTrue(connectivity.areRegionsConnected(0, 2));
+		assertTrue(!connectivity.areRegionsConnected(0, 4));
+		assertTrue(!connectivity.areRegionsConnected(0, 99));
+		int rebuilds = connectivity.getRebuildCount();
+		mapTest.putRegLinkBetween(new TestRegionLink("e-i", 14, 35, 25), 2, 4);
+		assertTrue(connectivity.areRegionsConnected(0, 4));
+		assertEquals(rebuilds, connectivity.getRebuildCount());
+		mapTest.removeRegionLink(14);
+		assertTrue(!connectivity.areRegionsConnected(4, 0));
+		assertEquals(rebuilds + 1, connectivity.getRebuildCount());
+		
+		linkEastRegion();
+		assertTrue(connectivity.areLocationsConnected(0, 31));
+		mapTest.removeLocationLink(21);
+		mapTest.removeLocationLink(23);
+		assertTrue(!connectivity.areLocationsConnected(0, 2));
+		assertTrue(connectivity.areLocationsConnected(2, 31));
+		assertNull(mapTest.findLocationRoute(0, 31, RoutingAlgorithm.A_STAR));
+	}
+	
+	@Test
+	public void testDistanceOracleDropsOnlyAffectedPairs() {
+		RegionDistanceOracle oracle = mapTest.enableDistanceOracle(16);
+		double westNorth = Math.sqrt(5 * 5 + 15 * 15) * 2;
+		assertEquals(20.0, oracle.getDistance(0, 2), EPSILON);
+		assertEquals(20.0, oracle.getDistance(2, 0), EPSILON);
+		assertEquals(westNorth, oracle.getDistance(0, 3), EPSILON);
+		assertEquals(1, oracle.getHitCount());
+		assertTrue(oracle.getEstimatedMemoryBytes() > 0);
+		
+		mapTest.getRegLinks().get(11).setLength(12);
+		assertEquals(1, oracle.size());
+		assertEquals(1, oracle.getInvalidationCount());
+		assertEquals(22.0, oracle.getDistance(0, 2), EPSILON);
+		mapTest.removeRegionLink(12);
+		assertEquals(22.0 + westNorth, oracle.getDistance(0, 3), EPSILON);
+		assertEquals(22.0, oracle.getDistance(0, 2), EPSILON);
+		assertEquals(Double.POSITIVE_INFINITY, oracle.getDistance(0, 4), EPSILON);
+		assertEquals(2, oracle.getHitCount());
+		assertEquals(2.0 / 7, oracle.getHitRate(), EPSILON);
+	}
+	
+	@Test
+	public void testDistanceOracleFollowsShortenedLink() {
+		GeographicalMap map = new GeographicalMap("Oracle Test Map", new UniqueId(1, 0));
+		map.registerGeoRegion(new TestGeographicalRegion("a", 1, 0, 0));
+		map.registerGeoRegion(new TestGeographicalRegion("b", 2, 100, 0));
+		RegionLink near = new TestRegionLink("near", 5, 50, 100);
+		RegionLink far = new TestRegionLink("far", 6, 50, 300);
+		map.putRegLinkBetween(near, 1, 2);
+		map.putRegLinkBetween(far, 1, 2);
+		RegionDistanceOracle oracle = map.enableDistanceOracle(100);
+		assertEquals(Math.sqrt(50 * 50 + 100 * 100) * 2, oracle.getDistance(1, 2), EPSILON);
+		
+		near.registerChildLoc(new TestGeographicalLocation("inn", 30, 50, 100));
+		assertEquals(0, oracle.getInvalidationCount());
+		assertEquals(1, oracle.size());
+		
+		far.setCoords(50, 0);
+		assertEquals(100.0, far.getLength(), EPSILON);
+		assertEquals(100.0, oracle.getDistance(1, 2), EPSILON);
+		assertEquals(100.0, map.findRegionRoute(1, 2, RoutingAlgorithm.DIJKSTRA).getLength(), EPSILON);
+	}
+	
+	@Test
+	public void testRoutingWithTimedLinkCosts() {
+		FloodCosts costs = new FloodCosts();
+		LinkCostCache cache = new LinkCostCache(costs, null);
+		GeographicalRouter router = new GeographicalRouter();
+		router.setLinkCosts(cache);
+		assertEquals(20.0, router.findRoute(west, east, RoutingAlgorithm.A_STAR).getLength(), EPSILON);
+		long evaluations = cache.getEvaluationCount();
+		router.findRoute(west, east, RoutingAlgorithm.A_STAR);
+		assertEquals(evaluations, cache.getEvaluationCount());
+		assertTrue(cache.getLookupCount() > evaluations);
+		
+		costs.bucket = 1;
+		cache.setDate(null);
+		GeographicalRoute<GeographicalRegion, RegionLink> flooded = router.findRoute(west, east, RoutingAlgorithm.DIJKSTRA);
+		assertEquals(north, flooded.getPlaces().get(1));
+		assertEquals(Math.sqrt(5 * 5 + 15 * 15) * 4, flooded.getLength(), EPSILON);
+		costs.bucket = 0;
+		cache.setDate(null);
+		long beforeReturn = cache.getEvaluationCount();
+		assertEquals(20.0, router.findRoute(west, east, RoutingAlgorithm.A_STAR).getLength(), EPSILON);
+		assertEquals(beforeReturn, cache.getEvaluationCount());
+	}
+	
+	@Test
+	public void testAStarFindsCheapestRouteWithCostsBelowLength() {
+		GeographicalRouter router = new GeographicalRouter();
+		router.setLinkCosts(new LinkCostCache(new DetourCosts(), null));
+		GeographicalRoute<GeographicalRegion, RegionLink> aStar = router.findRoute(west, east, RoutingAlgorithm.A_STAR);
+		GeographicalRoute<GeographicalRegion, RegionLink> dijkstra = router.findRoute(west, east, RoutingAlgorithm.DIJKSTRA);
+		assertEquals(2.0, aStar.getLength(), EPSILON);
+		assertEquals(north, aStar.getPlaces().get(1));
+		assertEquals(dijkstra.getLength(), aStar.getLength(), EPSILON);
+		
+		router.setLinkCosts(null);
+		assertEquals(20.0, router.findRoute(west, east, RoutingAlgorithm.A_STAR).getLength(), EPSILON);
+	}
+	
+	/**
+	 * Adds two locations to the east region, linked to each other and to
+	 * the north east location of the middle region by an edge link
+	 */
+	private GeographicalLocation[] linkEastRegion() {
+		GeographicalLocation[] eastLocs = new GeographicalLocation[2];
+		eastLocs[0] = new TestGeographicalLocation("e0", 30, 8, 4);
+		eastLocs[1] = new TestGeographicalLocation("e1", 31, 8, 10);
+		mapTest.registerGeoLocation(eastLocs[0], 2);
+		mapTest.registerGeoLocation(eastLocs[1], 2);
+		mapTest.putLocationLink(new TestLocationLink("e0-e1", 32, 8, 7), 2, 30, 2, 31);
+		LocationLink edge = new TestLocationLink("ne-e0", 33, 6, 4);
+		edge.setParent(middle);
+		edge.setLoc1(locs[2]);
+		edge.setLoc2(eastLocs[0]);
+		locs[2].registerLocationLink(edge);
+		eastLocs[0].registerLocationLink(edge);
+		return eastLocs;
+	}
+	
+	/**
+	 * Makes the west to middle link very costly in bucket 1
+	 */
+	private static class FloodCosts implements ILinkCostFunction {
+		private int bucket;
+		
+		@Override
+		public int getTimeBucket(WorldCompleteDate date) {
+			return bucket;
+		}
+		
+		@Override
+		public double getRegionLinkCost(RegionLink link, WorldCompleteDate date) {
+			return bucket == 1 && link.getUniqueId().getId() == 10 ? 1000 : link.getLength();
+		}
+		
+		@Override
+		public double getLocationLinkCost(LocationLink link, WorldCompleteDate date) {
+			return link.getLength();
+		}
+	}
+	
+	/**
+	 * Makes the detour through the north region far cheaper than its length
+	 */
+	private static class DetourCosts implements ILinkCostFunction {
+		@Override
+		public int getTimeBucket(WorldCompleteDate date) {
+			return 0;
+		}
+		
+		@Override
+		public double getRegionLinkCost(RegionLink link, WorldCompleteDate date) {
+			int id = link.getUniqueId().getId();
+			return id == 12 || id == 13 ? 1 : link.getLength();
+		}
+		
+		@Override
+		public double getLocationLinkCost(LocationLink link, WorldCompleteDate date) {
+			return link.getLength();
+		}
+	}
+	
+	private class TestGeographicalRegion extends GeographicalRegion {
+		public TestGeographicalRegion(String name, int id, int xCoord, int yCoord) {
+			super(name, new UniqueId(id, 1), xCoord, yCoord, new AspectManager());
+		}
+	}
+	
+	private class TestRegionLink extends RegionLink {
+		public TestRegionLink(String name, int id, int xCoord, int yCoord) {
+			super(name, new UniqueId(id, 1), xCoord, yCoord, new AspectManager());
+		}
+	}
+	
+	private class TestGeographicalLocation extends GeographicalLocation {
+		public TestGeographicalLocation(String name, int id, int xCoord, int yCoord) {
+			super(name, new UniqueId(id, 2), xCoord, yCoord, new AspectManager(), null);
+		}
+	}
+	
+	private class TestLocationLink extends LocationLink {
+		public TestLocationLink(String name, int id, int xCoord, int yCoord) {
+			super (name, new UniqueId(id, 2), xCoord, yCoord, new AspectManager(), null);
+		}
+	}
+
+}
@@ -0,0 +1,249 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package core.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import core.geography.GeographicalLocation;
+import core.geography.GeographicalMap;
+import core.geography.GeographicalRegion;
+import core.geography.InfluenceMap;
+import core.geography.LocationLink;
+import core.geography.RegionLink;
+import core.management.game.UniqueId;
+import core.management.ingame.AspectManager;
+
+/**
+ * @author SuperSimpleGuy
+ */
+public class InfluenceMapTest {
+
+	private static final double EPSILON = 1e-9;
+	
+	private GeographicalMap mapTest;
+
+	@Before
+	public void setUp() throws Exception {
+		mapTest = new GeographicalMap("Influence Test Map", new UniqueId(0, 0));
+		GeographicalRegion middle = new TestGeographicalRegion("middle", 1, 10, 0);
+		mapTest.registerGeoRegion(middle);
+		mapTest.registerGeoRegion(new TestGeographicalRegion("east", 2, 20, 0));
+		mapTest.putRegLinkBetween(new TestRegionLink("m-e", 11, 15, 0), 1, 2);
+		
+		GeographicalLocation[] locs = new GeographicalLocation[4];
+		locs[0] = new TestGeographicalLocation("sw", 0, 0, 0);
+		locs[1] = new TestGeographicalLocation("se", 1, 4, 0);
+		locs[2] = new TestGeographicalLocation("ne", 2, 4, 4);
+		locs[3] = new TestGeographicalLocation("nw", 3, 0, 4);
+		for (GeographicalLocation gL : locs) {
+			mapTest.registerGeoLocation(gL, 1);
+		}
+		mapTest.putLocationLink(new TestLocationLink("sw-se", 20, 2, 0), 1, 0, 1, 1);
+		mapTest.putLocationLink(new TestLocationLink("se-ne", 21, 4, 2), 1, 1, 1, 2);
+		mapTest.putLocationLink(new TestLocationLink("sw-nw", 22, 0, 2), 1, 0, 1, 3);
+		mapTest.putLocationLink(new TestLocationLink("nw-ne", 23, 2, 5), 1, 3, 1, 2);
+		
+		GeographicalLocation e0 = new TestGeographicalLocation("e0", 30, 8, 4);
+		mapTest.registerGeoLocation(e0, 2);
+		mapTest.registerGeoLocation(new TestGeographicalLocation("e1", 31, 8, 10), 2);
+		mapTest.putLocationLink(new TestLocationLink("e0-e1", 32, 8, 7), 2, 30, 2, 31);
+		LocationLink edge = new TestLocationLink("ne-e0", 33, 6, 4);
+		edge.setParent(middle);
+		edge.setLoc1(locs[2]);
+		edge.setLoc2(e0);
+		locs[2].registerLocationLink(edge);
+		e0.registerLocationLink(edge);
+	}
+	
+	@Test
+	public void testInfluenceUpdatesMatchFullSpread() {
+		InfluenceMap influence = new InfluenceMap(mapTest);
+		int danger = influence.addLayer("danger", 0.1, 0.01);
+		influence.setSource(danger, 0, 1);
+		influence.update();
+		assertEquals(1.0, influence.getInfluence(danger, 0), EPSILON);
+		assertEquals(Math.exp(-0.8), influence.getInfluence(danger, 2), EPSILON);
+		assertEquals(0.0, influence.getInfluence(danger, 99), EPSILON);
+		
+		influence.setSource(danger, 31, 2);
+		influence.update();
+		influence.setSource(danger, 0, 0.5);
+		influence.update();
+		assertTrue(influence.getLastVisitedCount(danger) < influence.getGraph().getPlaceCount());
+		InfluenceMap full = new InfluenceMap(mapTest);
+		int fullDanger = full.addLayer("danger", 0.1, 0.01);
+		full.setSource(fullDanger, 0, 0.5);
+		full.setSource(fullDanger, 31, 2);
+		full.update();
+		for (int i = 0; i < full.getGraph().getPlaceCount(); i++) {
+			assertEquals(full.getValues(fullDanger)[i], influence.getValues(danger)[i], EPSILON);
+		}
+		assertEquals(2 * Math.exp(-0.6), influence.getInfluence(danger, 30), EPSILON);
+		
+		mapTest.removeLocationLink(32);
+		influence.update();
+		assertEquals(0.5 * Math.exp(-1.2), influence.getInfluence(danger, 30), EPSILON);
+	}
+	
+	@Test
+	public void testParallelUpdatesMatchSequentialOnes() {
+		InfluenceMap sequential = createLayers();
+		InfluenceMap parallel = createLayers();
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			for (int round = 0; round < 4; round++) {
+				for (InfluenceMap influence : new InfluenceMap[] {sequential, parallel}) {
+					influence.setSource(0, round % 2 == 0 ? 31 : 3, 1 + round);
+					influence.setSource(1, 2, round == 2 ? 0 : 0.5 * round + 0.5);
+					influence.setSource(2, 30, 3 - round * 0.5);
+				}
+				if (round == 3) {
+					mapTest.removeLocationLink(21);
+				}
+				sequential.update();
+				parallel.update(executor);
+				assertSameValues(sequential, parallel);
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testFailedLayerIsWorkedOutOnCallingThread() {
+		InfluenceMap sequential = createLayers();
+		InfluenceMap parallel = createLayers();
+		for (InfluenceMap influence : new InfluenceMap[] {sequential, parallel}) {
+			influence.setSource(0, 0, 1);
+			influence.setSource(1, 31, 2);
+			influence.setSource(2, 3, 0.5);
+		}
+		sequential.update();
+		FailingFirstExecutor executor = new FailingFirstExecutor();
+		parallel.update(executor);
+		assertEquals(3, executor.tasks);
+		assertSameValues(sequential, parallel);
+	}
+	
+	private InfluenceMap createLayers() {
+		InfluenceMap influence = new InfluenceMap(mapTest);
+		influence.addLayer("danger", 0.1, 0.01);
+		influence.addLayer("trade", 0.05, 0.001);
+		influence.addLayer("faith", 0.3, 0.1);
+		return influence;
+	}
+	
+	private void assertSameValues(InfluenceMap expected, InfluenceMap actual) {
+		for (int layer = 0; layer < expected.getLayerCount(); layer++) {
+			double[] values = expected.getValues(layer);
+			assertEquals(values.length, actual.getValues(layer).length);
+			for (int i = 0; i < values.length; i++) {
+				assertEquals(values[i], actual.getValues(layer)[i], EPSILON);
+			}
+		}
+	}
+	
+	/**
+	 * Runs every task on the calling thread, failing the first without
+	 * running it
+	 */
+	private static class FailingFirstExecutor extends AbstractExecutorService {
+		private int tasks;
+		
+		@Override
+		protected <T> RunnableFuture<T> newTaskFor(final Callable<T> callable) {
+			if (tasks++ > 0) {
+				return new FutureTask<T>(callable);
+			}
+			return new FutureTask<T>(new Callable<T>() {
+				@Override
+				public T call() {
+					throw new IllegalStateException("Failing the first layer");
+				}
+			});
+		}
+		
+		@Override
+		public void execute(Runnable command) {
+			command.run();
+		}
+		
+		@Override
+		public void shutdown() {
+		}
+		
+		@Override
+		public List<Runnable> shutdownNow() {
+			return Collections.emptyList();
+		}
+		
+		@Override
+		public boolean isShutdown() {
+			return false;
+		}
+		
+		@Override
+		public boolean isTerminated() {
+			return false;
+		}
+		
+		@Override
+		public boolean awaitTermination(long timeout, TimeUnit unit) {
+			return true;
+		}
+	}
+	
+	private class TestGeographicalRegion extends GeographicalRegion {
+		public TestGeographicalRegion(String name, int id, int xCoord, int yCoord) {
+			super(name, new UniqueId(id, 1), xCoord, yCoord, new AspectManager());
+		}
+	}
+	
+	private class TestRegionLink extends RegionLink {
+		public TestRegionLink(String name, int id, int xCoord, int yCoord) {
+			super(name, new UniqueId(id, 1), xCoord, yCoord, new AspectManager());
+		}
+	}
+	
+	private class TestGeographicalLocation extends GeographicalLocation {
+		public TestGeographicalLocation(String name, int id, int xCoord, int yCoord) {
+			super(name, new UniqueId(id, 2), xCoord, yCoord, new AspectManager(), null);
+		}
+	}
+	
+	private class TestLocationLink extends LocationLink {
+		public TestLocationLink(String name, int id, int xCoord, int yCoord) {
+			super (name, new UniqueId(id, 2), xCoord, yCoord, new AspectManager(), null);
+		}
+	}
+
+}
@@ -0,0 +1,107 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import core.management.game.UniqueId;
+import core.temporal.WorldCalendar;
+import core.temporal.WorldTimeDuration;
+
+/**
+ * Tests that durations borrow and carry across sub-hour, hour and day
+ * boundaries
+ * @author SuperSimpleGuy
+ */
+public class WorldTimeDurationTest {
+
+	private WorldCalendar calendar;
+
+	@Before
+	public void setUp() throws Exception {
+		calendar = new TestCalendar();
+	}
+	
+	@Test
+	public void testDecreaseBorrowsAcrossSubHour() {
+		WorldTimeDuration d = new WorldTimeDuration(calendar, 0, 1, 0);
+		d.decreaseDuration(new WorldTimeDuration(calendar, 0, 0, 30));
+		assertDuration(0, 0, 30, d);
+	}
+	
+	@Test
+	public void testDecreaseBorrowsAcrossHourAndSubHour() {
+		WorldTimeDuration d = new WorldTimeDuration(calendar, 1, 0, 0);
+		d.decreaseDuration(new WorldTimeDuration(calendar, 0, 0, 1));
+		assertDuration(0, 23, 59, d);
+		
+		d = new WorldTimeDuration(calendar, 2, 3, 10);
+		d.decreaseDuration(new WorldTimeDuration(calendar, 0, 5, 20));
+		assertDuration(1, 21, 50, d);
+	}
+	
+	@Test
+	public void testRepeatedDecreaseReachesZero() {
+		WorldTimeDuration d = new WorldTimeDuration(calendar, 1, 0, 0);
+		WorldTimeDuration step = new WorldTimeDuration(calendar, 0, 0, 1);
+		for (int i = 0; i < 24 * 60; i++) {
+			assertTrue(d.isNonNegative());
+			assertEquals(24 * 60 - i, d.getTotalSubHours());
+			d.decreaseDuration(step);
+		}
+		assertDuration(0, 0, 0, d);
+		d.decreaseDuration(step);
+		assertTrue(!d.isNonNegative());
+		assertEquals(-1, d.getTotalSubHours());
+	}
+	
+	@Test
+	public void testConstructorNormalizes() {
+		assertDuration(0, 23, 59, new WorldTimeDuration(calendar, 1, 0, -1));
+		assertDuration(1, 1, 1, new WorldTimeDuration(calendar, 0, 24, 61));
+	}
+	
+	@Test
+	public void testMultipleMatchesRepeatedAdd() {
+		WorldTimeDuration step = new WorldTimeDuration(calendar, 0, 7, 45);
+		WorldTimeDuration sum = new WorldTimeDuration(calendar, 0, 0, 0);
+		for (int i = 0; i < 100; i++) {
+			sum.addDuration(step);
+		}
+		WorldTimeDuration multiple = step.getMultiple(100);
+		assertDuration(sum.getDayDuration(), sum.getHourDuration(), sum.getSubHourDuration(), multiple);
+		assertDuration(32, 7, 0, multiple);
+	}
+	
+	private void assertDuration(int days, int hours, int subHours, WorldTimeDuration d) {
+		assertEquals(days, d.getDayDuration());
+		assertEquals(hours, d.getHourDuration());
+		assertEquals(subHours, d.getSubHourDuration());
+	}
+	
+	private static class TestCalendar extends WorldCalendar {
+		public TestCalendar() {
+			super(new UniqueId(0, 0), "test", 60, 24);
+		}
+	}
+}
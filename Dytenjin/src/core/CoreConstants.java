@@ -34,6 +34,8 @@ public class CoreConstants {
 	public static final String SYS_LOG_FILE = "logs/sys.log";
 	public static final String SYS_ERR_FILE = "logs/err.log";
 	public static final String SYS_FINER_FILE = "logs/finer.log";
+	public static final int ASYNC_LOG_CAPACITY = 8192;
+	public static final int ASYNC_LOG_SAMPLE_RATE = 16;
 	
 	public static final String ID_VERTEX = "VTX";
 	public static final String ID_EDGE = "EDG";
@@ -46,6 +48,7 @@ public class CoreConstants {
 	public static final String MAP_PARSING_ERROR_INCORRECT_FORMAT = "";
 	public static final String MAP_PARSING_ERROR_NO_CLASS = "";
 	public static final int MAP_PARSING_ERROR_CODE = 1;
+	public static final int MAP_GRID_CELL_SIZE = 32;
 	
 	public static final String PARSER_ERROR_STRING = "";
 	public static final int PARSER_ERROR_CODE = 2;
@@ -20,15 +20,28 @@ package core;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 
 import core.event.ICalendarEvent;
 import core.event.ICalendarEventCaller;
+import core.event.ICategorizedEvent;
 import core.event.ICoreCalendarEvent;
 import core.event.ICoreEvent;
 import core.event.IEvent;
 import core.event.IEventCaller;
+import core.event.IFastForwardEvent;
+import core.event.ISchedulableEvent;
+import core.event.ISideEffectFreeEvent;
+import core.management.game.IHasUniqueId;
 import core.system.CoreLogfileManager;
+import core.system.ExceptionManager;
 import core.temporal.WorldTimeDuration;
 import core.temporal.WorldCompleteDate;
 
@@ -36,14 +49,55 @@ import core.temporal.WorldCompleteDate;
  * Maintains a singular way to manage different kinds of basic events by
  * daily calling the triggerEvent() method of event interfaces, and also
  * allows events longer than a day also can be triggered multiple times.
+ * <p>
+ * Events that are not ISchedulableEvents are asked whether they trigger
+ * on every trigger step. ISchedulableEvents are kept in a queue ordered by
+ * the step they are next due on and are only asked on that step, so a step
+ * costs time in proportion to the events due rather than all registered.
+ * <p>
+ * When given an executor, ISideEffectFreeEvents are asked whether they
+ * trigger on its threads. Whether they triggered is then applied on the
+ * calling thread in the order they would have been asked sequentially,
+ * so the results are the same as without the executor.
+ * <p>
+ * When every event that would be asked over the coming steps is an
+ * IFastForwardEvent that says it will not change, those steps are skipped
+ * at once rather than run one at a time.
+ * <p>
+ * Events are grouped in categories, ICategorizedEvents by the category
+ * they name and other events in the default category. Each step, after
+ * continuing or ending the events already triggering, the categories are
+ * asked whether their events trigger in an order where every category
+ * comes after those it was made to depend on. With an executor, the
+ * ISideEffectFreeEvents of categories that do not depend on each other
+ * are asked at the same time.
  * @author SuperSimpleGuy
  */
 public class CoreEventHandler implements ICalendarEventCaller, IEventCaller {
 
+	/**
+	 * The category of events that do not name one
+	 */
+	public static final String DEFAULT_EVENT_CATEGORY = "default";
+	
+	private static final int PARALLEL_BATCH_SIZE = 512;
+	private static final long MAX_FAST_FORWARD_STEPS = 1000000;
+	
 	private HashMap<Integer, ICoreEvent> dailyEvents;
 	private HashMap<Integer, ICoreCalendarEvent> dailyCalEvents;
-	private ArrayList<ICoreEvent> prevEventTriggers;
-	private ArrayList<ICoreCalendarEvent> prevCalEventTriggers;
+	private LinkedHashMap<Integer, ICoreEvent> prevEventTriggers;
+	private LinkedHashMap<Integer, ICoreCalendarEvent> prevCalEventTriggers;
+	private ICoreEvent[] activeBuffer;
+	private ICoreCalendarEvent[] activeCalBuffer;
+	private LinkedHashMap<String, EventCategory> categories;
+	private ArrayList<ArrayList<EventCategory>> categoryWaves;
+	private EventSchedule<ICoreEvent> scheduledEvents;
+	private EventSchedule<ICoreCalendarEvent> scheduledCalEvents;
+	private long stepCount;
+	private int lastStepEvaluations;
+	private ExecutorService parallelExecutor;
+	private int steppedPolledEvents;
+	private long fastForwardedSteps;
 	
 	/**
 	 * Default constructor, initializes non-null values to
@@ -52,8 +106,14 @@ public class CoreEventHandler implements ICalendarEventCaller, IEventCaller {
 	public CoreEventHandler() {
 		dailyEvents = new HashMap<Integer, ICoreEvent>();
 		dailyCalEvents = new HashMap<Integer, ICoreCalendarEvent>();
-		prevEventTriggers = new ArrayList<ICoreEvent>();
-		prevCalEventTriggers = new ArrayList<ICoreCalendarEvent>();
+		prevEventTriggers = new LinkedHashMap<Integer, ICoreEvent>();
+		prevCalEventTriggers = new LinkedHashMap<Integer, ICoreCalendarEvent>();
+		activeBuffer = new ICoreEvent[0];
+		activeCalBuffer = new ICoreCalendarEvent[0];
+		categories = new LinkedHashMap<String, EventCategory>();
+		getCategory(DEFAULT_EVENT_CATEGORY);
+		scheduledEvents = new EventSchedule<ICoreEvent>();
+		scheduledCalEvents = new EventSchedule<ICoreCalendarEvent>();
 		CoreLogfileManager.ENGINE_LOGMNGR.logWithoutParams(CoreConstants.SYS_LOG_FILE, Level.INFO, this.getClass(), "CoreEventHandler", "Created a CoreEventHandler");
 	}
 	
@@ -80,6 +140,14 @@ public class CoreEventHandler implements ICalendarEventCaller, IEventCaller {
 			return false;
 		}
 		dailyEvents.put(e.getUniqueId().getId(), e);
+		if (e instanceof ISchedulableEvent) {
+			scheduledEvents.schedule(e, stepCount);
+		} else {
+			getCategory(e).getPolledEvents().add(e);
+			if (!(e instanceof IFastForwardEvent)) {
+				steppedPolledEvents++;
+			}
+		}
 		CoreLogfileManager.ENGINE_LOGMNGR.exitingWithResult(this.getClass(), CoreConstants.SYS_FINER_FILE, "addDailyEvent", "Boolean method done, successfully added", true);
 		return true;
 	}
@@ -111,6 +179,14 @@ public class CoreEventHandler implements ICalendarEventCaller, IEventCaller {
 			return false;
 		}
 		dailyCalEvents.put(e.getUniqueId().getId(), e);
+		if (e instanceof ISchedulableEvent) {
+			scheduledCalEvents.schedule(e, stepCount);
+		} else {
+			getCategory(e).getPolledCalEvents().add(e);
+			if (!(e instanceof IFastForwardEvent)) {
+				steppedPolledEvents++;
+			}
+		}
 		CoreLogfileManager.ENGINE_LOGMNGR.exitingWithResult(this.getClass(), CoreConstants.SYS_FINER_FILE, "addDailyCalEvents", "Boolean method done, successfully added", true);
 		return true;
 	}
@@ -149,12 +225,15 @@ public class CoreEventHandler implements ICalendarEventCaller, IEventCaller {
 	public ICoreEvent removeDailyEvent(int id) {
 		ICoreEvent temp = dailyEvents.remove(id);
 		if (temp != null) {
-			for (int i = 0; i < prevEventTriggers.size(); i++) {
-				if (prevEventTriggers.get(i).getUniqueId().getId() == id) {
-					CoreLogfileManager.ENGINE_LOGMNGR.logWithParams(CoreConstants.SYS_LOG_FILE, Level.FINEST, this.getClass(), "removeDailyEvent(int id)", "ICoreEvent method done. Removing previously triggering event: id/index", new Object[] {id, i});
-					prevEventTriggers.remove(i);
-					return temp;
+			if (getCategory(temp).getPolledEvents().remove(id) && !(temp instanceof IFastForwardEvent)) {
+				steppedPolledEvents--;
+			}
+			scheduledEvents.unschedule(id);
+			if (prevEventTriggers.remove(id) != null) {
+				if (CoreLogfileManager.ENGINE_LOGMNGR.isLoggable(CoreConstants.SYS_LOG_FILE, Level.FINEST)) {
+					CoreLogfileManager.ENGINE_LOGMNGR.logWithParams(CoreConstants.SYS_LOG_FILE, Level.FINEST, this.getClass(), "removeDailyEvent(int id)", "ICoreEvent method done. Removing previously triggering event: id", new Object[] {id});
 				}
+				return temp;
 			}
 		}
 		CoreLogfileManager.ENGINE_LOGMNGR.exitingWithResult(this.getClass(), CoreConstants.SYS_FINER_FILE, "removeDailyEvent(int id)", "ICoreEvent method done", temp);
@@ -179,18 +258,165 @@ public class CoreEventHandler implements ICalendarEventCaller, IEventCaller {
 	public ICoreCalendarEvent removeDailyCalEvent(int id) {
 		ICoreCalendarEvent temp = dailyCalEvents.remove(id);
 		if (temp != null) {
-			for (int i = 0; i < prevCalEventTriggers.size(); i++) {
-				if (prevCalEventTriggers.get(i).getUniqueId().getId() == id) {
-					CoreLogfileManager.ENGINE_LOGMNGR.logWithParams(CoreConstants.SYS_LOG_FILE, Level.FINEST, this.getClass(), "removeDailyCalEvent(int id)", "ICoreCalendarEvent method done. Removing previously triggering event: id/index", new Object[] {id, i});
-					prevCalEventTriggers.remove(i);
-					return temp;
+			if (getCategory(temp).getPolledCalEvents().remove(id) && !(temp instanceof IFastForwardEvent)) {
+				steppedPolledEvents--;
+			}
+			scheduledCalEvents.unschedule(id);
+			if (prevCalEventTriggers.remove(id) != null) {
+				if (CoreLogfileManager.ENGINE_LOGMNGR.isLoggable(CoreConstants.SYS_LOG_FILE, Level.FINEST)) {
+					CoreLogfileManager.ENGINE_LOGMNGR.logWithParams(CoreConstants.SYS_LOG_FILE, Level.FINEST, this.getClass(), "removeDailyCalEvent(int id)", "ICoreCalendarEvent method done. Removing previously triggering event: id", new Object[] {id});
 				}
+				return temp;
 			}
 		}
 		CoreLogfileManager.ENGINE_LOGMNGR.exitingWithResult(this.getClass(), CoreConstants.SYS_FINER_FILE, "removeDailyCalEvent(int id)", "ICoreCalendarEvent method done", temp);
 		return temp;
 	}
 	
+	/**
+	 * Makes a registered ISchedulableEvent due on the next trigger step,
+	 * for when something other than the passing of time may let it
+	 * trigger sooner than it said
+	 * @param id the id of the event
+	 * @return true if the event was rescheduled, false if no schedulable
+	 * event has the id
+	 */
+	public boolean rescheduleEvent(int id) {
+		boolean temp = false;
+		ICoreEvent e = dailyEvents.get(id);
+		if (e instanceof ISchedulableEvent) {
+			scheduledEvents.schedule(e, stepCount);
+			temp = true;
+		}
+		ICoreCalendarEvent calE = dailyCalEvents.get(id);
+		if (calE instanceof ISchedulableEvent) {
+			scheduledCalEvents.schedule(calE, stepCount);
+			temp = true;
+		}
+		CoreLogfileManager.ENGINE_LOGMNGR.exitingWithResult(this.getClass(), CoreConstants.SYS_FINER_FILE, "rescheduleEvent", "Boolean method done", temp);
+		return temp;
+	}
+	
+	/**
+	 * Sets the executor on which ISideEffectFreeEvents are asked whether
+	 * they trigger. The executor is not shut down by this handler
+	 * @param executor the executor to use, or null to ask every event on
+	 * the calling thread
+	 */
+	public void setParallelExecutor(ExecutorService executor) {
+		this.parallelExecutor = executor;
+	}
+	
+	/**
+	 * Returns the executor on which ISideEffectFreeEvents are asked whether
+	 * they trigger
+	 * @return the executor, or null if events are asked sequentially
+	 */
+	public ExecutorService getParallelExecutor() {
+		return parallelExecutor;
+	}
+	
+	/**
+	 * Makes a category of events be asked whether they trigger after
+	 * another category on every step, creating either category if needed
+	 * @param category the name of the category to ask later
+	 * @param runsAfter the name of the category to ask first
+	 * @return true if the dependency was added, false if it already
+	 * existed or would make a category depend on itself
+	 */
+	public boolean addCategoryDependency(String category, String runsAfter) {
+		EventCategory later = getCategory(category);
+		EventCategory first = getCategory(runsAfter);
+		boolean temp = later != first && !first.dependsOn(later) && !later.getRunsAfter().contains(first);
+		if (temp) {
+			later.getRunsAfter().add(first);
+			categoryWaves = null;
+		}
+		CoreLogfileManager.ENGINE_LOGMNGR.exitingWithResult(this.getClass(), CoreConstants.SYS_FINER_FILE, "addCategoryDependency", "Boolean method done", temp);
+		return temp;
+	}
+	
+	/**
+	 * Returns the names of the event categories in the order they are
+	 * asked whether their events trigger
+	 * @return the category names in dispatch order
+	 */
+	public ArrayList<String> getCategoryOrder() {
+		ArrayList<String> temp = new ArrayList<String>(categories.size());
+		for (ArrayList<EventCategory> wave : getCategoryWaves()) {
+			for (EventCategory c : wave) {
+				temp.add(c.getName());
+			}
+		}
+		return temp;
+	}
+	
+	/**
+	 * Returns the time the last trigger step spent asking a category's
+	 * events whether they trigger
+	 * @param category the name of the category
+	 * @return the time in nanoseconds, or -1 if there is no such category
+	 */
+	public long getCategoryStepNanos(String category) {
+		EventCategory c = categories.get(category);
+		return c == null ? -1 : c.getLastStepNanos();
+	}
+	
+	/**
+	 * Returns the time all trigger steps so far spent asking a category's
+	 * events whether they trigger
+	 * @param category the name of the category
+	 * @return the time in nanoseconds, or -1 if there is no such category
+	 */
+	public long getCategoryTotalNanos(String category) {
+		EventCategory c = categories.get(category);
+		return c == null ? -1 : c.getTotalNanos();
+	}
+	
+	/**
+	 * Returns the number of trigger steps run so far
+	 * @return the number of trigger steps run
+	 */
+	public long getStepCount() {
+		return stepCount;
+	}
+	
+	/**
+	 * Returns the number of ISchedulableEvents waiting to be due, not
+	 * counting those waiting to be rescheduled
+	 * @return the number of scheduled events
+	 */
+	public int getScheduledEventCount() {
+		return scheduledEvents.size() + scheduledCalEvents.size();
+	}
+	
+	/**
+	 * Returns the number of trigger steps skipped at once rather than run
+	 * one at a time, included in the step count
+	 * @return the number of fast-forwarded steps
+	 */
+	public long getFastForwardedStepCount() {
+		return fastForwardedSteps;
+	}
+	
+	/**
+	 * Returns the number of events and calendar events still triggering
+	 * from earlier steps
+	 * @return the number of triggering events
+	 */
+	public int getActiveEventCount() {
+		return prevEventTriggers.size() + prevCalEventTriggers.size();
+	}
+	
+	/**
+	 * Returns the number of events asked whether they trigger anew during
+	 * the last trigger step, not counting events already triggering
+	 * @return the number of events asked during the last step
+	 */
+	public int getLastStepEvaluationCount() {
+		return lastStepEvaluations;
+	}
+	
 	/**
 	 * Triggers events based on the date passed. The date is advanced if
 	 * a period of time allows multiple triggers.
@@ -204,9 +430,20 @@ public class CoreEventHandler implements ICalendarEventCaller, IEventCaller {
 			WorldTimeDuration triggerStep,
 			WorldCompleteDate d) {
 		while (timeSinceLast.longerThanOther(triggerStep)) {
+			long steps = getFastForwardSteps(timeSinceLast, triggerStep, d);
+			if (steps > 1) {
+				WorldTimeDuration skipped = triggerStep.getMultiple(steps);
+				fastForward(steps, skipped, triggerStep, d);
+				timeSinceLast.decreaseDuration(skipped);
+				d = (WorldCompleteDate)d.getDateAfterDuration(skipped);
+				continue;
+			}
 			CoreLogfileManager.ENGINE_LOGMNGR.logWithoutParams(CoreConstants.SYS_LOG_FILE, Level.FINEST, this.getClass(), "triggerDateEvents", "Triggering another set of events");
+			lastStepEvaluations = 0;
 			triggerEvents(triggerStep);
 			triggerCalEvents(triggerStep, d);
+			triggerCategories(triggerStep, d);
+			stepCount++;
 			timeSinceLast.decreaseDuration(triggerStep);
 			d = (WorldCompleteDate)d.getDateAfterDuration(triggerStep);
 		}
@@ -215,68 +452,460 @@ public class CoreEventHandler implements ICalendarEventCaller, IEventCaller {
 	}
 	
 	/**
-	 * Given a trigger step, triggers all events and reduces the duration
-	 * on any continuing events by the appropriate amount
+	 * Returns how many of the coming trigger steps can be skipped at once:
+	 * those before any scheduled event is due, on which no polled event
+	 * triggers and no triggering event ends
+	 * @param timeSinceLast the time left to trigger events over
+	 * @param triggerStep the length of a trigger step
+	 * @param d the date of the current trigger step
+	 * @return the number of steps that can be skipped, or 0 if the current
+	 * step must be run
+	 */
+	private long getFastForwardSteps(WorldTimeDuration timeSinceLast, WorldTimeDuration triggerStep, WorldCompleteDate d) {
+		long stepLength = triggerStep.getTotalSubHours();
+		if (steppedPolledEvents > 0 || stepLength <= 0) {
+			return 0;
+		}
+		long steps = Math.min(MAX_FAST_FORWARD_STEPS, (timeSinceLast.getTotalSubHours() - 1) / stepLength);
+		steps = Math.min(steps, scheduledEvents.nextDueStep() - stepCount);
+		steps = Math.min(steps, scheduledCalEvents.nextDueStep() - stepCount);
+		for (ICoreEvent e : prevEventTriggers.values()) {
+			if (steps <= 1 || !(e instanceof IFastForwardEvent)) {
+				return 0;
+			}
+			steps = Math.min(steps, (e.getDurationLength().getTotalSubHours() - 1) / stepLength);
+			steps = Math.min(steps, ((IFastForwardEvent)e).getStepsWithoutChange(d, triggerStep));
+		}
+		for (ICoreCalendarEvent e : prevCalEventTriggers.values()) {
+			if (steps <= 1 || !(e instanceof IFastForwardEvent)) {
+				return 0;
+			}
+			steps = Math.min(steps, (e.getDurationLength().getTotalSubHours() - 1) / stepLength);
+			steps = Math.min(steps, ((IFastForwardEvent)e).getStepsWithoutChange(d, triggerStep));
+		}
+		for (EventCategory c : categories.values()) {
+			EventArray<ICoreEvent> polled = c.getPolledEvents();
+			for (int i = 0; i < polled.size() && steps > 1; i++) {
+				steps = Math.min(steps, ((IFastForwardEvent)polled.get(i)).getStepsWithoutChange(d, triggerStep));
+			}
+			EventArray<ICoreCalendarEvent> polledCal = c.getPolledCalEvents();
+			for (int i = 0; i < polledCal.size() && steps > 1; i++) {
+				steps = Math.min(steps, ((IFastForwardEvent)polledCal.get(i)).getStepsWithoutChange(d, triggerStep));
+			}
+		}
+		return steps;
+	}
+	
+	/**
+	 * Skips a number of trigger steps, advancing every triggering and
+	 * polled event over them once and decreasing the durations of the
+	 * triggering ones
+	 * @param steps the number of steps to skip
+	 * @param skipped the time the skipped steps take
+	 * @param triggerStep the length of a trigger step
+	 * @param d the date of the first skipped step
+	 */
+	private void fastForward(long steps, WorldTimeDuration skipped, WorldTimeDuration triggerStep, WorldCompleteDate d) {
+		if (CoreLogfileManager.ENGINE_LOGMNGR.isLoggable(CoreConstants.SYS_LOG_FILE, Level.FINEST)) {
+			CoreLogfileManager.ENGINE_LOGMNGR.logWithParams(CoreConstants.SYS_LOG_FILE, Level.FINEST, this.getClass(), "fastForward", "Skipping trigger steps", new Object[] {steps});
+		}
+		for (ICoreEvent e : prevEventTriggers.values()) {
+			((IFastForwardEvent)e).advanceSteps(steps, d, triggerStep);
+			e.decreaseDuration(skipped);
+		}
+		for (ICoreCalendarEvent e : prevCalEventTriggers.values()) {
+			((IFastForwardEvent)e).advanceSteps(steps, d, triggerStep);
+			e.decreaseDuration(skipped);
+		}
+		for (EventCategory c : categories.values()) {
+			EventArray<ICoreEvent> polled = c.getPolledEvents();
+			for (int i = 0; i < polled.size(); i++) {
+				if (!prevEventTriggers.containsKey(polled.get(i).getUniqueId().getId())) {
+					((IFastForwardEvent)polled.get(i)).advanceSteps(steps, d, triggerStep);
+				}
+			}
+			EventArray<ICoreCalendarEvent> polledCal = c.getPolledCalEvents();
+			for (int i = 0; i < polledCal.size(); i++) {
+				if (!prevCalEventTriggers.containsKey(polledCal.get(i).getUniqueId().getId())) {
+					((IFastForwardEvent)polledCal.get(i)).advanceSteps(steps, d, triggerStep);
+				}
+			}
+		}
+		lastStepEvaluations = 0;
+		stepCount += steps;
+		fastForwardedSteps += steps;
+	}
+	
+	/**
+	 * Given a trigger step, triggers continuing events and reduces their
+	 * duration by the appropriate amount, ending those that run out
 	 * @param triggerStep the amount of time that passes by between the
 	 * an event being re-triggered
 	 */
 	private void triggerEvents(WorldTimeDuration triggerStep) {
-		//Trigger previous IEvents
-		for (int i = 0; i < prevEventTriggers.size(); i++) {
-			ICoreEvent e = prevEventTriggers.get(i);
+		//Trigger previous IEvents, skipping those ended or removed earlier in the step
+		int count = prevEventTriggers.size();
+		ICoreEvent[] active = prevEventTriggers.values().toArray(activeBuffer);
+		activeBuffer = active;
+		for (int i = 0; i < count; i++) {
+			ICoreEvent e = active[i];
+			active[i] = null;
+			if (prevEventTriggers.get(e.getUniqueId().getId()) != e) {
+				continue;
+			}
 			if (e.getDurationLength().longerThanOther(triggerStep)) {
-				CoreLogfileManager.ENGINE_LOGMNGR.logWithParams(CoreConstants.SYS_LOG_FILE, Level.FINEST, this.getClass(), "triggerEvents(IWorldTimeDuration triggerStep)", "Triggering event & reducing duration", new Object[] {e.getUniqueId().getId()});;
+				if (CoreLogfileManager.ENGINE_LOGMNGR.isLoggable(CoreConstants.SYS_LOG_FILE, Level.FINEST)) {
+					CoreLogfileManager.ENGINE_LOGMNGR.logWithParams(CoreConstants.SYS_LOG_FILE, Level.FINEST, this.getClass(), "triggerEvents(IWorldTimeDuration triggerStep)", "Triggering event & reducing duration", new Object[] {e.getUniqueId().getId()});;
+				}
 				e.triggerEvent();
 				e.decreaseDuration(triggerStep);
 			} else {
-				CoreLogfileManager.ENGINE_LOGMNGR.logWithParams(CoreConstants.SYS_LOG_FILE, Level.FINEST, this.getClass(), "triggerEvents(IWorldTimeDuration triggerStep)", "Ending trigger on event", new Object[] {e.getUniqueId().getId()});
-				e.endTriggerEvent();
-				prevEventTriggers.remove(i);
-			}
-		}
-		//Trigger possible IEvents
-		for (ICoreEvent e : dailyEvents.values()) {
-			if (e.triggerEvent()) {
-				CoreLogfileManager.ENGINE_LOGMNGR.logWithParams(CoreConstants.SYS_LOG_FILE, Level.FINEST, this.getClass(), "triggerEvents(IWorldTimeDuration triggerStep)", "Triggered new event", new Object[] {e.getUniqueId().getId()});
-				if (!prevEventTriggers.contains(e)) {
-					prevEventTriggers.add(e);
+				if (CoreLogfileManager.ENGINE_LOGMNGR.isLoggable(CoreConstants.SYS_LOG_FILE, Level.FINEST)) {
+					CoreLogfileManager.ENGINE_LOGMNGR.logWithParams(CoreConstants.SYS_LOG_FILE, Level.FINEST, this.getClass(), "triggerEvents(IWorldTimeDuration triggerStep)", "Ending trigger on event", new Object[] {e.getUniqueId().getId()});
 				}
+				e.endTriggerEvent();
+				prevEventTriggers.remove(e.getUniqueId().getId());
 			}
 		}
 		CoreLogfileManager.ENGINE_LOGMNGR.exitingWithoutResult(this.getClass(), CoreConstants.SYS_FINER_FILE, "triggerEvents(IWorldTimeDuration triggerStep)", "Void method done");
 	}
 	
 	/**
-	 * Given a trigger step, triggers all events and reduces the duration
-	 * on any continuing events by the appropriate amount
+	 * Given a trigger step, triggers continuing calendar events and
+	 * reduces their duration by the appropriate amount, ending those that
+	 * run out
 	 * @param triggerStep the amount of time that passes by between the
 	 * an event being re-triggered
 	 * @param d the date of the trigger
 	 */
 	private void triggerCalEvents(WorldTimeDuration triggerStep, WorldCompleteDate d) {
-		//Trigger previous ICalendarEvents
-		for (int i = 0; i < prevCalEventTriggers.size(); i++) {
-			ICoreCalendarEvent e = prevCalEventTriggers.get(i);
+		//Trigger previous ICalendarEvents, skipping those ended or removed earlier in the step
+		int count = prevCalEventTriggers.size();
+		ICoreCalendarEvent[] active = prevCalEventTriggers.values().toArray(activeCalBuffer);
+		activeCalBuffer = active;
+		for (int i = 0; i < count; i++) {
+			ICoreCalendarEvent e = active[i];
+			active[i] = null;
+			if (prevCalEventTriggers.get(e.getUniqueId().getId()) != e) {
+				continue;
+			}
 			if (e.getDurationLength().longerThanOther(triggerStep)) {
-				CoreLogfileManager.ENGINE_LOGMNGR.logWithParams(CoreConstants.SYS_LOG_FILE, Level.FINEST, this.getClass(), "triggerCalEvents(IWorldTimeDuration triggerStep, WorldCompleteDate d)", "Triggering event & reducing duration", new Object[] {e.getUniqueId().getId()});;
+				if (CoreLogfileManager.ENGINE_LOGMNGR.isLoggable(CoreConstants.SYS_LOG_FILE, Level.FINEST)) {
+					CoreLogfileManager.ENGINE_LOGMNGR.logWithParams(CoreConstants.SYS_LOG_FILE, Level.FINEST, this.getClass(), "triggerCalEvents(IWorldTimeDuration triggerStep, WorldCompleteDate d)", "Triggering event & reducing duration", new Object[] {e.getUniqueId().getId()});;
+				}
 				e.triggerEvent(d);
 				e.decreaseDuration(triggerStep);
 			} else {
-				CoreLogfileManager.ENGINE_LOGMNGR.logWithParams(CoreConstants.SYS_LOG_FILE, Level.FINEST, this.getClass(), "triggerCalEvents(IWorldTimeDuration triggerStep, WorldCompleteDate d)", "Ending trigger on event", new Object[] {e.getUniqueId().getId()});
+				if (CoreLogfileManager.ENGINE_LOGMNGR.isLoggable(CoreConstants.SYS_LOG_FILE, Level.FINEST)) {
+					CoreLogfileManager.ENGINE_LOGMNGR.logWithParams(CoreConstants.SYS_LOG_FILE, Level.FINEST, this.getClass(), "triggerCalEvents(IWorldTimeDuration triggerStep, WorldCompleteDate d)", "Ending trigger on event", new Object[] {e.getUniqueId().getId()});
+				}
 				e.endTriggerEvent(d);
-				prevCalEventTriggers.remove(i);
+				prevCalEventTriggers.remove(e.getUniqueId().getId());
 			}
 		}
-		//Trigger possible ICalendarEvents
-		for (ICoreCalendarEvent e : dailyCalEvents.values()) {
-			if (e.triggerEvent(d)) {
-				CoreLogfileManager.ENGINE_LOGMNGR.logWithParams(CoreConstants.SYS_LOG_FILE, Level.FINEST, this.getClass(), "triggerCalEvents(IWorldTimeDuration triggerStep, WorldCompleteDate d)", "Triggered new event", new Object[] {e.getUniqueId().getId()});
-				if (!prevCalEventTriggers.contains(e)) {
-					prevCalEventTriggers.add(e);
+		CoreLogfileManager.ENGINE_LOGMNGR.exitingWithoutResult(this.getClass(), CoreConstants.SYS_FINER_FILE, "triggerCalEvents(IWorldTimeDuration triggerStep, WorldCompleteDate d)", "Void method done");
+	}
+	
+	/**
+	 * Asks every category whether its events trigger, in waves where each
+	 * category comes after those it depends on, and records the time spent
+	 * on each category
+	 * @param triggerStep the length of a trigger step
+	 * @param d the date of the trigger
+	 */
+	private void triggerCategories(WorldTimeDuration triggerStep, WorldCompleteDate d) {
+		ICoreEvent due;
+		while ((due = scheduledEvents.pollDue(stepCount)) != null) {
+			getCategory(due).getDueEvents().add(due);
+		}
+		ICoreCalendarEvent calDue;
+		while ((calDue = scheduledCalEvents.pollDue(stepCount)) != null) {
+			getCategory(calDue).getDueCalEvents().add(calDue);
+		}
+		for (ArrayList<EventCategory> wave : getCategoryWaves()) {
+			ArrayList<ParallelAsk<ICoreEvent>> asks = null;
+			ArrayList<ParallelAsk<ICoreCalendarEvent>> calAsks = null;
+			if (parallelExecutor != null) {
+				asks = new ArrayList<ParallelAsk<ICoreEvent>>(wave.size());
+				calAsks = new ArrayList<ParallelAsk<ICoreCalendarEvent>>(wave.size());
+				for (EventCategory c : wave) {
+					asks.add(new ParallelAsk<ICoreEvent>(c.getPolledEvents(), c.getDueEvents(), false, d));
+					calAsks.add(new ParallelAsk<ICoreCalendarEvent>(c.getPolledCalEvents(), c.getDueCalEvents(), true, d));
 				}
 			}
+			for (int i = 0; i < wave.size(); i++) {
+				long start = System.nanoTime();
+				triggerCategory(wave.get(i), asks == null ? null : asks.get(i), calAsks == null ? null : calAsks.get(i), triggerStep, d);
+				wave.get(i).recordStep(System.nanoTime() - start);
+			}
+		}
+		CoreLogfileManager.ENGINE_LOGMNGR.exitingWithoutResult(this.getClass(), CoreConstants.SYS_FINER_FILE, "triggerCategories(IWorldTimeDuration triggerStep, WorldCompleteDate d)", "Void method done");
+	}
+	
+	/**
+	 * Asks the polled and due events of a category whether they trigger,
+	 * then its polled and due calendar events, rescheduling the due ones
+	 * @param c the category
+	 * @param ask the asks already submitted for the category's events, or
+	 * null to ask them on the calling thread
+	 * @param calAsk the asks already submitted for the category's calendar
+	 * events, or null to ask them on the calling thread
+	 * @param triggerStep the length of a trigger step
+	 * @param d the date of the trigger
+	 */
+	private void triggerCategory(EventCategory c,
+			ParallelAsk<ICoreEvent> ask,
+			ParallelAsk<ICoreCalendarEvent> calAsk,
+			WorldTimeDuration triggerStep,
+			WorldCompleteDate d) {
+		EventArray<ICoreEvent> polled = c.getPolledEvents();
+		ArrayList<ICoreEvent> due = c.getDueEvents();
+		boolean[] triggered = ask == null ? null : ask.finish();
+		for (int i = 0; i < polled.size(); i++) {
+			ICoreEvent e = polled.get(i);
+			commitNewEvent(e, triggered == null ? e.triggerEvent() : triggered[i]);
+		}
+		for (int i = 0; i < due.size(); i++) {
+			ICoreEvent e = due.get(i);
+			commitNewEvent(e, triggered == null ? e.triggerEvent() : triggered[polled.size() + i]);
+			scheduleNextCheck(scheduledEvents, e, triggerStep, d);
+		}
+		due.clear();
+		
+		EventArray<ICoreCalendarEvent> polledCal = c.getPolledCalEvents();
+		ArrayList<ICoreCalendarEvent> dueCal = c.getDueCalEvents();
+		triggered = calAsk == null ? null : calAsk.finish();
+		for (int i = 0; i < polledCal.size(); i++) {
+			ICoreCalendarEvent e = polledCal.get(i);
+			commitNewCalEvent(e, triggered == null ? e.triggerEvent(d) : triggered[i]);
+		}
+		for (int i = 0; i < dueCal.size(); i++) {
+			ICoreCalendarEvent e = dueCal.get(i);
+			commitNewCalEvent(e, triggered == null ? e.triggerEvent(d) : triggered[polledCal.size() + i]);
+			scheduleNextCheck(scheduledCalEvents, e, triggerStep, d);
+		}
+		dueCal.clear();
+	}
+	
+	/**
+	 * Returns the category an event belongs to, creating it if needed
+	 * @param e the event
+	 * @return the event's category
+	 */
+	private EventCategory getCategory(Object e) {
+		String name = e instanceof ICategorizedEvent ? ((ICategorizedEvent)e).getEventCategory() : null;
+		return getCategory(name == null ? DEFAULT_EVENT_CATEGORY : name);
+	}
+	
+	/**
+	 * Returns a category by name, creating it if needed
+	 * @param name the name of the category
+	 * @return the category
+	 */
+	private EventCategory getCategory(String name) {
+		EventCategory c = categories.get(name);
+		if (c == null) {
+			c = new EventCategory(name);
+			categories.put(name, c);
+			categoryWaves = null;
+		}
+		return c;
+	}
+	
+	/**
+	 * Returns the categories grouped in waves, each category in the wave
+	 * after the last of those it depends on and in the order categories
+	 * were first used within a wave
+	 * @return the waves of categories
+	 */
+	private ArrayList<ArrayList<EventCategory>> getCategoryWaves() {
+		if (categoryWaves == null) {
+			categoryWaves = new ArrayList<ArrayList<EventCategory>>();
+			HashMap<EventCategory, Integer> waves = new HashMap<EventCategory, Integer>();
+			for (EventCategory c : categories.values()) {
+				int wave = getWave(c, waves);
+				while (categoryWaves.size() <= wave) {
+					categoryWaves.add(new ArrayList<EventCategory>());
+				}
+				categoryWaves.get(wave).add(c);
+			}
+		}
+		return categoryWaves;
+	}
+	
+	private static int getWave(EventCategory c, Map<EventCategory, Integer> waves) {
+		Integer known = waves.get(c);
+		if (known != null) {
+			return known;
+		}
+		int wave = 0;
+		for (EventCategory before : c.getRunsAfter()) {
+			wave = Math.max(wave, getWave(before, waves) + 1);
+		}
+		waves.put(c, wave);
+		return wave;
+	}
+	
+	/**
+	 * Queues a due schedulable event again for the step it asks to be
+	 * checked on next, if any
+	 * @param schedule the queue of scheduled events
+	 * @param due the event that was just asked
+	 * @param triggerStep the length of a trigger step
+	 * @param d the date of the trigger
+	 */
+	private <E extends IHasUniqueId> void scheduleNextCheck(EventSchedule<E> schedule, E due, WorldTimeDuration triggerStep, WorldCompleteDate d) {
+		long wait = ((ISchedulableEvent)due).getStepsUntilNextCheck(d, triggerStep);
+		if (wait >= 1) {
+			schedule.schedule(due, stepCount + wait);
+		}
+	}
+	
+	/**
+	 * Asks a category's polled and due events whether they trigger. On
+	 * creation the ISideEffectFreeEvents are submitted in batches to the
+	 * parallel executor; the others are asked in order on the calling
+	 * thread when the results are collected. If a batch fails, its events
+	 * are asked again on the calling thread
+	 */
+	private final class ParallelAsk<E extends IHasUniqueId> {
+		private final EventArray<E> polled;
+		private final List<E> due;
+		private final boolean calendar;
+		private final WorldCompleteDate d;
+		private final boolean[] triggered;
+		private final int[] free;
+		private final boolean[] asked;
+		private int freeCount;
+		private ArrayList<Future<Object>> tasks;
+		
+		public ParallelAsk(EventArray<E> polled, List<E> due, boolean calendar, WorldCompleteDate d) {
+			this.polled = polled;
+			this.due = due;
+			this.calendar = calendar;
+			this.d = d;
+			triggered = new boolean[polled.size() + due.size()];
+			free = new int[triggered.length];
+			asked = new boolean[triggered.length];
+			for (int i = 0; i < triggered.length; i++) {
+				if (get(i) instanceof ISideEffectFreeEvent) {
+					free[freeCount++] = i;
+				}
+			}
+			tasks = new ArrayList<Future<Object>>();
+			for (int start = 0; start < freeCount; start += PARALLEL_BATCH_SIZE) {
+				final int from = start;
+				final int to = Math.min(freeCount, start + PARALLEL_BATCH_SIZE);
+				tasks.add(parallelExecutor.submit(new Callable<Object>() {
+					@Override
+					public Object call() {
+						askFree(from, to);
+						return null;
+					}
+				}));
+			}
+		}
+		
+		/**
+		 * Asks the events not submitted to the executor and waits for the
+		 * rest, asking on the calling thread those a failed batch never got to
+		 * @return whether each polled and then each due event triggered
+		 */
+		public boolean[] finish() {
+			for (int i = 0; i < triggered.length; i++) {
+				if (!(get(i) instanceof ISideEffectFreeEvent)) {
+					triggered[i] = ask(get(i), calendar, d);
+				}
+			}
+			boolean interrupted = false;
+			for (int t = 0; t < tasks.size(); t++) {
+				while (true) {
+					try {
+						tasks.get(t).get();
+						break;
+					} catch (ExecutionException e) {
+						ExceptionManager.SYS_EXCEPTION_MANAGER.throwException(e, Level.WARNING, CoreConstants.SYS_ERR_FILE);
+						askFree(t * PARALLEL_BATCH_SIZE, Math.min(freeCount, (t + 1) * PARALLEL_BATCH_SIZE));
+						break;
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			return triggered;
+		}
+		
+		/**
+		 * Asks the side effect free events in a range that were not asked yet,
+		 * marking each as asked first so an event that throws is not asked again
+		 * @param from the first index in free
+		 * @param to the index in free after the last
+		 */
+		private void askFree(int from, int to) {
+			for (int j = from; j < to; j++) {
+				if (!asked[j]) {
+					asked[j] = true;
+					triggered[free[j]] = ask(get(free[j]), calendar, d);
+				}
+			}
+		}
+		
+		private E get(int i) {
+			return i < polled.size() ? polled.get(i) : due.get(i - polled.size());
+		}
+	}
+	
+	/**
+	 * Asks an ICoreEvent or ICoreCalendarEvent whether it triggers
+	 * @param e the event to ask
+	 * @param calendar true if the event is an ICoreCalendarEvent
+	 * @param d the date of the trigger
+	 * @return true if the event triggered, false otherwise
+	 */
+	private static boolean ask(Object e, boolean calendar, WorldCompleteDate d) {
+		if (calendar) {
+			return ((ICoreCalendarEvent)e).triggerEvent(d);
+		}
+		return ((ICoreEvent)e).triggerEvent();
+	}
+	
+	/**
+	 * Counts an event as asked whether it triggers, adding it to the
+	 * triggering events if it did
+	 * @param e the event that was asked
+	 * @param triggered whether the event triggered
+	 */
+	private void commitNewEvent(ICoreEvent e, boolean triggered) {
+		lastStepEvaluations++;
+		if (triggered) {
+			if (CoreLogfileManager.ENGINE_LOGMNGR.isLoggable(CoreConstants.SYS_LOG_FILE, Level.FINEST)) {
+				CoreLogfileManager.ENGINE_LOGMNGR.logWithParams(CoreConstants.SYS_LOG_FILE, Level.FINEST, this.getClass(), "triggerEvents(IWorldTimeDuration triggerStep)", "Triggered new event", new Object[] {e.getUniqueId().getId()});
+			}
+			if (!prevEventTriggers.containsKey(e.getUniqueId().getId())) {
+				prevEventTriggers.put(e.getUniqueId().getId(), e);
+			}
+		}
+	}
+	
+	/**
+	 * Counts a calendar event as asked whether it triggers, adding it to
+	 * the triggering calendar events if it did
+	 * @param e the calendar event that was asked
+	 * @param triggered whether the calendar event triggered
+	 */
+	private void commitNewCalEvent(ICoreCalendarEvent e, boolean triggered) {
+		lastStepEvaluations++;
+		if (triggered) {
+			if (CoreLogfileManager.ENGINE_LOGMNGR.isLoggable(CoreConstants.SYS_LOG_FILE, Level.FINEST)) {
+				CoreLogfileManager.ENGINE_LOGMNGR.logWithParams(CoreConstants.SYS_LOG_FILE, Level.FINEST, this.getClass(), "triggerCalEvents(IWorldTimeDuration triggerStep, WorldCompleteDate d)", "Triggered new event", new Object[] {e.getUniqueId().getId()});
+			}
+			if (!prevCalEventTriggers.containsKey(e.getUniqueId().getId())) {
+				prevCalEventTriggers.put(e.getUniqueId().getId(), e);
+			}
 		}
-		CoreLogfileManager.ENGINE_LOGMNGR.exitingWithoutResult(this.getClass(), CoreConstants.SYS_FINER_FILE, "triggerCalEvents(IWorldTimeDuration triggerStep, WorldCompleteDate d)", "Void method done");
 	}
 
 	@Override
@@ -0,0 +1,91 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import core.management.game.IHasUniqueId;
+
+/**
+ * A contiguous array of events with an index by id, used by EventCategory.
+ * Removing an event moves the last event into its place, so adding and
+ * removing take constant time and the events stay packed for iteration.
+ * @author SuperSimpleGuy
+ */
+final class EventArray<E extends IHasUniqueId> {
+
+	private IHasUniqueId[] events;
+	private int size;
+	private HashMap<Integer, Integer> indices;
+	
+	EventArray() {
+		events = new IHasUniqueId[16];
+		indices = new HashMap<Integer, Integer>();
+	}
+	
+	/**
+	 * Adds an event at the end of the array
+	 * @param e the event to add
+	 */
+	void add(E e) {
+		if (size == events.length) {
+			events = Arrays.copyOf(events, size * 2);
+		}
+		indices.put(e.getUniqueId().getId(), size);
+		events[size++] = e;
+	}
+	
+	/**
+	 * Removes an event, moving the last event into its place
+	 * @param id the id of the event to remove
+	 * @return true if the event was in the array
+	 */
+	boolean remove(int id) {
+		Integer index = indices.remove(id);
+		if (index == null) {
+			return false;
+		}
+		size--;
+		if (index < size) {
+			events[index] = events[size];
+			indices.put(events[index].getUniqueId().getId(), index);
+		}
+		events[size] = null;
+		return true;
+	}
+	
+	/**
+	 * Returns the event at an index
+	 * @param i the index of the event
+	 * @return the event
+	 */
+	@SuppressWarnings("unchecked")
+	E get(int i) {
+		return (E)events[i];
+	}
+	
+	/**
+	 * Returns the number of events in the array
+	 * @return the number of events
+	 */
+	int size() {
+		return size;
+	}
+}
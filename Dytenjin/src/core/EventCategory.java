@@ -0,0 +1,122 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core;
+
+import java.util.ArrayList;
+
+import core.event.ICoreCalendarEvent;
+import core.event.ICoreEvent;
+
+/**
+ * A named group of events a CoreEventHandler asks together, after the
+ * categories it runs after. Keeps the category's polled events packed in
+ * arrays, gathers its events due each step, and records how long the
+ * handler spends on it.
+ * @author SuperSimpleGuy
+ */
+final class EventCategory {
+
+	private String name;
+	private ArrayList<EventCategory> runsAfter;
+	private EventArray<ICoreEvent> polledEvents;
+	private EventArray<ICoreCalendarEvent> polledCalEvents;
+	private ArrayList<ICoreEvent> dueEvents;
+	private ArrayList<ICoreCalendarEvent> dueCalEvents;
+	private long lastStepNanos;
+	private long totalNanos;
+	
+	EventCategory(String name) {
+		this.name = name;
+		runsAfter = new ArrayList<EventCategory>();
+		polledEvents = new EventArray<ICoreEvent>();
+		polledCalEvents = new EventArray<ICoreCalendarEvent>();
+		dueEvents = new ArrayList<ICoreEvent>();
+		dueCalEvents = new ArrayList<ICoreCalendarEvent>();
+	}
+	
+	String getName() {
+		return name;
+	}
+	
+	/**
+	 * Returns the categories this one is asked after
+	 * @return the categories this one directly depends on
+	 */
+	ArrayList<EventCategory> getRunsAfter() {
+		return runsAfter;
+	}
+	
+	/**
+	 * Returns whether this category is asked after another, directly or
+	 * through other categories
+	 * @param other the other category
+	 * @return true if this category depends on the other
+	 */
+	boolean dependsOn(EventCategory other) {
+		for (EventCategory c : runsAfter) {
+			if (c == other || c.dependsOn(other)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	EventArray<ICoreEvent> getPolledEvents() {
+		return polledEvents;
+	}
+	
+	EventArray<ICoreCalendarEvent> getPolledCalEvents() {
+		return polledCalEvents;
+	}
+	
+	/**
+	 * Returns the scheduled events of this category due on the current
+	 * step, in the order they came due
+	 * @return the due events
+	 */
+	ArrayList<ICoreEvent> getDueEvents() {
+		return dueEvents;
+	}
+	
+	/**
+	 * Returns the scheduled calendar events of this category due on the
+	 * current step, in the order they came due
+	 * @return the due calendar events
+	 */
+	ArrayList<ICoreCalendarEvent> getDueCalEvents() {
+		return dueCalEvents;
+	}
+	
+	/**
+	 * Records the time spent on this category during a step
+	 * @param nanos the time spent, in nanoseconds
+	 */
+	void recordStep(long nanos) {
+		lastStepNanos = nanos;
+		totalNanos += nanos;
+	}
+	
+	long getLastStepNanos() {
+		return lastStepNanos;
+	}
+	
+	long getTotalNanos() {
+		return totalNanos;
+	}
+}
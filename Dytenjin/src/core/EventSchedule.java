@@ -0,0 +1,198 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import core.management.game.IHasUniqueId;
+
+/**
+ * A binary heap of events keyed by the trigger step they are next due on,
+ * used by CoreEventHandler. Events due on the same step come out in the
+ * order they were scheduled. Rescheduling or unscheduling an event leaves
+ * its old entry in the heap, where it is skipped when it comes out; the
+ * heap is rebuilt once such entries outnumber the live ones.
+ * @author SuperSimpleGuy
+ */
+final class EventSchedule<E extends IHasUniqueId> {
+
+	private long[] steps;
+	private long[] orders;
+	private IHasUniqueId[] events;
+	private int size;
+	private long nextOrder;
+	private HashMap<Integer, Long> liveOrders;
+	
+	EventSchedule() {
+		steps = new long[16];
+		orders = new long[16];
+		events = new IHasUniqueId[16];
+		liveOrders = new HashMap<Integer, Long>();
+	}
+	
+	/**
+	 * Schedules an event for a step, replacing its earlier schedule
+	 * @param e the event to schedule
+	 * @param step the step the event is due on
+	 */
+	void schedule(E e, long step) {
+		if (size > 2 * liveOrders.size() + 64) {
+			compact();
+		}
+		long order = nextOrder++;
+		liveOrders.put(e.getUniqueId().getId(), order);
+		push(step, order, e);
+	}
+	
+	/**
+	 * Removes the schedule of an event
+	 * @param id the id of the event
+	 * @return true if the event was scheduled
+	 */
+	boolean unschedule(int id) {
+		return liveOrders.remove(id) != null;
+	}
+	
+	/**
+	 * Returns whether an event is scheduled
+	 * @param id the id of the event
+	 * @return true if the event is scheduled
+	 */
+	boolean isScheduled(int id) {
+		return liveOrders.containsKey(id);
+	}
+	
+	/**
+	 * Returns the number of scheduled events
+	 * @return the number of scheduled events
+	 */
+	int size() {
+		return liveOrders.size();
+	}
+	
+	/**
+	 * Removes and returns the first event due on or before a step. The
+	 * event is no longer scheduled afterwards
+	 * @param step the current step
+	 * @return the event, or null if no event is due
+	 */
+	@SuppressWarnings("unchecked")
+	E pollDue(long step) {
+		while (size > 0 && steps[0] <= step) {
+			E e = (E)events[0];
+			long order = orders[0];
+			removeTop();
+			Long live = liveOrders.get(e.getUniqueId().getId());
+			if (live != null && live == order) {
+				liveOrders.remove(e.getUniqueId().getId());
+				return e;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the step the first scheduled event is due on
+	 * @return the step, or Long.MAX_VALUE if no event is scheduled
+	 */
+	long nextDueStep() {
+		while (size > 0) {
+			Long live = liveOrders.get(events[0].getUniqueId().getId());
+			if (live != null && live == orders[0]) {
+				return steps[0];
+			}
+			removeTop();
+		}
+		return Long.MAX_VALUE;
+	}
+	
+	private void push(long step, long order, IHasUniqueId e) {
+		if (size == steps.length) {
+			steps = Arrays.copyOf(steps, size * 2);
+			orders = Arrays.copyOf(orders, size * 2);
+			events = Arrays.copyOf(events, size * 2);
+		}
+		int i = size++;
+		while (i > 0) {
+			int up = (i - 1) >>> 1;
+			if (!before(step, order, steps[up], orders[up])) {
+				break;
+			}
+			set(i, steps[up], orders[up], events[up]);
+			i = up;
+		}
+		set(i, step, order, e);
+	}
+	
+	private void removeTop() {
+		size--;
+		long step = steps[size];
+		long order = orders[size];
+		IHasUniqueId e = events[size];
+		events[size] = null;
+		if (size == 0) {
+			return;
+		}
+		int i = 0;
+		int half = size >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && before(steps[child + 1], orders[child + 1], steps[child], orders[child])) {
+				child++;
+			}
+			if (!before(steps[child], orders[child], step, order)) {
+				break;
+			}
+			set(i, steps[child], orders[child], events[child]);
+			i = child;
+		}
+		set(i, step, order, e);
+	}
+	
+	/**
+	 * Drops every entry that is no longer live and rebuilds the heap
+	 */
+	private void compact() {
+		long[] oldSteps = steps;
+		long[] oldOrders = orders;
+		IHasUniqueId[] oldEvents = events;
+		int oldSize = size;
+		steps = new long[Math.max(16, liveOrders.size() * 2)];
+		orders = new long[steps.length];
+		events = new IHasUniqueId[steps.length];
+		size = 0;
+		for (int i = 0; i < oldSize; i++) {
+			Long live = liveOrders.get(oldEvents[i].getUniqueId().getId());
+			if (live != null && live == oldOrders[i]) {
+				push(oldSteps[i], oldOrders[i], oldEvents[i]);
+			}
+		}
+	}
+	
+	private void set(int i, long step, long order, IHasUniqueId e) {
+		steps[i] = step;
+		orders[i] = order;
+		events[i] = e;
+	}
+	
+	private static boolean before(long step1, long order1, long step2, long order2) {
+		return step1 < step2 || (step1 == step2 && order1 < order2);
+	}
+}
@@ -0,0 +1,37 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.event;
+
+/**
+ * Puts an ICoreEvent or ICoreCalendarEvent in a named category of a
+ * CoreEventHandler. Categories are asked whether their events trigger in
+ * the order given by the dependencies between them, and events that are
+ * not ICategorizedEvents go in the handler's default category.
+ * @author SuperSimpleGuy
+ */
+public interface ICategorizedEvent {
+
+	/**
+	 * Returns the name of this event's category, which must not change
+	 * while the event is registered with a handler
+	 * @return the category name, or null for the default category
+	 */
+	String getEventCategory();
+	
+}
@@ -0,0 +1,56 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.event;
+
+import core.temporal.WorldCompleteDate;
+import core.temporal.WorldTimeDuration;
+
+/**
+ * Lets an ICoreEvent or ICoreCalendarEvent be advanced over many trigger
+ * steps at once. When every event that would be asked on the coming steps
+ * can be advanced, the CoreEventHandler skips those steps instead of
+ * asking each event on each of them.
+ * @author SuperSimpleGuy
+ */
+public interface IFastForwardEvent {
+
+	/**
+	 * Returns how many trigger steps, starting with the current one, this
+	 * event can be advanced over instead of being asked on each of them.
+	 * It must not trigger anew on any of those steps
+	 * @param d the date of the current trigger step
+	 * @param triggerStep the length of a trigger step
+	 * @return the number of steps that can be skipped, 0 if the event must
+	 * be asked on the current step
+	 */
+	long getStepsWithoutChange(WorldCompleteDate d, WorldTimeDuration triggerStep);
+	
+	/**
+	 * Brings this event to the state being asked on each of a number of
+	 * trigger steps would have left it in, counting every time the handler
+	 * asks it on a step. While the event is triggering, the handler also
+	 * decreases its duration by the skipped time
+	 * @param steps the number of steps skipped, never more than the last
+	 * call to getStepsWithoutChange returned
+	 * @param d the date of the first skipped step
+	 * @param triggerStep the length of a trigger step
+	 */
+	void advanceSteps(long steps, WorldCompleteDate d, WorldTimeDuration triggerStep);
+	
+}
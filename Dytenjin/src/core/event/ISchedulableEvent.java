@@ -0,0 +1,43 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.event;
+
+import core.temporal.WorldCompleteDate;
+import core.temporal.WorldTimeDuration;
+
+/**
+ * Lets an ICoreEvent or ICoreCalendarEvent tell the CoreEventHandler when
+ * it could next trigger, so the handler only asks it whether it triggers
+ * on the steps it is due instead of on every step.
+ * @author SuperSimpleGuy
+ */
+public interface ISchedulableEvent {
+
+	/**
+	 * Returns how many trigger steps after the current one this event
+	 * should next be asked whether it triggers. Called after each time it
+	 * was asked
+	 * @param d the date of the current trigger step
+	 * @param triggerStep the length of a trigger step
+	 * @return the number of steps to wait, 1 being the next step, or a
+	 * value below 1 if the event cannot trigger until it is rescheduled
+	 */
+	long getStepsUntilNextCheck(WorldCompleteDate d, WorldTimeDuration triggerStep);
+	
+}
@@ -27,6 +27,21 @@ public enum CardinalDirection {
 	N(0), NNE(1), NE(2), NEE(3), E(4), SEE(5), SE(6), SSE(7), S(8), 
 	SSW(9), SW(10), SWW(11), W(12), NWW(13), NW(14), NNW(15), ERR(-1), SAME(16);
 	
+	private static final CardinalDirection[] VALUES = values();
+	private static final int TAN_SHIFT = 28;
+	private static final long[] TAN_THRESHOLDS = new long[4];
+	//how close to a threshold, in fixed point, the tangent must be for the
+	//angle to be rounded the way Math.atan rounds it instead
+	private static final long TAN_MARGIN = 64;
+	
+	static {
+		//tan of the angles halfway between neighbouring directions,
+		//(2k - 1) * pi / 16, in fixed point
+		for (int k = 1; k <= 4; k++) {
+			TAN_THRESHOLDS[k - 1] = Math.round(Math.tan((2 * k - 1) * Math.PI / 16) * (1L << TAN_SHIFT));
+		}
+	}
+	
 	private int dir;
 	
 	/**
@@ -54,7 +69,7 @@ public enum CardinalDirection {
 		if (dir < 0 || dir >= 16) {
 			return ERR;
 		}
-		return CardinalDirection.values()[(dir + 15) % 16];
+		return VALUES[(dir + 15) % 16];
 	}
 	
 	/**
@@ -66,7 +81,7 @@ public enum CardinalDirection {
 		if (dir < 0 || dir >= 16) {
 			return ERR;
 		}
-		return CardinalDirection.values()[(dir + 1) % 16];
+		return VALUES[(dir + 1) % 16];
 	}
 	
 	/**
@@ -78,7 +93,7 @@ public enum CardinalDirection {
 		if (dir < 0 || dir >= 16) {
 			return ERR;
 		}
-		return CardinalDirection.values()[(dir + 14) % 16];
+		return VALUES[(dir + 14) % 16];
 	}
 	
 	/**
@@ -90,7 +105,7 @@ public enum CardinalDirection {
 		if (dir < 0 || dir >= 16) {
 			return ERR;
 		}
-		return CardinalDirection.values()[(dir + 2) % 16];
+		return VALUES[(dir + 2) % 16];
 	}
 	
 	/**
@@ -102,7 +117,7 @@ public enum CardinalDirection {
 		if (dir < 0 || dir >= 16) {
 			return ERR;
 		}
-		return CardinalDirection.values()[(dir + 12) % 16];
+		return VALUES[(dir + 12) % 16];
 	}
 	
 	/**
@@ -114,7 +129,7 @@ public enum CardinalDirection {
 		if (dir < 0 || dir >= 16) {
 			return ERR;
 		}
-		return CardinalDirection.values()[(dir + 4) % 16];
+		return VALUES[(dir + 4) % 16];
 	}
 	
 	/**
@@ -126,7 +141,7 @@ public enum CardinalDirection {
 		if (dir < 0 || dir >= 16) {
 			return ERR;
 		}
-		return CardinalDirection.values()[(dir + 8) % 16];
+		return VALUES[(dir + 8) % 16];
 	}
 	
 	/**
@@ -148,7 +163,44 @@ public enum CardinalDirection {
 		if (deltaX == 0 && deltaY ==0) {
 			return SAME;
 		}
-		//Math.atan returns -pi/2 to pi/2
+		//Counts how many sixteenths of a half circle away from the x axis
+		//the angle rounds to, comparing |deltaY| / |deltaX| against the
+		//tangents of the halfway angles by cross-multiplying. Offsets too
+		//close to a halfway angle for the fixed point tangents to tell
+		//are rounded with Math.atan, as they always were
+		long absX = Math.abs((long)deltaX);
+		long scaledY = Math.abs((long)deltaY) << TAN_SHIFT;
+		int steps = 0;
+		while (steps < 4) {
+			long diff = scaledY - absX * TAN_THRESHOLDS[steps];
+			if (Math.abs(diff) <= absX * TAN_MARGIN) {
+				return getDirFromAtan(deltaX, deltaY);
+			}
+			if (diff < 0) {
+				break;
+			}
+			steps++;
+		}
+		int dir;
+		if ((deltaY > 0 && deltaX >= 0) || (deltaY < 0 && deltaX < 0)) {
+			dir = 4 - steps;
+		} else {
+			dir = 4 + steps;
+		}
+		if (deltaX < 0) {
+			dir += 8;
+		}
+		return VALUES[dir % 16];
+	}
+	
+	/**
+	 * Returns the cardinal direction of an offset by rounding its angle
+	 * from Math.atan to the nearest sixteenth of a circle
+	 * @param deltaX the x offset, not 0 if deltaY is 0
+	 * @param deltaY the y offset
+	 * @return the direction of the offset
+	 */
+	private static CardinalDirection getDirFromAtan(int deltaX, int deltaY) {
 		double angle = Math.atan(deltaY/(double)deltaX);
 		int dir = (int)Math.round(Math.abs(angle) / ((Math.PI/2)*(1/4.0)));
 		if (angle <= 0) {
@@ -159,6 +211,6 @@ public enum CardinalDirection {
 		if (deltaX < 0) {
 			dir += 8;
 		}
-		return CardinalDirection.values()[dir % 16];
+		return VALUES[dir % 16];
 	}
 }
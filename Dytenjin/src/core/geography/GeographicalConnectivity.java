@@ -0,0 +1,301 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.geography;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import core.management.game.IHasUniqueId;
+
+/**
+ * Answers whether two regions, or two locations, of a GeographicalMap are
+ * joined by any chain of links, so that callers can skip route searches
+ * that cannot succeed. Each level keeps a union-find forest over the ids of
+ * its places and links. Links added through the map are merged in as they
+ * are added; anything else that changes the links of the map, including
+ * removals and links registered directly on regions and locations, marks
+ * the level for a rebuild on its next query.
+ * <p>
+ * The answer errs on the side of connected: two places reported as not
+ * connected have no route between them, while connected places may still
+ * have none, for example through a link whose far end has left the map.
+ * @author SuperSimpleGuy
+ */
+public class GeographicalConnectivity {
+
+	private GeographicalMap map;
+	private DisjointSets regions;
+	private DisjointSets locations;
+	private boolean regionsDirty;
+	private boolean locationsDirty;
+	private int syncedTopologyCount;
+	private int rebuildCount;
+	
+	/**
+	 * Creates the connectivity index of a map, built on first use
+	 * @param map the map to index
+	 */
+	GeographicalConnectivity(GeographicalMap map) {
+		this.map = map;
+		this.regions = new DisjointSets();
+		this.locations = new DisjointSets();
+		this.regionsDirty = true;
+		this.locationsDirty = true;
+	}
+	
+	/**
+	 * Returns whether a chain of RegionLinks joins two regions or region
+	 * links of the map
+	 * @param idOfGR1 the id of the first region
+	 * @param idOfGR2 the id of the second region
+	 * @return true if the regions may be connected, false if either is not
+	 * in the map or no chain of links joins them
+	 */
+	public boolean areRegionsConnected(int idOfGR1, int idOfGR2) {
+		if (map.getRegionOrLink(idOfGR1) == null || map.getRegionOrLink(idOfGR2) == null) {
+			return false;
+		}
+		if (idOfGR1 == idOfGR2) {
+			return true;
+		}
+		beforeChange();
+		if (regionsDirty) {
+			rebuildRegions();
+		}
+		return regions.connected(idOfGR1, idOfGR2);
+	}
+	
+	/**
+	 * Returns whether a chain of LocationLinks, possibly across regions,
+	 * joins two locations of the map
+	 * @param idOfGL1 the id of the first location
+	 * @param idOfGL2 the id of the second location
+	 * @return true if the locations may be connected, false if either is not
+	 * in the map or no chain of links joins them
+	 */
+	public boolean areLocationsConnected(int idOfGL1, int idOfGL2) {
+		if (map.getOwnerOfLocation(idOfGL1) == null || map.getOwnerOfLocation(idOfGL2) == null) {
+			return false;
+		}
+		if (idOfGL1 == idOfGL2) {
+			return true;
+		}
+		beforeChange();
+		if (locationsDirty) {
+			rebuildLocations();
+		}
+		return locations.connected(idOfGL1, idOfGL2);
+	}
+	
+	/**
+	 * Returns how many times either level has been rebuilt from the map
+	 * @return the number of rebuilds
+	 */
+	public int getRebuildCount() {
+		return rebuildCount;
+	}
+	
+	/**
+	 * Marks both levels for a rebuild if the links of the map have changed
+	 * since the index last followed them. Called before the map changes
+	 * its links, so that only the change about to be made is merged in
+	 */
+	void beforeChange() {
+		if (map.getTopologyCount() != syncedTopologyCount) {
+			regionsDirty = true;
+			locationsDirty = true;
+			syncedTopologyCount = map.getTopologyCount();
+		}
+	}
+	
+	/**
+	 * Follows a region added to the map, which may already hold links
+	 * @param gR the region added
+	 */
+	void regionAdded(GeographicalRegion gR) {
+		if (!gR.getPaths().isEmpty()) {
+			regionsDirty = true;
+		}
+		for (GeographicalLocation gL : gR.getChildLocs().values()) {
+			if (gL instanceof LocationLink || !gL.getPaths().isEmpty()) {
+				locationsDirty = true;
+				break;
+			}
+		}
+		syncedTopologyCount = map.getTopologyCount();
+	}
+	
+	/**
+	 * Merges a RegionLink just put between two regions of the map
+	 * @param rL the region link added
+	 */
+	void regionLinkAdded(RegionLink rL) {
+		if (!regionsDirty) {
+			joinEnds(regions, rL.getUniqueId().getId(), rL.getLoc1(), rL.getLoc2());
+		}
+		regionAdded(rL);
+	}
+	
+	/**
+	 * Merges a LocationLink just put between two locations of the map
+	 * @param lL the location link added
+	 */
+	void locationLinkAdded(LocationLink lL) {
+		if (!locationsDirty) {
+			joinEnds(locations, lL.getUniqueId().getId(), lL.getLoc1(), lL.getLoc2());
+		}
+		syncedTopologyCount = map.getTopologyCount();
+	}
+	
+	/**
+	 * Marks both levels for a rebuild after regions or RegionLinks have
+	 * been removed from the map
+	 */
+	void regionsRemoved() {
+		regionsDirty = true;
+		locationsDirty = true;
+		syncedTopologyCount = map.getTopologyCount();
+	}
+	
+	/**
+	 * Marks the location level for a rebuild after locations or
+	 * LocationLinks have been removed from the map
+	 */
+	void locationsRemoved() {
+		locationsDirty = true;
+		syncedTopologyCount = map.getTopologyCount();
+	}
+	
+	private void rebuildRegions() {
+		regions.clear();
+		rebuildRegions(map.getGeoRegions());
+		rebuildRegions(map.getRegLinks());
+		regionsDirty = false;
+		rebuildCount++;
+	}
+	
+	private void rebuildRegions(HashMap<Integer, ? extends GeographicalRegion> from) {
+		for (GeographicalRegion gR : from.values()) {
+			for (RegionLink rL : gR.getPaths().values()) {
+				if (rL.getLoc1() != null && rL.getLoc2() != null) {
+					regions.union(gR.getUniqueId().getId(), rL.getUniqueId().getId());
+				}
+			}
+			if (gR instanceof RegionLink) {
+				RegionLink rL = (RegionLink)gR;
+				joinEnds(regions, rL.getUniqueId().getId(), rL.getLoc1(), rL.getLoc2());
+			}
+		}
+	}
+	
+	private void rebuildLocations() {
+		locations.clear();
+		rebuildLocations(map.getGeoRegions());
+		rebuildLocations(map.getRegLinks());
+		locationsDirty = false;
+		rebuildCount++;
+	}
+	
+	private void rebuildLocations(HashMap<Integer, ? extends GeographicalRegion> from) {
+		for (GeographicalRegion gR : from.values()) {
+			for (GeographicalLocation gL : gR.getChildLocs().values()) {
+				for (LocationLink lL : gL.getPaths().values()) {
+					if (lL.getLoc1() != null && lL.getLoc2() != null) {
+						locations.union(gL.getUniqueId().getId(), lL.getUniqueId().getId());
+					}
+				}
+				if (gL instanceof LocationLink) {
+					LocationLink lL = (LocationLink)gL;
+					joinEnds(locations, lL.getUniqueId().getId(), lL.getLoc1(), lL.getLoc2());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Joins a link to both of its ends. Links missing an end have been
+	 * removed and join nothing
+	 */
+	private static void joinEnds(DisjointSets sets, int idOfLink, IHasUniqueId end1, IHasUniqueId end2) {
+		if (end1 != null && end2 != null) {
+			sets.union(idOfLink, end1.getUniqueId().getId());
+			sets.union(idOfLink, end2.getUniqueId().getId());
+		}
+	}
+	
+	/**
+	 * A union-find forest over int ids, with union by rank and path halving
+	 */
+	private static final class DisjointSets {
+		private IntIndexMap indices = new IntIndexMap(16);
+		private int[] parents = new int[16];
+		private byte[] ranks = new byte[16];
+		private int size;
+		
+		private void clear() {
+			indices.clear();
+			size = 0;
+		}
+		
+		private int indexOf(int id) {
+			int index = indices.get(id);
+			if (index < 0) {
+				if (size == parents.length) {
+					parents = Arrays.copyOf(parents, size * 2);
+					ranks = Arrays.copyOf(ranks, size * 2);
+				}
+				index = size++;
+				indices.put(id, index);
+				parents[index] = index;
+				ranks[index] = 0;
+			}
+			return index;
+		}
+		
+		private int find(int index) {
+			while (parents[index] != index) {
+				parents[index] = parents[parents[index]];
+				index = parents[index];
+			}
+			return index;
+		}
+		
+		private void union(int id1, int id2) {
+			int root1 = find(indexOf(id1));
+			int root2 = find(indexOf(id2));
+			if (root1 == root2) {
+				return;
+			}
+			if (ranks[root1] < ranks[root2]) {
+				parents[root1] = root2;
+			} else if (ranks[root1] > ranks[root2]) {
+				parents[root2] = root1;
+			} else {
+				parents[root2] = root1;
+				ranks[root1]++;
+			}
+		}
+		
+		private boolean connected(int id1, int id2) {
+			int index1 = indices.get(id1);
+			int index2 = indices.get(id2);
+			return index1 >= 0 && index2 >= 0 && find(index1) == find(index2);
+		}
+	}
+}
@@ -0,0 +1,534 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.geography;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import core.management.game.IHasUniqueId;
+
+/**
+ * An immutable copy of the region graph or the location graph of a
+ * GeographicalMap in compressed sparse row form. Places get a dense index
+ * in order of their id; the links leaving place i are the entries from
+ * offsets[i] to offsets[i + 1] of the neighbour, length, direction and
+ * link id arrays. Searching a snapshot touches only primitive arrays.
+ * <p>
+ * A snapshot does not follow later changes to the map. isStale tells
+ * whether the map has changed since the snapshot was taken, and refresh
+ * takes a new snapshot when it has. A snapshot can be shared between
+ * threads; its searches allocate their own working arrays.
+ * @author SuperSimpleGuy
+ * @param <P> the kind of place in the graph
+ */
+public final class GeographicalGraphSnapshot<P> {
+
+	private static final CardinalDirection[] DIRECTIONS = CardinalDirection.values();
+	
+	private final boolean ofLocations;
+	private final int[] ids;
+	private final Object[] places;
+	private final int[] offsets;
+	private final int[] neighbours;
+	private final double[] lengths;
+	private final byte[] directions;
+	private final int[] linkIds;
+	private final int mapModCount;
+	private final long regionModCount;
+	
+	private GeographicalGraphSnapshot(boolean ofLocations, int[] ids, Object[] places, int[] offsets,
+			int[] neighbours, double[] lengths, byte[] directions, int[] linkIds, int mapModCount, long regionModCount) {
+		this.ofLocations = ofLocations;
+		this.ids = ids;
+		this.places = places;
+		this.offsets = offsets;
+		this.neighbours = neighbours;
+		this.lengths = lengths;
+		this.directions = directions;
+		this.linkIds = linkIds;
+		this.mapModCount = mapModCount;
+		this.regionModCount = regionModCount;
+	}
+	
+	/**
+	 * Takes a snapshot of the regions of a map and the RegionLinks between
+	 * them. Region links joined to other region links are places as well
+	 * @param map the map to copy
+	 * @return the snapshot of the region graph
+	 */
+	public static GeographicalGraphSnapshot<GeographicalRegion> ofRegions(GeographicalMap map) {
+		ArrayList<GeographicalRegion> found = new ArrayList<GeographicalRegion>(map.getGeoRegions().size());
+		found.addAll(map.getGeoRegions().values());
+		for (RegionLink rL : map.getRegLinks().values()) {
+			if (!rL.getPaths().isEmpty()) {
+				found.add(rL);
+			}
+		}
+		int n = found.size();
+		int[] ids = new int[n];
+		Object[] places = new Object[n];
+		n = sortById(found, ids, places);
+		ids = Arrays.copyOf(ids, n);
+		places = Arrays.copyOf(places, n);
+		
+		int[] offsets = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			offsets[i + 1] = offsets[i] + ((GeographicalRegion)places[i]).getPaths().size();
+		}
+		int m = offsets[n];
+		int[] neighbours = new int[m];
+		double[] lengths = new double[m];
+		byte[] directions = new byte[m];
+		int[] linkIds = new int[m];
+		int e = 0;
+		for (int i = 0; i < n; i++) {
+			GeographicalRegion gR = (GeographicalRegion)places[i];
+			offsets[i] = e;
+			for (RegionLink l : gR.getPaths().values()) {
+				GeographicalRegion other = GeographicalRouter.otherEnd(l, gR);
+				int j = other == null ? -1 : Arrays.binarySearch(ids, 0, n, other.getUniqueId().getId());
+				if (j < 0 || places[j] != other) {
+					continue;
+				}
+				CardinalDirection dir = l.getDirFromGeoReg(gR);
+				neighbours[e] = j;
+				lengths[e] = l.getLength();
+				directions[e] = (byte)(dir == null ? CardinalDirection.ERR : dir).ordinal();
+				linkIds[e] = l.getUniqueId().getId();
+				e++;
+			}
+		}
+		offsets[n] = e;
+		if (e < m) {
+			neighbours = Arrays.copyOf(neighbours, e);
+			lengths = Arrays.copyOf(lengths, e);
+			directions = Arrays.copyOf(directions, e);
+			linkIds = Arrays.copyOf(linkIds, e);
+		}
+		return new GeographicalGraphSnapshot<GeographicalRegion>(false, ids, places, offsets, neighbours, lengths,
+				directions, linkIds, map.getModificationCount(), sumRegionModCounts(map));
+	}
+	
+	/**
+	 * Takes a snapshot of the locations of every region of a map and the
+	 * LocationLinks between them, including edge links between regions.
+	 * LocationLinks themselves are not places of the snapshot
+	 * @param map the map to copy
+	 * @return the snapshot of the location graph
+	 */
+	public static GeographicalGraphSnapshot<GeographicalLocation> ofLocations(GeographicalMap map) {
+		ArrayList<GeographicalLocation> found = new ArrayList<GeographicalLocation>();
+		addChildLocations(map.getGeoRegions().values(), found);
+		addChildLocations(map.getRegLinks().values(), found);
+		int n = found.size();
+		int[] ids = new int[n];
+		Object[] places = new Object[n];
+		n = sortById(found, ids, places);
+		ids = Arrays.copyOf(ids, n);
+		places = Arrays.copyOf(places, n);
+		
+		int[] offsets = new int[n + 1];
+		for (int i = 0; i < n; i++) {
+			offsets[i + 1] = offsets[i] + ((GeographicalLocation)places[i]).getPaths().size();
+		}
+		int m = offsets[n];
+		int[] neighbours = new int[m];
+		double[] lengths = new double[m];
+		byte[] directions = new byte[m];
+		int[] linkIds = new int[m];
+		int e = 0;
+		for (int i = 0; i < n; i++) {
+			GeographicalLocation gL = (GeographicalLocation)places[i];
+			offsets[i] = e;
+			for (LocationLink l : gL.getPaths().values()) {
+				GeographicalLocation other = GeographicalRouter.otherEnd(l, gL);
+				int j = other == null ? -1 : Arrays.binarySearch(ids, 0, n, other.getUniqueId().getId());
+				if (j < 0 || places[j] != other) {
+					continue;
+				}
+				CardinalDirection dir = l.getDirFromGeoLoc(gL);
+				neighbours[e] = j;
+				lengths[e] = l.getLength();
+				directions[e] = (byte)(dir == null ? CardinalDirection.ERR : dir).ordinal();
+				linkIds[e] = l.getUniqueId().getId();
+				e++;
+			}
+		}
+		offsets[n] = e;
+		if (e < m) {
+			neighbours = Arrays.copyOf(neighbours, e);
+			lengths = Arrays.copyOf(lengths, e);
+			directions = Arrays.copyOf(directions, e);
+			linkIds = Arrays.copyOf(linkIds, e);
+		}
+		return new GeographicalGraphSnapshot<GeographicalLocation>(true, ids, places, offsets, neighbours, lengths,
+				directions, linkIds, map.getModificationCount(), sumRegionModCounts(map));
+	}
+	
+	/**
+	 * Returns whether the map has changed since this snapshot was taken
+	 * @param map the map this snapshot was taken of
+	 * @return true if the snapshot no longer matches the map
+	 */
+	public boolean isStale(GeographicalMap map) {
+		return map.getModificationCount() != mapModCount || sumRegionModCounts(map) != regionModCount;
+	}
+	
+	/**
+	 * Returns this snapshot if the map has not changed since it was taken,
+	 * or a new snapshot of the same graph otherwise
+	 * @param map the map this snapshot was taken of
+	 * @return an up to date snapshot of the map
+	 */
+	@SuppressWarnings("unchecked")
+	public GeographicalGraphSnapshot<P> refresh(GeographicalMap map) {
+		if (!isStale(map)) {
+			return this;
+		}
+		if (ofLocations) {
+			return (GeographicalGraphSnapshot<P>)ofLocations(map);
+		}
+		return (GeographicalGraphSnapshot<P>)ofRegions(map);
+	}
+	
+	/**
+	 * Returns the number of places in this snapshot
+	 * @return the number of places
+	 */
+	public int getPlaceCount() {
+		return ids.length;
+	}
+	
+	/**
+	 * Returns the number of directed links in this snapshot. Every link
+	 * appears once from each of its ends
+	 * @return the number of directed links
+	 */
+	public int getLinkCount() {
+		return neighbours.length;
+	}
+	
+	/**
+	 * Returns the dense index of the place with the specified id
+	 * @param id the id of the place
+	 * @return the index of the place, or -1 if it is not in this snapshot
+	 */
+	public int indexOf(int id) {
+		int i = Arrays.binarySearch(ids, id);
+		return i < 0 ? -1 : i;
+	}
+	
+	/**
+	 * Returns the id of the place with the specified index
+	 * @param index the index of the place
+	 * @return the id of the place
+	 */
+	public int getId(int index) {
+		return ids[index];
+	}
+	
+	/**
+	 * Returns the place with the specified index
+	 * @param index the index of the place
+	 * @return the place
+	 */
+	@SuppressWarnings("unchecked")
+	public P getPlace(int index) {
+		return (P)places[index];
+	}
+	
+	/**
+	 * Returns the position of the first link leaving a place. The links
+	 * of place i are at positions getFirstLink(i) up to getFirstLink(i + 1)
+	 * @param index the index of the place, up to getPlaceCount() inclusive
+	 * @return the position of the place's first link
+	 */
+	public int getFirstLink(int index) {
+		return offsets[index];
+	}
+	
+	/**
+	 * Returns the index of the place a link leads to
+	 * @param link the position of the link
+	 * @return the index of the neighbouring place
+	 */
+	public int getNeighbour(int link) {
+		return neighbours[link];
+	}
+	
+	/**
+	 * Returns the length of a link
+	 * @param link the position of the link
+	 * @return the length of the link
+	 */
+	public double getLength(int link) {
+		return lengths[link];
+	}
+	
+	/**
+	 * Returns the direction from the place a link leaves towards the link
+	 * @param link the position of the link
+	 * @return the direction of the link
+	 */
+	public CardinalDirection getDirection(int link) {
+		return DIRECTIONS[directions[link]];
+	}
+	
+	/**
+	 * Returns the id of the RegionLink or LocationLink a link was copied from
+	 * @param link the position of the link
+	 * @return the id of the link
+	 */
+	public int getLinkId(int link) {
+		return linkIds[link];
+	}
+	
+	/**
+	 * Marks every place reachable from a place
+	 * @param fromId the id of the place to start from
+	 * @return an array with true at the index of every reachable place, or
+	 * null if the place is not in this snapshot
+	 */
+	public boolean[] findReachable(int fromId) {
+		int s = indexOf(fromId);
+		if (s == -1) {
+			return null;
+		}
+		boolean[] seen = new boolean[ids.length];
+		int[] queue = new int[ids.length];
+		int head = 0;
+		int tail = 0;
+		seen[s] = true;
+		queue[tail++] = s;
+		while (head < tail) {
+			int u = queue[head++];
+			for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+				int v = neighbours[e];
+				if (!seen[v]) {
+					seen[v] = true;
+					queue[tail++] = v;
+				}
+			}
+		}
+		return seen;
+	}
+	
+	/**
+	 * Returns whether one place can be reached from another
+	 * @param fromId the id of the place to start from
+	 * @param toId the id of the place to reach
+	 * @return true if the places are both in this snapshot and connected
+	 */
+	public boolean isReachable(int fromId, int toId) {
+		int t = indexOf(toId);
+		if (t == -1) {
+			return false;
+		}
+		boolean[] seen = findReachable(fromId);
+		return seen != null && seen[t];
+	}
+	
+	/**
+	 * Returns the length of the shortest route between two places
+	 * @param fromId the id of the place to start from
+	 * @param toId the id of the place to reach
+	 * @return the length of the shortest route, or Double.POSITIVE_INFINITY
+	 * if there is none
+	 */
+	public double findDistance(int fromId, int toId) {
+		int t = indexOf(toId);
+		int[] parent = new int[ids.length];
+		double[] dist = search(fromId, t, parent);
+		return dist == null || t == -1 ? Double.POSITIVE_INFINITY : dist[t];
+	}
+	
+	/**
+	 * Returns the positions of the links along the shortest route between
+	 * two places, in order
+	 * @param fromId the id of the place to start from
+	 * @param toId the id of the place to reach
+	 * @return the positions of the links taken, or null if there is no route
+	 */
+	public int[] findPath(int fromId, int toId) {
+		int t = indexOf(toId);
+		if (t == -1) {
+			return null;
+		}
+		int[] parent = new int[ids.length];
+		double[] dist = search(fromId, t, parent);
+		if (dist == null || dist[t] == Double.POSITIVE_INFINITY) {
+			return null;
+		}
+		int steps = 0;
+		for (int v = t; parent[v] != -1; v = neighbourFrom(parent[v])) {
+			steps++;
+		}
+		int[] path = new int[steps];
+		for (int v = t; parent[v] != -1; v = neighbourFrom(parent[v])) {
+			path[--steps] = parent[v];
+		}
+		return path;
+	}
+	
+	/**
+	 * Returns the index of the place a link leaves from
+	 */
+	private int neighbourFrom(int link) {
+		int lo = 0;
+		int hi = ids.length - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (offsets[mid] <= link) {
+				lo = mid;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return lo;
+	}
+	
+	/**
+	 * Runs Dijkstra from a place until the target is settled, recording in
+	 * parent the position of the link used to reach every place
+	 */
+	private double[] search(int fromId, int target, int[] parent) {
+		int s = indexOf(fromId);
+		if (s == -1) {
+			return null;
+		}
+		int n = ids.length;
+		double[] dist = new double[n];
+		boolean[] done = new boolean[n];
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		Arrays.fill(parent, -1);
+		int[] heap = new int[Math.max(16, n)];
+		double[] keys = new double[heap.length];
+		int size = 0;
+		dist[s] = 0;
+		heap[size++] = s;
+		while (size > 0) {
+			int u = heap[0];
+			double key = keys[0];
+			size--;
+			if (size > 0) {
+				siftDown(heap, keys, size, heap[size], keys[size]);
+			}
+			if (done[u] || key > dist[u]) {
+				continue;
+			}
+			done[u] = true;
+			if (u == target) {
+				break;
+			}
+			for (int e = offsets[u]; e < offsets[u + 1]; e++) {
+				int v = neighbours[e];
+				double d = dist[u] + lengths[e];
+				if (d < dist[v]) {
+					dist[v] = d;
+					parent[v] = e;
+					if (size == heap.length) {
+						heap = Arrays.copyOf(heap, size * 2);
+						keys = Arrays.copyOf(keys, size * 2);
+					}
+					int i = size++;
+					while (i > 0) {
+						int up = (i - 1) >>> 1;
+						if (keys[up] <= d) {
+							break;
+						}
+						heap[i] = heap[up];
+						keys[i] = keys[up];
+						i = up;
+					}
+					heap[i] = v;
+					keys[i] = d;
+				}
+			}
+		}
+		return dist;
+	}
+	
+	private static void siftDown(int[] heap, double[] keys, int size, int index, double key) {
+		int i = 0;
+		int half = size >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && keys[child + 1] < keys[child]) {
+				child++;
+			}
+			if (key <= keys[child]) {
+				break;
+			}
+			heap[i] = heap[child];
+			keys[i] = keys[child];
+			i = child;
+		}
+		heap[i] = index;
+		keys[i] = key;
+	}
+	
+	/**
+	 * Returns the sum of the modification counts of every region and region
+	 * link of a map, which grows whenever any of them changes
+	 */
+	private static long sumRegionModCounts(GeographicalMap map) {
+		long sum = 0;
+		for (GeographicalRegion gR : map.getGeoRegions().values()) {
+			sum += gR.getModificationCount();
+		}
+		for (RegionLink rL : map.getRegLinks().values()) {
+			sum += rL.getModificationCount();
+		}
+		return sum;
+	}
+	
+	private static void addChildLocations(Iterable<? extends GeographicalRegion> regions, ArrayList<GeographicalLocation> found) {
+		for (GeographicalRegion gR : regions) {
+			for (GeographicalLocation gL : gR.getChildLocs().values()) {
+				if (!(gL instanceof LocationLink)) {
+					found.add(gL);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Fills ids and places in order of id, keeping the first place found
+	 * for any id, and returns the number of places kept
+	 */
+	private static int sortById(ArrayList<?> found, int[] ids, Object[] places) {
+		long[] keys = new long[found.size()];
+		for (int i = 0; i < keys.length; i++) {
+			int id = ((IHasUniqueId)found.get(i)).getUniqueId().getId();
+			keys[i] = ((long)id << 32) | (i & 0xFFFFFFFFL);
+		}
+		Arrays.sort(keys);
+		int n = 0;
+		for (int i = 0; i < keys.length; i++) {
+			int id = (int)(keys[i] >> 32);
+			if (n > 0 && ids[n - 1] == id) {
+				continue;
+			}
+			ids[n] = id;
+			places[n] = found.get((int)keys[i]);
+			n++;
+		}
+		return n;
+	}
+}
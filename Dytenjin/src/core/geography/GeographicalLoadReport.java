@@ -0,0 +1,130 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.geography;
+
+import java.util.ArrayList;
+
+/**
+ * The outcome of loading items into a GeographicalMap with a
+ * GeographicalMapLoader: how many items of each kind were added, and
+ * every item that was rejected together with the reason.
+ * @author SuperSimpleGuy
+ */
+public class GeographicalLoadReport {
+
+	private int regionsAdded;
+	private int locationsAdded;
+	private int regionLinksAdded;
+	private int locationLinksAdded;
+	private ArrayList<Object> rejectedItems;
+	private ArrayList<String> rejectionReasons;
+	
+	/**
+	 * Creates an empty report
+	 */
+	GeographicalLoadReport() {
+		this.rejectedItems = new ArrayList<Object>();
+		this.rejectionReasons = new ArrayList<String>();
+	}
+	
+	/**
+	 * Records the counts of items added
+	 */
+	void setAdded(int regions, int locations, int regionLinks, int locationLinks) {
+		this.regionsAdded = regions;
+		this.locationsAdded = locations;
+		this.regionLinksAdded = regionLinks;
+		this.locationLinksAdded = locationLinks;
+	}
+	
+	/**
+	 * Records a rejected item
+	 */
+	void reject(Object item, String reason) {
+		rejectedItems.add(item);
+		rejectionReasons.add(reason);
+	}
+	
+	/**
+	 * Returns the number of regions added to the map
+	 * @return the number of regions added
+	 */
+	public int getRegionsAdded() {
+		return regionsAdded;
+	}
+	
+	/**
+	 * Returns the number of locations added to the map
+	 * @return the number of locations added
+	 */
+	public int getLocationsAdded() {
+		return locationsAdded;
+	}
+	
+	/**
+	 * Returns the number of region links added to the map
+	 * @return the number of region links added
+	 */
+	public int getRegionLinksAdded() {
+		return regionLinksAdded;
+	}
+	
+	/**
+	 * Returns the number of location links added to the map
+	 * @return the number of location links added
+	 */
+	public int getLocationLinksAdded() {
+		return locationLinksAdded;
+	}
+	
+	/**
+	 * Returns the number of items that were rejected
+	 * @return the number of rejected items
+	 */
+	public int getRejectedCount() {
+		return rejectedItems.size();
+	}
+	
+	/**
+	 * Returns a rejected item: a region, location, RegionLink or LocationLink
+	 * @param index the index of the rejection, in the order items were added
+	 * to the loader within each kind
+	 * @return the rejected item
+	 */
+	public Object getRejectedItem(int index) {
+		return rejectedItems.get(index);
+	}
+	
+	/**
+	 * Returns why an item was rejected
+	 * @param index the index of the rejection
+	 * @return the reason the item was rejected
+	 */
+	public String getRejectionReason(int index) {
+		return rejectionReasons.get(index);
+	}
+	
+	/**
+	 * Returns whether every item was added
+	 * @return true if nothing was rejected
+	 */
+	public boolean isComplete() {
+		return rejectedItems.isEmpty();
+	}
+}
@@ -110,6 +110,7 @@ public abstract class GeographicalLocation implements IHasUniqueId {
 	 * was found
 	 */
 	public LocationLink unregisterLocationLink(int id) {
+		markTopologyModified();
 		return paths.remove(id);
 	}
 	
@@ -134,6 +135,7 @@ public abstract class GeographicalLocation implements IHasUniqueId {
 	public boolean registerLocationLink(LocationLink l) {
 		if (!paths.containsKey(l.getUniqueId().getId())) {
 			paths.put(l.getUniqueId().getId(), l);
+			markTopologyModified();
 			return true;
 		}
 		return false;
@@ -170,6 +172,16 @@ public abstract class GeographicalLocation implements IHasUniqueId {
 		this.parent = parent;
 	}
 
+	/**
+	 * Records with the map of this location's parent that a link was
+	 * registered on or unregistered from this location
+	 */
+	void markTopologyModified() {
+		if (parent != null) {
+			parent.markTopologyModified();
+		}
+	}
+
 	/**
 	 * Returns the name of this location
 	 * @return the name of this location
@@ -256,10 +268,21 @@ public abstract class GeographicalLocation implements IHasUniqueId {
 	 * @param newYCoord the new y coordinate for this location
 	 */
 	public void setCoords(int newXCoord, int newYCoord) {
+		int oldXCoord = this.xCoord;
+		int oldYCoord = this.yCoord;
 		this.xCoord = newXCoord;
 		this.yCoord = newYCoord;
+		GeographicalMap map = parent == null ? null : parent.owningMap;
 		for (LocationLink rL : paths.values()) {
-			rL.resetDirectionAndLength();
+			if (map == null || !map.deferLinkGeometry(rL)) {
+				rL.resetDirectionAndLength();
+			}
+		}
+		if (parent != null) {
+			parent.markModified();
+			if (parent.owningMap != null && !(this instanceof LocationLink)) {
+				parent.owningMap.locationMoved(this, oldXCoord, oldYCoord);
+			}
 		}
 	}
 }
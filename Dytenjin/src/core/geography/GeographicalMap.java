@@ -18,20 +18,54 @@
 
 package core.geography;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
 
+import core.CoreConstants;
 import core.management.game.IHasUniqueId;
 import core.management.game.UniqueId;
+import core.system.ExceptionManager;
 
 /**
  * Maintains all geographical regions and regional links, and
- * maintain the evolution of the entire map.
+ * maintain the evolution of the entire map. Also keeps an index from
+ * the id of every GeographicalLocation and LocationLink to the region
+ * that owns it, so lookups by location id do not have to search every
+ * region. The index covers locations registered through this map and
+ * locations already belonging to a region when the region is added.
  * @author SuperSimpleGuy
  */
 public class GeographicalMap implements IHasUniqueId {
 
+	private static final int BATCH_CHUNK_SIZE = 1024;
+
 	private HashMap<Integer, GeographicalRegion> geoRegions;
 	private HashMap<Integer, RegionLink> regLinks;
+	private HashMap<Integer, GeographicalRegion> locOwners;
+	private GeographicalRouter router;
+	private SpatialGrid<GeographicalRegion> regionGrid;
+	private SpatialGrid<GeographicalLocation> locationGrid;
+	private GeographicalConnectivity connectivity;
+	private RegionDistanceOracle distanceOracle;
+	private GeographicalRegionPager pager;
+	private int modCount;
+	private int topologyCount;
+	private int batchDepth;
+	private ArrayList<RegionLink> dirtyRegionLinks;
+	private ArrayList<LocationLink> dirtyLocationLinks;
+	private ReentrantLock writeLock;
+	private volatile boolean concurrentReads;
+	private volatile GeographicalMapView view;
+	private Set<GeographicalRegion> changedRegions;
 	private String name;
 	private UniqueId id;
 	
@@ -42,6 +76,14 @@ public class GeographicalMap implements IHasUniqueId {
 	public GeographicalMap(UniqueId id) {
 		this.geoRegions = new HashMap<Integer, GeographicalRegion>();
 		this.regLinks = new HashMap<Integer, RegionLink>();
+		this.locOwners = new HashMap<Integer, GeographicalRegion>();
+		this.regionGrid = new SpatialGrid<GeographicalRegion>(CoreConstants.MAP_GRID_CELL_SIZE);
+		this.locationGrid = new SpatialGrid<GeographicalLocation>(CoreConstants.MAP_GRID_CELL_SIZE);
+		this.connectivity = new GeographicalConnectivity(this);
+		this.dirtyRegionLinks = new ArrayList<RegionLink>();
+		this.dirtyLocationLinks = new ArrayList<LocationLink>();
+		this.writeLock = new ReentrantLock();
+		this.changedRegions = Collections.newSetFromMap(new IdentityHashMap<GeographicalRegion, Boolean>());
 		this.name = "";
 		this.id = id;
 	}
@@ -88,25 +130,37 @@ public class GeographicalMap implements IHasUniqueId {
 	 * @return true if successfully inserted, false otherwise
 	 */
 	public boolean putLocationLink(LocationLink locLink, int idOfGR1, int idOfGL1, int idOfGR2, int idOfGL2) {
-		GeographicalRegion gR1 = geoRegions.get(idOfGR1);
-		if (gR1 == null) {
-			gR1 = regLinks.get(idOfGR1);
-		}
-		if (gR1 == null) {
-			return false;
-		}
-		GeographicalRegion gR2 = null;
-		if (idOfGR1 != idOfGR2) {
-			gR2 = geoRegions.get(idOfGR1);
-			if (gR2 == null) {
-				gR2 = regLinks.get(idOfGR1);
+		boolean locked = beginMapWrite();
+		try {
+			beforeLinkChange();
+			GeographicalRegion gR1 = geoRegions.get(idOfGR1);
+			if (gR1 == null) {
+				gR1 = regLinks.get(idOfGR1);
 			}
-			if (gR2 == null) {
+			if (gR1 == null) {
 				return false;
 			}
-			return gR1.putEdgeLocLinkBetween(locLink, idOfGL1, idOfGR2, idOfGL2);
-		} else {
-			return gR1.putLocLinkBetween(locLink, idOfGL1, idOfGL2);
+			GeographicalRegion gR2 = null;
+			if (idOfGR1 != idOfGR2) {
+				gR2 = geoRegions.get(idOfGR1);
+				if (gR2 == null) {
+					gR2 = regLinks.get(idOfGR1);
+				}
+				if (gR2 == null) {
+					return false;
+				}
+				if (!gR1.putEdgeLocLinkBetween(locLink, idOfGL1, idOfGR2, idOfGL2)) {
+					return false;
+				}
+			} else if (!gR1.putLocLinkBetween(locLink, idOfGL1, idOfGL2)) {
+				return false;
+			}
+			connectivity.locationLinkAdded(locLink);
+			return true;
+		} finally {
+			if (locked) {
+				endWrite();
+			}
 		}
 	}
 	
@@ -133,41 +187,19 @@ public class GeographicalMap implements IHasUniqueId {
 	 * be the first GeographicalRegion. Note that the GeographicalLocations must already be
 	 * registered with a GeographicalRegion, usually through a GeographicalMap. Additionally,
 	 * this putLocationLink method is the only one that requires a search to find the parent
-	 * id's as well.
+	 * id's as well, which is answered by the location index.
 	 * @param locLink the LocationLink to insert
 	 * @param idOfGL1 the id of the first GeographicalLocation to be linked
 	 * @param idOfGL2 the id of the second GeographicalLocation to be linked
 	 * @return true if successfully inserted, false otherwise
 	 */
 	public boolean putLocationLink(LocationLink locLink, int idOfGL1, int idOfGL2) {
-		int idOfGR1 = -1;
-		int idOfGR2 = -1;
-		for (GeographicalRegion gR : geoRegions.values()) {
-			if (gR.getChildLocs().containsKey(idOfGL1)) {
-				idOfGR1 = gR.getUniqueId().getId();
-			} else if (gR.getChildLocs().containsKey(idOfGL2)) {
-				idOfGR2 = gR.getUniqueId().getId();
-			}
-			if (idOfGR1 != -1 && idOfGR2 != -1) {
-				break;
-			}
-		}
-		if (idOfGR1 == -1 || idOfGR2 == -1) {
-			for (GeographicalRegion gR : regLinks.values()) {
-				if (gR.getChildLocs().containsKey(idOfGL1)) {
-					idOfGR1 = gR.getUniqueId().getId();
-				} else if (gR.getChildLocs().containsKey(idOfGL2)) {
-					idOfGR2 = gR.getUniqueId().getId();
-				}
-				if (idOfGR1 != -1 && idOfGR2 != -1) {
-					break;
-				}
-			}
-		}
-		if (idOfGR1 == -1 || idOfGR2 == -1) {
+		GeographicalRegion gR1 = getOwnerOfLocation(idOfGL1);
+		GeographicalRegion gR2 = getOwnerOfLocation(idOfGL2);
+		if (gR1 == null || gR2 == null) {
 			return false;
 		}
-		return this.putLocationLink(locLink, idOfGR1, idOfGL1, idOfGR2, idOfGL2);
+		return this.putLocationLink(locLink, gR1.getUniqueId().getId(), idOfGL1, gR2.getUniqueId().getId(), idOfGL2);
 	}
 	
 	/**
@@ -188,14 +220,26 @@ public class GeographicalMap implements IHasUniqueId {
 	 * @return the LocationLink removed, null if unsuccessful
 	 */
 	public LocationLink removeLocationLink(int idOfLL, int idOfGR) {
-		GeographicalRegion gR = geoRegions.get(idOfGR);
-		if (gR == null) {
-			gR = regLinks.get(idOfGR);
-		}
-		if (gR == null) {
-			return null;
+		boolean locked = beginMapWrite();
+		try {
+			GeographicalRegion gR = geoRegions.get(idOfGR);
+			if (gR == null) {
+				gR = regLinks.get(idOfGR);
+			}
+			if (gR == null) {
+				return null;
+			}
+			LocationLink temp = gR.removeLocationLink(idOfLL);
+			if (temp != null) {
+				locOwners.remove(idOfLL);
+				connectivity.locationsRemoved();
+			}
+			return temp;
+		} finally {
+			if (locked) {
+				endWrite();
+			}
 		}
-		return gR.removeLocationLink(idOfLL);
 	}
 	
 	/**
@@ -211,31 +255,17 @@ public class GeographicalMap implements IHasUniqueId {
 	}
 	
 	/**
-	 * Removes a LocaitonLink with the specified id from this GeographicalMap. Note that
-	 * this removeLocationLink method requires a search to complete
+	 * Removes a LocaitonLink with the specified id from this GeographicalMap, finding
+	 * its parent through the location index
 	 * @param idOfLL the id of the LocationLink to remove
 	 * @return the LocationLink removed if successful, or null if unsuccessful
 	 */
 	public LocationLink removeLocationLink(int idOfLL) {
-		int idOfGR = -1;
-		for (GeographicalRegion gR : geoRegions.values()) {
-			if (gR.getChildLocs().containsKey(idOfLL)) {
-				idOfGR = gR.getUniqueId().getId();
-				break;
-			}
-		}
-		if (idOfGR == -1) {
-			for (GeographicalRegion gR : regLinks.values()) {
-				if (gR.getChildLocs().containsKey(idOfLL)) {
-					idOfGR = gR.getUniqueId().getId();
-					break;
-				}
-			}
-		}
-		if (idOfGR == -1) {
+		GeographicalRegion gR = getOwnerOfLocation(idOfLL);
+		if (gR == null) {
 			return null;
 		}
-		return this.removeLocationLink(idOfLL, idOfGR);
+		return this.removeLocationLink(idOfLL, gR.getUniqueId().getId());
 	}
 	
 	/**
@@ -257,14 +287,21 @@ public class GeographicalMap implements IHasUniqueId {
 	 * @return true if the add was successful, false otherwise
 	 */
 	public boolean registerGeoLocation(GeographicalLocation gL, int idOfGeoReg) {
-		if (gL instanceof LocationLink) {
-			return false;
-		}
-		GeographicalRegion temp = geoRegions.get(idOfGeoReg);
-		if (temp == null) {
-			return false;
+		boolean locked = beginMapWrite();
+		try {
+			if (gL instanceof LocationLink) {
+				return false;
+			}
+			GeographicalRegion temp = geoRegions.get(idOfGeoReg);
+			if (temp == null) {
+				return false;
+			}
+			return temp.registerChildLoc(gL);
+		} finally {
+			if (locked) {
+				endWrite();
+			}
 		}
-		return temp.registerChildLoc(gL);
 	}
 	
 	/**
@@ -289,14 +326,21 @@ public class GeographicalMap implements IHasUniqueId {
 	 * @return true if the removal is successful, false otherwise
 	 */
 	public GeographicalLocation unregisterGeoLocation(int idOfGR, int idOfGL) {
-		GeographicalRegion gR = geoRegions.get(idOfGR);
-		if (gR == null) {
-			gR = regLinks.get(idOfGR);
-		}
-		if (gR != null && !(gR.getChildLocs().get(idOfGL) instanceof LocationLink)) {
-			return gR.unregisterChildLoc(idOfGL);
+		boolean locked = beginMapWrite();
+		try {
+			GeographicalRegion gR = geoRegions.get(idOfGR);
+			if (gR == null) {
+				gR = regLinks.get(idOfGR);
+			}
+			if (gR != null && gR.getChildLocs().containsKey(idOfGL) && !(gR.getChildLocs().get(idOfGL) instanceof LocationLink)) {
+				return gR.unregisterChildLoc(idOfGL);
+			}
+			return null;
+		} finally {
+			if (locked) {
+				endWrite();
+			}
 		}
-		return null;
 	}
 	
 	/**
@@ -313,22 +357,128 @@ public class GeographicalMap implements IHasUniqueId {
 	
 	/**
 	 * Remove a GeographicalLocation from a GeographicalRegion based off of ids.
-	 * LocationLinks should not be removed in this manner. This searches all
-	 * available regions to attempt to remove the location. Returns true if the
-	 * removal is successful, and false otherwise
+	 * LocationLinks should not be removed in this manner. The region is found
+	 * through the location index. Returns true if the removal is successful, and
+	 * false otherwise
 	 * @param idOfGl the id of the GeographicalLocation that will be removed
 	 * @return true if the removal is successful, false otherwise
 	 */
 	public GeographicalLocation unregisterGeoLocation(int idOfGL) {
-		for (GeographicalRegion gR : geoRegions.values()) {
-			GeographicalLocation temp = gR.getChildLocById(idOfGL);
-			if (temp != null && !(temp instanceof LocationLink)) {
-				return gR.unregisterChildLoc(idOfGL);
-			} else if (temp != null && temp instanceof LocationLink) {
-				return null;
+		GeographicalRegion gR = getOwnerOfLocation(idOfGL);
+		if (gR == null) {
+			return null;
+		}
+		return this.unregisterGeoLocation(gR.getUniqueId().getId(), idOfGL);
+	}
+	
+	/**
+	 * Returns the region that owns the GeographicalLocation or LocationLink
+	 * with the specified id, according to the location index
+	 * @param idOfGL the id of the GeographicalLocation or LocationLink
+	 * @return the owning GeographicalRegion, or null if the location does not
+	 * belong to a region of this map
+	 */
+	public GeographicalRegion getOwnerOfLocation(int idOfGL) {
+		GeographicalRegion gR = locOwners.get(idOfGL);
+		if (gR == null || !gR.getChildLocs().containsKey(idOfGL)) {
+			return null;
+		}
+		return gR;
+	}
+	
+	/**
+	 * Adds every child location of a region entering the map to the
+	 * location index and the location grid
+	 * @param gR the region entering the map
+	 */
+	private void indexChildLocs(GeographicalRegion gR) {
+		gR.owningMap = this;
+		for (GeographicalLocation gL : gR.getChildLocs().values()) {
+			locOwners.put(gL.getUniqueId().getId(), gR);
+			if (!(gL instanceof LocationLink)) {
+				locationGrid.insert(gL, gL.getxCoord(), gL.getyCoord());
+			}
+		}
+	}
+	
+	/**
+	 * Removes every child location of a region leaving the map from the
+	 * location index and the location grid
+	 * @param gR the region leaving the map
+	 */
+	private void unindexChildLocs(GeographicalRegion gR) {
+		gR.owningMap = null;
+		for (GeographicalLocation gL : gR.getChildLocs().values()) {
+			Integer id = gL.getUniqueId().getId();
+			if (locOwners.get(id) == gR) {
+				locOwners.remove(id);
+				if (!(gL instanceof LocationLink)) {
+					locationGrid.remove(gL, gL.getxCoord(), gL.getyCoord());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Adds a location or LocationLink just registered on a region of this
+	 * map to the location index, and a location to the location grid
+	 * @param gR the region of this map holding the location
+	 * @param gL the location added
+	 */
+	void locationAdded(GeographicalRegion gR, GeographicalLocation gL) {
+		locOwners.put(gL.getUniqueId().getId(), gR);
+		if (!(gL instanceof LocationLink)) {
+			locationGrid.insert(gL, gL.getxCoord(), gL.getyCoord());
+		}
+	}
+	
+	/**
+	 * Removes a location just unregistered from a region of this map from
+	 * the location index and the location grid, along with the links that
+	 * went with it
+	 * @param gL the location removed
+	 * @param links the LocationLinks the location had
+	 */
+	void locationRemoved(GeographicalLocation gL, ArrayList<LocationLink> links) {
+		locOwners.remove(gL.getUniqueId().getId());
+		locationGrid.remove(gL, gL.getxCoord(), gL.getyCoord());
+		unindexRemovedLinks(links);
+		connectivity.locationsRemoved();
+	}
+	
+	/**
+	 * Keeps the region grid in step when a region of this map is moved
+	 * @param gR the region that moved
+	 * @param oldX the x coordinate of the region before it moved
+	 * @param oldY the y coordinate of the region before it moved
+	 */
+	void regionMoved(GeographicalRegion gR, int oldX, int oldY) {
+		regionGrid.move(gR, oldX, oldY, gR.getxCoord(), gR.getyCoord());
+	}
+	
+	/**
+	 * Keeps the location grid in step when a location of this map is moved
+	 * @param gL the location that moved
+	 * @param oldX the x coordinate of the location before it moved
+	 * @param oldY the y coordinate of the location before it moved
+	 */
+	void locationMoved(GeographicalLocation gL, int oldX, int oldY) {
+		locationGrid.move(gL, oldX, oldY, gL.getxCoord(), gL.getyCoord());
+	}
+	
+	/**
+	 * Removes LocationLinks from the location index if they are no longer
+	 * held by the region indexed as their owner
+	 * @param links the LocationLinks that may have been removed
+	 */
+	private void unindexRemovedLinks(ArrayList<LocationLink> links) {
+		for (LocationLink l : links) {
+			int id = l.getUniqueId().getId();
+			GeographicalRegion owner = locOwners.get(id);
+			if (owner != null && !owner.getChildLocs().containsKey(id)) {
+				locOwners.remove(id);
 			}
 		}
-		return null;
 	}
 	
 	/**
@@ -339,14 +489,91 @@ public class GeographicalMap implements IHasUniqueId {
 	 * map, false otherwise
 	 */
 	public boolean registerGeoRegion(GeographicalRegion gR) {
-		if (gR instanceof RegionLink) {
-			return false;
-		}
-		if (geoRegions.containsKey(gR.getUniqueId().getId())) {
-			return false;
+		boolean locked = beginMapWrite();
+		try {
+			if (gR instanceof RegionLink) {
+				return false;
+			}
+			if (geoRegions.containsKey(gR.getUniqueId().getId())) {
+				return false;
+			}
+			addCheckedRegion(gR);
+			return true;
+		} finally {
+			if (locked) {
+				endWrite();
+			}
 		}
+	}
+	
+	/**
+	 * Adds a region that is known not to be in this map yet
+	 * @param gR the region to add
+	 */
+	void addCheckedRegion(GeographicalRegion gR) {
 		geoRegions.put(gR.getUniqueId().getId(), gR);
-		return true;
+		indexChildLocs(gR);
+		regionGrid.insert(gR, gR.getxCoord(), gR.getyCoord());
+		connectivity.regionAdded(gR);
+		regionChanged(gR);
+		modCount++;
+	}
+	
+	/**
+	 * Adds a location to a region of this map that is known not to hold
+	 * it yet
+	 * @param gL the location to add
+	 * @param gR the region of this map receiving the location
+	 */
+	void addCheckedLocation(GeographicalLocation gL, GeographicalRegion gR) {
+		gR.registerChildLoc(gL);
+	}
+	
+	/**
+	 * Records a RegionLink already joined to its two regions
+	 * @param rL the region link to add
+	 */
+	void addCheckedRegionLink(RegionLink rL) {
+		regLinks.put(rL.getUniqueId().getId(), rL);
+		indexChildLocs(rL);
+		connectivity.regionLinkAdded(rL);
+		regionChanged(rL);
+		regionChanged(rL.getLoc1());
+		regionChanged(rL.getLoc2());
+		modCount++;
+	}
+	
+	/**
+	 * Records a LocationLink already joined to its two locations and held
+	 * by its parent region
+	 * @param lL the location link to add
+	 */
+	void addCheckedLocationLink(LocationLink lL) {
+		locOwners.put(lL.getUniqueId().getId(), lL.getParent());
+		regionChanged(lL.getParent());
+		connectivity.locationLinkAdded(lL);
+	}
+	
+	/**
+	 * Grows the maps of this GeographicalMap ahead of adding many regions,
+	 * region links and locations at once
+	 * @param regions the number of regions to be added
+	 * @param regionLinks the number of region links to be added
+	 * @param locations the number of locations and location links to be added
+	 */
+	void ensureCapacity(int regions, int regionLinks, int locations) {
+		geoRegions = presized(geoRegions, regions);
+		regLinks = presized(regLinks, regionLinks);
+		locOwners = presized(locOwners, locations);
+	}
+	
+	private static <V> HashMap<Integer, V> presized(HashMap<Integer, V> current, int adding) {
+		if (adding <= 0) {
+			return current;
+		}
+		HashMap<Integer, V> bigger = new HashMap<Integer, V>((int)((current.size() + adding) / 0.75f) + 1);
+		bigger.putAll(current);
+		return bigger;
 	}
 	
 	public GeographicalRegion unregisterGeoRegion(GeographicalRegion gR) {
@@ -362,19 +589,34 @@ public class GeographicalMap implements IHasUniqueId {
 	 * in this map
 	 */
 	public GeographicalRegion unregisterGeoRegion(int id) {
-		GeographicalRegion gr = geoRegions.remove(id);
-		if (gr == null) {
-			return null;
-		}
-		if (gr instanceof RegionLink) {
-			return null;
-		}
-		gr.isolateThisRegionLocationLinks();
-		for (RegionLink rL : gr.getPaths().values()) {
-			this.removeRegionLink(rL.getUniqueId().getId());
-			gr.unregisterRegionLink(rL.getUniqueId().getId());
+		boolean locked = beginMapWrite();
+		try {
+			GeographicalRegion gr = geoRegions.remove(id);
+			if (gr == null) {
+				return null;
+			}
+			if (gr instanceof RegionLink) {
+				return null;
+			}
+			gr.isolateThisRegionLocationLinks();
+			unindexChildLocs(gr);
+			regionGrid.remove(gr, gr.getxCoord(), gr.getyCoord());
+			for (RegionLink rL : gr.getPaths().values()) {
+				this.removeRegionLink(rL.getUniqueId().getId());
+				gr.unregisterRegionLink(rL.getUniqueId().getId());
+			}
+			connectivity.regionsRemoved();
+			regionChanged(gr);
+			modCount++;
+			if (pager != null) {
+				pager.regionRemoved(gr);
+			}
+			return gr;
+		} finally {
+			if (locked) {
+				endWrite();
+			}
 		}
-		return gr;
 	}
 	
 	public RegionLink removeRegionLink(RegionLink rL) {
@@ -389,19 +631,36 @@ public class GeographicalMap implements IHasUniqueId {
 	 * @return the RegionLink removed, or null if no such link existed
 	 */
 	public RegionLink removeRegionLink(int id) {
-		RegionLink temp = regLinks.remove(id);
-		if (temp == null) {
-			return null;
-		}
-		temp.getLoc1().unregisterRegionLink(temp.getUniqueId().getId());
-		temp.getLoc2().unregisterRegionLink(temp.getUniqueId().getId());
-		temp.isolateThisRegionLocationLinks();
-		temp.setLoc1(null);
-		temp.setLoc2(null);
-		for (RegionLink rL : temp.getPaths().values()) {
-			temp.unregisterRegionLink(rL.getUniqueId().getId());
+		boolean locked = beginMapWrite();
+		try {
+			if (!regLinks.containsKey(id)) {
+				return null;
+			}
+			beforeLinkChange();
+			RegionLink temp = regLinks.remove(id);
+			regionChanged(temp);
+			regionChanged(temp.getLoc1());
+			regionChanged(temp.getLoc2());
+			temp.getLoc1().unregisterRegionLink(temp.getUniqueId().getId());
+			temp.getLoc2().unregisterRegionLink(temp.getUniqueId().getId());
+			temp.isolateThisRegionLocationLinks();
+			unindexChildLocs(temp);
+			temp.setLoc1(null);
+			temp.setLoc2(null);
+			for (RegionLink rL : temp.getPaths().values()) {
+				temp.unregisterRegionLink(rL.getUniqueId().getId());
+			}
+			connectivity.regionsRemoved();
+			if (distanceOracle != null) {
+				distanceOracle.linkRemoved(temp);
+			}
+			modCount++;
+			return temp;
+		} finally {
+			if (locked) {
+				endWrite();
+			}
 		}
-		return temp;
 	}
 	
 	/**
@@ -433,56 +692,680 @@ public class GeographicalMap implements IHasUniqueId {
 	 * the new RegionLink trying to be inserted (prevents double-pathing)
 	 */
 	public boolean putRegLinkBetween(RegionLink freshRL, int idFirstGR, int idSecondGR) {
-		if (idFirstGR == idSecondGR) {
-			return false;
-		}
-		GeographicalRegion r1 = null;
-		boolean rLink1 = false;
-		if (geoRegions.containsKey(idFirstGR)) {
-			r1 = geoRegions.get(idFirstGR);
-		} else if (regLinks.containsKey(idFirstGR)) {
-			r1 = regLinks.get(idFirstGR);
-			if (r1.getPathById(freshRL.getUniqueId().getId()) != null) {
+		boolean locked = beginMapWrite();
+		try {
+			if (idFirstGR == idSecondGR) {
 				return false;
 			}
-			rLink1 = true;
-		} else {
-			return false;
-		}
-		GeographicalRegion r2 = null;
-		boolean rLink2 = false;
-		if (geoRegions.containsKey(idSecondGR)) {
-			r2 = geoRegions.get(idSecondGR);
-		} else if (regLinks.containsKey(idSecondGR)) {
-			r2 = regLinks.get(idFirstGR);
-			if (r2.getPathById(freshRL.getUniqueId().getId()) != null) {
+			beforeLinkChange();
+			GeographicalRegion r1 = null;
+			boolean rLink1 = false;
+			if (geoRegions.containsKey(idFirstGR)) {
+				r1 = geoRegions.get(idFirstGR);
+			} else if (regLinks.containsKey(idFirstGR)) {
+				r1 = regLinks.get(idFirstGR);
+				if (r1.getPathById(freshRL.getUniqueId().getId()) != null) {
+					return false;
+				}
+				rLink1 = true;
+			} else {
+				return false;
+			}
+			GeographicalRegion r2 = null;
+			boolean rLink2 = false;
+			if (geoRegions.containsKey(idSecondGR)) {
+				r2 = geoRegions.get(idSecondGR);
+			} else if (regLinks.containsKey(idSecondGR)) {
+				r2 = regLinks.get(idFirstGR);
+				if (r2.getPathById(freshRL.getUniqueId().getId()) != null) {
+					return false;
+				}
+				rLink2 = true;
+			} else {
+				return false;
+			}
+			freshRL.setLoc1(r1);
+			freshRL.setLoc2(r2);
+			if (!(r1.registerRegionLink(freshRL) && r2.registerRegionLink(freshRL))) {
+				r1.unregisterRegionLink(freshRL.getUniqueId().getId());
+				r2.unregisterRegionLink(freshRL.getUniqueId().getId());
+				return false;
+			}
+			if (rLink1 && !((RegionLink)r1).changeRegLinkDir(freshRL, freshRL.getDirFromGeoReg(idFirstGR).opposite())) {
+				r1.unregisterRegionLink(freshRL.getUniqueId().getId());
+				r2.unregisterRegionLink(freshRL.getUniqueId().getId());
 				return false;
 			}
-			rLink2 = true;
+			if (rLink2 && !((RegionLink)r2).changeRegLinkDir(freshRL, freshRL.getDirFromGeoReg(idSecondGR).opposite())) {
+				r1.unregisterRegionLink(freshRL.getUniqueId().getId());
+				r2.unregisterRegionLink(freshRL.getUniqueId().getId());
+				return false;
+			}
+			regLinks.put(freshRL.getUniqueId().getId(), freshRL);
+			indexChildLocs(freshRL);
+			connectivity.regionLinkAdded(freshRL);
+			if (distanceOracle != null) {
+				distanceOracle.linkAdded(freshRL);
+			}
+			regionChanged(freshRL);
+			regionChanged(r1);
+			regionChanged(r2);
+			modCount++;
+			return true;
+		} finally {
+			if (locked) {
+				endWrite();
+			}
+		}
+	}
+	
+	/**
+	 * Finds the shortest route between two regions or region links of this
+	 * map, travelling across RegionLinks
+	 * @param idFromGR the id of the region to start from
+	 * @param idToGR the id of the region to reach
+	 * @param algorithm the search algorithm to use
+	 * @return the route found, or null if either region is not in this map
+	 * or they are not connected, which is found without searching when the
+	 * connectivity index can tell
+	 */
+	public GeographicalRoute<GeographicalRegion, RegionLink> findRegionRoute(int idFromGR, int idToGR, RoutingAlgorithm algorithm) {
+		GeographicalRegion from = getRegionOrLink(idFromGR);
+		GeographicalRegion to = getRegionOrLink(idToGR);
+		if (from == null || to == null || !connectivity.areRegionsConnected(idFromGR, idToGR)) {
+			return null;
+		}
+		return getRouter().findRoute(from, to, algorithm);
+	}
+	
+	/**
+	 * Finds the shortest route between two locations of this map, travelling
+	 * across LocationLinks, including edge links into other regions
+	 * @param idFromGL the id of the location to start from
+	 * @param idToGL the id of the location to reach
+	 * @param algorithm the search algorithm to use
+	 * @return the route found, or null if either location is not in this map
+	 * or they are not connected, which is found without searching when the
+	 * connectivity index can tell
+	 */
+	public GeographicalRoute<GeographicalLocation, LocationLink> findLocationRoute(int idFromGL, int idToGL, RoutingAlgorithm algorithm) {
+		GeographicalRegion fromGR = getOwnerOfLocation(idFromGL);
+		GeographicalRegion toGR = getOwnerOfLocation(idToGL);
+		if (fromGR == null || toGR == null || !connectivity.areLocationsConnected(idFromGL, idToGL)) {
+			return null;
+		}
+		return getRouter().findRoute(fromGR.getChildLocById(idFromGL), toGR.getChildLocById(idToGL), null, algorithm);
+	}
+	
+	/**
+	 * Returns the router this map uses for its route queries, creating it
+	 * on first use. The router keeps its search state between queries
+	 * @return the router of this map
+	 */
+	public GeographicalRouter getRouter() {
+		if (router == null) {
+			router = new GeographicalRouter(geoRegions.size() + regLinks.size() + locOwners.size());
+		}
+		return router;
+	}
+	
+	/**
+	 * Returns the region or region link with the specified id
+	 * @param id the id of the region or region link
+	 * @return the region or region link, or null if there is none
+	 */
+	GeographicalRegion getRegionOrLink(int id) {
+		GeographicalRegion gR = geoRegions.get(id);
+		if (gR == null) {
+			gR = regLinks.get(id);
+		}
+		return gR;
+	}
+
+	/**
+	 * Starts a batch of coordinate changes. Until the matching commit, moving
+	 * a region or location of this map only updates its own coordinates and
+	 * marks the links attached to it; their lengths and directions keep
+	 * their old values. Batches may be nested, and only the outermost commit
+	 * recomputes the links
+	 */
+	public void beginCoordinateBatch() {
+		batchDepth++;
+	}
+	
+	/**
+	 * Returns whether a batch of coordinate changes is open
+	 * @return true between beginCoordinateBatch and its commit
+	 */
+	public boolean isBatchingCoordinates() {
+		return batchDepth > 0;
+	}
+	
+	/**
+	 * Ends a batch of coordinate changes, recomputing the length and
+	 * directions of every link marked during the batch exactly once
+	 * @return the number of links recomputed
+	 */
+	public int commitCoordinateBatch() {
+		return commitCoordinateBatch(null);
+	}
+	
+	/**
+	 * Ends a batch of coordinate changes, recomputing the length and
+	 * directions of every link marked during the batch exactly once. The
+	 * links are split into chunks run on the executor, and the regions
+	 * affected are marked modified afterwards on the calling thread. The
+	 * links of any failed chunk are recomputed again on the calling thread
+	 * @param executor the executor to recompute links on, or null to
+	 * recompute them on the calling thread
+	 * @return the number of links recomputed, or 0 if an outer batch is
+	 * still open
+	 */
+	public int commitCoordinateBatch(ExecutorService executor) {
+		boolean locked = beginMapWrite();
+		try {
+			if (batchDepth == 0 || --batchDepth > 0) {
+				return 0;
+			}
+			final RegionLink[] rLinks = dirtyRegionLinks.toArray(new RegionLink[dirtyRegionLinks.size()]);
+			final LocationLink[] lLinks = dirtyLocationLinks.toArray(new LocationLink[dirtyLocationLinks.size()]);
+			dirtyRegionLinks.clear();
+			dirtyLocationLinks.clear();
+			recomputeLinkGeometry(executor, rLinks, lLinks);
+			for (RegionLink rL : rLinks) {
+				rL.geometryDirty = false;
+				if (rL.getLoc1() != null && rL.getLoc2() != null) {
+					rL.markGeometryModified();
+				}
+			}
+			for (LocationLink lL : lLinks) {
+				lL.geometryDirty = false;
+				lL.markEndsModified();
+			}
+			return rLinks.length + lLinks.length;
+		} finally {
+			if (locked) {
+				endWrite();
+			}
+		}
+	}
+	
+	/**
+	 * Recomputes the geometry of every link given, in chunks on the executor
+	 * if there is one and there are enough links, or on the calling thread
+	 * otherwise. Does not mark anything modified
+	 * @param executor the executor to use, or null
+	 * @param rLinks the region links to recompute
+	 * @param lLinks the location links to recompute
+	 */
+	static void recomputeLinkGeometry(ExecutorService executor, RegionLink[] rLinks, LocationLink[] lLinks) {
+		if (executor != null && rLinks.length + lLinks.length > BATCH_CHUNK_SIZE) {
+			recomputeInParallel(executor, rLinks, lLinks);
 		} else {
-			return false;
+			recomputeLinks(rLinks, lLinks, 0, rLinks.length + lLinks.length);
+		}
+	}
+	
+	/**
+	 * Recomputes the links in chunks on the executor, waiting for every
+	 * chunk and recomputing the links of any failed chunk on the calling
+	 * thread
+	 */
+	private static void recomputeInParallel(ExecutorService executor, final RegionLink[] rLinks, final LocationLink[] lLinks) {
+		int total = rLinks.length + lLinks.length;
+		ArrayList<Future<Object>> chunks = new ArrayList<Future<Object>>();
+		for (int start = 0; start < total; start += BATCH_CHUNK_SIZE) {
+			final int from = start;
+			final int to = Math.min(total, start + BATCH_CHUNK_SIZE);
+			chunks.add(executor.submit(new Callable<Object>() {
+				@Override
+				public Object call() {
+					recomputeLinks(rLinks, lLinks, from, to);
+					return null;
+				}
+			}));
+		}
+		boolean interrupted = false;
+		for (int i = 0; i < chunks.size(); i++) {
+			while (true) {
+				try {
+					chunks.get(i).get();
+					break;
+				} catch (ExecutionException e) {
+					ExceptionManager.SYS_EXCEPTION_MANAGER.throwException(e, Level.WARNING, CoreConstants.SYS_ERR_FILE);
+					recomputeLinks(rLinks, lLinks, i * BATCH_CHUNK_SIZE, Math.min(total, (i + 1) * BATCH_CHUNK_SIZE));
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/**
+	 * Recomputes the links between two positions, counting the region links
+	 * first and the location links after them
+	 */
+	private static void recomputeLinks(RegionLink[] rLinks, LocationLink[] lLinks, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (i < rLinks.length) {
+				rLinks[i].recomputeGeometry();
+			} else {
+				lLinks[i - rLinks.length].recomputeGeometry();
+			}
 		}
-		freshRL.setLoc1(r1);
-		freshRL.setLoc2(r2);
-		if (!(r1.registerRegionLink(freshRL) && r2.registerRegionLink(freshRL))) {
-			r1.unregisterRegionLink(freshRL.getUniqueId().getId());
-			r2.unregisterRegionLink(freshRL.getUniqueId().getId());
+	}
+	
+	/**
+	 * Defers recomputing a RegionLink's geometry to the end of the open
+	 * coordinate batch, if there is one
+	 * @param rL the link whose geometry has changed
+	 * @return true if the link was deferred, false if no batch is open and
+	 * the caller should recompute it now
+	 */
+	boolean deferLinkGeometry(RegionLink rL) {
+		if (batchDepth == 0) {
 			return false;
 		}
-		if (rLink1 && !((RegionLink)r1).changeRegLinkDir(freshRL, freshRL.getDirFromGeoReg(idFirstGR).opposite())) {
-			r1.unregisterRegionLink(freshRL.getUniqueId().getId());
-			r2.unregisterRegionLink(freshRL.getUniqueId().getId());
+		if (!rL.geometryDirty) {
+			rL.geometryDirty = true;
+			dirtyRegionLinks.add(rL);
+		}
+		return true;
+	}
+	
+	/**
+	 * Defers recomputing a LocationLink's geometry to the end of the open
+	 * coordinate batch, if there is one
+	 * @param lL the link whose geometry has changed
+	 * @return true if the link was deferred, false if no batch is open and
+	 * the caller should recompute it now
+	 */
+	boolean deferLinkGeometry(LocationLink lL) {
+		if (batchDepth == 0) {
 			return false;
 		}
-		if (rLink2 && !((RegionLink)r2).changeRegLinkDir(freshRL, freshRL.getDirFromGeoReg(idSecondGR).opposite())) {
-			r1.unregisterRegionLink(freshRL.getUniqueId().getId());
-			r2.unregisterRegionLink(freshRL.getUniqueId().getId());
+		if (!lL.geometryDirty) {
+			lL.geometryDirty = true;
+			dirtyLocationLinks.add(lL);
+		}
+		return true;
+	}
+	
+	/**
+	 * Returns the regions of this map within a distance of a point
+	 * @param x the x coordinate of the point
+	 * @param y the y coordinate of the point
+	 * @param radius the largest distance from the point
+	 * @return the regions in range, in no particular order
+	 */
+	public ArrayList<GeographicalRegion> findRegionsInRange(int x, int y, int radius) {
+		return regionGrid.findInRange(x, y, radius);
+	}
+	
+	/**
+	 * Returns the regions of this map inside a bounding box
+	 * @param minX the smallest x coordinate of the box
+	 * @param minY the smallest y coordinate of the box
+	 * @param maxX the largest x coordinate of the box
+	 * @param maxY the largest y coordinate of the box
+	 * @return the regions inside the box, in no particular order
+	 */
+	public ArrayList<GeographicalRegion> findRegionsInBox(int minX, int minY, int maxX, int maxY) {
+		return regionGrid.findInBox(minX, minY, maxX, maxY);
+	}
+	
+	/**
+	 * Returns the regions of this map nearest to a point, closest first
+	 * @param x the x coordinate of the point
+	 * @param y the y coordinate of the point
+	 * @param k the largest number of regions to return
+	 * @return up to k regions ordered by distance
+	 */
+	public ArrayList<GeographicalRegion> findNearestRegions(int x, int y, int k) {
+		return regionGrid.findNearest(x, y, k);
+	}
+	
+	/**
+	 * Returns the locations of this map within a distance of a point.
+	 * LocationLinks are not included
+	 * @param x the x coordinate of the point
+	 * @param y the y coordinate of the point
+	 * @param radius the largest distance from the point
+	 * @return the locations in range, in no particular order
+	 */
+	public ArrayList<GeographicalLocation> findLocationsInRange(int x, int y, int radius) {
+		return locationGrid.findInRange(x, y, radius);
+	}
+	
+	/**
+	 * Returns the locations of this map inside a bounding box. LocationLinks
+	 * are not included
+	 * @param minX the smallest x coordinate of the box
+	 * @param minY the smallest y coordinate of the box
+	 * @param maxX the largest x coordinate of the box
+	 * @param maxY the largest y coordinate of the box
+	 * @return the locations inside the box, in no particular order
+	 */
+	public ArrayList<GeographicalLocation> findLocationsInBox(int minX, int minY, int maxX, int maxY) {
+		return locationGrid.findInBox(minX, minY, maxX, maxY);
+	}
+	
+	/**
+	 * Returns the locations of this map nearest to a point, closest first.
+	 * LocationLinks are not included
+	 * @param x the x coordinate of the point
+	 * @param y the y coordinate of the point
+	 * @param k the largest number of locations to return
+	 * @return up to k locations ordered by distance
+	 */
+	public ArrayList<GeographicalLocation> findNearestLocations(int x, int y, int k) {
+		return locationGrid.findNearest(x, y, k);
+	}
+	
+	/**
+	 * Returns the grid indexing the regions of this map, whose query methods
+	 * can also fill a caller's list to avoid allocating one per query
+	 * @return the region grid
+	 */
+	public SpatialGrid<GeographicalRegion> getRegionGrid() {
+		return regionGrid;
+	}
+	
+	/**
+	 * Returns the grid indexing the locations of this map, whose query
+	 * methods can also fill a caller's list to avoid allocating one per query
+	 * @return the location grid
+	 */
+	public SpatialGrid<GeographicalLocation> getLocationGrid() {
+		return locationGrid;
+	}
+	
+	/**
+	 * Returns a counter that changes whenever a region or region link is
+	 * added to or removed from this map. Changes inside a region are
+	 * counted by the region's own modification count
+	 * @return the modification count of this map
+	 */
+	public int getModificationCount() {
+		return modCount;
+	}
+	
+	/**
+	 * Returns the index telling whether regions or locations of this map
+	 * are joined by links at all
+	 * @return the connectivity index of this map
+	 */
+	public GeographicalConnectivity getConnectivity() {
+		return connectivity;
+	}
+	
+	/**
+	 * Starts caching the distances between regions of this map, replacing
+	 * any previous cache
+	 * @param capacity the most pairs of regions to keep
+	 * @return the new distance cache
+	 */
+	public RegionDistanceOracle enableDistanceOracle(int capacity) {
+		distanceOracle = new RegionDistanceOracle(this, capacity);
+		return distanceOracle;
+	}
+	
+	/**
+	 * Stops caching the distances between regions of this map
+	 */
+	public void disableDistanceOracle() {
+		distanceOracle = null;
+	}
+	
+	/**
+	 * Returns the cache of distances between regions of this map
+	 * @return the distance cache, or null if it is not enabled
+	 */
+	public RegionDistanceOracle getDistanceOracle() {
+		return distanceOracle;
+	}
+	
+	/**
+	 * Starts keeping the locations of only some regions of this map in
+	 * memory, replacing any previous pager. Regions holding locations stay
+	 * resident until the budget is exceeded; the others are stubs until
+	 * they are touched
+	 * @param store the store loading and saving the locations of regions
+	 * @param locationBudget the most locations and location links to keep
+	 * in memory
+	 * @return the new pager
+	 */
+	public GeographicalRegionPager enablePaging(IRegionStore store, int locationBudget) {
+		pager = new GeographicalRegionPager(this, store, locationBudget);
+		return pager;
+	}
+	
+	/**
+	 * Stops paging the regions of this map. Regions that are stubs stay
+	 * empty
+	 */
+	public void disablePaging() {
+		pager = null;
+	}
+	
+	/**
+	 * Returns the pager of this map
+	 * @return the pager, or null if paging is not enabled
+	 */
+	public GeographicalRegionPager getPager() {
+		return pager;
+	}
+	
+	/**
+	 * Records that a region of this map was used, loading its locations if
+	 * it is paged out
+	 * @param gR the region used
+	 */
+	void regionTouched(GeographicalRegion gR) {
+		if (pager != null) {
+			pager.touch(gR);
+		}
+	}
+	
+	/**
+	 * Removes every location and location link of a region from this map,
+	 * leaving the region and its RegionLinks in place. Edge links to other
+	 * regions are unregistered from their other ends as well
+	 * @param gR the region to empty
+	 */
+	void dropRegionContents(GeographicalRegion gR) {
+		ArrayList<GeographicalLocation> dropped = new ArrayList<GeographicalLocation>(gR.childLocs.values());
+		for (GeographicalLocation gL : dropped) {
+			if (gL instanceof LocationLink) {
+				locOwners.remove(gL.getUniqueId().getId());
+				continue;
+			}
+			for (LocationLink lL : gL.getPaths().values()) {
+				GeographicalLocation other = gL.equals(lL.getLoc1()) ? lL.getLoc2() : lL.getLoc1();
+				if (other == null || other.getParent() == gR) {
+					continue;
+				}
+				int id = lL.getUniqueId().getId();
+				other.unregisterLocationLink(id);
+				GeographicalRegion owner = lL.getParent();
+				if (owner != null && owner != gR && owner.childLocs.remove(id) != null) {
+					owner.markModified();
+				}
+				if (locOwners.get(id) != gR) {
+					locOwners.remove(id);
+				}
+				if (other.getParent() != null) {
+					other.getParent().markModified();
+				}
+			}
+			locOwners.remove(gL.getUniqueId().getId());
+			locationGrid.remove(gL, gL.getxCoord(), gL.getyCoord());
+		}
+		gR.childLocs.clear();
+		gR.markModified();
+		topologyModified();
+		connectivity.locationsRemoved();
+	}
+	
+	/**
+	 * Tells the indexes of this map that its links are about to change
+	 */
+	void beforeLinkChange() {
+		connectivity.beforeChange();
+		if (distanceOracle != null) {
+			distanceOracle.beforeChange();
+		}
+	}
+	
+	/**
+	 * Records that the length of a RegionLink of this map may have changed
+	 * @param rL the region link that changed
+	 */
+	void regionLinkChanged(RegionLink rL) {
+		if (distanceOracle != null) {
+			distanceOracle.linkChanged(rL);
+		}
+	}
+	
+	/**
+	 * Empties the distance cache ahead of many link changes at once
+	 */
+	void clearDistanceCache() {
+		if (distanceOracle != null) {
+			distanceOracle.clear();
+		}
+	}
+	
+	/**
+	 * Returns a counter that changes whenever a link is registered on or
+	 * unregistered from a region or location of this map
+	 * @return the topology count of this map
+	 */
+	int getTopologyCount() {
+		return topologyCount;
+	}
+	
+	/**
+	 * Records that a link was registered on or unregistered from a region
+	 * or location of this map
+	 */
+	void topologyModified() {
+		topologyCount++;
+	}
+	
+	/**
+	 * Records that a region or RegionLink of this map, or its membership in
+	 * this map, changed, so that the next view recopies it. Nothing is
+	 * recorded until a view has been published
+	 * @param gR the region that changed
+	 * @throws IllegalStateException if concurrent reads are enabled and the
+	 * calling thread is not inside beginWrite and endWrite
+	 */
+	void regionChanged(GeographicalRegion gR) {
+		if (view != null && gR != null) {
+			changedRegions.add(gR);
+			if (concurrentReads && !writeLock.isHeldByCurrentThread()) {
+				throw new IllegalStateException("Map " + getUniqueId().getId() + " changed outside beginWrite and endWrite while concurrent reads are enabled");
+			}
+		}
+	}
+	
+	/**
+	 * Lets other threads read this map through getView while one thread at
+	 * a time changes it between beginWrite and endWrite. Other threads must
+	 * not use the live collections returned by this map, its regions or
+	 * its locations once this mode is on.
+	 * <p>
+	 * The methods of this map that change it take the write lock themselves.
+	 * Changes made directly on its regions, locations and links must be
+	 * wrapped in beginWrite and endWrite by the caller; made outside a write,
+	 * they throw an IllegalStateException once recorded.
+	 */
+	public void enableConcurrentReads() {
+		beginWrite();
+		try {
+			concurrentReads = true;
+			publishView();
+		} finally {
+			endWrite();
+		}
+	}
+	
+	/**
+	 * Returns whether views of this map are published for other threads
+	 * @return true if concurrent reads are enabled
+	 */
+	public boolean isConcurrentReads() {
+		return concurrentReads;
+	}
+	
+	/**
+	 * Starts a change made by a method of this map, taking the write lock
+	 * if concurrent reads are enabled
+	 * @return true if the lock was taken and endWrite must be called
+	 */
+	private boolean beginMapWrite() {
+		if (!concurrentReads) {
 			return false;
 		}
-		regLinks.put(freshRL.getUniqueId().getId(), freshRL);
+		beginWrite();
 		return true;
 	}
-
+	
+	/**
+	 * Starts a change to this map, waiting until no other thread is changing
+	 * it. Calls may be nested; every call must be matched by endWrite
+	 */
+	public void beginWrite() {
+		writeLock.lock();
+	}
+	
+	/**
+	 * Ends a change started with beginWrite. When the outermost change ends
+	 * and concurrent reads are enabled, a new view is published if the map
+	 * changed
+	 */
+	public void endWrite() {
+		try {
+			if (concurrentReads && writeLock.getHoldCount() == 1 && !changedRegions.isEmpty()) {
+				publishView();
+			}
+		} finally {
+			writeLock.unlock();
+		}
+	}
+	
+	/**
+	 * Returns an unmodifiable view of the regions, links and locations of
+	 * this map. With concurrent reads enabled this is the view published by
+	 * the last completed write and is returned without locking; otherwise
+	 * the view is brought up to date first and must be requested by the
+	 * thread changing the map
+	 * @return a consistent view of this map
+	 */
+	public GeographicalMapView getView() {
+		GeographicalMapView current = view;
+		if (!concurrentReads && (current == null || !changedRegions.isEmpty())) {
+			current = publishView();
+		}
+		return current;
+	}
+	
+	/**
+	 * Copies the regions changed since the previous view into a new view,
+	 * sharing everything else with the previous one, and publishes it
+	 */
+	private GeographicalMapView publishView() {
+		GeographicalMapView current = GeographicalMapView.of(this, view, changedRegions);
+		changedRegions.clear();
+		view = current;
+		return current;
+	}
+	
 	/**
 	 * Gets the name of this map
 	 * @return the name of this GeographicalMap
@@ -0,0 +1,109 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.geography;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Describes the layout of saved map files and holds the encoding helpers
+ * used by {@link GeographicalMapSerializer}.
+ * <p>
+ * A map file starts with the magic number and version, the map's name and
+ * id, the counts of regions, region links, locations and location links,
+ * and a table of the class names the places were saved from. Then come
+ * the regions, region links, locations and location links in that order,
+ * one record each. A record starts with its length, so readers can skip
+ * fields added by later versions. Integers are written as zigzag varints,
+ * a string as its UTF-8 length and bytes with -1 standing for null, and
+ * a direction as its ordinal with -1 standing for null.
+ * <p>
+ * Every place record holds the kind index, id, id type, name, coordinates
+ * and aspect references (id type and aspect id pairs). A region link adds
+ * the ids of its two regions, a location the id of the region or region
+ * link holding it and a location link the region and location ids of its
+ * two ends. Links end with their directions from each end and their length.
+ * @author SuperSimpleGuy
+ */
+final class GeographicalMapFormat {
+
+	static final int MAGIC = 0x44594D50;
+	static final short VERSION = 1;
+	
+	static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private static final CardinalDirection[] DIRECTIONS = CardinalDirection.values();
+	
+	private GeographicalMapFormat() {
+	}
+	
+	static void putVarLong(ByteBuffer b, long value) {
+		long v = (value << 1) ^ (value >> 63);
+		while ((v & ~0x7FL) != 0) {
+			b.put((byte)((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		b.put((byte)v);
+	}
+	
+	static long getVarLong(ByteBuffer b) {
+		long v = 0;
+		int shift = 0;
+		byte cur;
+		do {
+			cur = b.get();
+			v |= (long)(cur & 0x7F) << shift;
+			shift += 7;
+		} while ((cur & 0x80) != 0);
+		return (v >>> 1) ^ -(v & 1);
+	}
+	
+	static int getVarInt(ByteBuffer b) {
+		return (int)getVarLong(b);
+	}
+	
+	static void putString(ByteBuffer b, byte[] utf8) {
+		if (utf8 == null) {
+			putVarLong(b, -1);
+			return;
+		}
+		putVarLong(b, utf8.length);
+		b.put(utf8);
+	}
+	
+	static String getString(ByteBuffer b) {
+		int length = getVarInt(b);
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		b.get(bytes);
+		return new String(bytes, UTF8);
+	}
+	
+	static void putDirection(ByteBuffer b, CardinalDirection dir) {
+		putVarLong(b, dir == null ? -1 : dir.ordinal());
+	}
+	
+	static CardinalDirection getDirection(ByteBuffer b) {
+		int ordinal = getVarInt(b);
+		return ordinal < 0 || ordinal >= DIRECTIONS.length ? null : DIRECTIONS[ordinal];
+	}
+	
+}
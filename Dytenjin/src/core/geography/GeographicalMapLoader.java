@@ -0,0 +1,522 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.geography;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+
+import core.CoreConstants;
+import core.system.ExceptionManager;
+
+/**
+ * Adds many regions, locations, RegionLinks and LocationLinks to a
+ * GeographicalMap at once. Items are queued with the add methods and
+ * added by load, which first checks every item against the map and the
+ * rest of the queue, then wires the accepted items into the map in one
+ * pass with its maps grown ahead of time, and finally computes the length
+ * and directions of every new link. The checks of the links and their
+ * geometry can run on an ExecutorService. The whole load is one write to
+ * the map, so readers of its views see either none or all of it.
+ * <p>
+ * Accepted items end up exactly as if they had been added one at a time
+ * with registerGeoRegion, registerGeoLocation, putRegLinkBetween and
+ * putLocationLink, except that a LocationLink may join locations of any
+ * two regions of the map. Links must join plain regions and plain
+ * locations, not other links, but locations may be held by RegionLinks as
+ * well as by regions. Items that cannot be added are listed in the
+ * returned GeographicalLoadReport.
+ * @author SuperSimpleGuy
+ */
+public class GeographicalMapLoader {
+
+	private static final int CHUNK_SIZE = 4096;
+	
+	private GeographicalMap map;
+	private ArrayList<GeographicalRegion> regions;
+	private ArrayList<GeographicalLocation> locations;
+	private IntList locationRegionIds;
+	private ArrayList<RegionLink> regionLinks;
+	private IntList regionLinkIds;
+	private ArrayList<LocationLink> locationLinks;
+	private IntList locationLinkIds;
+	
+	/**
+	 * Creates a loader adding items to the specified map
+	 * @param map the map to load items into
+	 */
+	public GeographicalMapLoader(GeographicalMap map) {
+		this.map = map;
+		this.regions = new ArrayList<GeographicalRegion>();
+		this.locations = new ArrayList<GeographicalLocation>();
+		this.locationRegionIds = new IntList();
+		this.regionLinks = new ArrayList<RegionLink>();
+		this.regionLinkIds = new IntList();
+		this.locationLinks = new ArrayList<LocationLink>();
+		this.locationLinkIds = new IntList();
+	}
+	
+	/**
+	 * Queues a region to be added
+	 * @param gR the region to add
+	 */
+	public void addRegion(GeographicalRegion gR) {
+		regions.add(gR);
+	}
+	
+	/**
+	 * Queues every region of a collection to be added
+	 * @param gRs the regions to add
+	 */
+	public void addRegions(Iterable<? extends GeographicalRegion> gRs) {
+		for (GeographicalRegion gR : gRs) {
+			regions.add(gR);
+		}
+	}
+	
+	/**
+	 * Queues a location to be added to a region or RegionLink, which may be
+	 * in the map already or queued in this loader
+	 * @param gL the location to add
+	 * @param idOfGR the id of the region or RegionLink receiving the location
+	 */
+	public void addLocation(GeographicalLocation gL, int idOfGR) {
+		locations.add(gL);
+		locationRegionIds.add(idOfGR);
+	}
+	
+	/**
+	 * Queues locations to be added to regions
+	 * @param gLs the locations to add
+	 * @param idsOfGR the id of the region receiving each location
+	 */
+	public void addLocations(GeographicalLocation[] gLs, int[] idsOfGR) {
+		for (int i = 0; i < gLs.length; i++) {
+			addLocation(gLs[i], idsOfGR[i]);
+		}
+	}
+	
+	/**
+	 * Queues a RegionLink to be put between two regions
+	 * @param rL the RegionLink to add
+	 * @param idFirstGR the id of the first region to link
+	 * @param idSecondGR the id of the second region to link
+	 */
+	public void addRegionLink(RegionLink rL, int idFirstGR, int idSecondGR) {
+		regionLinks.add(rL);
+		regionLinkIds.add(idFirstGR);
+		regionLinkIds.add(idSecondGR);
+	}
+	
+	/**
+	 * Queues a LocationLink to be put between two locations. The link's
+	 * parent will be the first region
+	 * @param lL the LocationLink to add
+	 * @param idOfGR1 the id of the region of the first location
+	 * @param idOfGL1 the id of the first location
+	 * @param idOfGR2 the id of the region of the second location
+	 * @param idOfGL2 the id of the second location
+	 */
+	public void addLocationLink(LocationLink lL, int idOfGR1, int idOfGL1, int idOfGR2, int idOfGL2) {
+		locationLinks.add(lL);
+		locationLinkIds.add(idOfGR1);
+		locationLinkIds.add(idOfGL1);
+		locationLinkIds.add(idOfGR2);
+		locationLinkIds.add(idOfGL2);
+	}
+	
+	/**
+	 * Adds every queued item on the calling thread
+	 * @return the report of what was added and rejected
+	 */
+	public GeographicalLoadReport load() {
+		return load(null);
+	}
+	
+	/**
+	 * Adds every queued item, checking links and computing their geometry
+	 * in chunks on the executor, and empties the queue
+	 * @param executor the executor to use, or null to do everything on the
+	 * calling thread
+	 * @return the report of what was added and rejected
+	 */
+	public GeographicalLoadReport load(ExecutorService executor) {
+		map.beginWrite();
+		try {
+			map.beforeLinkChange();
+			return loadQueued(executor);
+		} finally {
+			map.endWrite();
+		}
+	}
+	
+	private GeographicalLoadReport loadQueued(ExecutorService executor) {
+		GeographicalLoadReport report = new GeographicalLoadReport();
+		
+		HashMap<Integer, GeographicalRegion> newRegions = new HashMap<Integer, GeographicalRegion>(capacityFor(regions.size()));
+		ArrayList<GeographicalRegion> acceptedRegions = new ArrayList<GeographicalRegion>(regions.size());
+		for (GeographicalRegion gR : regions) {
+			if (gR == null) {
+				report.reject(gR, "Region is null");
+			} else if (gR instanceof RegionLink) {
+				report.reject(gR, "RegionLinks cannot be added as regions");
+			} else if (map.getGeoRegions().containsKey(gR.getUniqueId().getId()) || newRegions.containsKey(gR.getUniqueId().getId())) {
+				report.reject(gR, "Duplicate region id " + gR.getUniqueId().getId());
+			} else {
+				newRegions.put(gR.getUniqueId().getId(), gR);
+				acceptedRegions.add(gR);
+			}
+		}
+		
+		HashSet<Integer> linkIds = new HashSet<Integer>(capacityFor(regionLinks.size()));
+		boolean[] regionLinkTaken = new boolean[regionLinks.size()];
+		for (int i = 0; i < regionLinks.size(); i++) {
+			RegionLink rL = regionLinks.get(i);
+			regionLinkTaken[i] = rL == null || map.getRegLinks().containsKey(rL.getUniqueId().getId()) || !linkIds.add(rL.getUniqueId().getId());
+		}
+		RegionLinkCheck rCheck = new RegionLinkCheck(newRegions, regionLinkTaken);
+		runChecks(executor, rCheck, regionLinks.size());
+		HashMap<Integer, RegionLink> newRegionLinks = new HashMap<Integer, RegionLink>(capacityFor(regionLinks.size()));
+		ArrayList<RegionLink> acceptedRLinks = new ArrayList<RegionLink>(regionLinks.size());
+		for (int i = 0; i < regionLinks.size(); i++) {
+			if (rCheck.reasons[i] != null) {
+				report.reject(regionLinks.get(i), rCheck.reasons[i]);
+			} else {
+				newRegionLinks.put(regionLinks.get(i).getUniqueId().getId(), regionLinks.get(i));
+				acceptedRLinks.add(regionLinks.get(i));
+			}
+		}
+		
+		HashMap<Integer, GeographicalLocation> newLocations = new HashMap<Integer, GeographicalLocation>(capacityFor(locations.size() + locationLinks.size()));
+		HashMap<Integer, GeographicalRegion> newLocationRegions = new HashMap<Integer, GeographicalRegion>(capacityFor(locations.size()));
+		HashMap<GeographicalRegion, Integer> locationCounts = new HashMap<GeographicalRegion, Integer>();
+		ArrayList<GeographicalLocation> acceptedLocations = new ArrayList<GeographicalLocation>(locations.size());
+		ArrayList<GeographicalRegion> acceptedLocationRegions = new ArrayList<GeographicalRegion>(locations.size());
+		for (int i = 0; i < locations.size(); i++) {
+			GeographicalLocation gL = locations.get(i);
+			GeographicalRegion gR = findHolder(locationRegionIds.get(i), newRegions, newRegionLinks);
+			if (gL == null) {
+				report.reject(gL, "Location is null");
+			} else if (gL instanceof LocationLink) {
+				report.reject(gL, "LocationLinks cannot be added as locations");
+			} else if (gR == null) {
+				report.reject(gL, "Unknown region id " + locationRegionIds.get(i));
+			} else if (isLocationIdTaken(gL.getUniqueId().getId(), newLocations) || gR.getChildLocs().containsKey(gL.getUniqueId().getId())) {
+				report.reject(gL, "Duplicate location id " + gL.getUniqueId().getId());
+			} else {
+				newLocations.put(gL.getUniqueId().getId(), gL);
+				newLocationRegions.put(gL.getUniqueId().getId(), gR);
+				acceptedLocations.add(gL);
+				acceptedLocationRegions.add(gR);
+				Integer count = locationCounts.get(gR);
+				locationCounts.put(gR, count == null ? 1 : count + 1);
+			}
+		}
+		
+		boolean[] locationLinkTaken = new boolean[locationLinks.size()];
+		for (int i = 0; i < locationLinks.size(); i++) {
+			LocationLink lL = locationLinks.get(i);
+			locationLinkTaken[i] = lL == null || isLocationIdTaken(lL.getUniqueId().getId(), newLocations);
+			if (!locationLinkTaken[i]) {
+				newLocations.put(lL.getUniqueId().getId(), lL);
+			}
+		}
+		
+		LocationLinkCheck lCheck = new LocationLinkCheck(newLocations, newLocationRegions, newRegions, newRegionLinks, locationLinkTaken);
+		runChecks(executor, lCheck, locationLinks.size());
+		
+		ArrayList<LocationLink> acceptedLLinks = new ArrayList<LocationLink>(locationLinks.size());
+		for (int i = 0; i < locationLinks.size(); i++) {
+			if (lCheck.reasons[i] != null) {
+				report.reject(locationLinks.get(i), lCheck.reasons[i]);
+			} else {
+				acceptedLLinks.add(locationLinks.get(i));
+			}
+		}
+		
+		map.ensureCapacity(acceptedRegions.size(), acceptedRLinks.size(), acceptedLocations.size() + acceptedLLinks.size());
+		for (GeographicalRegion gR : acceptedRegions) {
+			map.addCheckedRegion(gR);
+		}
+		for (GeographicalRegion gR : locationCounts.keySet()) {
+			gR.ensureChildCapacity(locationCounts.get(gR));
+		}
+		for (int i = 0; i < acceptedLocations.size(); i++) {
+			map.addCheckedLocation(acceptedLocations.get(i), acceptedLocationRegions.get(i));
+		}
+		for (int i = 0; i < regionLinks.size(); i++) {
+			if (rCheck.reasons[i] == null) {
+				RegionLink rL = regionLinks.get(i);
+				rL.setEnds(rCheck.ends1[i], rCheck.ends2[i]);
+				rCheck.ends1[i].registerRegionLink(rL);
+				rCheck.ends2[i].registerRegionLink(rL);
+				map.addCheckedRegionLink(rL);
+			}
+		}
+		for (int i = 0; i < locationLinks.size(); i++) {
+			if (lCheck.reasons[i] == null) {
+				LocationLink lL = locationLinks.get(i);
+				GeographicalLocation gL1 = lCheck.ends1[i];
+				GeographicalLocation gL2 = lCheck.ends2[i];
+				gL1.registerLocationLink(lL);
+				gL2.registerLocationLink(lL);
+				lL.setParent(gL1.getParent());
+				lL.setEnds(gL1, gL2);
+				gL1.getParent().childLocs.put(lL.getUniqueId().getId(), lL);
+				map.addCheckedLocationLink(lL);
+			}
+		}
+		
+		RegionLink[] rLinks = acceptedRLinks.toArray(new RegionLink[acceptedRLinks.size()]);
+		LocationLink[] lLinks = acceptedLLinks.toArray(new LocationLink[acceptedLLinks.size()]);
+		GeographicalMap.recomputeLinkGeometry(executor, rLinks, lLinks);
+		if (rLinks.length > 0) {
+			map.clearDistanceCache();
+		}
+		for (RegionLink rL : rLinks) {
+			rL.markModified();
+		}
+		for (LocationLink lL : lLinks) {
+			lL.markEndsModified();
+		}
+		
+		report.setAdded(acceptedRegions.size(), acceptedLocations.size(), rLinks.length, lLinks.length);
+		regions.clear();
+		locations.clear();
+		locationRegionIds.clear();
+		regionLinks.clear();
+		regionLinkIds.clear();
+		locationLinks.clear();
+		locationLinkIds.clear();
+		return report;
+	}
+	
+	/**
+	 * Returns the region of the map or of the queue with the specified id
+	 */
+	private GeographicalRegion findRegion(int id, HashMap<Integer, GeographicalRegion> newRegions) {
+		GeographicalRegion gR = map.getGeoRegions().get(id);
+		return gR != null ? gR : newRegions.get(id);
+	}
+	
+	/**
+	 * Returns the region or RegionLink of the map, or the region or accepted
+	 * RegionLink of the queue, with the specified id
+	 */
+	private GeographicalRegion findHolder(int id, HashMap<Integer, GeographicalRegion> newRegions, HashMap<Integer, RegionLink> newRegionLinks) {
+		GeographicalRegion gR = findRegion(id, newRegions);
+		if (gR == null) {
+			gR = map.getRegLinks().get(id);
+		}
+		return gR != null ? gR : newRegionLinks.get(id);
+	}
+	
+	private boolean isLocationIdTaken(int id, HashMap<Integer, GeographicalLocation> newLocations) {
+		return map.getOwnerOfLocation(id) != null || newLocations.containsKey(id);
+	}
+	
+	private static int capacityFor(int size) {
+		return (int)(size / 0.75f) + 1;
+	}
+	
+	/**
+	 * Runs a link check, in chunks on the executor if there is one and there
+	 * are enough links. Waits for every chunk, then checks the links of any
+	 * failed chunk again on the calling thread
+	 */
+	private void runChecks(ExecutorService executor, final LinkCheck check, int count) {
+		if (executor != null && count > CHUNK_SIZE) {
+			ArrayList<Future<Object>> chunks = new ArrayList<Future<Object>>();
+			for (int start = 0; start < count; start += CHUNK_SIZE) {
+				final int from = start;
+				final int to = Math.min(count, start + CHUNK_SIZE);
+				chunks.add(executor.submit(new Callable<Object>() {
+					@Override
+					public Object call() {
+						check.check(from, to);
+						return null;
+					}
+				}));
+			}
+			boolean interrupted = false;
+			for (int i = 0; i < chunks.size(); i++) {
+				while (true) {
+					try {
+						chunks.get(i).get();
+						break;
+					} catch (ExecutionException e) {
+						ExceptionManager.SYS_EXCEPTION_MANAGER.throwException(e, Level.WARNING, CoreConstants.SYS_ERR_FILE);
+						check.check(i * CHUNK_SIZE, Math.min(count, (i + 1) * CHUNK_SIZE));
+						break;
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			return;
+		}
+		check.check(0, count);
+	}
+	
+	/**
+	 * Checks a range of queued links, recording why each rejected link
+	 * cannot be added
+	 */
+	private abstract class LinkCheck {
+		protected String[] reasons;
+		
+		abstract void check(int from, int to);
+	}
+	
+	/**
+	 * Checks queued RegionLinks against the map and the queued regions,
+	 * which are only read while checking, and records the regions each
+	 * link joins
+	 */
+	private class RegionLinkCheck extends LinkCheck {
+		private HashMap<Integer, GeographicalRegion> newRegions;
+		private boolean[] taken;
+		private GeographicalRegion[] ends1;
+		private GeographicalRegion[] ends2;
+		
+		private RegionLinkCheck(HashMap<Integer, GeographicalRegion> newRegions, boolean[] taken) {
+			this.newRegions = newRegions;
+			this.taken = taken;
+			this.ends1 = new GeographicalRegion[taken.length];
+			this.ends2 = new GeographicalRegion[taken.length];
+			this.reasons = new String[taken.length];
+		}
+		
+		@Override
+		void check(int from, int to) {
+			for (int i = from; i < to; i++) {
+				int id1 = regionLinkIds.get(2 * i);
+				int id2 = regionLinkIds.get(2 * i + 1);
+				if (taken[i]) {
+					reasons[i] = regionLinks.get(i) == null ? "RegionLink is null" : "Duplicate RegionLink id " + regionLinks.get(i).getUniqueId().getId();
+				} else if (id1 == id2) {
+					reasons[i] = "RegionLink joins region " + id1 + " to itself";
+				} else if ((ends1[i] = findRegion(id1, newRegions)) == null) {
+					reasons[i] = "Unknown region id " + id1;
+				} else if ((ends2[i] = findRegion(id2, newRegions)) == null) {
+					reasons[i] = "Unknown region id " + id2;
+				} else if (ends1[i].getPaths().containsKey(regionLinks.get(i).getUniqueId().getId())
+						|| ends2[i].getPaths().containsKey(regionLinks.get(i).getUniqueId().getId())) {
+					reasons[i] = "Region already has a path with id " + regionLinks.get(i).getUniqueId().getId();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Checks queued LocationLinks against the map and the queued locations,
+	 * which are only read while checking, and records the locations each
+	 * link joins
+	 */
+	private class LocationLinkCheck extends LinkCheck {
+		private HashMap<Integer, GeographicalLocation> newLocations;
+		private HashMap<Integer, GeographicalRegion> newLocationRegions;
+		private HashMap<Integer, GeographicalRegion> newRegions;
+		private HashMap<Integer, RegionLink> newRegionLinks;
+		private boolean[] taken;
+		private GeographicalLocation[] ends1;
+		private GeographicalLocation[] ends2;
+		
+		private LocationLinkCheck(HashMap<Integer, GeographicalLocation> newLocations, HashMap<Integer, GeographicalRegion> newLocationRegions,
+				HashMap<Integer, GeographicalRegion> newRegions, HashMap<Integer, RegionLink> newRegionLinks, boolean[] taken) {
+			this.newLocations = newLocations;
+			this.newLocationRegions = newLocationRegions;
+			this.newRegions = newRegions;
+			this.newRegionLinks = newRegionLinks;
+			this.taken = taken;
+			this.ends1 = new GeographicalLocation[taken.length];
+			this.ends2 = new GeographicalLocation[taken.length];
+			this.reasons = new String[taken.length];
+		}
+		
+		@Override
+		void check(int from, int to) {
+			for (int i = from; i < to; i++) {
+				int idGL1 = locationLinkIds.get(4 * i + 1);
+				int idGL2 = locationLinkIds.get(4 * i + 3);
+				if (taken[i]) {
+					reasons[i] = locationLinks.get(i) == null ? "LocationLink is null" : "Duplicate location id " + locationLinks.get(i).getUniqueId().getId();
+				} else if (idGL1 == idGL2) {
+					reasons[i] = "LocationLink joins location " + idGL1 + " to itself";
+				} else if ((ends1[i] = findLocation(locationLinkIds.get(4 * i), idGL1)) == null) {
+					reasons[i] = "Unknown location id " + idGL1 + " in region " + locationLinkIds.get(4 * i);
+				} else if ((ends2[i] = findLocation(locationLinkIds.get(4 * i + 2), idGL2)) == null) {
+					reasons[i] = "Unknown location id " + idGL2 + " in region " + locationLinkIds.get(4 * i + 2);
+				}
+			}
+		}
+		
+		/**
+		 * Returns the plain location with the specified id if it belongs to,
+		 * or is queued for, the region or RegionLink with the specified id
+		 */
+		private GeographicalLocation findLocation(int idOfGR, int idOfGL) {
+			GeographicalRegion gR = findHolder(idOfGR, newRegions, newRegionLinks);
+			if (gR == null) {
+				return null;
+			}
+			GeographicalLocation gL = gR.getChildLocs().get(idOfGL);
+			if (gL == null) {
+				gL = newLocations.get(idOfGL);
+				if (gL == null || newLocationRegions.get(idOfGL) != gR) {
+					return null;
+				}
+			}
+			return gL instanceof LocationLink ? null : gL;
+		}
+	}
+	
+	/**
+	 * A growable list of ints
+	 */
+	private static class IntList {
+		private int[] values = new int[16];
+		private int size;
+		
+		private void add(int value) {
+			if (size == values.length) {
+				int[] bigger = new int[size * 2];
+				System.arraycopy(values, 0, bigger, 0, size);
+				values = bigger;
+			}
+			values[size++] = value;
+		}
+		
+		private int get(int index) {
+			return values[index];
+		}
+		
+		private void clear() {
+			size = 0;
+		}
+	}
+}
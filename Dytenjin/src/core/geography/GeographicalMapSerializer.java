@@ -0,0 +1,530 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.geography;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+import core.management.game.IHasUniqueId;
+import core.management.game.UniqueId;
+import core.management.ingame.Aspect;
+import core.management.ingame.AspectManager;
+
+/**
+ * Saves a GeographicalMap to a compact binary file and reads it back,
+ * laid out as described by {@link GeographicalMapFormat}. Files are
+ * written through a buffered FileChannel. They can be read back either by
+ * streaming the file through a buffer or by mapping the whole file into
+ * memory, and either way the file is read once from start to end. The
+ * places read back are created by an IGeographicalMapFactory and joined
+ * by a GeographicalMapLoader, then the saved directions and lengths of
+ * the links are restored, so lengths set by hand survive a round trip.
+ * <p>
+ * Only what the map is made of is saved: owners, stats and the caches of
+ * the map are not.
+ * @author SuperSimpleGuy
+ */
+public class GeographicalMapSerializer {
+
+	private static final int BUFFER_SIZE = 65536;
+	private static final int FIELDS_SIZE = 64;
+	private static final int ASPECT_SIZE = 20;
+	
+	private IGeographicalMapFactory factory;
+	
+	/**
+	 * Creates a serializer reading places back through a factory
+	 * @param factory the factory creating the places of maps read back
+	 */
+	public GeographicalMapSerializer(IGeographicalMapFactory factory) {
+		this.factory = factory;
+	}
+	
+	/**
+	 * Saves a map to a file, replacing the file if it exists. Location
+	 * links that no longer join two locations of the map are left out
+	 * @param map the map to save
+	 * @param fileName the file to write
+	 * @throws IOException if the file cannot be written, or the map has a
+	 * RegionLink joined to another RegionLink, which map files cannot hold
+	 */
+	public void write(GeographicalMap map, String fileName) throws IOException {
+		for (RegionLink rL : map.getRegLinks().values()) {
+			if (rL.getLoc1() instanceof RegionLink || rL.getLoc2() instanceof RegionLink) {
+				throw new IOException("RegionLink " + rL.getUniqueId().getId() + " joins another RegionLink, which map files cannot hold");
+			}
+		}
+		ArrayList<GeographicalLocation> locations = new ArrayList<GeographicalLocation>();
+		LinkedHashMap<Integer, LocationLink> lLinks = new LinkedHashMap<Integer, LocationLink>();
+		addLocationsOf(map, map.getGeoRegions().values(), locations, lLinks);
+		addLocationsOf(map, map.getRegLinks().values(), locations, lLinks);
+		LinkedHashMap<String, Integer> kinds = new LinkedHashMap<String, Integer>();
+		addKinds(map.getGeoRegions().values(), kinds);
+		addKinds(map.getRegLinks().values(), kinds);
+		addKinds(locations, kinds);
+		addKinds(lLinks.values(), kinds);
+		
+		Output out = new Output(fileName);
+		try {
+			out.room(FIELDS_SIZE);
+			out.record.putInt(GeographicalMapFormat.MAGIC);
+			out.record.putShort(GeographicalMapFormat.VERSION);
+			out.endRaw();
+			out.putString(map.getName());
+			out.room(FIELDS_SIZE);
+			putId(out.record, map.getUniqueId());
+			GeographicalMapFormat.putVarLong(out.record, map.getGeoRegions().size());
+			GeographicalMapFormat.putVarLong(out.record, map.getRegLinks().size());
+			GeographicalMapFormat.putVarLong(out.record, locations.size());
+			GeographicalMapFormat.putVarLong(out.record, lLinks.size());
+			GeographicalMapFormat.putVarLong(out.record, kinds.size());
+			for (String kind : kinds.keySet()) {
+				out.putString(kind);
+			}
+			out.endRecord();
+			
+			for (GeographicalRegion gR : map.getGeoRegions().values()) {
+				putPlace(out, gR, gR.getName(), gR.getxCoord(), gR.getyCoord(), gR.getAspects(), kinds);
+				out.endRecord();
+			}
+			for (RegionLink rL : map.getRegLinks().values()) {
+				putPlace(out, rL, rL.getName(), rL.getxCoord(), rL.getyCoord(), rL.getAspects(), kinds);
+				out.room(FIELDS_SIZE);
+				GeographicalMapFormat.putVarLong(out.record, rL.getLoc1().getUniqueId().getId());
+				GeographicalMapFormat.putVarLong(out.record, rL.getLoc2().getUniqueId().getId());
+				GeographicalMapFormat.putDirection(out.record, rL.getDirFromGeoReg(rL.getLoc1()));
+				GeographicalMapFormat.putDirection(out.record, rL.getDirFromGeoReg(rL.getLoc2()));
+				out.record.putDouble(rL.getLength());
+				out.endRecord();
+			}
+			for (GeographicalLocation gL : locations) {
+				putPlace(out, gL, gL.getName(), gL.getxCoord(), gL.getyCoord(), gL.getAspect(), kinds);
+				out.room(FIELDS_SIZE);
+				GeographicalMapFormat.putVarLong(out.record, map.getOwnerOfLocation(gL.getUniqueId().getId()).getUniqueId().getId());
+				out.endRecord();
+			}
+			for (LocationLink lL : lLinks.values()) {
+				GeographicalLocation gL1 = lL.getLoc1();
+				GeographicalLocation gL2 = lL.getLoc2();
+				putPlace(out, lL, lL.getName(), lL.getxCoord(), lL.getyCoord(), lL.getAspect(), kinds);
+				out.room(FIELDS_SIZE);
+				GeographicalMapFormat.putVarLong(out.record, map.getOwnerOfLocation(gL1.getUniqueId().getId()).getUniqueId().getId());
+				GeographicalMapFormat.putVarLong(out.record, gL1.getUniqueId().getId());
+				GeographicalMapFormat.putVarLong(out.record, map.getOwnerOfLocation(gL2.getUniqueId().getId()).getUniqueId().getId());
+				GeographicalMapFormat.putVarLong(out.record, gL2.getUniqueId().getId());
+				GeographicalMapFormat.putDirection(out.record, lL.getDirFromGeoLoc(gL1));
+				GeographicalMapFormat.putDirection(out.record, lL.getDirFromGeoLoc(gL2));
+				out.record.putDouble(lL.getLength());
+				out.endRecord();
+			}
+			out.writeBuffer();
+		} finally {
+			out.channel.close();
+		}
+	}
+	
+	/**
+	 * Reads a map back from a file, streaming it through a buffer
+	 * @param fileName the file to read
+	 * @return the map read back
+	 * @throws IOException if the file cannot be read, is not a saved map,
+	 * or holds places that cannot be joined
+	 */
+	public GeographicalMap read(String fileName) throws IOException {
+		FileChannel channel = new FileInputStream(fileName).getChannel();
+		try {
+			ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+			buf.flip();
+			return decode(new Input(channel, buf));
+		} finally {
+			channel.close();
+		}
+	}
+	
+	/**
+	 * Reads a map back from a file, mapping the whole file into memory
+	 * @param fileName the file to read
+	 * @return the map read back
+	 * @throws IOException if the file cannot be read, is not a saved map,
+	 * or holds places that cannot be joined
+	 */
+	public GeographicalMap readMapped(String fileName) throws IOException {
+		FileChannel channel = new FileInputStream(fileName).getChannel();
+		ByteBuffer buf;
+		try {
+			buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			channel.close();
+		}
+		return decode(new Input(null, buf));
+	}
+	
+	private GeographicalMap decode(Input in) throws IOException {
+		try {
+			if (!in.fill(6)) {
+				throw new IOException("Not a saved map: the file is too short");
+			}
+			int magic = in.buf.getInt();
+			short version = in.buf.getShort();
+			if (magic != GeographicalMapFormat.MAGIC || version > GeographicalMapFormat.VERSION) {
+				throw new IOException("Not a supported map file (magic " + Integer.toHexString(magic) + ", version " + version + ")");
+			}
+			ByteBuffer b = in.next();
+			GeographicalMap map = factory.createMap(GeographicalMapFormat.getString(b), getId(b));
+			int regionCount = GeographicalMapFormat.getVarInt(b);
+			int regionLinkCount = GeographicalMapFormat.getVarInt(b);
+			int locationCount = GeographicalMapFormat.getVarInt(b);
+			int locationLinkCount = GeographicalMapFormat.getVarInt(b);
+			String[] kinds = new String[GeographicalMapFormat.getVarInt(b)];
+			for (int i = 0; i < kinds.length; i++) {
+				kinds[i] = GeographicalMapFormat.getString(b);
+			}
+			in.finish();
+			
+			GeographicalMapLoader loader = new GeographicalMapLoader(map);
+			PlaceRecord p = new PlaceRecord();
+			for (int i = 0; i < regionCount; i++) {
+				b = in.next();
+				p.read(b, kinds);
+				loader.addRegion(factory.createRegion(p.kind, p.name, p.id, p.xCoord, p.yCoord, p.aspMan));
+				in.finish();
+			}
+			RegionLink[] rLinks = new RegionLink[regionLinkCount];
+			SavedGeometry rGeometry = new SavedGeometry(regionLinkCount);
+			for (int i = 0; i < regionLinkCount; i++) {
+				b = in.next();
+				p.read(b, kinds);
+				rLinks[i] = factory.createRegionLink(p.kind, p.name, p.id, p.xCoord, p.yCoord, p.aspMan);
+				int idFirstGR = GeographicalMapFormat.getVarInt(b);
+				int idSecondGR = GeographicalMapFormat.getVarInt(b);
+				loader.addRegionLink(rLinks[i], idFirstGR, idSecondGR);
+				rGeometry.read(b, i);
+				in.finish();
+			}
+			for (int i = 0; i < locationCount; i++) {
+				b = in.next();
+				p.read(b, kinds);
+				loader.addLocation(factory.createLocation(p.kind, p.name, p.id, p.xCoord, p.yCoord, p.aspMan), GeographicalMapFormat.getVarInt(b));
+				in.finish();
+			}
+			LocationLink[] lLinks = new LocationLink[locationLinkCount];
+			SavedGeometry lGeometry = new SavedGeometry(locationLinkCount);
+			for (int i = 0; i < locationLinkCount; i++) {
+				b = in.next();
+				p.read(b, kinds);
+				lLinks[i] = factory.createLocationLink(p.kind, p.name, p.id, p.xCoord, p.yCoord, p.aspMan);
+				int idOfGR1 = GeographicalMapFormat.getVarInt(b);
+				int idOfGL1 = GeographicalMapFormat.getVarInt(b);
+				int idOfGR2 = GeographicalMapFormat.getVarInt(b);
+				int idOfGL2 = GeographicalMapFormat.getVarInt(b);
+				loader.addLocationLink(lLinks[i], idOfGR1, idOfGL1, idOfGR2, idOfGL2);
+				lGeometry.read(b, i);
+				in.finish();
+			}
+			
+			GeographicalLoadReport report = loader.load();
+			if (!report.isComplete()) {
+				throw new IOException("Map file holds " + report.getRejectedCount() + " places that cannot be joined, the first because: " + report.getRejectionReason(0));
+			}
+			for (int i = 0; i < rLinks.length; i++) {
+				rLinks[i].restoreGeometry(rGeometry.dirsFrom1[i], rGeometry.dirsFrom2[i], rGeometry.lengths[i]);
+			}
+			for (int i = 0; i < lLinks.length; i++) {
+				lLinks[i].restoreGeometry(lGeometry.dirsFrom1[i], lGeometry.dirsFrom2[i], lGeometry.lengths[i]);
+			}
+			return map;
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Corrupt map file: a record ends early");
+		}
+	}
+	
+	/**
+	 * Adds the plain locations held by regions or RegionLinks, and the
+	 * location links they hold or are joined by
+	 */
+	private static void addLocationsOf(GeographicalMap map, Iterable<? extends GeographicalRegion> holders,
+			ArrayList<GeographicalLocation> locations, LinkedHashMap<Integer, LocationLink> lLinks) {
+		for (GeographicalRegion gR : holders) {
+			for (GeographicalLocation gL : gR.getChildLocs().values()) {
+				if (gL instanceof LocationLink) {
+					addLinkOf(map, (LocationLink)gL, lLinks);
+				} else {
+					locations.add(gL);
+					for (LocationLink lL : gL.getPaths().values()) {
+						addLinkOf(map, lL, lLinks);
+					}
+				}
+			}
+		}
+	}
+	
+	private static void addLinkOf(GeographicalMap map, LocationLink lL, LinkedHashMap<Integer, LocationLink> lLinks) {
+		GeographicalLocation gL1 = lL.getLoc1();
+		GeographicalLocation gL2 = lL.getLoc2();
+		if (gL1 != null && gL2 != null
+				&& map.getOwnerOfLocation(gL1.getUniqueId().getId()) != null
+				&& map.getOwnerOfLocation(gL2.getUniqueId().getId()) != null
+				&& !lLinks.containsKey(lL.getUniqueId().getId())) {
+			lLinks.put(lL.getUniqueId().getId(), lL);
+		}
+	}
+	
+	private static void addKinds(Iterable<?> places, LinkedHashMap<String, Integer> kinds) {
+		for (Object place : places) {
+			String kind = place.getClass().getName();
+			if (!kinds.containsKey(kind)) {
+				kinds.put(kind, kinds.size());
+			}
+		}
+	}
+	
+	/**
+	 * Starts the record of a place with the fields every place has
+	 */
+	private static void putPlace(Output out, IHasUniqueId place, String name, int xCoord, int yCoord, AspectManager aspMan, LinkedHashMap<String, Integer> kinds) {
+		out.room(FIELDS_SIZE);
+		GeographicalMapFormat.putVarLong(out.record, kinds.get(place.getClass().getName()));
+		putId(out.record, place.getUniqueId());
+		out.putString(name);
+		out.room(FIELDS_SIZE);
+		GeographicalMapFormat.putVarLong(out.record, xCoord);
+		GeographicalMapFormat.putVarLong(out.record, yCoord);
+		if (aspMan == null) {
+			GeographicalMapFormat.putVarLong(out.record, 0);
+			return;
+		}
+		out.room(FIELDS_SIZE + aspMan.getAspectTypes().size() * ASPECT_SIZE);
+		GeographicalMapFormat.putVarLong(out.record, aspMan.getAspectTypes().size());
+		for (Integer idType : aspMan.getAspectTypes()) {
+			Aspect a = aspMan.getAspect(idType);
+			UniqueId id = a == null ? null : a.getUniqueId();
+			GeographicalMapFormat.putVarLong(out.record, idType);
+			GeographicalMapFormat.putVarLong(out.record, id == null ? -1 : id.getId());
+		}
+	}
+	
+	private static void putId(ByteBuffer b, UniqueId id) {
+		GeographicalMapFormat.putVarLong(b, id.getId());
+		GeographicalMapFormat.putVarLong(b, id.getIdType());
+	}
+	
+	private static UniqueId getId(ByteBuffer b) {
+		int id = GeographicalMapFormat.getVarInt(b);
+		return new UniqueId(id, GeographicalMapFormat.getVarInt(b));
+	}
+	
+	/**
+	 * Encodes each record into a buffer of its own, then writes its length
+	 * and bytes to the output buffer, which is written through the channel
+	 * whenever it fills up
+	 */
+	private static final class Output {
+		private FileChannel channel;
+		private ByteBuffer buf;
+		private ByteBuffer record;
+		
+		private Output(String fileName) throws IOException {
+			this.channel = new FileOutputStream(fileName).getChannel();
+			this.buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+			this.record = ByteBuffer.allocate(256);
+		}
+		
+		/**
+		 * Makes sure the record buffer has room for the specified number
+		 * of bytes, growing it if it does not
+		 */
+		private void room(int bytes) {
+			if (record.remaining() < bytes) {
+				ByteBuffer bigger = ByteBuffer.allocate(Math.max(record.capacity() * 2, record.position() + bytes));
+				record.flip();
+				bigger.put(record);
+				record = bigger;
+			}
+		}
+		
+		private void putString(String s) {
+			byte[] utf8 = s == null ? null : s.getBytes(GeographicalMapFormat.UTF8);
+			room(utf8 == null ? FIELDS_SIZE : utf8.length + FIELDS_SIZE);
+			GeographicalMapFormat.putString(record, utf8);
+		}
+		
+		/**
+		 * Writes the record with its length in front
+		 */
+		private void endRecord() throws IOException {
+			record.flip();
+			ensureRoom(record.remaining() + 10);
+			GeographicalMapFormat.putVarLong(buf, record.remaining());
+			buf.put(record);
+			record.clear();
+		}
+		
+		/**
+		 * Writes the record without its length, as for the file header
+		 */
+		private void endRaw() throws IOException {
+			record.flip();
+			ensureRoom(record.remaining());
+			buf.put(record);
+			record.clear();
+		}
+		
+		private void ensureRoom(int bytes) throws IOException {
+			if (buf.remaining() >= bytes) {
+				return;
+			}
+			writeBuffer();
+			if (buf.remaining() < bytes) {
+				buf = ByteBuffer.allocateDirect(bytes + BUFFER_SIZE);
+			}
+		}
+		
+		private void writeBuffer() throws IOException {
+			buf.flip();
+			while (buf.hasRemaining()) {
+				channel.write(buf);
+			}
+			buf.clear();
+		}
+	}
+	
+	/**
+	 * Hands out one whole record at a time, either from a buffer refilled
+	 * from a channel or from a buffer holding the whole file
+	 */
+	private static final class Input {
+		private FileChannel channel;
+		private ByteBuffer buf;
+		private int end;
+		
+		private Input(FileChannel channel, ByteBuffer buf) {
+			this.channel = channel;
+			this.buf = buf;
+		}
+		
+		/**
+		 * Makes sure the buffer holds at least the specified number of
+		 * bytes, reading more from the channel if there is one
+		 * @return false if the file ends first
+		 */
+		private boolean fill(int bytes) throws IOException {
+			if (buf.remaining() >= bytes) {
+				return true;
+			}
+			if (channel == null) {
+				return false;
+			}
+			if (buf.capacity() < bytes) {
+				ByteBuffer bigger = ByteBuffer.allocate(bytes + BUFFER_SIZE);
+				bigger.put(buf);
+				buf = bigger;
+			} else {
+				buf.compact();
+			}
+			while (buf.position() < bytes && channel.read(buf) != -1) {
+			}
+			buf.flip();
+			return buf.remaining() >= bytes;
+		}
+		
+		/**
+		 * Returns the buffer positioned at the start of the next record,
+		 * holding the whole record
+		 */
+		private ByteBuffer next() throws IOException {
+			fill(10);
+			int length = GeographicalMapFormat.getVarInt(buf);
+			if (length < 0 || !fill(length)) {
+				throw new IOException("Corrupt map file: a record is cut off");
+			}
+			end = buf.position() + length;
+			return buf;
+		}
+		
+		/**
+		 * Skips whatever is left of the current record
+		 */
+		private void finish() throws IOException {
+			if (buf.position() > end) {
+				throw new IOException("Corrupt map file: a record is longer than its length");
+			}
+			buf.position(end);
+		}
+	}
+	
+	/**
+	 * The fields every place record starts with
+	 */
+	private final class PlaceRecord {
+		private String kind;
+		private UniqueId id;
+		private String name;
+		private int xCoord;
+		private int yCoord;
+		private AspectManager aspMan;
+		
+		private void read(ByteBuffer b, String[] kinds) throws IOException {
+			int kindIndex = GeographicalMapFormat.getVarInt(b);
+			if (kindIndex < 0 || kindIndex >= kinds.length) {
+				throw new IOException("Corrupt map file: unknown kind " + kindIndex);
+			}
+			kind = kinds[kindIndex];
+			id = getId(b);
+			name = GeographicalMapFormat.getString(b);
+			xCoord = GeographicalMapFormat.getVarInt(b);
+			yCoord = GeographicalMapFormat.getVarInt(b);
+			aspMan = new AspectManager();
+			int aspects = GeographicalMapFormat.getVarInt(b);
+			for (int i = 0; i < aspects; i++) {
+				int idType = GeographicalMapFormat.getVarInt(b);
+				Aspect a = factory.findAspect(idType, GeographicalMapFormat.getVarInt(b));
+				if (a != null) {
+					aspMan.addAspect(a);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * The directions and lengths saved for the links of one kind
+	 */
+	private static final class SavedGeometry {
+		private CardinalDirection[] dirsFrom1;
+		private CardinalDirection[] dirsFrom2;
+		private double[] lengths;
+		
+		private SavedGeometry(int count) {
+			dirsFrom1 = new CardinalDirection[count];
+			dirsFrom2 = new CardinalDirection[count];
+			lengths = new double[count];
+		}
+		
+		private void read(ByteBuffer b, int index) {
+			dirsFrom1[index] = GeographicalMapFormat.getDirection(b);
+			dirsFrom2[index] = GeographicalMapFormat.getDirection(b);
+			lengths[index] = b.getDouble();
+		}
+	}
+}
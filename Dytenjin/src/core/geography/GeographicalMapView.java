@@ -0,0 +1,251 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.geography;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An unmodifiable copy of the regions, RegionLinks, locations and links of
+ * a GeographicalMap, published by the map so that other threads can read
+ * a consistent graph without locking while a single writer keeps changing
+ * the map. The regions and locations themselves are shared with the map;
+ * only the collections joining them are copied.
+ * <p>
+ * A new view is derived from the previous one by recopying only the
+ * regions the map reports as changed since, and shares everything else
+ * with it, so publishing after a small change costs about the size of the
+ * regions changed rather than the size of the map. Views no longer
+ * referenced by any reader are reclaimed by the garbage collector like any
+ * other object.
+ * @author SuperSimpleGuy
+ */
+public final class GeographicalMapView {
+
+	private final long version;
+	private final IntTrieMap<GeographicalRegion> geoRegions;
+	private final IntTrieMap<RegionLink> regLinks;
+	private final IntTrieMap<RegionEntry> entries;
+	private final IntTrieMap<GeographicalRegion> locOwners;
+	
+	private GeographicalMapView(long version, IntTrieMap<GeographicalRegion> geoRegions, IntTrieMap<RegionLink> regLinks,
+			IntTrieMap<RegionEntry> entries, IntTrieMap<GeographicalRegion> locOwners) {
+		this.version = version;
+		this.geoRegions = geoRegions;
+		this.regLinks = regLinks;
+		this.entries = entries;
+		this.locOwners = locOwners;
+	}
+	
+	/**
+	 * Copies the current state of a map. Without a previous view every
+	 * region is copied; otherwise only the regions that changed since the
+	 * previous view are, including regions added to or removed from the
+	 * map. Removed regions are taken out first, so a region replaced by
+	 * another with the same id is handled. Must be called by the thread
+	 * writing to the map
+	 * @param map the map to copy
+	 * @param previous the previous view of the map, or null
+	 * @param changed the regions and RegionLinks changed since the previous view
+	 * @return the new view
+	 */
+	static GeographicalMapView of(GeographicalMap map, GeographicalMapView previous, Collection<GeographicalRegion> changed) {
+		GeographicalMapView view = previous;
+		if (view == null) {
+			view = new GeographicalMapView(0, IntTrieMap.<GeographicalRegion>empty(), IntTrieMap.<RegionLink>empty(),
+					IntTrieMap.<RegionEntry>empty(), IntTrieMap.<GeographicalRegion>empty());
+			changed = new ArrayList<GeographicalRegion>(map.getGeoRegions().values());
+			changed.addAll(map.getRegLinks().values());
+		}
+		IntTrieMap<GeographicalRegion> geoRegions = view.geoRegions;
+		IntTrieMap<RegionLink> regLinks = view.regLinks;
+		IntTrieMap<RegionEntry> entries = view.entries;
+		IntTrieMap<GeographicalRegion> locOwners = view.locOwners;
+		for (int pass = 0; pass < 2; pass++) {
+			for (GeographicalRegion gR : changed) {
+				int id = gR.getUniqueId().getId();
+				RegionEntry old = entries.get(id);
+				if (old != null && old.region != gR) {
+					old = null;
+				}
+				boolean inMap = gR instanceof RegionLink ? map.getRegLinks().get(id) == gR : map.getGeoRegions().get(id) == gR;
+				if (inMap != (pass == 1)) {
+					continue;
+				}
+				Map<Integer, GeographicalLocation> childLocs;
+				if (!inMap) {
+					if (old == null) {
+						continue;
+					}
+					geoRegions = geoRegions.get(id) == gR ? geoRegions.without(id) : geoRegions;
+					regLinks = regLinks.get(id) == gR ? regLinks.without(id) : regLinks;
+					entries = entries.without(id);
+					childLocs = Collections.emptyMap();
+				} else {
+					if (gR instanceof RegionLink) {
+						regLinks = regLinks.with(id, (RegionLink)gR);
+					} else {
+						geoRegions = geoRegions.with(id, gR);
+					}
+					childLocs = old != null && old.modCount == gR.getModificationCount() ? old.childLocs : copy(gR.getChildLocs());
+					HashMap<Integer, Map<Integer, LocationLink>> locPaths = new HashMap<Integer, Map<Integer, LocationLink>>((int)(childLocs.size() / 0.75f) + 1);
+					for (GeographicalLocation gL : childLocs.values()) {
+						locPaths.put(gL.getUniqueId().getId(), copy(gL.getPaths()));
+					}
+					entries = entries.with(id, new RegionEntry(gR, gR.getModificationCount(), copy(gR.getPaths()), childLocs, locPaths));
+				}
+				if (old != null && old.childLocs != childLocs) {
+					for (Integer idOfGL : old.childLocs.keySet()) {
+						if (!childLocs.containsKey(idOfGL) && locOwners.get(idOfGL) == gR) {
+							locOwners = locOwners.without(idOfGL);
+						}
+					}
+				}
+				if (old == null || old.childLocs != childLocs) {
+					for (Integer idOfGL : childLocs.keySet()) {
+						locOwners = locOwners.with(idOfGL, gR);
+					}
+				}
+			}
+		}
+		return new GeographicalMapView(view.version + 1, geoRegions, regLinks, entries, locOwners);
+	}
+	
+	private static <T> Map<Integer, T> copy(HashMap<Integer, T> source) {
+		if (source.isEmpty()) {
+			return Collections.emptyMap();
+		}
+		return Collections.unmodifiableMap(new HashMap<Integer, T>(source));
+	}
+	
+	/**
+	 * Returns a number that grows by one with every view published by a map
+	 * @return the version of this view
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
+	/**
+	 * Returns the regions of the map, not including RegionLinks
+	 * @return an unmodifiable map of region ids to regions
+	 */
+	public Map<Integer, GeographicalRegion> getGeoRegions() {
+		return geoRegions;
+	}
+	
+	/**
+	 * Returns the RegionLinks of the map
+	 * @return an unmodifiable map of link ids to RegionLinks
+	 */
+	public Map<Integer, RegionLink> getRegLinks() {
+		return regLinks;
+	}
+	
+	/**
+	 * Returns the region or RegionLink with the specified id
+	 * @param idOfGR the id of the region
+	 * @return the region, or null if the map had none with that id
+	 */
+	public GeographicalRegion getRegion(int idOfGR) {
+		RegionEntry entry = entries.get(idOfGR);
+		return entry == null ? null : entry.region;
+	}
+	
+	/**
+	 * Returns the RegionLinks of a region or RegionLink
+	 * @param idOfGR the id of the region
+	 * @return an unmodifiable map of link ids to RegionLinks, or null if the
+	 * map had no region with that id
+	 */
+	public Map<Integer, RegionLink> getPaths(int idOfGR) {
+		RegionEntry entry = entries.get(idOfGR);
+		return entry == null ? null : entry.paths;
+	}
+	
+	/**
+	 * Returns the locations and LocationLinks of a region
+	 * @param idOfGR the id of the region
+	 * @return an unmodifiable map of location ids to locations, or null if
+	 * the map had no region with that id
+	 */
+	public Map<Integer, GeographicalLocation> getChildLocs(int idOfGR) {
+		RegionEntry entry = entries.get(idOfGR);
+		return entry == null ? null : entry.childLocs;
+	}
+	
+	/**
+	 * Returns the region owning the location or LocationLink with the
+	 * specified id
+	 * @param idOfGL the id of the location
+	 * @return the owning region, or null if no region of the map owned it
+	 */
+	public GeographicalRegion getOwnerOfLocation(int idOfGL) {
+		GeographicalRegion gR = locOwners.get(idOfGL);
+		if (gR == null) {
+			return null;
+		}
+		RegionEntry entry = entries.get(gR.getUniqueId().getId());
+		return entry != null && entry.childLocs.containsKey(idOfGL) ? gR : null;
+	}
+	
+	/**
+	 * Returns the location or LocationLink with the specified id
+	 * @param idOfGL the id of the location
+	 * @return the location, or null if no region of the map owned it
+	 */
+	public GeographicalLocation getLocation(int idOfGL) {
+		GeographicalRegion gR = getOwnerOfLocation(idOfGL);
+		return gR == null ? null : entries.get(gR.getUniqueId().getId()).childLocs.get(idOfGL);
+	}
+	
+	/**
+	 * Returns the LocationLinks of a location owned by a region of the map
+	 * @param idOfGL the id of the location
+	 * @return an unmodifiable map of link ids to LocationLinks, or null if no
+	 * region of the map owned the location
+	 */
+	public Map<Integer, LocationLink> getLocationPaths(int idOfGL) {
+		GeographicalRegion gR = getOwnerOfLocation(idOfGL);
+		return gR == null ? null : entries.get(gR.getUniqueId().getId()).locPaths.get(idOfGL);
+	}
+	
+	/**
+	 * The copied collections of one region
+	 */
+	private static final class RegionEntry {
+		private final GeographicalRegion region;
+		private final int modCount;
+		private final Map<Integer, RegionLink> paths;
+		private final Map<Integer, GeographicalLocation> childLocs;
+		private final HashMap<Integer, Map<Integer, LocationLink>> locPaths;
+		
+		private RegionEntry(GeographicalRegion region, int modCount, Map<Integer, RegionLink> paths,
+				Map<Integer, GeographicalLocation> childLocs, HashMap<Integer, Map<Integer, LocationLink>> locPaths) {
+			this.region = region;
+			this.modCount = modCount;
+			this.paths = paths;
+			this.childLocs = childLocs;
+			this.locPaths = locPaths;
+		}
+	}
+}
@@ -18,6 +18,7 @@
 
 package core.geography;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
 import core.management.game.IHasUniqueId;
@@ -37,6 +38,9 @@ public abstract class GeographicalRegion implements IHasUniqueId {
 	private int xCoord;
 	private int yCoord;
 	private UniqueId id;
+	private int modCount;
+	
+	GeographicalMap owningMap;
 	
 	protected HashMap<Integer, RegionLink> paths;
 	protected HashMap<Integer, GeographicalLocation> childLocs;
@@ -80,6 +84,10 @@ public abstract class GeographicalRegion implements IHasUniqueId {
 		} else {
 			childLocs.put(gL.getUniqueId().getId(), gL);
 			gL.setParent(this);
+			markModified();
+			if (owningMap != null) {
+				owningMap.locationAdded(this, gL);
+			}
 			return true;
 		}
 	}
@@ -158,6 +166,14 @@ public abstract class GeographicalRegion implements IHasUniqueId {
 		newLL.setLoc1(r1);
 		newLL.setLoc2(r2);
 		childLocs.put(newLL.getUniqueId().getId(), newLL);
+		markModified();
+		if (owningMap != null) {
+			owningMap.locationAdded(this, newLL);
+		}
+		neighborParent.markModified();
+		if (r2.getParent() != null) {
+			r2.getParent().markModified();
+		}
 		return true;
 	}
 	
@@ -226,6 +242,10 @@ public abstract class GeographicalRegion implements IHasUniqueId {
 		newLL.setLoc1(r1);
 		newLL.setLoc2(r2);
 		childLocs.put(newLL.getUniqueId().getId(), newLL);
+		markModified();
+		if (owningMap != null) {
+			owningMap.locationAdded(this, newLL);
+		}
 		return true;
 	}
 	
@@ -270,9 +290,15 @@ public abstract class GeographicalRegion implements IHasUniqueId {
 		if ((gL instanceof LocationLink)) {
 			return null;
 		}
+		ArrayList<LocationLink> links = owningMap == null ? null : new ArrayList<LocationLink>(gL.getPaths().values());
 		gL.setParent(null);
 		gL.removeSelfFromParent();
-		return childLocs.remove(id);
+		markModified();
+		childLocs.remove(id);
+		if (owningMap != null) {
+			owningMap.locationRemoved(gL, links);
+		}
+		return gL;
 	}
 	
 	/**
@@ -282,6 +308,9 @@ public abstract class GeographicalRegion implements IHasUniqueId {
 	 * unique id
 	 */
 	public GeographicalLocation getChildLocById(int id) {
+		if (owningMap != null) {
+			owningMap.regionTouched(this);
+		}
 		return childLocs.get(id);
 	}
 	
@@ -293,6 +322,9 @@ public abstract class GeographicalRegion implements IHasUniqueId {
 	 * if no id was found
 	 */
 	public RegionLink getPathById(int id) {
+		if (owningMap != null) {
+			owningMap.regionTouched(this);
+		}
 		return paths.get(id);
 	}
 	
@@ -337,6 +369,7 @@ public abstract class GeographicalRegion implements IHasUniqueId {
 	 * not linked to this region
 	 */
 	public RegionLink unregisterRegionLink(int id) {
+		markTopologyModified();
 		return paths.remove(id);
 	}
 	
@@ -363,6 +396,7 @@ public abstract class GeographicalRegion implements IHasUniqueId {
 	public boolean registerRegionLink(RegionLink l) {
 		if (!paths.containsKey(l.getUniqueId().getId())) {
 			paths.put(l.getUniqueId().getId(), l);
+			markTopologyModified();
 			return true;
 		}
 		return false;
@@ -447,10 +481,64 @@ public abstract class GeographicalRegion implements IHasUniqueId {
 	 * @param newYCoord the new y coordinate for this location
 	 */
 	public void setCoords(int newXCoord, int newYCoord) {
+		int oldXCoord = this.xCoord;
+		int oldYCoord = this.yCoord;
 		this.xCoord = newXCoord;
 		this.yCoord = newYCoord;
 		for (RegionLink rL : paths.values()) {
-			rL.resetDirectionAndLength();
+			if (owningMap == null || !owningMap.deferLinkGeometry(rL)) {
+				rL.resetDirectionAndLength();
+			}
+		}
+		markModified();
+		if (owningMap != null) {
+			owningMap.regionMoved(this, oldXCoord, oldYCoord);
+		}
+	}
+	
+	/**
+	 * Grows this region's map of child locations ahead of adding many
+	 * locations at once
+	 * @param adding the number of locations to be added
+	 */
+	void ensureChildCapacity(int adding) {
+		if (adding > childLocs.size()) {
+			HashMap<Integer, GeographicalLocation> bigger = new HashMap<Integer, GeographicalLocation>((int)((childLocs.size() + adding) / 0.75f) + 1);
+			bigger.putAll(childLocs);
+			childLocs = bigger;
+		}
+	}
+	
+	/**
+	 * Returns a counter that changes whenever the locations of this region,
+	 * the LocationLinks between them or their coordinates change. Callers
+	 * caching anything derived from this region's locations can compare it
+	 * with the value seen when the cache was built
+	 * @return the modification count of this region
+	 */
+	public int getModificationCount() {
+		return modCount;
+	}
+	
+	/**
+	 * Records that the locations of this region or the links between them
+	 * have changed
+	 */
+	protected void markModified() {
+		modCount++;
+		if (owningMap != null) {
+			owningMap.regionChanged(this);
+		}
+	}
+	
+	/**
+	 * Records that a link was registered on or unregistered from this
+	 * region or one of its locations
+	 */
+	void markTopologyModified() {
+		if (owningMap != null) {
+			owningMap.topologyModified();
+			owningMap.regionChanged(this);
 		}
 	}
 }
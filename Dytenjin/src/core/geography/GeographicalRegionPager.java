@@ -0,0 +1,397 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.geography;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.logging.Level;
+
+import core.CoreConstants;
+import core.system.ExceptionManager;
+
+/**
+ * Keeps the locations of only the recently used regions of a
+ * GeographicalMap in memory. Every region and RegionLink stays in the
+ * map, so routes between regions work as before, but a region that is
+ * paged out is a stub without child locations. A stub's locations and
+ * location links are loaded from an IRegionStore when the region is
+ * touched through getChildLocById or getPathById, or when a location
+ * route through it is asked of this pager. Once more locations are
+ * resident than the budget allows, the least recently used regions that
+ * are not pinned are saved, if they changed, and emptied again. Edge
+ * links to a stub are dropped with it and come back when both of their
+ * regions are resident.
+ * <p>
+ * Regions are only paged out by the calls of this pager, never from
+ * inside the getters of a region, so locations read from a region stay
+ * in the map at least until the next call to this pager. Callers holding
+ * on to locations across calls should pin their regions.
+ * <p>
+ * A pager is not thread-safe and must be used by the thread changing the
+ * map.
+ * @author SuperSimpleGuy
+ */
+public class GeographicalRegionPager {
+
+	private GeographicalMap map;
+	private IRegionStore store;
+	private int locationBudget;
+	private LinkedHashMap<Integer, GeographicalRegion> resident;
+	private HashMap<Integer, Integer> loadedModCounts;
+	private HashMap<Integer, Integer> pinned;
+	private boolean busy;
+	private long hits;
+	private long misses;
+	private long loads;
+	private long evictions;
+	private long saves;
+	private long rejects;
+	
+	/**
+	 * Creates a pager for a map. Regions already holding locations are
+	 * resident, and are saved to the store when first paged out
+	 * @param map the map to page
+	 * @param store the store loading and saving the locations of regions
+	 * @param locationBudget the most locations and location links to keep
+	 * in memory
+	 */
+	GeographicalRegionPager(GeographicalMap map, IRegionStore store, int locationBudget) {
+		if (locationBudget < 1) {
+			throw new IllegalArgumentException("Location budget must be positive: " + locationBudget);
+		}
+		this.map = map;
+		this.store = store;
+		this.locationBudget = locationBudget;
+		this.resident = new LinkedHashMap<Integer, GeographicalRegion>(16, 0.75f, true);
+		this.loadedModCounts = new HashMap<Integer, Integer>();
+		this.pinned = new HashMap<Integer, Integer>();
+		for (GeographicalRegion gR : map.getGeoRegions().values()) {
+			if (!gR.getChildLocs().isEmpty()) {
+				resident.put(gR.getUniqueId().getId(), gR);
+			}
+		}
+		trim();
+	}
+	
+	/**
+	 * Finds the shortest route between two locations, loading the regions
+	 * of both ends and of the shortest region route between them first
+	 * @param idFromGR the id of the region of the location to start from
+	 * @param idFromGL the id of the location to start from
+	 * @param idToGR the id of the region of the location to reach
+	 * @param idToGL the id of the location to reach
+	 * @param algorithm the search algorithm to use
+	 * @return the route found, or null if either location is not in the
+	 * map or they are not connected through the loaded regions
+	 */
+	public GeographicalRoute<GeographicalLocation, LocationLink> findLocationRoute(int idFromGR, int idFromGL, int idToGR, int idToGL, RoutingAlgorithm algorithm) {
+		HashSet<Integer> routePins = new HashSet<Integer>();
+		try {
+			if (!pinForRoute(idFromGR, routePins) || !pinForRoute(idToGR, routePins)) {
+				return null;
+			}
+			GeographicalRoute<GeographicalRegion, RegionLink> regions = map.findRegionRoute(idFromGR, idToGR, algorithm);
+			if (regions == null) {
+				return null;
+			}
+			for (GeographicalRegion gR : regions.getPlaces()) {
+				pinForRoute(gR.getUniqueId().getId(), routePins);
+			}
+			return map.findLocationRoute(idFromGL, idToGL, algorithm);
+		} finally {
+			for (Integer id : routePins) {
+				release(id);
+			}
+			trim();
+		}
+	}
+	
+	/**
+	 * Loads the locations of a region if it is a stub and marks it as the
+	 * most recently used, paging other regions out if the budget is
+	 * exceeded
+	 * @param idOfGR the id of the region
+	 * @return true if the region is in the map
+	 */
+	public boolean ensureResident(int idOfGR) {
+		GeographicalRegion gR = map.getGeoRegions().get(idOfGR);
+		if (gR == null) {
+			return false;
+		}
+		touch(gR);
+		trim();
+		return true;
+	}
+	
+	/**
+	 * Loads the locations of a region if it is a stub and keeps them in
+	 * memory until the region is unpinned as often as it was pinned
+	 * @param idOfGR the id of the region
+	 * @return true if the region is in the map and was pinned
+	 */
+	public boolean pin(int idOfGR) {
+		if (!ensureResident(idOfGR)) {
+			return false;
+		}
+		Integer count = pinned.get(idOfGR);
+		pinned.put(idOfGR, count == null ? 1 : count + 1);
+		return true;
+	}
+	
+	/**
+	 * Undoes one pin of a region, paging regions out if it was the last
+	 * pin and the budget is exceeded
+	 * @param idOfGR the id of the region
+	 * @return true if the region was pinned
+	 */
+	public boolean unpin(int idOfGR) {
+		if (!release(idOfGR)) {
+			return false;
+		}
+		trim();
+		return true;
+	}
+	
+	/**
+	 * Returns whether a region is pinned
+	 * @param idOfGR the id of the region
+	 * @return true if the region is pinned at least once
+	 */
+	public boolean isPinned(int idOfGR) {
+		return pinned.containsKey(idOfGR);
+	}
+	
+	/**
+	 * Returns whether the locations of a region are in memory
+	 * @param idOfGR the id of the region
+	 * @return true if the region is resident, false if it is a stub or not
+	 * in the map
+	 */
+	public boolean isResident(int idOfGR) {
+		return resident.containsKey(idOfGR);
+	}
+	
+	/**
+	 * Records that a region was used, loading it if it is a stub. Other
+	 * regions are paged out on the next call to this pager rather than
+	 * here, since a region's getters touch it
+	 * @param gR the region used
+	 */
+	void touch(GeographicalRegion gR) {
+		if (busy || gR instanceof RegionLink) {
+			return;
+		}
+		int id = gR.getUniqueId().getId();
+		if (resident.get(id) != null) {
+			hits++;
+			return;
+		}
+		if (map.getGeoRegions().get(id) != gR) {
+			return;
+		}
+		misses++;
+		load(gR);
+	}
+	
+	/**
+	 * Forgets a region unregistered from the map, without saving it
+	 * @param gR the region removed
+	 */
+	void regionRemoved(GeographicalRegion gR) {
+		Integer id = gR.getUniqueId().getId();
+		if (resident.get(id) == gR) {
+			resident.remove(id);
+			loadedModCounts.remove(id);
+			pinned.remove(id);
+		}
+	}
+	
+	/**
+	 * Pins a region for a route unless the route already pinned it
+	 */
+	private boolean pinForRoute(int idOfGR, HashSet<Integer> routePins) {
+		if (routePins.contains(idOfGR)) {
+			return true;
+		}
+		if (!pin(idOfGR)) {
+			return false;
+		}
+		routePins.add(idOfGR);
+		return true;
+	}
+	
+	private boolean release(int idOfGR) {
+		Integer count = pinned.get(idOfGR);
+		if (count == null) {
+			return false;
+		}
+		if (count == 1) {
+			pinned.remove(idOfGR);
+		} else {
+			pinned.put(idOfGR, count - 1);
+		}
+		return true;
+	}
+	
+	private void load(GeographicalRegion gR) {
+		busy = true;
+		try {
+			GeographicalMapLoader loader = new GeographicalMapLoader(map);
+			store.loadRegion(gR, new RegionContents(map, loader, gR));
+			GeographicalLoadReport report = loader.load();
+			if (!report.isComplete()) {
+				rejects += report.getRejectedCount();
+				ExceptionManager.SYS_EXCEPTION_MANAGER.throwException(new IllegalStateException("Region " + gR.getUniqueId().getId() + " loaded with "
+						+ report.getRejectedCount() + " rejected items, the first because: " + report.getRejectionReason(0)), Level.WARNING, CoreConstants.SYS_ERR_FILE);
+			}
+		} finally {
+			busy = false;
+		}
+		loads++;
+		resident.put(gR.getUniqueId().getId(), gR);
+		loadedModCounts.put(gR.getUniqueId().getId(), gR.getModificationCount());
+	}
+	
+	/**
+	 * Pages out the least recently used regions that are not pinned until
+	 * the resident locations fit the budget. The most recently used region
+	 * is always kept
+	 */
+	private void trim() {
+		int residentLocations = getResidentLocationCount();
+		Iterator<GeographicalRegion> eldest = resident.values().iterator();
+		while (residentLocations > locationBudget && resident.size() - pinned.size() > 1 && eldest.hasNext()) {
+			GeographicalRegion gR = eldest.next();
+			Integer id = gR.getUniqueId().getId();
+			if (pinned.containsKey(id)) {
+				continue;
+			}
+			residentLocations -= gR.getChildLocs().size();
+			eldest.remove();
+			evict(gR);
+			eldest = resident.values().iterator();
+		}
+	}
+	
+	private void evict(GeographicalRegion gR) {
+		Integer id = gR.getUniqueId().getId();
+		busy = true;
+		try {
+			Integer loadedModCount = loadedModCounts.remove(id);
+			if (loadedModCount == null || loadedModCount != gR.getModificationCount()) {
+				store.saveRegion(gR);
+				saves++;
+			}
+			map.dropRegionContents(gR);
+		} finally {
+			busy = false;
+		}
+		evictions++;
+	}
+	
+	/**
+	 * Returns the number of regions whose locations are in memory
+	 * @return the number of resident regions
+	 */
+	public int getResidentRegionCount() {
+		return resident.size();
+	}
+	
+	/**
+	 * Returns the number of locations and location links of resident
+	 * regions
+	 * @return the number of resident locations
+	 */
+	public int getResidentLocationCount() {
+		int count = 0;
+		for (GeographicalRegion gR : resident.values()) {
+			count += gR.getChildLocs().size();
+		}
+		return count;
+	}
+	
+	/**
+	 * Returns the most locations and location links kept in memory
+	 * @return the location budget
+	 */
+	public int getLocationBudget() {
+		return locationBudget;
+	}
+	
+	/**
+	 * Returns the number of times a resident region was touched
+	 * @return the number of hits
+	 */
+	public long getHitCount() {
+		return hits;
+	}
+	
+	/**
+	 * Returns the number of times a stub was touched and loaded
+	 * @return the number of misses
+	 */
+	public long getMissCount() {
+		return misses;
+	}
+	
+	/**
+	 * Returns the share of touches that found the region resident
+	 * @return the hit rate, or zero if no region was touched yet
+	 */
+	public double getHitRate() {
+		long touches = hits + misses;
+		return touches == 0 ? 0 : (double)hits / touches;
+	}
+	
+	/**
+	 * Returns the number of regions loaded from the store
+	 * @return the number of loads
+	 */
+	public long getLoadCount() {
+		return loads;
+	}
+	
+	/**
+	 * Returns the number of regions paged out
+	 * @return the number of evictions
+	 */
+	public long getEvictionCount() {
+		return evictions;
+	}
+	
+	/**
+	 * Returns the number of regions saved to the store because they
+	 * changed while resident
+	 * @return the number of saves
+	 */
+	public long getSaveCount() {
+		return saves;
+	}
+	
+	/**
+	 * Returns the number of locations and links the store handed out that
+	 * could not be added to the map
+	 * @return the number of rejected items
+	 */
+	public long getRejectedCount() {
+		return rejects;
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.geography;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A route found by a GeographicalRouter. Holds the places visited in
+ * order, the link taken for each step and the direction of each step,
+ * so step i goes from place i to place i + 1 along link i heading in
+ * direction i.
+ * @author SuperSimpleGuy
+ * @param <P> the kind of place being routed between
+ * @param <L> the kind of link joining the places
+ */
+public class GeographicalRoute<P, L> {
+
+	private List<P> places;
+	private List<L> links;
+	private List<CardinalDirection> directions;
+	private double length;
+	
+	/**
+	 * Creates a route from its steps. The lists are taken as they are
+	 * and must not be modified afterwards
+	 * @param places the places visited, including the start and end
+	 * @param links the link taken for each step
+	 * @param directions the direction of each step
+	 * @param length the total length of the route
+	 */
+	GeographicalRoute(ArrayList<P> places, ArrayList<L> links, ArrayList<CardinalDirection> directions, double length) {
+		this.places = Collections.unmodifiableList(places);
+		this.links = Collections.unmodifiableList(links);
+		this.directions = Collections.unmodifiableList(directions);
+		this.length = length;
+	}
+	
+	/**
+	 * Returns the places visited in order, starting with the origin
+	 * and ending with the destination
+	 * @return the places visited
+	 */
+	public List<P> getPlaces() {
+		return places;
+	}
+	
+	/**
+	 * Returns the link taken for each step of the route
+	 * @return the links taken
+	 */
+	public List<L> getLinks() {
+		return links;
+	}
+	
+	/**
+	 * Returns the direction travelled for each step of the route
+	 * @return the directions of each step
+	 */
+	public List<CardinalDirection> getDirections() {
+		return directions;
+	}
+	
+	/**
+	 * Returns the number of steps in this route
+	 * @return the number of links taken
+	 */
+	public int getStepCount() {
+		return links.size();
+	}
+	
+	/**
+	 * Returns the total length of this route, the sum of the lengths
+	 * of every link taken
+	 * @return the total length
+	 */
+	public double getLength() {
+		return length;
+	}
+}
@@ -0,0 +1,331 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.geography;
+
+import java.util.ArrayList;
+
+/**
+ * Finds shortest routes between GeographicalRegions, across their
+ * RegionLinks, and between GeographicalLocations, across their
+ * LocationLinks. Each step costs the length of the link taken. The
+ * A* search uses the straight-line distance to the destination, which
+ * never overestimates because a link's length is the distance from one
+ * end through the link to the other; links given a shorter length with
+ * setLength may make A* return a route that is not the shortest.
+ * <p>
+ * Given a LinkCostCache, a router uses the costs of its ILinkCostFunction
+ * at the cache's date instead of the links' lengths. A cost may be less
+ * than the straight-line distance, so A* then searches without the
+ * distance heuristic, like Dijkstra, and still finds the cheapest route.
+ * <p>
+ * All search state lives in arrays indexed by a dense per-query index
+ * and is kept between queries, so a router reaches a steady state where
+ * searching allocates only the returned route. Places are identified by
+ * the id of their UniqueId during a search. A router is not thread-safe;
+ * use one per thread.
+ * @author SuperSimpleGuy
+ */
+public class GeographicalRouter {
+
+	private static final int INITIAL_CAPACITY = 64;
+	
+	private SearchState state;
+	private LinkCostCache linkCosts;
+	
+	/**
+	 * Creates a router with room for a small search, growing as needed
+	 */
+	public GeographicalRouter() {
+		this(INITIAL_CAPACITY);
+	}
+	
+	/**
+	 * Creates a router with room for searches reaching the specified
+	 * number of places before it has to grow
+	 * @param expectedPlaces the number of places a search is expected to reach
+	 */
+	public GeographicalRouter(int expectedPlaces) {
+		state = new SearchState(expectedPlaces);
+	}
+	
+	/**
+	 * Makes later searches use the costs of a cache instead of the lengths
+	 * of the links. The routes found then report their total cost as their
+	 * length
+	 * @param linkCosts the costs to use, or null to use link lengths
+	 */
+	public void setLinkCosts(LinkCostCache linkCosts) {
+		this.linkCosts = linkCosts;
+	}
+	
+	/**
+	 * Returns the costs searches use instead of link lengths
+	 * @return the cost cache, or null if link lengths are used
+	 */
+	public LinkCostCache getLinkCosts() {
+		return linkCosts;
+	}
+	
+	/**
+	 * Finds the shortest route between two regions using A*
+	 * @param from the region to start from
+	 * @param to the region to reach
+	 * @return the route found, or null if the regions are not connected
+	 */
+	public GeographicalRoute<GeographicalRegion, RegionLink> findRoute(GeographicalRegion from, GeographicalRegion to) {
+		return findRoute(from, to, RoutingAlgorithm.A_STAR);
+	}
+	
+	/**
+	 * Finds the shortest route between two regions, travelling through
+	 * the RegionLinks in each region's paths
+	 * @param from the region to start from
+	 * @param to the region to reach
+	 * @param algorithm the search algorithm to use
+	 * @return the route found, or null if the regions are not connected
+	 */
+	public GeographicalRoute<GeographicalRegion, RegionLink> findRoute(GeographicalRegion from, GeographicalRegion to, RoutingAlgorithm algorithm) {
+		if (from == null || to == null) {
+			return null;
+		}
+		boolean heuristic = algorithm == RoutingAlgorithm.A_STAR && linkCosts == null;
+		int goalId = to.getUniqueId().getId();
+		state.start(from, from.getUniqueId().getId(), heuristic ? distance(from.getxCoord(), from.getyCoord(), to) : 0);
+		int goal = -1;
+		while (state.hasOpen()) {
+			int u = state.next();
+			if (u == -1) {
+				continue;
+			}
+			GeographicalRegion gR = (GeographicalRegion)state.getPlace(u);
+			if (gR.getUniqueId().getId() == goalId) {
+				goal = u;
+				break;
+			}
+			for (RegionLink l : gR.getPaths().values()) {
+				GeographicalRegion other = otherEnd(l, gR);
+				if (other == null) {
+					continue;
+				}
+				state.relax(u, other, other.getUniqueId().getId(), l, linkCosts == null ? l.getLength() : linkCosts.getCost(l),
+						heuristic ? distance(other.getxCoord(), other.getyCoord(), to) : 0);
+			}
+		}
+		if (goal == -1) {
+			return null;
+		}
+		ArrayList<GeographicalRegion> routePlaces = new ArrayList<GeographicalRegion>();
+		ArrayList<RegionLink> routeLinks = new ArrayList<RegionLink>();
+		state.collectPath(goal, routePlaces, routeLinks);
+		return new GeographicalRoute<GeographicalRegion, RegionLink>(routePlaces, routeLinks,
+				regionDirections(routePlaces, routeLinks), state.getDistance(goal));
+	}
+	
+	/**
+	 * Finds the shortest route between two locations using A*, without
+	 * restricting which regions it may pass through
+	 * @param from the location to start from
+	 * @param to the location to reach
+	 * @return the route found, or null if the locations are not connected
+	 */
+	public GeographicalRoute<GeographicalLocation, LocationLink> findRoute(GeographicalLocation from, GeographicalLocation to) {
+		return findRoute(from, to, null, RoutingAlgorithm.A_STAR);
+	}
+	
+	/**
+	 * Finds the shortest route between two locations, travelling through
+	 * the LocationLinks in each location's paths. If a region is given,
+	 * the route may only pass through locations belonging to it
+	 * @param from the location to start from
+	 * @param to the location to reach
+	 * @param within the region the route must stay in, or null to allow
+	 * any region
+	 * @param algorithm the search algorithm to use
+	 * @return the route found, or null if the locations are not connected
+	 */
+	public GeographicalRoute<GeographicalLocation, LocationLink> findRoute(GeographicalLocation from, GeographicalLocation to, GeographicalRegion within, RoutingAlgorithm algorithm) {
+		if (from == null || to == null) {
+			return null;
+		}
+		boolean heuristic = algorithm == RoutingAlgorithm.A_STAR && linkCosts == null;
+		int goalId = to.getUniqueId().getId();
+		state.start(from, from.getUniqueId().getId(), heuristic ? distance(from.getxCoord(), from.getyCoord(), to) : 0);
+		int goal = -1;
+		while (state.hasOpen()) {
+			int u = state.next();
+			if (u == -1) {
+				continue;
+			}
+			GeographicalLocation gL = (GeographicalLocation)state.getPlace(u);
+			if (gL.getUniqueId().getId() == goalId) {
+				goal = u;
+				break;
+			}
+			expandLocation(u, gL, within, heuristic ? to : null);
+		}
+		if (goal == -1) {
+			return null;
+		}
+		ArrayList<GeographicalLocation> routePlaces = new ArrayList<GeographicalLocation>();
+		ArrayList<LocationLink> routeLinks = new ArrayList<LocationLink>();
+		state.collectPath(goal, routePlaces, routeLinks);
+		return new GeographicalRoute<GeographicalLocation, LocationLink>(routePlaces, routeLinks,
+				locationDirections(routePlaces, routeLinks), state.getDistance(goal));
+	}
+	
+	/**
+	 * Computes the shortest distances from one location to several others,
+	 * staying within a region, with a single Dijkstra search that stops once
+	 * every target is settled
+	 * @param from the location to start from
+	 * @param within the region the routes must stay in, or null to allow any
+	 * region
+	 * @param targets the locations to measure the distance to
+	 * @param distances receives the distance to each target, or
+	 * Double.POSITIVE_INFINITY for targets that cannot be reached
+	 */
+	public void findDistances(GeographicalLocation from, GeographicalRegion within, GeographicalLocation[] targets, double[] distances) {
+		for (int i = 0; i < targets.length; i++) {
+			distances[i] = Double.POSITIVE_INFINITY;
+		}
+		if (from == null) {
+			return;
+		}
+		state.start(from, from.getUniqueId().getId(), 0);
+		int remaining = targets.length;
+		while (remaining > 0 && state.hasOpen()) {
+			int u = state.next();
+			if (u == -1) {
+				continue;
+			}
+			GeographicalLocation gL = (GeographicalLocation)state.getPlace(u);
+			for (int i = 0; i < targets.length; i++) {
+				if (targets[i] == gL && distances[i] == Double.POSITIVE_INFINITY) {
+					distances[i] = state.getDistance(u);
+					remaining--;
+				}
+			}
+			expandLocation(u, gL, within, null);
+		}
+	}
+	
+	/**
+	 * Returns the number of places the last search expanded, which is
+	 * useful for comparing the algorithms
+	 * @return the number of places expanded by the last search
+	 */
+	public int getLastExpandedCount() {
+		return state.getExpandedCount();
+	}
+	
+	private void expandLocation(int u, GeographicalLocation gL, GeographicalRegion within, GeographicalLocation to) {
+		for (LocationLink l : gL.getPaths().values()) {
+			GeographicalLocation other = otherEnd(l, gL);
+			if (other == null || (within != null && !within.equals(other.getParent()))) {
+				continue;
+			}
+			state.relax(u, other, other.getUniqueId().getId(), l, linkCosts == null ? l.getLength() : linkCosts.getCost(l),
+					to != null ? distance(other.getxCoord(), other.getyCoord(), to) : 0);
+		}
+	}
+	
+	/**
+	 * Returns the direction of each step of a route across RegionLinks,
+	 * using the direction stored by each link where there is one
+	 */
+	static ArrayList<CardinalDirection> regionDirections(ArrayList<GeographicalRegion> routePlaces, ArrayList<RegionLink> routeLinks) {
+		ArrayList<CardinalDirection> routeDirs = new ArrayList<CardinalDirection>(routeLinks.size());
+		for (int i = 0; i < routeLinks.size(); i++) {
+			GeographicalRegion gR = routePlaces.get(i);
+			CardinalDirection dir = routeLinks.get(i).getDirFromGeoReg(gR);
+			if (dir == null || dir == CardinalDirection.ERR) {
+				GeographicalRegion next = routePlaces.get(i + 1);
+				dir = CardinalDirection.getDirFromCoords(gR.getxCoord(), gR.getyCoord(), next.getxCoord(), next.getyCoord());
+			}
+			routeDirs.add(dir);
+		}
+		return routeDirs;
+	}
+	
+	/**
+	 * Returns the direction of each step of a route across LocationLinks,
+	 * using the direction stored by each link where there is one
+	 */
+	static ArrayList<CardinalDirection> locationDirections(ArrayList<GeographicalLocation> routePlaces, ArrayList<LocationLink> routeLinks) {
+		ArrayList<CardinalDirection> routeDirs = new ArrayList<CardinalDirection>(routeLinks.size());
+		for (int i = 0; i < routeLinks.size(); i++) {
+			GeographicalLocation gL = routePlaces.get(i);
+			CardinalDirection dir = routeLinks.get(i).getDirFromGeoLoc(gL);
+			if (dir == null || dir == CardinalDirection.ERR) {
+				GeographicalLocation next = routePlaces.get(i + 1);
+				dir = CardinalDirection.getDirFromCoords(gL.getxCoord(), gL.getyCoord(), next.getxCoord(), next.getyCoord());
+			}
+			routeDirs.add(dir);
+		}
+		return routeDirs;
+	}
+	
+	/**
+	 * Returns the region at the other end of a RegionLink, or null if the
+	 * link does not join the specified region to another
+	 */
+	static GeographicalRegion otherEnd(RegionLink l, GeographicalRegion gR) {
+		GeographicalRegion a = l.getLoc1();
+		GeographicalRegion b = l.getLoc2();
+		if (a == null || b == null) {
+			return null;
+		}
+		if (a == gR || a.equals(gR)) {
+			return b;
+		} else if (b == gR || b.equals(gR)) {
+			return a;
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns the location at the other end of a LocationLink, or null if
+	 * the link does not join the specified location to another
+	 */
+	static GeographicalLocation otherEnd(LocationLink l, GeographicalLocation gL) {
+		GeographicalLocation a = l.getLoc1();
+		GeographicalLocation b = l.getLoc2();
+		if (a == null || b == null) {
+			return null;
+		}
+		if (a == gL || a.equals(gL)) {
+			return b;
+		} else if (b == gL || b.equals(gL)) {
+			return a;
+		}
+		return null;
+	}
+	
+	private static double distance(int x, int y, GeographicalRegion to) {
+		double dx = x - to.getxCoord();
+		double dy = y - to.getyCoord();
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+	
+	static double distance(int x, int y, GeographicalLocation to) {
+		double dx = x - to.getxCoord();
+		double dy = y - to.getyCoord();
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+}
@@ -0,0 +1,260 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.geography;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Plans routes between GeographicalLocations in two levels. The border
+ * locations of a region are its child locations joined to another region
+ * by an edge LocationLink. For every region the planner caches the
+ * shortest distances between its border locations, staying inside the
+ * region, and searches the small graph of border locations first. Only
+ * the steps of that abstract route are then refined into LocationLinks,
+ * one region at a time.
+ * <p>
+ * A region's cached distances are rebuilt the next time it is needed
+ * after its modification count changes, which happens when its locations
+ * or their links are added, removed or moved. As long as edge links join
+ * plain locations rather than other LocationLinks, routes found this way
+ * are as short as those of a GeographicalRouter searching the whole map.
+ * A planner is not thread-safe; use one per thread.
+ * @author SuperSimpleGuy
+ */
+public class HierarchicalPathPlanner {
+
+	private static final GeographicalLocation[] NO_LOCATIONS = new GeographicalLocation[0];
+	
+	private GeographicalRouter router;
+	private SearchState abstractState;
+	private HashMap<Integer, RegionGraph> regionGraphs;
+	private int rebuildCount;
+	
+	/**
+	 * Creates a planner with an empty cache
+	 */
+	public HierarchicalPathPlanner() {
+		this.router = new GeographicalRouter();
+		this.abstractState = new SearchState(0);
+		this.regionGraphs = new HashMap<Integer, RegionGraph>();
+	}
+	
+	/**
+	 * Finds the shortest route between two locations, which may belong to
+	 * different regions
+	 * @param from the location to start from
+	 * @param to the location to reach
+	 * @return the route found, or null if the locations are not connected
+	 * or either does not belong to a region
+	 */
+	public GeographicalRoute<GeographicalLocation, LocationLink> findRoute(GeographicalLocation from, GeographicalLocation to) {
+		if (from == null || to == null || from.getParent() == null || to.getParent() == null) {
+			return null;
+		}
+		GeographicalRegion fromRegion = from.getParent();
+		GeographicalRegion toRegion = to.getParent();
+		RegionGraph start = getRegionGraph(fromRegion);
+		double[] fromCosts = new double[start.borders.length];
+		router.findDistances(from, fromRegion, start.borders, fromCosts);
+		RegionGraph end = getRegionGraph(toRegion);
+		double[] toCosts = new double[end.borders.length];
+		router.findDistances(to, toRegion, end.borders, toCosts);
+		double direct = Double.POSITIVE_INFINITY;
+		if (fromRegion.equals(toRegion)) {
+			GeographicalRoute<GeographicalLocation, LocationLink> inside = router.findRoute(from, to, fromRegion, RoutingAlgorithm.A_STAR);
+			if (inside != null) {
+				direct = inside.getLength();
+			}
+		}
+		
+		int toId = to.getUniqueId().getId();
+		int s = abstractState.start(from, from.getUniqueId().getId(), GeographicalRouter.distance(from.getxCoord(), from.getyCoord(), to));
+		int goal = -1;
+		while (abstractState.hasOpen()) {
+			int u = abstractState.next();
+			if (u == -1) {
+				continue;
+			}
+			GeographicalLocation gL = (GeographicalLocation)abstractState.getPlace(u);
+			if (gL.getUniqueId().getId() == toId) {
+				goal = u;
+				break;
+			}
+			GeographicalRegion gR = gL.getParent();
+			if (u == s) {
+				relaxAll(u, start.borders, fromCosts, 0, to);
+				if (direct != Double.POSITIVE_INFINITY) {
+					abstractState.relax(u, to, toId, null, direct, 0);
+				}
+			} else {
+				RegionGraph g = getRegionGraph(gR);
+				int b = g.indexOf(gL);
+				if (b != -1) {
+					relaxAll(u, g.borders, g.costs, b * g.borders.length, to);
+				}
+				if (gR.equals(toRegion)) {
+					int e = end.indexOf(gL);
+					if (e != -1 && toCosts[e] != Double.POSITIVE_INFINITY) {
+						abstractState.relax(u, to, toId, null, toCosts[e], 0);
+					}
+				}
+			}
+			for (LocationLink l : gL.getPaths().values()) {
+				if (!l.isEdge()) {
+					continue;
+				}
+				GeographicalLocation other = GeographicalRouter.otherEnd(l, gL);
+				if (other != null && other.getParent() != null) {
+					abstractState.relax(u, other, other.getUniqueId().getId(), l, l.getLength(),
+							GeographicalRouter.distance(other.getxCoord(), other.getyCoord(), to));
+				}
+			}
+		}
+		if (goal == -1) {
+			return null;
+		}
+		
+		double length = abstractState.getDistance(goal);
+		ArrayList<GeographicalLocation> steps = new ArrayList<GeographicalLocation>();
+		ArrayList<LocationLink> stepLinks = new ArrayList<LocationLink>();
+		abstractState.collectPath(goal, steps, stepLinks);
+		ArrayList<GeographicalLocation> routePlaces = new ArrayList<GeographicalLocation>();
+		ArrayList<LocationLink> routeLinks = new ArrayList<LocationLink>();
+		routePlaces.add(from);
+		for (int i = 0; i < stepLinks.size(); i++) {
+			GeographicalLocation a = steps.get(i);
+			GeographicalLocation b = steps.get(i + 1);
+			if (stepLinks.get(i) != null) {
+				routeLinks.add(stepLinks.get(i));
+				routePlaces.add(b);
+			} else {
+				GeographicalRoute<GeographicalLocation, LocationLink> part = router.findRoute(a, b, a.getParent(), RoutingAlgorithm.A_STAR);
+				if (part == null) {
+					return null;
+				}
+				routeLinks.addAll(part.getLinks());
+				routePlaces.addAll(part.getPlaces().subList(1, part.getPlaces().size()));
+			}
+		}
+		return new GeographicalRoute<GeographicalLocation, LocationLink>(routePlaces, routeLinks,
+				GeographicalRouter.locationDirections(routePlaces, routeLinks), length);
+	}
+	
+	/**
+	 * Drops the cached border distances of a region, so they are rebuilt
+	 * the next time the region is planned through
+	 * @param gR the region to forget
+	 */
+	public void invalidate(GeographicalRegion gR) {
+		regionGraphs.remove(gR.getUniqueId().getId());
+	}
+	
+	/**
+	 * Drops the cached border distances of every region
+	 */
+	public void clearCache() {
+		regionGraphs.clear();
+	}
+	
+	/**
+	 * Returns the number of regions whose border distances are cached
+	 * @return the number of cached regions
+	 */
+	public int getCachedRegionCount() {
+		return regionGraphs.size();
+	}
+	
+	/**
+	 * Returns how many times the border distances of a region have been
+	 * computed, including the first time
+	 * @return the number of region rebuilds
+	 */
+	public int getRebuildCount() {
+		return rebuildCount;
+	}
+	
+	private void relaxAll(int u, GeographicalLocation[] borders, double[] costs, int offset, GeographicalLocation to) {
+		for (int i = 0; i < borders.length; i++) {
+			double c = costs[offset + i];
+			if (c != Double.POSITIVE_INFINITY) {
+				GeographicalLocation b = borders[i];
+				abstractState.relax(u, b, b.getUniqueId().getId(), null, c,
+						GeographicalRouter.distance(b.getxCoord(), b.getyCoord(), to));
+			}
+		}
+	}
+	
+	/**
+	 * Returns the cached border graph of a region, rebuilding it if the
+	 * region has changed since it was built
+	 */
+	private RegionGraph getRegionGraph(GeographicalRegion gR) {
+		RegionGraph g = regionGraphs.get(gR.getUniqueId().getId());
+		if (g != null && g.region == gR && g.modCount == gR.getModificationCount()) {
+			return g;
+		}
+		g = new RegionGraph();
+		g.region = gR;
+		g.modCount = gR.getModificationCount();
+		ArrayList<GeographicalLocation> borders = new ArrayList<GeographicalLocation>();
+		for (GeographicalLocation gL : gR.getChildLocs().values()) {
+			if (gL instanceof LocationLink) {
+				continue;
+			}
+			for (LocationLink l : gL.getPaths().values()) {
+				if (l.isEdge()) {
+					borders.add(gL);
+					break;
+				}
+			}
+		}
+		g.borders = borders.toArray(NO_LOCATIONS);
+		int n = g.borders.length;
+		g.costs = new double[n * n];
+		double[] row = new double[n];
+		for (int i = 0; i < n; i++) {
+			router.findDistances(g.borders[i], gR, g.borders, row);
+			System.arraycopy(row, 0, g.costs, i * n, n);
+		}
+		regionGraphs.put(gR.getUniqueId().getId(), g);
+		rebuildCount++;
+		return g;
+	}
+	
+	/**
+	 * The border locations of one region and the distances between them,
+	 * stored row by row
+	 */
+	private static class RegionGraph {
+		private GeographicalRegion region;
+		private int modCount;
+		private GeographicalLocation[] borders;
+		private double[] costs;
+		
+		private int indexOf(GeographicalLocation gL) {
+			for (int i = 0; i < borders.length; i++) {
+				if (borders[i] == gL) {
+					return i;
+				}
+			}
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.geography;
+
+import core.management.game.UniqueId;
+import core.management.ingame.Aspect;
+import core.management.ingame.AspectManager;
+
+/**
+ * Creates the places of a map being read back by a
+ * GeographicalMapSerializer. Each place is passed the name of the class
+ * it was saved from as its kind, so a factory can recreate the same
+ * subclasses. Places are created without links or a parent; the
+ * serializer joins them afterwards.
+ * @author SuperSimpleGuy
+ */
+public interface IGeographicalMapFactory {
+
+	/**
+	 * Creates an empty map
+	 * @param name the saved name of the map
+	 * @param id the saved unique id of the map
+	 * @return the new map
+	 */
+	GeographicalMap createMap(String name, UniqueId id);
+	
+	/**
+	 * Creates a region
+	 * @param kind the name of the class the region was saved from
+	 * @param name the saved name of the region
+	 * @param id the saved unique id of the region
+	 * @param xCoord the saved x coordinate of the region
+	 * @param yCoord the saved y coordinate of the region
+	 * @param aspMan the aspects of the region
+	 * @return the new region
+	 */
+	GeographicalRegion createRegion(String kind, String name, UniqueId id, int xCoord, int yCoord, AspectManager aspMan);
+	
+	/**
+	 * Creates a region link
+	 * @param kind the name of the class the link was saved from
+	 * @param name the saved name of the link
+	 * @param id the saved unique id of the link
+	 * @param xCoord the saved x coordinate of the link
+	 * @param yCoord the saved y coordinate of the link
+	 * @param aspMan the aspects of the link
+	 * @return the new region link
+	 */
+	RegionLink createRegionLink(String kind, String name, UniqueId id, int xCoord, int yCoord, AspectManager aspMan);
+	
+	/**
+	 * Creates a location
+	 * @param kind the name of the class the location was saved from
+	 * @param name the saved name of the location
+	 * @param id the saved unique id of the location
+	 * @param xCoord the saved x coordinate of the location
+	 * @param yCoord the saved y coordinate of the location
+	 * @param aspMan the aspects of the location
+	 * @return the new location
+	 */
+	GeographicalLocation createLocation(String kind, String name, UniqueId id, int xCoord, int yCoord, AspectManager aspMan);
+	
+	/**
+	 * Creates a location link
+	 * @param kind the name of the class the link was saved from
+	 * @param name the saved name of the link
+	 * @param id the saved unique id of the link
+	 * @param xCoord the saved x coordinate of the link
+	 * @param yCoord the saved y coordinate of the link
+	 * @param aspMan the aspects of the link
+	 * @return the new location link
+	 */
+	LocationLink createLocationLink(String kind, String name, UniqueId id, int xCoord, int yCoord, AspectManager aspMan);
+	
+	/**
+	 * Returns the aspect a saved place referred to
+	 * @param idType the id type the aspect was held under
+	 * @param id the id of the aspect, or -1 if it had no unique id
+	 * @return the aspect, or null to leave it out
+	 */
+	Aspect findAspect(int idType, int id);
+}
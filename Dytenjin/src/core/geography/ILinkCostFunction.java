@@ -0,0 +1,60 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.geography;
+
+import core.temporal.WorldCompleteDate;
+
+/**
+ * Gives the cost of crossing a link at a given date, for routes whose
+ * cost depends on more than the links' lengths, such as the season or the
+ * time of day through AWorldMonth.getSpecialAspects and
+ * AWorldTime.getSpecialAspects, or the aspects of the link itself.
+ * <p>
+ * Costs are assumed not to change within a time bucket, so a LinkCostCache
+ * asks for each link's cost once per bucket. Costs must not be negative,
+ * but may be less than the length of the link.
+ * @author SuperSimpleGuy
+ */
+public interface ILinkCostFunction {
+
+	/**
+	 * Returns the time bucket containing a date. Dates in the same bucket
+	 * must give every link the same cost
+	 * @param date the date of travel
+	 * @return the bucket of the date
+	 */
+	int getTimeBucket(WorldCompleteDate date);
+	
+	/**
+	 * Returns the cost of crossing a RegionLink at a date
+	 * @param link the link crossed
+	 * @param date the date of travel
+	 * @return the cost of crossing the link
+	 */
+	double getRegionLinkCost(RegionLink link, WorldCompleteDate date);
+	
+	/**
+	 * Returns the cost of crossing a LocationLink at a date
+	 * @param link the link crossed
+	 * @param date the date of travel
+	 * @return the cost of crossing the link
+	 */
+	double getLocationLinkCost(LocationLink link, WorldCompleteDate date);
+	
+}
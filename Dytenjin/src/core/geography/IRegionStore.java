@@ -0,0 +1,48 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.geography;
+
+/**
+ * Loads and saves the locations of regions paged by a
+ * GeographicalRegionPager, usually from and to disk.
+ * <p>
+ * A store keeps edge LocationLinks as they were first saved: saving a
+ * region only covers its locations and the links between them, and
+ * loading a region hands out every edge link with an end in it. Edge
+ * links added or changed while regions are paged must be saved to the
+ * store by whoever changes them.
+ * @author SuperSimpleGuy
+ */
+public interface IRegionStore {
+
+	/**
+	 * Adds the saved locations of a region, the links between them and
+	 * every edge link with an end among them to the contents being loaded
+	 * @param gR the region being loaded
+	 * @param contents the contents to add to
+	 */
+	void loadRegion(GeographicalRegion gR, RegionContents contents);
+	
+	/**
+	 * Saves the locations of a region and the links between them, read
+	 * from the region's child locations, before they are dropped
+	 * @param gR the region about to be paged out
+	 */
+	void saveRegion(GeographicalRegion gR);
+}
@@ -0,0 +1,403 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.geography;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+
+import core.CoreConstants;
+import core.system.ExceptionManager;
+
+/**
+ * Spreads values such as danger, smell, sound or faction control from
+ * source locations over the LocationLinks of a GeographicalMap. Each layer
+ * has its own sources and decay: a source of strength s gives a location
+ * at travel distance d the influence s * exp(-decayRate * d), and a
+ * location takes the strongest influence of any source. Influence below a
+ * layer's minimum is not spread, which bounds how far each source reaches.
+ * <p>
+ * Influences are kept in arrays indexed like a GeographicalGraphSnapshot of
+ * the map's locations and are worked out by update. When only a few
+ * sources of a layer have changed since the last update, only the
+ * locations those sources reached are worked out again. Layers can be
+ * updated in parallel. Changes to the map itself are picked up by the next
+ * update, which then works every layer out again.
+ * @author SuperSimpleGuy
+ */
+public class InfluenceMap {
+
+	private GeographicalMap map;
+	private GeographicalGraphSnapshot<GeographicalLocation> graph;
+	private ArrayList<Layer> layers;
+	
+	/**
+	 * Creates an influence map without layers over the locations of a map
+	 * @param map the map to spread influence over
+	 */
+	public InfluenceMap(GeographicalMap map) {
+		this.map = map;
+		this.graph = GeographicalGraphSnapshot.ofLocations(map);
+		this.layers = new ArrayList<Layer>();
+	}
+	
+	/**
+	 * Adds a layer without sources
+	 * @param name the name of the layer
+	 * @param decayRate how quickly influence fades with travel distance
+	 * @param minInfluence the weakest influence that is still spread
+	 * @return the index of the new layer
+	 */
+	public int addLayer(String name, double decayRate, double minInfluence) {
+		if (decayRate < 0 || minInfluence <= 0) {
+			throw new IllegalArgumentException("Decay must not be negative and the minimum influence must be positive");
+		}
+		Layer layer = new Layer(name, decayRate, minInfluence);
+		layer.resize(graph);
+		layers.add(layer);
+		return layers.size() - 1;
+	}
+	
+	/**
+	 * Returns the number of layers
+	 * @return the number of layers
+	 */
+	public int getLayerCount() {
+		return layers.size();
+	}
+	
+	/**
+	 * Returns the name of a layer
+	 * @param layer the index of the layer
+	 * @return the name of the layer
+	 */
+	public String getLayerName(int layer) {
+		return layers.get(layer).name;
+	}
+	
+	/**
+	 * Sets the strength of a source of a layer, adding the source if the
+	 * location was not one. The change is spread by the next update
+	 * @param layer the index of the layer
+	 * @param idOfGL the id of the source location
+	 * @param strength the strength of the source, or zero to remove it
+	 */
+	public void setSource(int layer, int idOfGL, double strength) {
+		Layer l = layers.get(layer);
+		Double old = l.sources.get(idOfGL);
+		if (!l.changed.containsKey(idOfGL)) {
+			l.changed.put(idOfGL, old == null ? 0 : old);
+		}
+		if (strength > 0) {
+			l.sources.put(idOfGL, strength);
+		} else {
+			l.sources.remove(idOfGL);
+		}
+	}
+	
+	/**
+	 * Removes a source of a layer. The change is spread by the next update
+	 * @param layer the index of the layer
+	 * @param idOfGL the id of the source location
+	 */
+	public void removeSource(int layer, int idOfGL) {
+		setSource(layer, idOfGL, 0);
+	}
+	
+	/**
+	 * Spreads every change since the last update on the calling thread
+	 */
+	public void update() {
+		update(null);
+	}
+	
+	/**
+	 * Spreads every change since the last update, one layer per task on the
+	 * executor. Waits for every task, working a layer out again on the
+	 * calling thread once its task has failed
+	 * @param executor the executor to use, or null to use the calling thread
+	 */
+	public void update(ExecutorService executor) {
+		final boolean rebuild = graph.isStale(map);
+		if (rebuild) {
+			graph = graph.refresh(map);
+			for (Layer l : layers) {
+				l.resize(graph);
+			}
+		}
+		if (executor != null && layers.size() > 1) {
+			ArrayList<Future<Object>> tasks = new ArrayList<Future<Object>>(layers.size());
+			for (final Layer l : layers) {
+				tasks.add(executor.submit(new Callable<Object>() {
+					@Override
+					public Object call() {
+						l.update(graph, rebuild);
+						return null;
+					}
+				}));
+			}
+			boolean interrupted = false;
+			for (int i = 0; i < tasks.size(); i++) {
+				while (true) {
+					try {
+						tasks.get(i).get();
+						break;
+					} catch (ExecutionException e) {
+						ExceptionManager.SYS_EXCEPTION_MANAGER.throwException(e, Level.WARNING, CoreConstants.SYS_ERR_FILE);
+						layers.get(i).update(graph, true);
+						break;
+					} catch (InterruptedException e) {
+						interrupted = true;
+					}
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			return;
+		}
+		for (Layer l : layers) {
+			l.update(graph, rebuild);
+		}
+	}
+	
+	/**
+	 * Returns the influence of a layer on a location as of the last update
+	 * @param layer the index of the layer
+	 * @param idOfGL the id of the location
+	 * @return the influence, or zero if the location is out of reach of every
+	 * source or not in the map
+	 */
+	public double getInfluence(int layer, int idOfGL) {
+		int index = graph.indexOf(idOfGL);
+		return index == -1 ? 0 : layers.get(layer).values[index];
+	}
+	
+	/**
+	 * Returns the influences of a layer as of the last update, indexed like
+	 * the places of getGraph. The array is reused by later updates and must
+	 * not be changed
+	 * @param layer the index of the layer
+	 * @return the influence on each location
+	 */
+	public double[] getValues(int layer) {
+		return layers.get(layer).values;
+	}
+	
+	/**
+	 * Returns the snapshot of the map whose place indices index getValues
+	 * @return the location graph of the last update
+	 */
+	public GeographicalGraphSnapshot<GeographicalLocation> getGraph() {
+		return graph;
+	}
+	
+	/**
+	 * Returns the number of locations whose influence the last update of a
+	 * layer worked out
+	 * @param layer the index of the layer
+	 * @return the number of locations visited by the last update
+	 */
+	public int getLastVisitedCount(int layer) {
+		return layers.get(layer).visited;
+	}
+	
+	/**
+	 * The sources and influences of one layer
+	 */
+	private static final class Layer {
+		private final String name;
+		private final double decayRate;
+		private final double minInfluence;
+		private HashMap<Integer, Double> sources;
+		private HashMap<Integer, Double> changed;
+		private double[] factors;
+		private double[] values;
+		private int[] owners;
+		private int[] heap;
+		private double[] keys;
+		private int size;
+		private int visited;
+		
+		private Layer(String name, double decayRate, double minInfluence) {
+			this.name = name;
+			this.decayRate = decayRate;
+			this.minInfluence = minInfluence;
+			this.sources = new HashMap<Integer, Double>();
+			this.changed = new HashMap<Integer, Double>();
+			this.heap = new int[16];
+			this.keys = new double[16];
+		}
+		
+		/**
+		 * Makes room for the places and links of a new snapshot
+		 */
+		private void resize(GeographicalGraphSnapshot<GeographicalLocation> graph) {
+			int n = graph.getPlaceCount();
+			values = new double[n];
+			owners = new int[n];
+			Arrays.fill(owners, -1);
+			factors = new double[graph.getLinkCount()];
+			for (int e = 0; e < factors.length; e++) {
+				factors[e] = Math.exp(-decayRate * graph.getLength(e));
+			}
+		}
+		
+		private void update(GeographicalGraphSnapshot<GeographicalLocation> graph, boolean rebuild) {
+			visited = 0;
+			if (rebuild || changed.size() * 2 > sources.size()) {
+				Arrays.fill(values, 0);
+				Arrays.fill(owners, -1);
+				for (Map.Entry<Integer, Double> source : sources.entrySet()) {
+					offer(graph.indexOf(source.getKey()), source.getValue());
+				}
+			} else {
+				int[] cleared = clearWeakened(graph);
+				for (int u : cleared) {
+					for (int e = graph.getFirstLink(u); e < graph.getFirstLink(u + 1); e++) {
+						int v = graph.getNeighbour(e);
+						if (owners[v] != -1) {
+							offer(u, values[v] * factors[e], owners[v]);
+						}
+					}
+				}
+				for (Map.Entry<Integer, Double> source : sources.entrySet()) {
+					offer(graph.indexOf(source.getKey()), source.getValue());
+				}
+			}
+			changed.clear();
+			spread(graph);
+		}
+		
+		/**
+		 * Clears every location whose influence came from a source that was
+		 * weakened or removed, returning the cleared locations
+		 */
+		private int[] clearWeakened(GeographicalGraphSnapshot<GeographicalLocation> graph) {
+			boolean[] weakened = null;
+			for (Map.Entry<Integer, Double> change : changed.entrySet()) {
+				Double now = sources.get(change.getKey());
+				int s = graph.indexOf(change.getKey());
+				if (s != -1 && (now == null || now < change.getValue())) {
+					if (weakened == null) {
+						weakened = new boolean[values.length];
+					}
+					weakened[s] = true;
+				}
+			}
+			if (weakened == null) {
+				return new int[0];
+			}
+			int count = 0;
+			int[] cleared = new int[16];
+			for (int u = 0; u < values.length; u++) {
+				if (owners[u] != -1 && weakened[owners[u]]) {
+					values[u] = 0;
+					owners[u] = -1;
+					if (count == cleared.length) {
+						cleared = Arrays.copyOf(cleared, count * 2);
+					}
+					cleared[count++] = u;
+				}
+			}
+			return Arrays.copyOf(cleared, count);
+		}
+		
+		private void offer(int s, double strength) {
+			if (s != -1) {
+				offer(s, strength, s);
+			}
+		}
+		
+		/**
+		 * Raises the influence of a location if the offered influence is
+		 * stronger, queueing the location to spread it further
+		 */
+		private void offer(int u, double influence, int owner) {
+			if (influence < minInfluence || influence <= values[u]) {
+				return;
+			}
+			values[u] = influence;
+			owners[u] = owner;
+			if (size == heap.length) {
+				heap = Arrays.copyOf(heap, size * 2);
+				keys = Arrays.copyOf(keys, size * 2);
+			}
+			int i = size++;
+			while (i > 0) {
+				int up = (i - 1) >>> 1;
+				if (keys[up] >= influence) {
+					break;
+				}
+				heap[i] = heap[up];
+				keys[i] = keys[up];
+				i = up;
+			}
+			heap[i] = u;
+			keys[i] = influence;
+		}
+		
+		/**
+		 * Spreads queued influences, strongest first, until none is left
+		 * above the minimum
+		 */
+		private void spread(GeographicalGraphSnapshot<GeographicalLocation> graph) {
+			while (size > 0) {
+				int u = heap[0];
+				double influence = keys[0];
+				size--;
+				if (size > 0) {
+					siftDown(heap[size], keys[size]);
+				}
+				if (influence < values[u]) {
+					continue;
+				}
+				visited++;
+				for (int e = graph.getFirstLink(u); e < graph.getFirstLink(u + 1); e++) {
+					offer(graph.getNeighbour(e), influence * factors[e], owners[u]);
+				}
+			}
+		}
+		
+		private void siftDown(int last, double key) {
+			int i = 0;
+			int half = size >>> 1;
+			while (i < half) {
+				int child = 2 * i + 1;
+				if (child + 1 < size && keys[child + 1] > keys[child]) {
+					child++;
+				}
+				if (key >= keys[child]) {
+					break;
+				}
+				heap[i] = heap[child];
+				keys[i] = keys[child];
+				i = child;
+			}
+			heap[i] = last;
+			keys[i] = key;
+		}
+	}
+}
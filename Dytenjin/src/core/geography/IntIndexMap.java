@@ -0,0 +1,136 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.geography;
+
+/**
+ * An open-addressing map from int keys to int values, used to give
+ * map ids a dense index without boxing. Clearing is constant time:
+ * every slot carries the generation it was written in, and slots from
+ * an older generation are treated as empty.
+ * @author SuperSimpleGuy
+ */
+final class IntIndexMap {
+
+	private static final int MIN_CAPACITY = 16;
+	
+	private int[] keys;
+	private int[] values;
+	private int[] stamps;
+	private int generation;
+	private int size;
+	
+	/**
+	 * Creates an empty map able to hold the specified number of
+	 * entries before growing
+	 * @param expected the expected number of entries
+	 */
+	IntIndexMap(int expected) {
+		int cap = MIN_CAPACITY;
+		while (cap < expected * 2) {
+			cap <<= 1;
+		}
+		allocate(cap);
+	}
+	
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		values = new int[capacity];
+		stamps = new int[capacity];
+		generation = 1;
+		size = 0;
+	}
+	
+	/**
+	 * Removes every entry from this map
+	 */
+	void clear() {
+		size = 0;
+		generation++;
+		if (generation == Integer.MAX_VALUE) {
+			allocate(keys.length);
+		}
+	}
+	
+	/**
+	 * Returns the number of entries in this map
+	 * @return the number of entries
+	 */
+	int size() {
+		return size;
+	}
+	
+	/**
+	 * Returns the value mapped to the key, or -1 if there is none
+	 * @param key the key to look up
+	 * @return the value, or -1 if the key is absent
+	 */
+	int get(int key) {
+		int mask = keys.length - 1;
+		int i = mix(key) & mask;
+		while (stamps[i] == generation) {
+			if (keys[i] == key) {
+				return values[i];
+			}
+			i = (i + 1) & mask;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Maps the key to the value, replacing any previous value
+	 * @param key the key
+	 * @param value the value, which should not be negative
+	 */
+	void put(int key, int value) {
+		if ((size + 1) * 2 > keys.length) {
+			grow();
+		}
+		int mask = keys.length - 1;
+		int i = mix(key) & mask;
+		while (stamps[i] == generation) {
+			if (keys[i] == key) {
+				values[i] = value;
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		stamps[i] = generation;
+		size++;
+	}
+	
+	private void grow() {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		int[] oldStamps = stamps;
+		int oldGeneration = generation;
+		allocate(oldKeys.length * 2);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldStamps[i] == oldGeneration) {
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+	
+	private static int mix(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -0,0 +1,299 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package core.geography;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * An immutable map from int keys to values, stored as a hash trie over
+ * the bits of the key. Adding or removing a key returns a new map that
+ * shares every node of the old one except the few on the path to the key,
+ * so each change costs a handful of small arrays however large the map is.
+ * Used by {@link GeographicalMapView} so that publishing a view after a
+ * small change does not copy the whole map.
+ * @author SuperSimpleGuy
+ */
+final class IntTrieMap<V> extends AbstractMap<Integer, V> {
+
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+	private static final int MAX_DEPTH = (32 + BITS - 1) / BITS;
+	private static final IntTrieMap<Object> EMPTY = new IntTrieMap<Object>(null, 0);
+	
+	private final Node root;
+	private final int size;
+	
+	private IntTrieMap(Node root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+	
+	/**
+	 * Returns the empty map
+	 * @return the empty map
+	 */
+	@SuppressWarnings("unchecked")
+	static <V> IntTrieMap<V> empty() {
+		return (IntTrieMap<V>)EMPTY;
+	}
+	
+	/**
+	 * Returns the value of a key
+	 * @param key the key to look up
+	 * @return the value of the key, or null if the map does not hold it
+	 */
+	@SuppressWarnings("unchecked")
+	V get(int key) {
+		Node n = root;
+		int shift = 0;
+		while (n != null) {
+			int bit = 1 << ((key >>> shift) & MASK);
+			if ((n.bitmap & bit) == 0) {
+				return null;
+			}
+			Object slot = n.slots[Integer.bitCount(n.bitmap & (bit - 1))];
+			if (slot instanceof Leaf) {
+				Leaf l = (Leaf)slot;
+				return l.key == key ? (V)l.value : null;
+			}
+			n = (Node)slot;
+			shift += BITS;
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns a map holding the same entries as this one, except that the
+	 * key maps to the specified value
+	 * @param key the key to set
+	 * @param value the value of the key
+	 * @return the new map, or this map if the key already had the value
+	 */
+	IntTrieMap<V> with(int key, V value) {
+		boolean present = containsKey(key);
+		Node newRoot = with(root, 0, key, value);
+		return newRoot == root ? this : new IntTrieMap<V>(newRoot, present ? size : size + 1);
+	}
+	
+	/**
+	 * Returns a map holding the same entries as this one, except for the key
+	 * @param key the key to remove
+	 * @return the new map, or this map if it does not hold the key
+	 */
+	IntTrieMap<V> without(int key) {
+		if (!containsKey(key)) {
+			return this;
+		}
+		return new IntTrieMap<V>((Node)without(root, 0, key), size - 1);
+	}
+	
+	boolean containsKey(int key) {
+		Node n = root;
+		int shift = 0;
+		while (n != null) {
+			int bit = 1 << ((key >>> shift) & MASK);
+			if ((n.bitmap & bit) == 0) {
+				return false;
+			}
+			Object slot = n.slots[Integer.bitCount(n.bitmap & (bit - 1))];
+			if (slot instanceof Leaf) {
+				return ((Leaf)slot).key == key;
+			}
+			n = (Node)slot;
+			shift += BITS;
+		}
+		return false;
+	}
+	
+	private static Node with(Node n, int shift, int key, Object value) {
+		int bit = 1 << ((key >>> shift) & MASK);
+		if (n == null) {
+			return new Node(bit, new Object[] {new Leaf(key, value)});
+		}
+		int idx = Integer.bitCount(n.bitmap & (bit - 1));
+		if ((n.bitmap & bit) == 0) {
+			Object[] slots = new Object[n.slots.length + 1];
+			System.arraycopy(n.slots, 0, slots, 0, idx);
+			slots[idx] = new Leaf(key, value);
+			System.arraycopy(n.slots, idx, slots, idx + 1, n.slots.length - idx);
+			return new Node(n.bitmap | bit, slots);
+		}
+		Object slot = n.slots[idx];
+		Object replacement;
+		if (slot instanceof Node) {
+			replacement = with((Node)slot, shift + BITS, key, value);
+		} else {
+			Leaf l = (Leaf)slot;
+			if (l.key == key) {
+				replacement = l.value == value ? l : new Leaf(key, value);
+			} else {
+				replacement = with(with(null, shift + BITS, l.key, l.value), shift + BITS, key, value);
+			}
+		}
+		if (replacement == slot) {
+			return n;
+		}
+		Object[] slots = n.slots.clone();
+		slots[idx] = replacement;
+		return new Node(n.bitmap, slots);
+	}
+	
+	/**
+	 * Removes a key known to be held under a node
+	 * @return the node without the key, which is a leaf if only one entry
+	 * is left under it, or null if none is
+	 */
+	private static Object without(Node n, int shift, int key) {
+		int bit = 1 << ((key >>> shift) & MASK);
+		int idx = Integer.bitCount(n.bitmap & (bit - 1));
+		Object slot = n.slots[idx];
+		Object replacement = slot instanceof Node ? without((Node)slot, shift + BITS, key) : null;
+		if (replacement == null) {
+			if (n.slots.length == 1) {
+				return null;
+			}
+			if (n.slots.length == 2 && n.slots[1 - idx] instanceof Leaf && shift > 0) {
+				return n.slots[1 - idx];
+			}
+			Object[] slots = new Object[n.slots.length - 1];
+			System.arraycopy(n.slots, 0, slots, 0, idx);
+			System.arraycopy(n.slots, idx + 1, slots, idx, slots.length - idx);
+			return new Node(n.bitmap & ~bit, slots);
+		}
+		if (replacement instanceof Leaf && n.slots.length == 1 && shift > 0) {
+			return replacement;
+		}
+		Object[] slots = n.slots.clone();
+		slots[idx] = replacement;
+		return new Node(n.bitmap, slots);
+	}
+	
+	@Override
+	public V get(Object key) {
+		return key instanceof Integer ? get(((Integer)key).intValue()) : null;
+	}
+	
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof Integer && containsKey(((Integer)key).intValue());
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	@Override
+	public Set<Map.Entry<Integer, V>> entrySet() {
+		return new AbstractSet<Map.Entry<Integer, V>>() {
+			@Override
+			public Iterator<Map.Entry<Integer, V>> iterator() {
+				return new EntryIterator<V>(root);
+			}
+			
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+	
+	private static final class Node {
+		private final int bitmap;
+		private final Object[] slots;
+		
+		private Node(int bitmap, Object[] slots) {
+			this.bitmap = bitmap;
+			this.slots = slots;
+		}
+	}
+	
+	private static final class Leaf {
+		private final int key;
+		private final Object value;
+		
+		private Leaf(int key, Object value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+	
+	/**
+	 * Walks the trie depth first, keeping the path from the root in arrays
+	 */
+	private static final class EntryIterator<V> implements Iterator<Map.Entry<Integer, V>> {
+		private final Node[] nodes;
+		private final int[] positions;
+		private int depth;
+		private Leaf next;
+		
+		private EntryIterator(Node root) {
+			nodes = new Node[MAX_DEPTH];
+			positions = new int[MAX_DEPTH];
+			depth = root == null ? -1 : 0;
+			nodes[0] = root;
+			advance();
+		}
+		
+		private void advance() {
+			next = null;
+			while (depth >= 0) {
+				Node n = nodes[depth];
+				if (positions[depth] == n.slots.length) {
+					depth--;
+					continue;
+				}
+				Object slot = n.slots[positions[depth]++];
+				if (slot instanceof Leaf) {
+					next = (Leaf)slot;
+					return;
+				}
+				depth++;
+				nodes[depth] = (Node)slot;
+				positions[depth] = 0;
+			}
+		}
+		
+		@Override
+		public boolean hasNext() {
+			return next != null;
+		}
+		
+		@Override
+		@SuppressWarnings("unchecked")
+		public Map.Entry<Integer, V> next() {
+			if (next == null) {
+				throw new NoSuchElementException();
+			}
+			Map.Entry<Integer, V> e = new AbstractMap.SimpleImmutableEntry<Integer, V>(next.key, (V)next.value);
+			advance();
+			return e;
+		}
+		
+		@Override
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+	}
+	
+}
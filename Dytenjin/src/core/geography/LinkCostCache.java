@@ -0,0 +1,171 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.geography;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import core.temporal.WorldCompleteDate;
+
+/**
+ * Remembers the costs given by an ILinkCostFunction for the current time
+ * bucket and a few recent ones, so that route searches do not evaluate
+ * the aspects of a link every time they reach it. Costs are looked up by
+ * link id, with RegionLinks and LocationLinks kept apart. A cache is not
+ * thread-safe; use one per router.
+ * @author SuperSimpleGuy
+ */
+public class LinkCostCache {
+
+	private static final int MAX_BUCKETS = 4;
+	
+	private ILinkCostFunction costFunction;
+	private LinkedHashMap<Integer, BucketCosts> buckets;
+	private BucketCosts current;
+	private WorldCompleteDate date;
+	private long evaluations;
+	private long lookups;
+	
+	/**
+	 * Creates a cache of the costs given by a function at a date
+	 * @param costFunction the function giving link costs
+	 * @param date the date of travel
+	 */
+	public LinkCostCache(ILinkCostFunction costFunction, WorldCompleteDate date) {
+		this.costFunction = costFunction;
+		this.buckets = new LinkedHashMap<Integer, BucketCosts>(8, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, BucketCosts> eldest) {
+				return size() > MAX_BUCKETS;
+			}
+		};
+		setDate(date);
+	}
+	
+	/**
+	 * Changes the date of travel. Costs already worked out for the date's
+	 * time bucket are reused
+	 * @param date the new date of travel
+	 */
+	public void setDate(WorldCompleteDate date) {
+		this.date = date;
+		int bucket = costFunction.getTimeBucket(date);
+		current = buckets.get(bucket);
+		if (current == null) {
+			current = new BucketCosts();
+			buckets.put(bucket, current);
+		}
+	}
+	
+	/**
+	 * Returns the date of travel
+	 * @return the date costs are worked out for
+	 */
+	public WorldCompleteDate getDate() {
+		return date;
+	}
+	
+	/**
+	 * Returns the cost of crossing a RegionLink at the current date
+	 * @param link the link crossed
+	 * @return the cost of crossing the link
+	 */
+	public double getCost(RegionLink link) {
+		lookups++;
+		int id = link.getUniqueId().getId();
+		int index = current.regionIndices.get(id);
+		if (index >= 0) {
+			return current.regionCosts[index];
+		}
+		evaluations++;
+		double cost = costFunction.getRegionLinkCost(link, date);
+		current.regionCosts = BucketCosts.add(current.regionIndices, current.regionCosts, id, cost);
+		return cost;
+	}
+	
+	/**
+	 * Returns the cost of crossing a LocationLink at the current date
+	 * @param link the link crossed
+	 * @return the cost of crossing the link
+	 */
+	public double getCost(LocationLink link) {
+		lookups++;
+		int id = link.getUniqueId().getId();
+		int index = current.locationIndices.get(id);
+		if (index >= 0) {
+			return current.locationCosts[index];
+		}
+		evaluations++;
+		double cost = costFunction.getLocationLinkCost(link, date);
+		current.locationCosts = BucketCosts.add(current.locationIndices, current.locationCosts, id, cost);
+		return cost;
+	}
+	
+	/**
+	 * Forgets every cost, for when the aspects of links or the cost
+	 * function's rules have changed
+	 */
+	public void clear() {
+		buckets.clear();
+		setDate(date);
+	}
+	
+	/**
+	 * Returns how many times the cost function has been asked for a cost
+	 * @return the number of costs worked out
+	 */
+	public long getEvaluationCount() {
+		return evaluations;
+	}
+	
+	/**
+	 * Returns how many costs have been asked of this cache
+	 * @return the number of cost lookups
+	 */
+	public long getLookupCount() {
+		return lookups;
+	}
+	
+	/**
+	 * The costs worked out for one time bucket
+	 */
+	private static final class BucketCosts {
+		private IntIndexMap regionIndices = new IntIndexMap(16);
+		private double[] regionCosts = new double[16];
+		private IntIndexMap locationIndices = new IntIndexMap(16);
+		private double[] locationCosts = new double[16];
+		
+		/**
+		 * Stores a cost under the next free index of one of the two tables,
+		 * returning the table, which may have grown
+		 */
+		private static double[] add(IntIndexMap indices, double[] costs, int id, double cost) {
+			int index = indices.size();
+			if (index == costs.length) {
+				costs = Arrays.copyOf(costs, index * 2);
+			}
+			indices.put(id, index);
+			costs[index] = cost;
+			return costs;
+		}
+	}
+}
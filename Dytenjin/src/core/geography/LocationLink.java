@@ -39,6 +39,8 @@ public abstract class LocationLink extends GeographicalLocation {
 	
 	private HashMap<Integer, CardinalDirection> dirFromPath;
 	
+	boolean geometryDirty;
+	
 	/**
 	 * Constructs a new fully-specified LocationLink
 	 * @param name the name this LocationLink will have
@@ -91,6 +93,21 @@ public abstract class LocationLink extends GeographicalLocation {
 	 * nothing if one or both of the two neighbors is null.
 	 */
 	public void resetDirectionAndLength() {
+		if (loc1 == null || loc2 == null) {
+			return;
+		}
+		markEndsModified();
+		recomputeGeometry();
+	}
+	
+	/**
+	 * Recomputes this link's directions and length without recording the
+	 * change, so links can be recomputed concurrently. Callers must mark the
+	 * link's regions modified afterwards
+	 */
+	void recomputeGeometry() {
+		GeographicalLocation loc1 = this.loc1;
+		GeographicalLocation loc2 = this.loc2;
 		if (loc1 == null || loc2 == null) {
 			return;
 		}
@@ -100,10 +117,26 @@ public abstract class LocationLink extends GeographicalLocation {
 		length += Math.sqrt((this.getxCoord() - loc2.getxCoord())*(this.getxCoord() - loc2.getxCoord()) + (this.getyCoord() - loc2.getyCoord())*(this.getyCoord() - loc2.getyCoord()));
 	}
 	
+	/**
+	 * Sets this link's directions and length to previously saved values
+	 * without recording the change, for loaders restoring a saved map
+	 * @param dirFrom1 the direction from the first location to this link
+	 * @param dirFrom2 the direction from the second location to this link
+	 * @param length the length of this link
+	 */
+	void restoreGeometry(CardinalDirection dirFrom1, CardinalDirection dirFrom2, double length) {
+		this.dirFrom1 = dirFrom1;
+		this.dirFrom2 = dirFrom2;
+		this.length = length;
+	}
+	
 	@Override
 	public void setCoords(int newXCoord, int newYCoord) {
 		super.setCoords(newXCoord, newYCoord);
-		resetDirectionAndLength();
+		GeographicalRegion parent = getParent();
+		if (parent == null || parent.owningMap == null || !parent.owningMap.deferLinkGeometry(this)) {
+			resetDirectionAndLength();
+		}
 	}
 	
 	@Override
@@ -200,7 +233,8 @@ public abstract class LocationLink extends GeographicalLocation {
 	
 	@Override
 	public LocationLink unregisterLocationLink(int id) {
-		if (!paths.containsKey(id)) {
+		if (paths.containsKey(id)) {
+			markTopologyModified();
 			dirFromPath.remove(id);
 			return paths.remove(id);
 		}
@@ -211,6 +245,7 @@ public abstract class LocationLink extends GeographicalLocation {
 	public boolean registerLocationLink(LocationLink l) {
 		if (!paths.containsKey(l.getUniqueId().getId())) {
 			paths.put(l.getUniqueId().getId(), l);
+			markTopologyModified();
 			dirFromPath.put(l.getUniqueId().getId(), CardinalDirection.getDirFromCoords(l.getxCoord(), l.getyCoord(), this.getxCoord(), this.getyCoord()));
 			return true;
 		}
@@ -266,6 +301,7 @@ public abstract class LocationLink extends GeographicalLocation {
 	
 	@Override
 	public void removeSelfFromParent() {
+		markEndsModified();
 		super.removeSelfFromParent();
 		this.loc1 = null;
 		this.loc2 = null;
@@ -294,9 +330,37 @@ public abstract class LocationLink extends GeographicalLocation {
 	public double setLength(double length) {
 		double temp = this.length;
 		this.length = length;
+		markEndsModified();
 		return temp;
 	}
 	
+	/**
+	 * Marks the regions of this link and of both linked locations as
+	 * modified, since a change to this link changes the routes through them
+	 */
+	void markEndsModified() {
+		if (getParent() != null) {
+			getParent().markModified();
+		}
+		if (loc1 != null && loc1.getParent() != null) {
+			loc1.getParent().markModified();
+		}
+		if (loc2 != null && loc2.getParent() != null) {
+			loc2.getParent().markModified();
+		}
+	}
+	
+	/**
+	 * Sets both locations being linked without recomputing this link's
+	 * directions and length, for callers that recompute them afterwards
+	 * @param gL1 the first location to be linked
+	 * @param gL2 the second location to be linked
+	 */
+	void setEnds(GeographicalLocation gL1, GeographicalLocation gL2) {
+		loc1 = gL1;
+		loc2 = gL2;
+	}
+	
 	/**
 	 * Returns the first location being linked
 	 * @return the first location being linked
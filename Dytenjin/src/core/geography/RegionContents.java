@@ -0,0 +1,82 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.geography;
+
+/**
+ * Collects the locations and location links of one region being loaded
+ * by a GeographicalRegionPager. Edge links are only added once both of
+ * their regions are resident, so the region loaded last of the two adds
+ * them; edge links already in the map are skipped.
+ * @author SuperSimpleGuy
+ */
+public final class RegionContents {
+
+	private GeographicalMap map;
+	private GeographicalMapLoader loader;
+	private GeographicalRegion region;
+	private int deferredLinkCount;
+	
+	RegionContents(GeographicalMap map, GeographicalMapLoader loader, GeographicalRegion region) {
+		this.map = map;
+		this.loader = loader;
+		this.region = region;
+	}
+	
+	/**
+	 * Adds a location of the region being loaded
+	 * @param gL the location to add
+	 */
+	public void addLocation(GeographicalLocation gL) {
+		loader.addLocation(gL, region.getUniqueId().getId());
+	}
+	
+	/**
+	 * Adds a location link with at least one end in the region being
+	 * loaded
+	 * @param lL the link to add
+	 * @param idOfGR1 the id of the region of the first end
+	 * @param idOfGL1 the id of the first end
+	 * @param idOfGR2 the id of the region of the second end
+	 * @param idOfGL2 the id of the second end
+	 */
+	public void addLocationLink(LocationLink lL, int idOfGR1, int idOfGL1, int idOfGR2, int idOfGL2) {
+		int idOfGR = region.getUniqueId().getId();
+		if ((idOfGR1 != idOfGR && !isResident(idOfGR1, idOfGL1))
+				|| (idOfGR2 != idOfGR && !isResident(idOfGR2, idOfGL2))
+				|| map.getOwnerOfLocation(lL.getUniqueId().getId()) != null) {
+			deferredLinkCount++;
+			return;
+		}
+		loader.addLocationLink(lL, idOfGR1, idOfGL1, idOfGR2, idOfGL2);
+	}
+	
+	/**
+	 * Returns the number of edge links skipped because their other region
+	 * is not resident or they were already in the map
+	 * @return the number of links skipped
+	 */
+	public int getDeferredLinkCount() {
+		return deferredLinkCount;
+	}
+	
+	private boolean isResident(int idOfGR, int idOfGL) {
+		GeographicalRegion owner = map.getOwnerOfLocation(idOfGL);
+		return owner != null && owner.getUniqueId().getId() == idOfGR;
+	}
+}
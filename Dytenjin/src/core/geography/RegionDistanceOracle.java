@@ -0,0 +1,352 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.geography;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches the shortest travel distance over RegionLinks between pairs of
+ * regions of a GeographicalMap, keeping the most recently used pairs up to
+ * a fixed number. Each cached pair remembers the links of its route, so
+ * removing or lengthening a link only drops the pairs routed through it.
+ * Adding or shortening a link drops the pairs it could make shorter: as
+ * long as every link is at least as long as the straight line between its
+ * regions, a pair is kept when the straight-line distances to the link's
+ * ends plus its length already exceed the cached distance.
+ * <p>
+ * Link changes made through the map are followed one by one; links wired
+ * directly onto regions empty the whole cache on the next query.
+ * @author SuperSimpleGuy
+ */
+public class RegionDistanceOracle {
+
+	/** Rough bytes used by one cached pair, not counting its links */
+	private static final int ENTRY_BYTES = 120;
+	/** Rough bytes used by one link of a cached route, in both indexes */
+	private static final int LINK_BYTES = 52;
+	
+	private GeographicalMap map;
+	private int capacity;
+	private LinkedHashMap<Long, CachedDistance> entries;
+	private HashMap<Integer, HashSet<Long>> pairsByLink;
+	private GeographicalRouter router;
+	private boolean straightLinks;
+	private int syncedTopologyCount;
+	private long linkCount;
+	private long hits;
+	private long misses;
+	private long invalidations;
+	
+	/**
+	 * Creates an empty cache for the distances of a map
+	 * @param map the map whose distances are cached
+	 * @param capacity the most pairs to keep
+	 */
+	RegionDistanceOracle(GeographicalMap map, int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		this.map = map;
+		this.capacity = capacity;
+		this.entries = new LinkedHashMap<Long, CachedDistance>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+			
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, CachedDistance> eldest) {
+				if (size() > RegionDistanceOracle.this.capacity) {
+					removeFromLinks(eldest.getKey(), eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+		this.pairsByLink = new HashMap<Integer, HashSet<Long>>();
+		this.router = new GeographicalRouter();
+		clear();
+	}
+	
+	/**
+	 * Returns the shortest travel distance between two regions or region
+	 * links of the map, from the cache if possible
+	 * @param idOfGR1 the id of the first region
+	 * @param idOfGR2 the id of the second region
+	 * @return the distance, or infinity if either region is not in the map
+	 * or they are not connected
+	 */
+	public double getDistance(int idOfGR1, int idOfGR2) {
+		if (idOfGR1 == idOfGR2) {
+			return map.getRegionOrLink(idOfGR1) == null ? Double.POSITIVE_INFINITY : 0;
+		}
+		if (map.getTopologyCount() != syncedTopologyCount) {
+			clear();
+		}
+		Long key = key(idOfGR1, idOfGR2);
+		CachedDistance entry = entries.get(key);
+		if (entry != null) {
+			hits++;
+			return entry.distance;
+		}
+		misses++;
+		if (!map.getConnectivity().areRegionsConnected(idOfGR1, idOfGR2)) {
+			return Double.POSITIVE_INFINITY;
+		}
+		GeographicalRoute<GeographicalRegion, RegionLink> route = router.findRoute(map.getRegionOrLink(idOfGR1), map.getRegionOrLink(idOfGR2),
+				straightLinks ? RoutingAlgorithm.A_STAR : RoutingAlgorithm.DIJKSTRA);
+		if (route == null) {
+			return Double.POSITIVE_INFINITY;
+		}
+		List<RegionLink> links = route.getLinks();
+		entry = new CachedDistance(idOfGR1, idOfGR2, route.getLength(), new int[links.size()]);
+		for (int i = 0; i < entry.linkIds.length; i++) {
+			entry.linkIds[i] = links.get(i).getUniqueId().getId();
+			HashSet<Long> pairs = pairsByLink.get(entry.linkIds[i]);
+			if (pairs == null) {
+				pairs = new HashSet<Long>();
+				pairsByLink.put(entry.linkIds[i], pairs);
+			}
+			pairs.add(key);
+		}
+		linkCount += entry.linkIds.length;
+		entries.put(key, entry);
+		return entry.distance;
+	}
+	
+	/**
+	 * Empties the cache and checks again whether every link of the map is at
+	 * least as long as the straight line between its regions
+	 */
+	public void clear() {
+		entries.clear();
+		pairsByLink.clear();
+		linkCount = 0;
+		straightLinks = true;
+		for (RegionLink rL : map.getRegLinks().values()) {
+			straightLinks &= isStraight(rL);
+		}
+		syncedTopologyCount = map.getTopologyCount();
+	}
+	
+	/**
+	 * Returns the number of pairs cached
+	 * @return the number of cached distances
+	 */
+	public int size() {
+		return entries.size();
+	}
+	
+	/**
+	 * Returns the most pairs this cache keeps
+	 * @return the capacity of this cache
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+	
+	/**
+	 * Returns the number of distances answered from the cache
+	 * @return the number of hits
+	 */
+	public long getHitCount() {
+		return hits;
+	}
+	
+	/**
+	 * Returns the number of distances that had to be searched for
+	 * @return the number of misses
+	 */
+	public long getMissCount() {
+		return misses;
+	}
+	
+	/**
+	 * Returns the share of distances answered from the cache
+	 * @return the hit rate, between 0 and 1
+	 */
+	public double getHitRate() {
+		return hits + misses == 0 ? 0 : (double)hits / (hits + misses);
+	}
+	
+	/**
+	 * Returns the number of cached pairs dropped because of link changes
+	 * @return the number of invalidated pairs
+	 */
+	public long getInvalidationCount() {
+		return invalidations;
+	}
+	
+	/**
+	 * Returns a rough estimate of the memory held by the cached pairs and
+	 * the index from links to pairs
+	 * @return the estimated size in bytes
+	 */
+	public long getEstimatedMemoryBytes() {
+		return (long)entries.size() * ENTRY_BYTES + linkCount * LINK_BYTES;
+	}
+	
+	/**
+	 * Empties the cache if links were changed without the map telling it.
+	 * Called before the map changes its links
+	 */
+	void beforeChange() {
+		if (map.getTopologyCount() != syncedTopologyCount) {
+			clear();
+		}
+	}
+	
+	/**
+	 * Drops the pairs that a link whose length just changed may affect, or
+	 * every pair if links were also changed without the map telling it
+	 * @param rL the link that changed
+	 */
+	void linkChanged(RegionLink rL) {
+		if (map.getTopologyCount() != syncedTopologyCount) {
+			clear();
+		} else {
+			dropPairsAffectedBy(rL);
+		}
+	}
+	
+	/**
+	 * Drops the pairs that a link just added through the map may affect
+	 * @param rL the link added
+	 */
+	void linkAdded(RegionLink rL) {
+		syncedTopologyCount = map.getTopologyCount();
+		dropPairsAffectedBy(rL);
+	}
+	
+	private void dropPairsAffectedBy(RegionLink rL) {
+		if (entries.isEmpty()) {
+			return;
+		}
+		dropPairsThrough(rL.getUniqueId().getId());
+		GeographicalRegion gR1 = rL.getLoc1();
+		GeographicalRegion gR2 = rL.getLoc2();
+		if (gR1 == null || gR2 == null) {
+			return;
+		}
+		if (straightLinks && !isStraight(rL)) {
+			straightLinks = false;
+		}
+		Iterator<CachedDistance> it = entries.values().iterator();
+		while (it.hasNext()) {
+			CachedDistance entry = it.next();
+			if (!straightLinks || mayShorten(entry, gR1, gR2, rL.getLength())) {
+				removeFromLinks(key(entry.idOfGR1, entry.idOfGR2), entry);
+				it.remove();
+				invalidations++;
+			}
+		}
+	}
+	
+	/**
+	 * Drops the pairs routed through a link just removed from the map
+	 * @param rL the link removed
+	 */
+	void linkRemoved(RegionLink rL) {
+		syncedTopologyCount = map.getTopologyCount();
+		dropPairsThrough(rL.getUniqueId().getId());
+	}
+	
+	private void dropPairsThrough(int idOfRL) {
+		HashSet<Long> pairs = pairsByLink.remove(idOfRL);
+		if (pairs == null) {
+			return;
+		}
+		for (Long key : pairs) {
+			CachedDistance entry = entries.remove(key);
+			if (entry != null) {
+				removeFromLinks(key, entry);
+				invalidations++;
+			}
+		}
+	}
+	
+	/**
+	 * Returns whether a route through a link of the specified length between
+	 * two regions could be shorter than a cached distance
+	 */
+	private boolean mayShorten(CachedDistance entry, GeographicalRegion gR1, GeographicalRegion gR2, double length) {
+		GeographicalRegion from = map.getRegionOrLink(entry.idOfGR1);
+		GeographicalRegion to = map.getRegionOrLink(entry.idOfGR2);
+		if (from == null || to == null) {
+			return true;
+		}
+		double bound = length + Math.min(straightLine(from, gR1) + straightLine(gR2, to), straightLine(from, gR2) + straightLine(gR1, to));
+		return bound < entry.distance;
+	}
+	
+	private void removeFromLinks(Long key, CachedDistance entry) {
+		for (int idOfRL : entry.linkIds) {
+			HashSet<Long> pairs = pairsByLink.get(idOfRL);
+			if (pairs != null) {
+				pairs.remove(key);
+				if (pairs.isEmpty()) {
+					pairsByLink.remove(idOfRL);
+				}
+			}
+		}
+		linkCount -= entry.linkIds.length;
+	}
+	
+	/**
+	 * Returns whether a link is at least as long as the straight line
+	 * between its regions, allowing for rounding
+	 */
+	private static boolean isStraight(RegionLink rL) {
+		if (rL.getLoc1() == null || rL.getLoc2() == null) {
+			return true;
+		}
+		return rL.getLength() >= straightLine(rL.getLoc1(), rL.getLoc2()) * (1 - 1e-9);
+	}
+	
+	private static double straightLine(GeographicalRegion a, GeographicalRegion b) {
+		double dx = a.getxCoord() - b.getxCoord();
+		double dy = a.getyCoord() - b.getyCoord();
+		return Math.sqrt(dx * dx + dy * dy);
+	}
+	
+	private static Long key(int id1, int id2) {
+		int lo = Math.min(id1, id2);
+		int hi = Math.max(id1, id2);
+		return ((long)lo << 32) | (hi & 0xFFFFFFFFL);
+	}
+	
+	/**
+	 * A cached distance and the links of its route
+	 */
+	private static final class CachedDistance {
+		private final int idOfGR1;
+		private final int idOfGR2;
+		private final double distance;
+		private final int[] linkIds;
+		
+		private CachedDistance(int idOfGR1, int idOfGR2, double distance, int[] linkIds) {
+			this.idOfGR1 = idOfGR1;
+			this.idOfGR2 = idOfGR2;
+			this.distance = distance;
+			this.linkIds = linkIds;
+		}
+	}
+}
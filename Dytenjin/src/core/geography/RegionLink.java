@@ -38,6 +38,8 @@ public abstract class RegionLink extends GeographicalRegion {
 	
 	private HashMap<Integer, CardinalDirection> dirFromPath;
 	
+	boolean geometryDirty;
+	
 	/**
 	 * Creates a new fully-specified RegionLink
 	 * @param name the name of this RegionLink
@@ -86,6 +88,21 @@ public abstract class RegionLink extends GeographicalRegion {
 	 * nothing if one or both of the two neighbors is null.
 	 */
 	public void resetDirectionAndLength() {
+		if (loc1 == null || loc2 == null) {
+			return;
+		}
+		recomputeGeometry();
+		markGeometryModified();
+	}
+	
+	/**
+	 * Recomputes this link's directions and length without recording the
+	 * change, so links can be recomputed concurrently. Callers must mark the
+	 * link modified afterwards
+	 */
+	void recomputeGeometry() {
+		GeographicalRegion loc1 = this.loc1;
+		GeographicalRegion loc2 = this.loc2;
 		if (loc1 == null || loc2 == null) {
 			return;
 		}
@@ -95,10 +112,36 @@ public abstract class RegionLink extends GeographicalRegion {
 		length += Math.sqrt((this.getxCoord() - loc2.getxCoord())*(this.getxCoord() - loc2.getxCoord()) + (this.getyCoord() - loc2.getyCoord())*(this.getyCoord() - loc2.getyCoord()));
 	}
 	
+	/**
+	 * Records that the length or ends of this link have changed, telling the
+	 * map holding it once the new length is in place
+	 */
+	void markGeometryModified() {
+		markModified();
+		if (owningMap != null) {
+			owningMap.regionLinkChanged(this);
+		}
+	}
+	
+	/**
+	 * Sets this link's directions and length to previously saved values
+	 * without recording the change, for loaders restoring a saved map
+	 * @param dirFrom1 the direction from the first region to this link
+	 * @param dirFrom2 the direction from the second region to this link
+	 * @param length the length of this link
+	 */
+	void restoreGeometry(CardinalDirection dirFrom1, CardinalDirection dirFrom2, double length) {
+		this.dirFrom1 = dirFrom1;
+		this.dirFrom2 = dirFrom2;
+		this.length = length;
+	}
+	
 	@Override
 	public void setCoords(int newXCoord, int newYCoord) {
 		super.setCoords(newXCoord, newYCoord);
-		resetDirectionAndLength();
+		if (owningMap == null || !owningMap.deferLinkGeometry(this)) {
+			resetDirectionAndLength();
+		}
 	}
 	
 	/**
@@ -196,6 +239,7 @@ public abstract class RegionLink extends GeographicalRegion {
 	@Override
 	public RegionLink unregisterRegionLink(int id) {
 		if (paths.containsKey(id)) {
+			markTopologyModified();
 			dirFromPath.remove(id);
 			return paths.remove(id);
 		}
@@ -206,6 +250,7 @@ public abstract class RegionLink extends GeographicalRegion {
 	public boolean registerRegionLink(RegionLink l) {
 		if (!paths.containsKey(l.getUniqueId().getId())) {
 			paths.put(l.getUniqueId().getId(), l);
+			markTopologyModified();
 			dirFromPath.put(l.getUniqueId().getId(), CardinalDirection.getDirFromCoords(l.getxCoord(), l.getyCoord(), this.getxCoord(), this.getyCoord()));
 			return true;
 		}
@@ -280,9 +325,21 @@ public abstract class RegionLink extends GeographicalRegion {
 	public double setLength(double length) {
 		double temp = this.length;
 		this.length = length;
+		markGeometryModified();
 		return temp;
 	}
 
+	/**
+	 * Sets both regions being linked without recomputing this link's
+	 * directions and length, for callers that recompute them afterwards
+	 * @param gR1 the first region to be linked
+	 * @param gR2 the second region to be linked
+	 */
+	void setEnds(GeographicalRegion gR1, GeographicalRegion gR2) {
+		loc1 = gR1;
+		loc2 = gR2;
+	}
+
 	/**
 	 * Returns the first region being linked
 	 * @return the first region being linked
@@ -298,7 +355,7 @@ public abstract class RegionLink extends GeographicalRegion {
 	 */
 	public void setLoc1(GeographicalRegion gR) {
 		loc1 = gR;
-		resetDirectionAndLength();
+		resetEnds();
 	}
 
 	/**
@@ -316,6 +373,18 @@ public abstract class RegionLink extends GeographicalRegion {
 	 */
 	public void setLoc2(GeographicalRegion gR) {
 		loc2 = gR;
-		resetDirectionAndLength();
+		resetEnds();
+	}
+	
+	/**
+	 * Updates this link after one of its ends changed, recording the change
+	 * even if an end is now missing
+	 */
+	private void resetEnds() {
+		if (loc1 == null || loc2 == null) {
+			markGeometryModified();
+		} else {
+			resetDirectionAndLength();
+		}
 	}
 }
@@ -0,0 +1,299 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.geography;
+
+import java.util.ArrayList;
+
+/**
+ * The reusable state of a best-first graph search: a dense index for
+ * every place reached, the best known distance, parent and link used to
+ * reach each one, and a binary heap of open places. The arrays are kept
+ * between searches and only grow, so a warmed-up search allocates
+ * nothing. Places are identified by the id of their UniqueId.
+ * @author SuperSimpleGuy
+ */
+final class SearchState {
+
+	private static final int MIN_CAPACITY = 64;
+	
+	private IntIndexMap indexOf;
+	private Object[] places;
+	private Object[] viaLink;
+	private int[] parent;
+	private double[] dist;
+	private boolean[] closed;
+	private int count;
+	
+	private int[] heapIndex;
+	private double[] heapKey;
+	private int heapSize;
+	
+	private int expanded;
+	
+	/**
+	 * Creates search state with room for the specified number of places
+	 * @param expectedPlaces the number of places a search is expected to reach
+	 */
+	SearchState(int expectedPlaces) {
+		int cap = Math.max(expectedPlaces, MIN_CAPACITY);
+		indexOf = new IntIndexMap(cap);
+		places = new Object[cap];
+		viaLink = new Object[cap];
+		parent = new int[cap];
+		dist = new double[cap];
+		closed = new boolean[cap];
+		heapIndex = new int[cap];
+		heapKey = new double[cap];
+	}
+	
+	/**
+	 * Forgets the previous search and opens the starting place
+	 * @param from the place to start from
+	 * @param fromId the id of the starting place
+	 * @param estimate the estimated distance from the start to the goal
+	 * @return the index of the starting place
+	 */
+	int start(Object from, int fromId, double estimate) {
+		for (int i = 0; i < count; i++) {
+			places[i] = null;
+			viaLink[i] = null;
+		}
+		indexOf.clear();
+		count = 0;
+		heapSize = 0;
+		expanded = 0;
+		int s = add(from, fromId);
+		dist[s] = 0;
+		push(s, estimate);
+		return s;
+	}
+	
+	/**
+	 * Returns whether any place is still open
+	 * @return true if the open set is not empty
+	 */
+	boolean hasOpen() {
+		return heapSize > 0;
+	}
+	
+	/**
+	 * Removes the open place with the lowest key and closes it
+	 * @return the index of the place closed, or -1 if the entry taken
+	 * belonged to a place that was already closed
+	 */
+	int next() {
+		int u = pop();
+		if (closed[u]) {
+			return -1;
+		}
+		closed[u] = true;
+		expanded++;
+		return u;
+	}
+	
+	/**
+	 * Offers a shorter distance to a place from a closed place
+	 * @param u the index of the closed place
+	 * @param place the place being reached
+	 * @param id the id of the place being reached
+	 * @param link the link travelled from u to the place
+	 * @param length the length of the link
+	 * @param estimate the estimated distance from the place to the goal
+	 */
+	void relax(int u, Object place, int id, Object link, double length, double estimate) {
+		int v = indexOf.get(id);
+		if (v == -1) {
+			v = add(place, id);
+		} else if (closed[v]) {
+			return;
+		}
+		double d = dist[u] + length;
+		if (d < dist[v]) {
+			dist[v] = d;
+			parent[v] = u;
+			viaLink[v] = link;
+			push(v, d + estimate);
+		}
+	}
+	
+	/**
+	 * Returns the place with the specified index
+	 * @param i the index of the place
+	 * @return the place
+	 */
+	Object getPlace(int i) {
+		return places[i];
+	}
+	
+	/**
+	 * Returns the best known distance to the place with the specified index
+	 * @param i the index of the place
+	 * @return the distance from the start
+	 */
+	double getDistance(int i) {
+		return dist[i];
+	}
+	
+	/**
+	 * Returns the index of the place with the specified id, or -1 if the
+	 * search has not reached it
+	 * @param id the id of the place
+	 * @return the index of the place, or -1
+	 */
+	int indexOf(int id) {
+		return indexOf.get(id);
+	}
+	
+	/**
+	 * Returns whether the place with the specified index is closed, which
+	 * means its distance is final
+	 * @param i the index of the place
+	 * @return true if the place is closed
+	 */
+	boolean isClosed(int i) {
+		return closed[i];
+	}
+	
+	/**
+	 * Returns the number of places closed by the current search
+	 * @return the number of places expanded
+	 */
+	int getExpandedCount() {
+		return expanded;
+	}
+	
+	/**
+	 * Fills the lists with the places and links from the start to the goal
+	 * @param goal the index of the goal
+	 * @param routePlaces the list receiving the places, in order
+	 * @param routeLinks the list receiving the links, in order
+	 */
+	@SuppressWarnings("unchecked")
+	<P, L> void collectPath(int goal, ArrayList<P> routePlaces, ArrayList<L> routeLinks) {
+		int steps = 0;
+		for (int i = goal; parent[i] != -1; i = parent[i]) {
+			steps++;
+		}
+		int firstPlace = routePlaces.size();
+		int firstLink = routeLinks.size();
+		routePlaces.ensureCapacity(firstPlace + steps + 1);
+		routeLinks.ensureCapacity(firstLink + steps);
+		for (int k = 0; k <= steps; k++) {
+			routePlaces.add(null);
+		}
+		for (int k = 0; k < steps; k++) {
+			routeLinks.add(null);
+		}
+		int i = goal;
+		for (int k = steps; k > 0; k--) {
+			routePlaces.set(firstPlace + k, (P)places[i]);
+			routeLinks.set(firstLink + k - 1, (L)viaLink[i]);
+			i = parent[i];
+		}
+		routePlaces.set(firstPlace, (P)places[i]);
+	}
+	
+	private int add(Object place, int id) {
+		if (count == places.length) {
+			growPlaces();
+		}
+		int i = count++;
+		indexOf.put(id, i);
+		places[i] = place;
+		viaLink[i] = null;
+		parent[i] = -1;
+		dist[i] = Double.POSITIVE_INFINITY;
+		closed[i] = false;
+		return i;
+	}
+	
+	private void growPlaces() {
+		int cap = places.length * 2;
+		Object[] newPlaces = new Object[cap];
+		Object[] newLinks = new Object[cap];
+		int[] newParent = new int[cap];
+		double[] newDist = new double[cap];
+		boolean[] newClosed = new boolean[cap];
+		System.arraycopy(places, 0, newPlaces, 0, count);
+		System.arraycopy(viaLink, 0, newLinks, 0, count);
+		System.arraycopy(parent, 0, newParent, 0, count);
+		System.arraycopy(dist, 0, newDist, 0, count);
+		System.arraycopy(closed, 0, newClosed, 0, count);
+		places = newPlaces;
+		viaLink = newLinks;
+		parent = newParent;
+		dist = newDist;
+		closed = newClosed;
+	}
+	
+	/**
+	 * Adds an entry to the open set. Entries are never decreased in
+	 * place; a place reached again by a shorter route is pushed again
+	 * and its older entries are skipped once it is closed
+	 */
+	private void push(int index, double key) {
+		if (heapSize == heapIndex.length) {
+			int cap = heapIndex.length * 2;
+			int[] newIndex = new int[cap];
+			double[] newKey = new double[cap];
+			System.arraycopy(heapIndex, 0, newIndex, 0, heapSize);
+			System.arraycopy(heapKey, 0, newKey, 0, heapSize);
+			heapIndex = newIndex;
+			heapKey = newKey;
+		}
+		int i = heapSize++;
+		while (i > 0) {
+			int up = (i - 1) >>> 1;
+			if (heapKey[up] <= key) {
+				break;
+			}
+			heapIndex[i] = heapIndex[up];
+			heapKey[i] = heapKey[up];
+			i = up;
+		}
+		heapIndex[i] = index;
+		heapKey[i] = key;
+	}
+	
+	private int pop() {
+		int top = heapIndex[0];
+		heapSize--;
+		if (heapSize > 0) {
+			int index = heapIndex[heapSize];
+			double key = heapKey[heapSize];
+			int i = 0;
+			int half = heapSize >>> 1;
+			while (i < half) {
+				int child = 2 * i + 1;
+				if (child + 1 < heapSize && heapKey[child + 1] < heapKey[child]) {
+					child++;
+				}
+				if (key <= heapKey[child]) {
+					break;
+				}
+				heapIndex[i] = heapIndex[child];
+				heapKey[i] = heapKey[child];
+				i = child;
+			}
+			heapIndex[i] = index;
+			heapKey[i] = key;
+		}
+		return top;
+	}
+}
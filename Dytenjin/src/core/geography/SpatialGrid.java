@@ -0,0 +1,446 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package core.geography;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A uniform grid over integer coordinates answering range, bounding box
+ * and nearest neighbour queries. Items are filed in square cells of a fixed
+ * size, and only cells that hold items are kept, so the coordinates may be
+ * spread over any area. Each cell stores the coordinates of its items next
+ * to them, so queries never call back into the items themselves.
+ * <p>
+ * The grid does not watch its items: whoever changes an item's coordinates
+ * must call move. GeographicalMap does this for its regions and locations.
+ * @author SuperSimpleGuy
+ * @param <T> the kind of item stored
+ */
+public class SpatialGrid<T> {
+
+	private int cellSize;
+	private HashMap<Long, Cell> cells;
+	private int size;
+	private int minCellX = Integer.MAX_VALUE;
+	private int minCellY = Integer.MAX_VALUE;
+	private int maxCellX = Integer.MIN_VALUE;
+	private int maxCellY = Integer.MIN_VALUE;
+	
+	/**
+	 * Creates an empty grid
+	 * @param cellSize the width and height of each cell, which works best
+	 * near the radius of the most common queries
+	 */
+	public SpatialGrid(int cellSize) {
+		if (cellSize <= 0) {
+			throw new IllegalArgumentException("Cell size must be positive: " + cellSize);
+		}
+		this.cellSize = cellSize;
+		this.cells = new HashMap<Long, Cell>();
+	}
+	
+	/**
+	 * Adds an item at the specified coordinates
+	 * @param item the item to add
+	 * @param x the x coordinate of the item
+	 * @param y the y coordinate of the item
+	 */
+	public void insert(T item, int x, int y) {
+		int cx = cellOf(x);
+		int cy = cellOf(y);
+		Long key = key(cx, cy);
+		Cell c = cells.get(key);
+		if (c == null) {
+			c = new Cell();
+			cells.put(key, c);
+			minCellX = Math.min(minCellX, cx);
+			minCellY = Math.min(minCellY, cy);
+			maxCellX = Math.max(maxCellX, cx);
+			maxCellY = Math.max(maxCellY, cy);
+		}
+		c.add(item, x, y);
+		size++;
+	}
+	
+	/**
+	 * Removes an item filed at the specified coordinates
+	 * @param item the item to remove
+	 * @param x the x coordinate the item was filed at
+	 * @param y the y coordinate the item was filed at
+	 * @return true if the item was found and removed, false otherwise
+	 */
+	public boolean remove(T item, int x, int y) {
+		Long key = key(cellOf(x), cellOf(y));
+		Cell c = cells.get(key);
+		if (c == null || !c.remove(item)) {
+			return false;
+		}
+		if (c.size == 0) {
+			cells.remove(key);
+		}
+		size--;
+		return true;
+	}
+	
+	/**
+	 * Moves an item to new coordinates
+	 * @param item the item to move
+	 * @param oldX the x coordinate the item was filed at
+	 * @param oldY the y coordinate the item was filed at
+	 * @param newX the new x coordinate of the item
+	 * @param newY the new y coordinate of the item
+	 * @return true if the item was found and moved, false if it was not
+	 * filed at the old coordinates
+	 */
+	public boolean move(T item, int oldX, int oldY, int newX, int newY) {
+		if (cellOf(oldX) == cellOf(newX) && cellOf(oldY) == cellOf(newY)) {
+			Cell c = cells.get(key(cellOf(oldX), cellOf(oldY)));
+			return c != null && c.update(item, newX, newY);
+		}
+		if (!remove(item, oldX, oldY)) {
+			return false;
+		}
+		insert(item, newX, newY);
+		return true;
+	}
+	
+	/**
+	 * Returns the number of items in this grid
+	 * @return the number of items
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Removes every item from this grid
+	 */
+	public void clear() {
+		cells.clear();
+		size = 0;
+		minCellX = Integer.MAX_VALUE;
+		minCellY = Integer.MAX_VALUE;
+		maxCellX = Integer.MIN_VALUE;
+		maxCellY = Integer.MIN_VALUE;
+	}
+	
+	/**
+	 * Returns the items inside a bounding box, edges included
+	 * @param minX the smallest x coordinate of the box
+	 * @param minY the smallest y coordinate of the box
+	 * @param maxX the largest x coordinate of the box
+	 * @param maxY the largest y coordinate of the box
+	 * @return the items inside the box, in no particular order
+	 */
+	public ArrayList<T> findInBox(int minX, int minY, int maxX, int maxY) {
+		ArrayList<T> found = new ArrayList<T>();
+		findInBox(minX, minY, maxX, maxY, found);
+		return found;
+	}
+	
+	/**
+	 * Adds the items inside a bounding box, edges included, to a list
+	 * @param minX the smallest x coordinate of the box
+	 * @param minY the smallest y coordinate of the box
+	 * @param maxX the largest x coordinate of the box
+	 * @param maxY the largest y coordinate of the box
+	 * @param found the list receiving the items
+	 * @return the number of items added
+	 */
+	public int findInBox(int minX, int minY, int maxX, int maxY, ArrayList<T> found) {
+		return search(minX, minY, maxX, maxY, 0, 0, -1, found);
+	}
+	
+	/**
+	 * Returns the items within a distance of a point, edge included
+	 * @param x the x coordinate of the point
+	 * @param y the y coordinate of the point
+	 * @param radius the largest distance from the point
+	 * @return the items in range, in no particular order
+	 */
+	public ArrayList<T> findInRange(int x, int y, int radius) {
+		ArrayList<T> found = new ArrayList<T>();
+		findInRange(x, y, radius, found);
+		return found;
+	}
+	
+	/**
+	 * Adds the items within a distance of a point, edge included, to a list
+	 * @param x the x coordinate of the point
+	 * @param y the y coordinate of the point
+	 * @param radius the largest distance from the point
+	 * @param found the list receiving the items
+	 * @return the number of items added
+	 */
+	public int findInRange(int x, int y, int radius, ArrayList<T> found) {
+		if (radius < 0) {
+			return 0;
+		}
+		long minX = (long)x - radius;
+		long minY = (long)y - radius;
+		long maxX = (long)x + radius;
+		long maxY = (long)y + radius;
+		return search(clamp(minX), clamp(minY), clamp(maxX), clamp(maxY), x, y, (double)radius * radius, found);
+	}
+	
+	/**
+	 * Returns the items nearest to a point, closest first
+	 * @param x the x coordinate of the point
+	 * @param y the y coordinate of the point
+	 * @param k the largest number of items to return
+	 * @return up to k items, ordered by their distance from the point
+	 */
+	@SuppressWarnings("unchecked")
+	public ArrayList<T> findNearest(int x, int y, int k) {
+		ArrayList<T> found = new ArrayList<T>();
+		if (k <= 0 || size == 0) {
+			return found;
+		}
+		Object[] heapItems = new Object[Math.min(k, size)];
+		double[] heapDist = new double[heapItems.length];
+		int heapSize = 0;
+		int cx = cellOf(x);
+		int cy = cellOf(y);
+		int maxRing = Math.max(Math.max(cx - minCellX, maxCellX - cx), Math.max(cy - minCellY, maxCellY - cy));
+		for (int ring = 0; ring <= maxRing; ring++) {
+			if (heapSize == heapItems.length) {
+				double reach = (double)(ring - 1) * cellSize;
+				if (ring > 0 && reach * reach >= heapDist[0]) {
+					break;
+				}
+			}
+			long spanned = (2L * ring + 1) * (2L * ring + 1);
+			if (spanned > cells.size()) {
+				//the rings left cover more cells than are occupied, so the
+				//occupied cells outside the rings walked so far are offered
+				for (Map.Entry<Long, Cell> e : cells.entrySet()) {
+					long key = e.getKey();
+					long gx = key >> 32;
+					long gy = (int)key;
+					if (Math.max(Math.abs(gx - cx), Math.abs(gy - cy)) >= ring) {
+						heapSize = offer(e.getValue(), x, y, heapItems, heapDist, heapSize);
+					}
+				}
+				break;
+			}
+			for (int gx = cx - ring; gx <= cx + ring; gx++) {
+				boolean edgeColumn = gx == cx - ring || gx == cx + ring;
+				for (int gy = cy - ring; gy <= cy + ring; gy += (edgeColumn || ring == 0) ? 1 : 2 * ring) {
+					Cell c = cells.get(key(gx, gy));
+					if (c != null) {
+						heapSize = offer(c, x, y, heapItems, heapDist, heapSize);
+					}
+				}
+			}
+		}
+		Object[] sorted = new Object[heapSize];
+		for (int i = heapSize - 1; i >= 0; i--) {
+			sorted[i] = heapItems[0];
+			heapItems[0] = heapItems[i];
+			heapDist[0] = heapDist[i];
+			if (i > 0) {
+				replaceMax(heapItems, heapDist, i, heapItems[0], heapDist[0]);
+			}
+		}
+		found.ensureCapacity(sorted.length);
+		for (Object o : sorted) {
+			found.add((T)o);
+		}
+		return found;
+	}
+	
+	/**
+	 * Offers the items of a cell to the heap of the nearest items found so
+	 * far, returning the new size of the heap
+	 */
+	private static int offer(Cell c, int x, int y, Object[] heapItems, double[] heapDist, int heapSize) {
+		for (int i = 0; i < c.size; i++) {
+			double dx = (double)c.xs[i] - x;
+			double dy = (double)c.ys[i] - y;
+			double d = dx * dx + dy * dy;
+			if (heapSize < heapItems.length) {
+				heapSize = pushMax(heapItems, heapDist, heapSize, c.items[i], d);
+			} else if (d < heapDist[0]) {
+				replaceMax(heapItems, heapDist, heapSize, c.items[i], d);
+			}
+		}
+		return heapSize;
+	}
+	
+	/**
+	 * Visits the cells overlapping a box, adding the items inside the box
+	 * and, if maxDistSq is not negative, within that squared distance of
+	 * (x, y). When the box spans more cells than are occupied, the occupied
+	 * cells are walked instead
+	 */
+	private int search(int minX, int minY, int maxX, int maxY, int x, int y, double maxDistSq, ArrayList<T> found) {
+		if (size == 0 || minX > maxX || minY > maxY) {
+			return 0;
+		}
+		int lowCX = Math.max(cellOf(minX), minCellX);
+		int lowCY = Math.max(cellOf(minY), minCellY);
+		int highCX = Math.min(cellOf(maxX), maxCellX);
+		int highCY = Math.min(cellOf(maxY), maxCellY);
+		if (lowCX > highCX || lowCY > highCY) {
+			return 0;
+		}
+		int added = 0;
+		long spanned = ((long)highCX - lowCX + 1) * ((long)highCY - lowCY + 1);
+		if (spanned > cells.size()) {
+			for (Cell c : cells.values()) {
+				added += collect(c, minX, minY, maxX, maxY, x, y, maxDistSq, found);
+			}
+			return added;
+		}
+		for (int gx = lowCX; gx <= highCX; gx++) {
+			for (int gy = lowCY; gy <= highCY; gy++) {
+				Cell c = cells.get(key(gx, gy));
+				if (c != null) {
+					added += collect(c, minX, minY, maxX, maxY, x, y, maxDistSq, found);
+				}
+			}
+		}
+		return added;
+	}
+	
+	@SuppressWarnings("unchecked")
+	private int collect(Cell c, int minX, int minY, int maxX, int maxY, int x, int y, double maxDistSq, ArrayList<T> found) {
+		int added = 0;
+		for (int i = 0; i < c.size; i++) {
+			int px = c.xs[i];
+			int py = c.ys[i];
+			if (px < minX || px > maxX || py < minY || py > maxY) {
+				continue;
+			}
+			if (maxDistSq >= 0) {
+				double dx = (double)px - x;
+				double dy = (double)py - y;
+				if (dx * dx + dy * dy > maxDistSq) {
+					continue;
+				}
+			}
+			found.add((T)c.items[i]);
+			added++;
+		}
+		return added;
+	}
+	
+	private static int pushMax(Object[] items, double[] dist, int size, Object item, double d) {
+		int i = size;
+		while (i > 0) {
+			int up = (i - 1) >>> 1;
+			if (dist[up] >= d) {
+				break;
+			}
+			items[i] = items[up];
+			dist[i] = dist[up];
+			i = up;
+		}
+		items[i] = item;
+		dist[i] = d;
+		return size + 1;
+	}
+	
+	private static void replaceMax(Object[] items, double[] dist, int size, Object item, double d) {
+		int i = 0;
+		int half = size >>> 1;
+		while (i < half) {
+			int child = 2 * i + 1;
+			if (child + 1 < size && dist[child + 1] > dist[child]) {
+				child++;
+			}
+			if (d >= dist[child]) {
+				break;
+			}
+			items[i] = items[child];
+			dist[i] = dist[child];
+			i = child;
+		}
+		items[i] = item;
+		dist[i] = d;
+	}
+	
+	private int cellOf(int coord) {
+		return coord >= 0 ? coord / cellSize : -(~coord / cellSize) - 1;
+	}
+	
+	private static int clamp(long coord) {
+		return (int)Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, coord));
+	}
+	
+	private static Long key(int cx, int cy) {
+		return Long.valueOf(((long)cx << 32) | (cy & 0xFFFFFFFFL));
+	}
+	
+	/**
+	 * The items of one cell and their coordinates
+	 */
+	private static class Cell {
+		private Object[] items = new Object[4];
+		private int[] xs = new int[4];
+		private int[] ys = new int[4];
+		private int size;
+		
+		private void add(Object item, int x, int y) {
+			if (size == items.length) {
+				int cap = size * 2;
+				Object[] newItems = new Object[cap];
+				int[] newXs = new int[cap];
+				int[] newYs = new int[cap];
+				System.arraycopy(items, 0, newItems, 0, size);
+				System.arraycopy(xs, 0, newXs, 0, size);
+				System.arraycopy(ys, 0, newYs, 0, size);
+				items = newItems;
+				xs = newXs;
+				ys = newYs;
+			}
+			items[size] = item;
+			xs[size] = x;
+			ys[size] = y;
+			size++;
+		}
+		
+		private boolean remove(Object item) {
+			for (int i = 0; i < size; i++) {
+				if (items[i] == item) {
+					size--;
+					items[i] = items[size];
+					xs[i] = xs[size];
+					ys[i] = ys[size];
+					items[size] = null;
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		private boolean update(Object item, int x, int y) {
+			for (int i = 0; i < size; i++) {
+				if (items[i] == item) {
+					xs[i] = x;
+					ys[i] = y;
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+}
@@ -19,6 +19,7 @@
 package core.management.ingame;
 
 import java.util.HashMap;
+import java.util.Set;
 
 import core.parsing.IIsParsable;
 
@@ -56,4 +57,12 @@ public class AspectManager {
 		return aspects.get(idType);
 	}
 	
+	/**
+	 * Returns the id types of the aspects held, backed by this manager
+	 * @return the set of aspect id types
+	 */
+	public Set<Integer> getAspectTypes() {
+		return aspects.keySet();
+	}
+	
 }
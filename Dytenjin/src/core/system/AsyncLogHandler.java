@@ -0,0 +1,74 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package core.system;
+
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+/**
+ * Hands the records of a log file over to an {@link AsyncLogWriter}
+ * instead of publishing them on the logging thread
+ * @author SuperSimpleGuy
+ */
+public class AsyncLogHandler extends Handler {
+
+	private Handler target;
+	private AsyncLogWriter writer;
+	
+	/**
+	 * Creates a handler that publishes to the target handler through
+	 * the asynchronous writer
+	 * @param target the handler that actually writes the records
+	 * @param writer the asynchronous writer to enqueue records on
+	 */
+	public AsyncLogHandler(Handler target, AsyncLogWriter writer) {
+		this.target = target;
+		this.writer = writer;
+		setLevel(target.getLevel());
+	}
+	
+	@Override
+	public void publish(LogRecord record) {
+		if (!isLoggable(record)) {
+			return;
+		}
+		if (!writer.enqueue(target, record)) {
+			target.publish(record);
+		}
+	}
+
+	@Override
+	public void flush() {
+		writer.flush(target);
+	}
+
+	@Override
+	public void close() throws SecurityException {
+		writer.flush(null);
+		target.close();
+	}
+	
+	/**
+	 * Returns the handler that actually writes the records
+	 * @return the wrapped handler
+	 */
+	public Handler getTarget() {
+		return target;
+	}
+
+}
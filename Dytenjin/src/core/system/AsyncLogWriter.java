@@ -0,0 +1,280 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package core.system;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+/**
+ * Moves log records off of the logging threads. Records are placed in a
+ * bounded ring buffer that is allocated once, and a single background
+ * thread takes them out in batches and publishes them to their target
+ * handlers. What happens to a record when the buffer is full is decided
+ * by a {@link LogOverflowPolicy}.
+ * <p>
+ * Note that the parameters of a record are only formatted once the
+ * writer thread gets to it, so mutable parameters may be logged in a
+ * later state than when the record was created.
+ * @author SuperSimpleGuy
+ */
+public class AsyncLogWriter {
+
+	private static final int MAX_BATCH = 256;
+	
+	private final Handler[] targets;
+	private final LogRecord[] records;
+	private final Handler[] batchTargets;
+	private final LogRecord[] batchRecords;
+	private int head;
+	private int count;
+	
+	private final LogOverflowPolicy policy;
+	private final int sampleRate;
+	private long overflowCount;
+	
+	private volatile long enqueued;
+	private volatile long written;
+	private volatile long dropped;
+	
+	private final ReentrantLock lock;
+	private final Condition notEmpty;
+	private final Condition notFull;
+	private final Condition progressed;
+	
+	private boolean running;
+	private final Thread writerThread;
+	
+	/**
+	 * Creates and starts an asynchronous writer. Under the SAMPLE
+	 * policy one out of every sampleRate overflowing records is kept.
+	 * @param capacity the number of records the buffer can hold
+	 * @param policy what to do with records when the buffer is full
+	 * @param sampleRate how many overflowing records share one kept
+	 * record under the SAMPLE policy
+	 */
+	public AsyncLogWriter(int capacity, LogOverflowPolicy policy, int sampleRate) {
+		if (capacity < 1 || sampleRate < 1) {
+			throw new IllegalArgumentException("Capacity and sample rate must be positive");
+		}
+		this.targets = new Handler[capacity];
+		this.records = new LogRecord[capacity];
+		this.batchTargets = new Handler[Math.min(capacity, MAX_BATCH)];
+		this.batchRecords = new LogRecord[batchTargets.length];
+		this.policy = policy;
+		this.sampleRate = sampleRate;
+		this.lock = new ReentrantLock();
+		this.notEmpty = lock.newCondition();
+		this.notFull = lock.newCondition();
+		this.progressed = lock.newCondition();
+		this.running = true;
+		this.writerThread = new Thread("AsyncLogWriter") {
+			@Override
+			public void run() {
+				writeLoop();
+			}
+		};
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+	
+	/**
+	 * Places a record in the buffer to be published to a handler by
+	 * the writer thread. Returns false if the writer has been shut
+	 * down, in which case the caller should publish the record itself.
+	 * A dropped record still counts as accepted.
+	 * @param target the handler to publish the record to
+	 * @param record the record to publish
+	 * @return true if the record was taken care of, false if the writer
+	 * is no longer running
+	 */
+	public boolean enqueue(Handler target, LogRecord record) {
+		lock.lock();
+		try {
+			if (!running) {
+				return false;
+			}
+			if (count == records.length) {
+				switch (policy) {
+				case DROP:
+					dropped++;
+					return true;
+				case SAMPLE:
+					if (overflowCount++ % sampleRate != 0) {
+						dropped++;
+						return true;
+					}
+					break;
+				default:
+					break;
+				}
+				while (count == records.length && running) {
+					notFull.awaitUninterruptibly();
+				}
+				if (!running) {
+					return false;
+				}
+			}
+			int tail = (head + count) % records.length;
+			targets[tail] = target;
+			records[tail] = record;
+			count++;
+			enqueued++;
+			notEmpty.signal();
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+	
+	/**
+	 * Waits until every record enqueued before this call has been
+	 * published, then flushes the specified handler. Dropped records
+	 * are never counted as enqueued, so they are not waited on.
+	 * @param target the handler to flush, or null to only wait
+	 */
+	public void flush(Handler target) {
+		if (Thread.currentThread() != writerThread) {
+			lock.lock();
+			try {
+				long goal = enqueued;
+				while (written < goal && writerThread.isAlive()) {
+					progressed.awaitUninterruptibly();
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		if (target != null) {
+			target.flush();
+		}
+	}
+	
+	/**
+	 * Publishes whatever is left in the buffer and stops the writer
+	 * thread. Records enqueued afterwards are refused.
+	 */
+	public void shutdown() {
+		lock.lock();
+		try {
+			running = false;
+			notEmpty.signalAll();
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		if (Thread.currentThread() != writerThread) {
+			try {
+				writerThread.join(TimeUnit.SECONDS.toMillis(10));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+	
+	private void writeLoop() {
+		while (true) {
+			int n;
+			lock.lock();
+			try {
+				while (count == 0 && running) {
+					notEmpty.awaitUninterruptibly();
+				}
+				if (count == 0) {
+					progressed.signalAll();
+					return;
+				}
+				n = Math.min(count, batchRecords.length);
+				for (int i = 0; i < n; i++) {
+					int slot = (head + i) % records.length;
+					batchTargets[i] = targets[slot];
+					batchRecords[i] = records[slot];
+					targets[slot] = null;
+					records[slot] = null;
+				}
+				head = (head + n) % records.length;
+				count -= n;
+				notFull.signalAll();
+			} finally {
+				lock.unlock();
+			}
+			for (int i = 0; i < n; i++) {
+				try {
+					batchTargets[i].publish(batchRecords[i]);
+				} catch (RuntimeException e) {
+					// A broken handler must not stop the writer thread
+				}
+				batchRecords[i] = null;
+			}
+			for (int i = 0; i < n; i++) {
+				Handler h = batchTargets[i];
+				if (h != null) {
+					h.flush();
+					for (int j = i; j < n; j++) {
+						if (batchTargets[j] == h) {
+							batchTargets[j] = null;
+						}
+					}
+				}
+			}
+			lock.lock();
+			try {
+				written += n;
+				progressed.signalAll();
+			} finally {
+				lock.unlock();
+			}
+		}
+	}
+	
+	/**
+	 * Returns the number of records placed in the buffer
+	 * @return the number of records placed in the buffer
+	 */
+	public long getEnqueuedCount() {
+		return enqueued;
+	}
+	
+	/**
+	 * Returns the number of records published by the writer thread
+	 * @return the number of records published
+	 */
+	public long getWrittenCount() {
+		return written;
+	}
+	
+	/**
+	 * Returns the number of records discarded because the buffer
+	 * was full
+	 * @return the number of records discarded
+	 */
+	public long getDroppedCount() {
+		return dropped;
+	}
+	
+	/**
+	 * Returns the overflow policy of this writer
+	 * @return the overflow policy of this writer
+	 */
+	public LogOverflowPolicy getPolicy() {
+		return policy;
+	}
+	
+}
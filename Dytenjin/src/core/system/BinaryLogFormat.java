@@ -0,0 +1,91 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package core.system;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Describes the layout of binary log files and holds the encoding
+ * helpers shared by {@link BinaryLogHandler} and {@link BinaryLogReader}.
+ * <p>
+ * A binary log is a sequence of entries, each starting with a tag byte.
+ * A session entry (magic number and version) starts every run of a
+ * handler and resets the string dictionary. A dictionary entry binds a
+ * string to the next free id. A record entry holds the time, the level
+ * name, source class, source method and message ids, then the typed
+ * parameters. Integers are written as zigzag varints, and id 0 always
+ * stands for a null string.
+ * @author SuperSimpleGuy
+ */
+final class BinaryLogFormat {
+
+	static final int MAGIC = 0x44594C47;
+	static final short VERSION = 1;
+	
+	static final byte TAG_SESSION = 0;
+	static final byte TAG_DICTIONARY = 1;
+	static final byte TAG_RECORD = 2;
+	
+	static final byte PARAM_NULL = 0;
+	static final byte PARAM_INT = 1;
+	static final byte PARAM_LONG = 2;
+	static final byte PARAM_DOUBLE = 3;
+	static final byte PARAM_FALSE = 4;
+	static final byte PARAM_TRUE = 5;
+	static final byte PARAM_STRING = 6;
+	
+	static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private BinaryLogFormat() {
+	}
+	
+	static void putVarLong(ByteBuffer b, long value) {
+		long v = (value << 1) ^ (value >> 63);
+		while ((v & ~0x7FL) != 0) {
+			b.put((byte)((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		b.put((byte)v);
+	}
+	
+	static long getVarLong(ByteBuffer b) {
+		long v = 0;
+		int shift = 0;
+		byte cur;
+		do {
+			cur = b.get();
+			v |= (long)(cur & 0x7F) << shift;
+			shift += 7;
+		} while ((cur & 0x80) != 0);
+		return (v >>> 1) ^ -(v & 1);
+	}
+	
+	static void putString(ByteBuffer b, byte[] utf8) {
+		putVarLong(b, utf8.length);
+		b.put(utf8);
+	}
+	
+	static String getString(ByteBuffer b) {
+		int length = (int)getVarLong(b);
+		byte[] bytes = new byte[length];
+		b.get(bytes);
+		return new String(bytes, UTF8);
+	}
+	
+}
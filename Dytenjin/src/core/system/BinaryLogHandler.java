@@ -0,0 +1,232 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package core.system;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+/**
+ * Writes log records to a compact binary file instead of text. Class
+ * names, method names, messages and level names are stored once in a
+ * dictionary the first time they are seen, so a record is usually a few
+ * dozen bytes. Records are encoded whole into a buffer and written
+ * through a FileChannel when the buffer fills up or the handler is
+ * flushed, so a failed write does not leave part of a record behind. Use
+ * {@link BinaryLogReader} to turn the file back into text.
+ * @author SuperSimpleGuy
+ */
+public class BinaryLogHandler extends Handler {
+
+	private static final int BUFFER_SIZE = 65536;
+	private static final int RECORD_HEADER_SIZE = 64;
+	
+	private FileChannel channel;
+	private ByteBuffer buf;
+	private HashMap<String, Integer> dictionary;
+	private ArrayList<String> added;
+	
+	/**
+	 * Opens a binary log file for appending. Every handler starts a new
+	 * session in the file with its own dictionary.
+	 * @param fileName the binary log file to write to
+	 * @throws IOException if the file cannot be opened
+	 */
+	public BinaryLogHandler(String fileName) throws IOException {
+		this.channel = new FileOutputStream(fileName, true).getChannel();
+		this.buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		this.dictionary = new HashMap<String, Integer>();
+		this.added = new ArrayList<String>();
+		buf.put(BinaryLogFormat.TAG_SESSION);
+		buf.putInt(BinaryLogFormat.MAGIC);
+		buf.putShort(BinaryLogFormat.VERSION);
+	}
+	
+	@Override
+	public synchronized void publish(LogRecord record) {
+		if (channel == null || !isLoggable(record)) {
+			return;
+		}
+		int start = buf.position();
+		added.clear();
+		try {
+			putRecord(record);
+		} catch (RuntimeException e) {
+			buf.position(start);
+			for (String s : added) {
+				dictionary.remove(s);
+			}
+			reportError("Could not encode a record for the binary log", e, ErrorManager.FORMAT_FAILURE);
+			return;
+		}
+		if (buf.remaining() < RECORD_HEADER_SIZE) {
+			try {
+				writeBuffer();
+			} catch (IOException e) {
+				reportError("Could not write to the binary log", e, ErrorManager.WRITE_FAILURE);
+			}
+		}
+	}
+	
+	/**
+	 * Encodes a record, and the dictionary entries it needs, into the
+	 * buffer. Never writes to the file, so the file only ever receives
+	 * whole records.
+	 * @param record the record to encode
+	 */
+	private void putRecord(LogRecord record) {
+		int levelId = intern(record.getLevel().getName());
+		int classId = intern(record.getSourceClassName());
+		int methodId = intern(record.getSourceMethodName());
+		int messageId = intern(record.getMessage());
+		Object[] params = record.getParameters();
+		ensureRoom(RECORD_HEADER_SIZE);
+		buf.put(BinaryLogFormat.TAG_RECORD);
+		buf.putLong(record.getMillis());
+		BinaryLogFormat.putVarLong(buf, levelId);
+		BinaryLogFormat.putVarLong(buf, classId);
+		BinaryLogFormat.putVarLong(buf, methodId);
+		BinaryLogFormat.putVarLong(buf, messageId);
+		int count = params == null ? 0 : params.length;
+		BinaryLogFormat.putVarLong(buf, count);
+		for (int i = 0; i < count; i++) {
+			putParam(params[i]);
+		}
+	}
+	
+	/**
+	 * Returns the dictionary id of a string, writing a dictionary entry
+	 * first if the string has not been seen in this session
+	 * @param s the string to intern
+	 * @return the id of the string, 0 for null
+	 */
+	private int intern(String s) {
+		if (s == null) {
+			return 0;
+		}
+		Integer id = dictionary.get(s);
+		if (id != null) {
+			return id;
+		}
+		byte[] utf8 = s.getBytes(BinaryLogFormat.UTF8);
+		ensureRoom(utf8.length + 16);
+		id = dictionary.size() + 1;
+		dictionary.put(s, id);
+		added.add(s);
+		buf.put(BinaryLogFormat.TAG_DICTIONARY);
+		BinaryLogFormat.putString(buf, utf8);
+		return id;
+	}
+	
+	private void putParam(Object param) {
+		ensureRoom(16);
+		if (param == null) {
+			buf.put(BinaryLogFormat.PARAM_NULL);
+		} else if (param instanceof Integer || param instanceof Short || param instanceof Byte) {
+			buf.put(BinaryLogFormat.PARAM_INT);
+			BinaryLogFormat.putVarLong(buf, ((Number)param).intValue());
+		} else if (param instanceof Long) {
+			buf.put(BinaryLogFormat.PARAM_LONG);
+			BinaryLogFormat.putVarLong(buf, ((Long)param).longValue());
+		} else if (param instanceof Double || param instanceof Float) {
+			buf.put(BinaryLogFormat.PARAM_DOUBLE);
+			buf.putDouble(((Number)param).doubleValue());
+		} else if (param instanceof Boolean) {
+			buf.put(((Boolean)param).booleanValue() ? BinaryLogFormat.PARAM_TRUE : BinaryLogFormat.PARAM_FALSE);
+		} else {
+			byte[] utf8 = param.toString().getBytes(BinaryLogFormat.UTF8);
+			ensureRoom(utf8.length + 16);
+			buf.put(BinaryLogFormat.PARAM_STRING);
+			BinaryLogFormat.putString(buf, utf8);
+		}
+	}
+	
+	/**
+	 * Makes sure the buffer has room for the specified number of bytes,
+	 * growing it if it does not
+	 * @param bytes the number of bytes needed
+	 */
+	private void ensureRoom(int bytes) {
+		if (buf.remaining() >= bytes) {
+			return;
+		}
+		ByteBuffer bigger = ByteBuffer.allocateDirect(Math.max(buf.capacity() * 2, buf.position() + bytes));
+		buf.flip();
+		bigger.put(buf);
+		buf = bigger;
+	}
+	
+	/**
+	 * Writes out the buffer. If the write fails, whatever part of the
+	 * buffer reached the file is cut off again and the buffer is kept,
+	 * so that the next flush writes its records whole.
+	 * @throws IOException if the buffer could not be written out
+	 */
+	private void writeBuffer() throws IOException {
+		long size = channel.position();
+		buf.flip();
+		try {
+			while (buf.hasRemaining()) {
+				channel.write(buf);
+			}
+		} catch (IOException e) {
+			buf.position(buf.limit());
+			buf.limit(buf.capacity());
+			try {
+				channel.truncate(size);
+			} catch (IOException truncateFailure) {
+				// The original failure is the one worth reporting
+			}
+			throw e;
+		}
+		buf.clear();
+	}
+
+	@Override
+	public synchronized void flush() {
+		if (channel == null) {
+			return;
+		}
+		try {
+			writeBuffer();
+		} catch (IOException e) {
+			reportError("Could not flush the binary log", e, ErrorManager.FLUSH_FAILURE);
+		}
+	}
+
+	@Override
+	public synchronized void close() throws SecurityException {
+		if (channel == null) {
+			return;
+		}
+		flush();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			reportError("Could not close the binary log", e, ErrorManager.CLOSE_FAILURE);
+		}
+		channel = null;
+	}
+
+}
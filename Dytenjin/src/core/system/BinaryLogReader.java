@@ -0,0 +1,233 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package core.system;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * Reads the records of a binary log written by a
+ * {@link BinaryLogHandler}, streaming the file through a buffer. Run as
+ * a program to decode a binary log into the DytenjinFormatter text
+ * layout:
+ * <pre>
+ * java core.system.BinaryLogReader logs/sys.bin [logs/sys.decoded.log]
+ * </pre>
+ * A record cut off at the end of the file, such as one being written
+ * when the process died, is ignored.
+ * @author SuperSimpleGuy
+ */
+public class BinaryLogReader {
+
+	private static final int BUFFER_SIZE = 65536;
+	
+	private FileChannel channel;
+	private ByteBuffer buf;
+	private boolean endOfFile;
+	private ArrayList<String> dictionary;
+	
+	/**
+	 * Opens a binary log file for reading
+	 * @param fileName the binary log file to read
+	 * @throws IOException if the file cannot be opened
+	 */
+	public BinaryLogReader(String fileName) throws IOException {
+		this.channel = new FileInputStream(fileName).getChannel();
+		this.buf = ByteBuffer.allocate(BUFFER_SIZE);
+		this.buf.flip();
+		this.endOfFile = false;
+		this.dictionary = new ArrayList<String>();
+		dictionary.add(null);
+	}
+	
+	/**
+	 * Returns the next record of the binary log
+	 * @return the next record, or null at the end of the log
+	 * @throws IOException if the file cannot be read or is not a
+	 * binary log
+	 */
+	public LogRecord next() throws IOException {
+		while (true) {
+			buf.mark();
+			try {
+				LogRecord r = readEntry();
+				if (r != null) {
+					return r;
+				}
+			} catch (BufferUnderflowException e) {
+				buf.reset();
+				if (!fill()) {
+					return null;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Decodes one entry from the buffer
+	 * @return the record decoded, or null if the entry was not a record
+	 * @throws IOException if the entry is not valid
+	 */
+	private LogRecord readEntry() throws IOException {
+		byte tag = buf.get();
+		switch (tag) {
+		case BinaryLogFormat.TAG_SESSION:
+			int magic = buf.getInt();
+			short version = buf.getShort();
+			if (magic != BinaryLogFormat.MAGIC || version > BinaryLogFormat.VERSION) {
+				throw new IOException("Not a supported binary log (magic " + Integer.toHexString(magic) + ", version " + version + ")");
+			}
+			dictionary.clear();
+			dictionary.add(null);
+			return null;
+		case BinaryLogFormat.TAG_DICTIONARY:
+			dictionary.add(BinaryLogFormat.getString(buf));
+			return null;
+		case BinaryLogFormat.TAG_RECORD:
+			long millis = buf.getLong();
+			String level = lookup(BinaryLogFormat.getVarLong(buf));
+			String clazz = lookup(BinaryLogFormat.getVarLong(buf));
+			String method = lookup(BinaryLogFormat.getVarLong(buf));
+			String message = lookup(BinaryLogFormat.getVarLong(buf));
+			Object[] params = new Object[(int)BinaryLogFormat.getVarLong(buf)];
+			for (int i = 0; i < params.length; i++) {
+				params[i] = readParam();
+			}
+			LogRecord r = new LogRecord(Level.parse(level), message);
+			setMillis(r, millis);
+			r.setSourceClassName(clazz);
+			r.setSourceMethodName(method);
+			r.setParameters(params.length == 0 ? null : params);
+			return r;
+		default:
+			throw new IOException("Corrupt binary log entry tag " + tag);
+		}
+	}
+	
+	/**
+	 * Sets the time of a decoded record. LogRecord.setInstant, which
+	 * replaces the deprecated setMillis, does not exist in Java 7.
+	 * @param r the record to set the time of
+	 * @param millis the time of the record
+	 */
+	@SuppressWarnings("deprecation")
+	private static void setMillis(LogRecord r, long millis) {
+		r.setMillis(millis);
+	}
+	
+	private String lookup(long id) throws IOException {
+		if (id < 0 || id >= dictionary.size()) {
+			throw new IOException("Binary log refers to unknown dictionary id " + id);
+		}
+		return dictionary.get((int)id);
+	}
+	
+	private Object readParam() throws IOException {
+		byte type = buf.get();
+		switch (type) {
+		case BinaryLogFormat.PARAM_NULL:
+			return null;
+		case BinaryLogFormat.PARAM_INT:
+			return (int)BinaryLogFormat.getVarLong(buf);
+		case BinaryLogFormat.PARAM_LONG:
+			return BinaryLogFormat.getVarLong(buf);
+		case BinaryLogFormat.PARAM_DOUBLE:
+			return buf.getDouble();
+		case BinaryLogFormat.PARAM_FALSE:
+			return Boolean.FALSE;
+		case BinaryLogFormat.PARAM_TRUE:
+			return Boolean.TRUE;
+		case BinaryLogFormat.PARAM_STRING:
+			return BinaryLogFormat.getString(buf);
+		default:
+			throw new IOException("Corrupt binary log parameter type " + type);
+		}
+	}
+	
+	/**
+	 * Reads more of the file into the buffer, keeping the unread part
+	 * and growing the buffer if a single entry does not fit in it
+	 * @return false if nothing more could be read
+	 * @throws IOException if the file cannot be read
+	 */
+	private boolean fill() throws IOException {
+		if (endOfFile) {
+			return false;
+		}
+		buf.compact();
+		if (!buf.hasRemaining()) {
+			ByteBuffer bigger = ByteBuffer.allocate(buf.capacity() * 2);
+			buf.flip();
+			bigger.put(buf);
+			buf = bigger;
+		}
+		int read = channel.read(buf);
+		buf.flip();
+		if (read < 0) {
+			endOfFile = true;
+			return false;
+		}
+		return true;
+	}
+	
+	/**
+	 * Closes the binary log file
+	 * @throws IOException if the file cannot be closed
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+	
+	/**
+	 * Decodes a binary log into DytenjinFormatter text
+	 * @param args the binary log to read, and optionally the text file
+	 * to write to instead of standard out
+	 * @throws IOException if either file cannot be used
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("Usage: BinaryLogReader <binary log> [text log]");
+			return;
+		}
+		BinaryLogReader reader = new BinaryLogReader(args[0]);
+		Writer out = new OutputStreamWriter(args.length > 1 ? new FileOutputStream(args[1]) : System.out, "UTF-8");
+		DytenjinFormatter formatter = new DytenjinFormatter();
+		try {
+			LogRecord r;
+			while ((r = reader.next()) != null) {
+				out.write(formatter.format(r));
+			}
+		} finally {
+			out.flush();
+			if (args.length > 1) {
+				out.close();
+			}
+			reader.close();
+		}
+	}
+	
+}
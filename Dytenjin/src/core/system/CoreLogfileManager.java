@@ -17,32 +17,63 @@
  */
 package core.system;
 
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.FileHandler;
+import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.logging.SimpleFormatter;
 
 import core.CoreConstants;
 
 /**
+ * Routes log records to their log files. Each log file is backed by a
+ * single Logger and a single FileHandler that are created the first
+ * time the file is written to and kept open for the lifetime of the
+ * process, so a log call only costs formatting the record and a
+ * buffered write. Handlers are flushed and closed by a shutdown hook,
+ * or explicitly through {@link #flush()} and {@link #close()}.
+ * <p>
+ * Every call first checks the level of the record against the level of
+ * its log file, so disabled records never touch the file. Callers that
+ * would have to build parameter arrays should either check
+ * {@link #isLoggable(String, Level)} themselves or use the overloads
+ * taking an {@link ILogSupplier}.
+ * <p>
+ * By default records are written on the logging thread. Calling
+ * {@link #enableAsyncLogging(int, LogOverflowPolicy, int)} at startup
+ * moves the writes to a background {@link AsyncLogWriter} instead.
+ * A log file can additionally be mirrored to a compact binary log with
+ * {@link #addBinarySink(String, String)}.
  * @author SuperSimpleGuy
  */
 public class CoreLogfileManager {
 
 	public static CoreLogfileManager ENGINE_LOGMNGR = new CoreLogfileManager();
 	
-	private HashMap<String, Level> logLevel;
+	private ConcurrentHashMap<String, Logger> fileLoggers;
+	private HashMap<String, Handler> fileHandlers;
+	private HashMap<String, Handler> binaryHandlers;
+	private AsyncLogWriter asyncWriter;
 	
 	private CoreLogfileManager() {
-		logLevel = new HashMap<String, Level>();
+		fileLoggers = new ConcurrentHashMap<String, Logger>();
+		fileHandlers = new HashMap<String, Handler>();
+		binaryHandlers = new HashMap<String, Handler>();
+		Runtime.getRuntime().addShutdownHook(new Thread("CoreLogfileManager shutdown") {
+			@Override
+			public void run() {
+				CoreLogfileManager.this.close();
+			}
+		});
 	}
 	
 	private FileHandler getFileHandler(String fileName) throws RuntimeException {
 		FileHandler fHand = null;
 		try {
 			fHand = new FileHandler(fileName, CoreConstants.MAX_LOG_BYTES, CoreConstants.MAX_LOG_FILES, CoreConstants.LOG_APPEND);
-			fHand.setFormatter(new SimpleFormatter());
 			fHand.setFormatter(new DytenjinFormatter());
 		} catch (Exception e) {
 			if (fileName.equals(CoreConstants.SYS_LOG_FILE)) {
@@ -54,12 +85,219 @@ public class CoreLogfileManager {
 		return fHand;
 	}
 	
-	public void setLogLevelForFile(String fileName, Level level) {
-		logLevel.put(fileName, level);
+	/**
+	 * Returns the Logger dedicated to a log file, without opening
+	 * the file itself
+	 * @param fileName the log file the Logger writes to
+	 * @return the Logger for the log file
+	 */
+	private Logger getLogger(String fileName) {
+		Logger l = fileLoggers.get(fileName);
+		if (l == null) {
+			synchronized (this) {
+				l = fileLoggers.get(fileName);
+				if (l == null) {
+					l = Logger.getLogger(fileName);
+					l.setUseParentHandlers(false);
+					fileLoggers.put(fileName, l);
+				}
+			}
+		}
+		return l;
+	}
+	
+	/**
+	 * Returns the Logger dedicated to a log file, opening the file and
+	 * attaching its handler the first time the file is used
+	 * @param fileName the log file the Logger writes to
+	 * @return the Logger for the log file, or null if the file could
+	 * not be opened
+	 */
+	private synchronized Logger getFileLogger(String fileName) {
+		Logger l = getLogger(fileName);
+		if (!fileHandlers.containsKey(fileName)) {
+			FileHandler f = getFileHandler(fileName);
+			if (f == null) {
+				return null;
+			}
+			Handler h = f;
+			if (asyncWriter != null) {
+				h = new AsyncLogHandler(f, asyncWriter);
+			}
+			fileHandlers.put(fileName, h);
+			l.addHandler(h);
+		}
+		return l;
+	}
+	
+	public synchronized void setLogLevelForFile(String fileName, Level level) {
+		getLogger(fileName).setLevel(level);
+	}
+	
+	public synchronized void removeLogLevelForFile(String fileName) {
+		getLogger(fileName).setLevel(null);
+	}
+	
+	/**
+	 * Determines whether a record of the given level would be written
+	 * to the log file. Never opens the log file.
+	 * @param fileName the log file to check
+	 * @param level the level of the record
+	 * @return true if the record would be written, false otherwise
+	 */
+	public boolean isLoggable(String fileName, Level level) {
+		return getLogger(fileName).isLoggable(level);
+	}
+	
+	/**
+	 * Mirrors every record written to a log file into a binary log as
+	 * well, which can be decoded with {@link BinaryLogReader}. Replaces
+	 * any binary log already mirroring the log file.
+	 * @param fileName the log file to mirror
+	 * @param binaryFileName the binary log file to write to
+	 * @return true if the binary log was opened, false otherwise
+	 */
+	public synchronized boolean addBinarySink(String fileName, String binaryFileName) {
+		Handler h;
+		try {
+			h = new BinaryLogHandler(binaryFileName);
+		} catch (IOException e) {
+			logWithParams(CoreConstants.SYS_LOG_FILE, Level.WARNING, this.getClass(), "addBinarySink", "Could not open a binary log.", new String[] {binaryFileName, e.getMessage()});
+			return false;
+		}
+		if (asyncWriter != null) {
+			h = new AsyncLogHandler(h, asyncWriter);
+		}
+		removeBinarySink(fileName);
+		binaryHandlers.put(fileName, h);
+		getLogger(fileName).addHandler(h);
+		return true;
+	}
+	
+	/**
+	 * Stops mirroring a log file into a binary log, closing the
+	 * binary log
+	 * @param fileName the log file being mirrored
+	 * @return true if a binary log was removed, false otherwise
+	 */
+	public synchronized boolean removeBinarySink(String fileName) {
+		Handler h = binaryHandlers.remove(fileName);
+		if (h == null) {
+			return false;
+		}
+		getLogger(fileName).removeHandler(h);
+		h.close();
+		return true;
+	}
+	
+	/**
+	 * Switches to asynchronous logging with the default capacity and
+	 * sample rate
+	 * @param policy what to do with records when the buffer is full
+	 */
+	public void enableAsyncLogging(LogOverflowPolicy policy) {
+		enableAsyncLogging(CoreConstants.ASYNC_LOG_CAPACITY, policy, CoreConstants.ASYNC_LOG_SAMPLE_RATE);
+	}
+	
+	/**
+	 * Switches to asynchronous logging, where records are buffered and
+	 * written to their log files by a background thread. Meant to be
+	 * called at startup; log files that are already open are flushed,
+	 * closed and reopened asynchronously the next time they are used.
+	 * Binary logs stay open and are moved to the background thread.
+	 * @param capacity the number of records the buffer can hold
+	 * @param policy what to do with records when the buffer is full
+	 * @param sampleRate how many overflowing records share one kept
+	 * record under the SAMPLE policy
+	 */
+	public synchronized void enableAsyncLogging(int capacity, LogOverflowPolicy policy, int sampleRate) {
+		disableAsyncLogging();
+		asyncWriter = new AsyncLogWriter(capacity, policy, sampleRate);
+		rewrapBinarySinks();
+	}
+	
+	/**
+	 * Switches back to writing records on the logging thread, after
+	 * writing out every buffered record. Binary logs stay open. Does
+	 * nothing if asynchronous logging is not enabled.
+	 */
+	public synchronized void disableAsyncLogging() {
+		closeFileHandlers();
+		if (asyncWriter == null) {
+			return;
+		}
+		AsyncLogWriter oldWriter = asyncWriter;
+		asyncWriter = null;
+		rewrapBinarySinks();
+		oldWriter.shutdown();
+	}
+	
+	/**
+	 * Reattaches every binary log so that it goes through the current
+	 * asynchronous writer, or is written on the logging thread if there
+	 * is none. Records already buffered for a binary log are written
+	 * out before it is reattached.
+	 */
+	private void rewrapBinarySinks() {
+		for (Map.Entry<String, Handler> e : binaryHandlers.entrySet()) {
+			Logger l = getLogger(e.getKey());
+			Handler h = e.getValue();
+			l.removeHandler(h);
+			if (h instanceof AsyncLogHandler) {
+				h.flush();
+				h = ((AsyncLogHandler)h).getTarget();
+			}
+			if (asyncWriter != null) {
+				h = new AsyncLogHandler(h, asyncWriter);
+			}
+			e.setValue(h);
+			l.addHandler(h);
+		}
+	}
+	
+	/**
+	 * Returns the asynchronous writer, which exposes the counts of
+	 * enqueued, written and dropped records
+	 * @return the asynchronous writer, or null if logging is synchronous
+	 */
+	public synchronized AsyncLogWriter getAsyncLogWriter() {
+		return asyncWriter;
+	}
+	
+	/**
+	 * Flushes every open log file
+	 */
+	public synchronized void flush() {
+		for (Handler h : fileHandlers.values()) {
+			h.flush();
+		}
+		for (Handler h : binaryHandlers.values()) {
+			h.flush();
+		}
+	}
+	
+	/**
+	 * Flushes and closes every open log file. A log file is reopened
+	 * the next time it is written to, but binary logs are removed and
+	 * have to be added again.
+	 */
+	public synchronized void close() {
+		closeFileHandlers();
+		for (String fileName : binaryHandlers.keySet()) {
+			Handler h = binaryHandlers.get(fileName);
+			fileLoggers.get(fileName).removeHandler(h);
+			h.close();
+		}
+		binaryHandlers.clear();
 	}
 	
-	public void removeLogLevelForFile(String fileName) {
-		logLevel.remove(fileName);
+	private void closeFileHandlers() {
+		for (String fileName : fileHandlers.keySet()) {
+			Handler h = fileHandlers.get(fileName);
+			fileLoggers.get(fileName).removeHandler(h);
+			h.close();
+		}
+		fileHandlers.clear();
 	}
 	
 	public boolean logWithParams(String fileName,
@@ -68,52 +306,53 @@ public class CoreLogfileManager {
 			String methodName,
 			String message,
 			Object[] args) {
-		FileHandler f = getFileHandler(fileName);
-		if (f == null) {
-			return false;
+		if (!isLoggable(fileName, level)) {
+			return true;
 		}
-		Logger l = Logger.getLogger(clazz.toString());
-		l.setUseParentHandlers(false);
-		l.addHandler(f);
-		Level logL = logLevel.get(fileName);
-		Level oldLogL = l.getLevel();
-		if (logL != null) {
-			l.setLevel(logL);
+		Logger l = getFileLogger(fileName);
+		if (l == null) {
+			return false;
 		}
 		l.logp(level, clazz.toString(), methodName, message, args);
-		if (logL != null) {
-			l.setLevel(oldLogL);
-		}
-		l.removeHandler(f);
-		l.setUseParentHandlers(true);
-		f.close();
 		return true;
 	}
 	
+	/**
+	 * Logs a record whose parameters are only built if the level
+	 * is enabled for the log file
+	 * @param fileName the log file to write to
+	 * @param level the level of the record
+	 * @param clazz the class logging the record
+	 * @param methodName the method logging the record
+	 * @param message the message of the record
+	 * @param args builds the parameters of the record
+	 * @return false if the log file could not be opened, true otherwise
+	 */
+	public boolean logWithParams(String fileName,
+			Level level,
+			Class<?> clazz,
+			String methodName,
+			String message,
+			ILogSupplier<Object[]> args) {
+		if (!isLoggable(fileName, level)) {
+			return true;
+		}
+		return logWithParams(fileName, level, clazz, methodName, message, args.get());
+	}
+	
 	public boolean logWithoutParams(String fileName,
 			Level level,
 			Class<?> clazz,
 			String methodName,
 			String message) {
-		FileHandler f = getFileHandler(fileName);
-		if (f == null) {
-			return false;
+		if (!isLoggable(fileName, level)) {
+			return true;
 		}
-		Logger l = Logger.getLogger(clazz.toString());
-		l.setUseParentHandlers(false);
-		l.addHandler(f);
-		Level logL = logLevel.get(fileName);
-		Level oldLogL = l.getLevel();
-		if (logL != null) {
-			l.setLevel(logL);
+		Logger l = getFileLogger(fileName);
+		if (l == null) {
+			return false;
 		}
 		l.logp(level, clazz.toString(), methodName, message);
-		if (logL != null) {
-			l.setLevel(oldLogL);
-		}
-		l.removeHandler(f);
-		l.setUseParentHandlers(true);
-		f.close();
 		return true;
 	}
 	
@@ -122,51 +361,50 @@ public class CoreLogfileManager {
 			String methodName,
 			String message,
 			Object[] args) {
-		FileHandler f = getFileHandler(fileName);
-		if (f == null) {
-			return false;
+		if (!isLoggable(fileName, Level.FINER)) {
+			return true;
 		}
-		Logger l = Logger.getLogger(clazz.toString());
-		l.setUseParentHandlers(false);
-		l.addHandler(f);
-		Level logL = logLevel.get(fileName);
-		Level oldLogL = l.getLevel();
-		if (logL != null) {
-			l.setLevel(logL);
+		Logger l = getFileLogger(fileName);
+		if (l == null) {
+			return false;
 		}
 		l.entering(methodName, message, args);
-		if (logL != null) {
-			l.setLevel(oldLogL);
-		}
-		l.removeHandler(f);
-		l.setUseParentHandlers(true);
-		f.close();
 		return true;
 	}
 		
+	/**
+	 * Logs a method entry whose parameters are only built if FINER
+	 * is enabled for the log file
+	 * @param clazz the class logging the record
+	 * @param fileName the log file to write to
+	 * @param methodName the method being entered
+	 * @param message the message of the record
+	 * @param args builds the parameters of the record
+	 * @return false if the log file could not be opened, true otherwise
+	 */
+	public boolean enteringWithParams(Class<?> clazz,
+			String fileName,
+			String methodName,
+			String message,
+			ILogSupplier<Object[]> args) {
+		if (!isLoggable(fileName, Level.FINER)) {
+			return true;
+		}
+		return enteringWithParams(clazz, fileName, methodName, message, args.get());
+	}
+		
 	public boolean enteringWithoutParams(Class<?> clazz,
 			String fileName,
 			String methodName,
 			String message) {
-		FileHandler f = getFileHandler(fileName);
-		if (f == null) {
-			return false;
+		if (!isLoggable(fileName, Level.FINER)) {
+			return true;
 		}
-		Logger l = Logger.getLogger(clazz.toString());
-		l.setUseParentHandlers(false);
-		l.addHandler(f);
-		Level logL = logLevel.get(fileName);
-		Level oldLogL = l.getLevel();
-		if (logL != null) {
-			l.setLevel(logL);
+		Logger l = getFileLogger(fileName);
+		if (l == null) {
+			return false;
 		}
 		l.entering(methodName, message);
-		if (logL != null) {
-			l.setLevel(oldLogL);
-		}
-		l.removeHandler(f);
-		l.setUseParentHandlers(true);
-		f.close();
 		return true;
 	}
 	
@@ -175,51 +413,50 @@ public class CoreLogfileManager {
 			String methodName,
 			String message,
 			Object args) {
-		FileHandler f = getFileHandler(fileName);
-		if (f == null) {
-			return false;
+		if (!isLoggable(fileName, Level.FINER)) {
+			return true;
 		}
-		Logger l = Logger.getLogger(clazz.toString());
-		l.setUseParentHandlers(false);
-		l.addHandler(f);
-		Level logL = logLevel.get(fileName);
-		Level oldLogL = l.getLevel();
-		if (logL != null) {
-			l.setLevel(logL);
+		Logger l = getFileLogger(fileName);
+		if (l == null) {
+			return false;
 		}
 		l.exiting(methodName, message, args);
-		if (logL != null) {
-			l.setLevel(oldLogL);
-		}
-		l.removeHandler(f);
-		l.setUseParentHandlers(true);
-		f.close();
 		return true;
 	}
 		
+	/**
+	 * Logs a method exit whose result is only built if FINER is
+	 * enabled for the log file. A null supplier logs a null result.
+	 * @param clazz the class logging the record
+	 * @param fileName the log file to write to
+	 * @param methodName the method being exited
+	 * @param message the message of the record
+	 * @param result builds the result of the method
+	 * @return false if the log file could not be opened, true otherwise
+	 */
+	public boolean exitingWithResult(Class<?> clazz,
+			String fileName,
+			String methodName,
+			String message,
+			ILogSupplier<?> result) {
+		if (!isLoggable(fileName, Level.FINER)) {
+			return true;
+		}
+		return exitingWithResult(clazz, fileName, methodName, message, result == null ? null : (Object)result.get());
+	}
+		
 	public boolean exitingWithoutResult(Class<?> clazz,
 			String fileName,
 			String methodName,
 			String message) {
-		FileHandler f = getFileHandler(fileName);
-		if (f == null) {
-			return false;
+		if (!isLoggable(fileName, Level.FINER)) {
+			return true;
 		}
-		Logger l = Logger.getLogger(clazz.toString());
-		l.setUseParentHandlers(false);
-		l.addHandler(f);
-		Level logL = logLevel.get(fileName);
-		Level oldLogL = l.getLevel();
-		if (logL != null) {
-			l.setLevel(logL);
+		Logger l = getFileLogger(fileName);
+		if (l == null) {
+			return false;
 		}
 		l.exiting(methodName, message);
-		if (logL != null) {
-			l.setLevel(oldLogL);
-		}
-		l.removeHandler(f);
-		l.setUseParentHandlers(true);
-		f.close();
 		return true;
 	}
 	
@@ -17,41 +17,134 @@
  */
 package core.system;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.GregorianCalendar;
+import java.util.logging.LogManager;
 import java.util.logging.LogRecord;
 import java.util.logging.SimpleFormatter;
 
 /**
+ * Formats records in the default SimpleFormatter layout, followed by a
+ * PARAMS line listing as many of the record's parameters as fit in 70
+ * characters and how many more were left out. Records are built in a
+ * StringBuilder reused by this formatter, and the timestamp is only
+ * reformatted when the second changes. Each handler should have its own
+ * formatter instance.
  * @author SuperSimpleGuy
  */
 public class DytenjinFormatter extends SimpleFormatter {
 	
+	private static final String FORMAT_PROPERTY = "java.util.logging.SimpleFormatter.format";
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+	private static final int MAX_PARAMS_LENGTH = 70;
+	private static final int MAX_RETAINED_CAPACITY = 16384;
+	private static final String DATE_FORMAT = "%1$tb %1$td, %1$tY %1$tl:%1$tM:%1$tS %1$Tp";
+	
+	private final boolean customLayout;
+	private final GregorianCalendar calendar;
+	private StringBuilder buf;
+	private long cachedSecond;
+	private String cachedDate;
+	
+	public DytenjinFormatter() {
+		customLayout = System.getProperty(FORMAT_PROPERTY) != null || LogManager.getLogManager().getProperty(FORMAT_PROPERTY) != null;
+		calendar = new GregorianCalendar();
+		buf = new StringBuilder(256);
+		cachedSecond = Long.MIN_VALUE;
+	}
+	
 	@Override
-	public String format(LogRecord lRecord) {
-		String formattedString = super.format(lRecord);
+	public synchronized String format(LogRecord lRecord) {
+		if (buf.capacity() > MAX_RETAINED_CAPACITY) {
+			buf = new StringBuilder(256);
+		}
+		buf.setLength(0);
+		if (customLayout) {
+			buf.append(super.format(lRecord));
+		} else {
+			appendHeader(lRecord);
+		}
 		
 		Object[] params = lRecord.getParameters();
 		if (params == null || params.length == 0) {
-			return formattedString;
+			return buf.toString();
 		}
-		String temp = params[0].toString();
-		formattedString += "PARAMS: " + temp;
-		int count = temp.length();
+		buf.append("PARAMS: ");
+		int start = buf.length();
+		appendParam(params[0]);
+		int count = buf.length() - start;
 		int i = 1;
 		for (; i < params.length; i++) {
-			temp = params[i].toString();
-			if (count + temp.length() >= 70) {
+			int mark = buf.length();
+			buf.append(' ');
+			appendParam(params[i]);
+			int length = buf.length() - mark - 1;
+			if (count + length >= MAX_PARAMS_LENGTH) {
+				buf.setLength(mark);
 				break;
 			}
-			formattedString += " " + temp;
-			count += temp.length();
+			count += length;
 		}
 		if (i != params.length) {
-			formattedString += "... ["+ (params.length-i) +" more]";
-		} else {
-			formattedString += "";
+			buf.append("... [").append(params.length - i).append(" more]");
 		}
 		
-		return formattedString + "\n";
+		return buf.append('\n').toString();
+	}
+	
+	/**
+	 * Appends the date, source, level, message and any throwable of a
+	 * record in the default SimpleFormatter layout. The date is formatted
+	 * with the same format string and default locale as SimpleFormatter,
+	 * and always in the Gregorian calendar as SimpleFormatter does.
+	 * @param lRecord the record to append
+	 */
+	private void appendHeader(LogRecord lRecord) {
+		long second = lRecord.getMillis() / 1000;
+		if (second != cachedSecond) {
+			calendar.setTimeInMillis(second * 1000);
+			cachedDate = String.format(DATE_FORMAT, calendar);
+			cachedSecond = second;
+		}
+		buf.append(cachedDate).append(' ');
+		if (lRecord.getSourceClassName() != null) {
+			buf.append(lRecord.getSourceClassName());
+			if (lRecord.getSourceMethodName() != null) {
+				buf.append(' ').append(lRecord.getSourceMethodName());
+			}
+		} else {
+			buf.append(lRecord.getLoggerName());
+		}
+		buf.append(LINE_SEPARATOR);
+		buf.append(lRecord.getLevel().getLocalizedName()).append(": ");
+		buf.append(formatMessage(lRecord));
+		if (lRecord.getThrown() != null) {
+			StringWriter sw = new StringWriter();
+			PrintWriter pw = new PrintWriter(sw);
+			pw.println();
+			lRecord.getThrown().printStackTrace(pw);
+			pw.close();
+			buf.append(sw.toString());
+		}
+		buf.append(LINE_SEPARATOR);
+	}
+	
+	/**
+	 * Appends a parameter without going through an intermediate String
+	 * for the primitive wrapper types
+	 * @param param the parameter to append
+	 */
+	private void appendParam(Object param) {
+		if (param instanceof Integer) {
+			buf.append(((Integer)param).intValue());
+		} else if (param instanceof Long) {
+			buf.append(((Long)param).longValue());
+		} else if (param instanceof Boolean) {
+			buf.append(((Boolean)param).booleanValue());
+		} else {
+			buf.append(param);
+		}
 	}
 
 }
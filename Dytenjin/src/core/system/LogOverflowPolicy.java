@@ -0,0 +1,39 @@
+/*
+ *  Dytenjin is an engine for making dynamic text-based java games.
+ *  Copyright (C) 2012 SuperSimpleGuy
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU Lesser General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+ *  
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU Lesser General Public License for more details.
+ *  
+ *  You should have received a copy of the GNU Lesser General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package core.system;
+
+/**
+ * Decides what an asynchronous log writer does with a record
+ * when its buffer is full
+ * @author SuperSimpleGuy
+ */
+public enum LogOverflowPolicy {
+	/**
+	 * Discards the record
+	 */
+	DROP,
+	/**
+	 * Blocks the logging thread until the buffer has room
+	 */
+	BLOCK,
+	/**
+	 * Keeps one out of every few overflowing records, blocking
+	 * for those, and discards the rest
+	 */
+	SAMPLE;
+}
@@ -76,7 +76,9 @@ public abstract class WorldCalendar implements IHasUniqueId {
 			return null;
 		}
 		WorldDate temp = this.getDateFromTotalDays(totalDays);
-		CoreLogfileManager.ENGINE_LOGMNGR.exitingWithResult(this.getClass(), CoreConstants.SYS_FINER_FILE, "getDateFromOtherCalendarDate", "WorldDate method done", new Object[] {temp});
+		if (CoreLogfileManager.ENGINE_LOGMNGR.isLoggable(CoreConstants.SYS_FINER_FILE, Level.FINER)) {
+			CoreLogfileManager.ENGINE_LOGMNGR.exitingWithResult(this.getClass(), CoreConstants.SYS_FINER_FILE, "getDateFromOtherCalendarDate", "WorldDate method done", new Object[] {temp});
+		}
 		return temp;
 	}
 	
@@ -141,7 +143,9 @@ public abstract class WorldCalendar implements IHasUniqueId {
 		}
 		int index = yearVal + years.get(0).getYearValue();
 		if (index >= 0 && index < years.size() && years.get(index).getYearValue() == yearVal) {
-			CoreLogfileManager.ENGINE_LOGMNGR.exitingWithResult(this.getClass(), CoreConstants.SYS_FINER_FILE, "numDaysInYear", "Integer method done", years.get(index).getTotalNumDays());
+			if (CoreLogfileManager.ENGINE_LOGMNGR.isLoggable(CoreConstants.SYS_FINER_FILE, Level.FINER)) {
+				CoreLogfileManager.ENGINE_LOGMNGR.exitingWithResult(this.getClass(), CoreConstants.SYS_FINER_FILE, "numDaysInYear", "Integer method done", years.get(index).getTotalNumDays());
+			}
 			return years.get(index).getTotalNumDays();
 		} else {
 			CoreLogfileManager.ENGINE_LOGMNGR.logWithParams(CoreConstants.SYS_ERR_FILE, Level.WARNING, this.getClass(), "numDaysInYear", "yearVal not found or index outside bounds", new Object[] {yearVal, index});
@@ -181,7 +185,9 @@ public abstract class WorldCalendar implements IHasUniqueId {
 		for (int i = 0; i < years.size(); i++) {
 			temp += years.get(i).getTotalNumDays();
 		}
-		CoreLogfileManager.ENGINE_LOGMNGR.exitingWithResult(this.getClass(), CoreConstants.SYS_FINER_FILE, "getTotalDays", "Integer method done", temp);
+		if (CoreLogfileManager.ENGINE_LOGMNGR.isLoggable(CoreConstants.SYS_FINER_FILE, Level.FINER)) {
+			CoreLogfileManager.ENGINE_LOGMNGR.exitingWithResult(this.getClass(), CoreConstants.SYS_FINER_FILE, "getTotalDays", "Integer method done", temp);
+		}
 		return temp;
 	}
 	
@@ -202,7 +208,9 @@ public abstract class WorldCalendar implements IHasUniqueId {
 				temp += otherDate.getCurrentDay().getDayValue();
 			}
 		}
-		CoreLogfileManager.ENGINE_LOGMNGR.exitingWithResult(this.getClass(), CoreConstants.SYS_FINER_FILE, "getTotalDaysToDate", "Integer method done", temp);
+		if (CoreLogfileManager.ENGINE_LOGMNGR.isLoggable(CoreConstants.SYS_FINER_FILE, Level.FINER)) {
+			CoreLogfileManager.ENGINE_LOGMNGR.exitingWithResult(this.getClass(), CoreConstants.SYS_FINER_FILE, "getTotalDaysToDate", "Integer method done", temp);
+		}
 		return temp;
 	}
 	
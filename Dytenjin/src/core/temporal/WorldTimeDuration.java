@@ -56,11 +56,11 @@ public class WorldTimeDuration {
 	private void convertDurationsDown() {
 		while (subHrDur < 0) {
 			hrDur--;
-			subHrDur += cal.getMaxSubHr() - 1;
+			subHrDur += cal.getMaxSubHr();
 		}
 		while (hrDur < 0) {
 			dayDur--;
-			hrDur += cal.getMaxHr() - 1;
+			hrDur += cal.getMaxHr();
 		}
 	}
 	
@@ -105,6 +105,28 @@ public class WorldTimeDuration {
 		convertDurationsDown();
 	}
 	
+	/**
+	 * Returns the length of this duration counted in sub-hours
+	 * @return the number of sub-hours in this duration
+	 */
+	public long getTotalSubHours() {
+		return ((long)dayDur * cal.getMaxHr() + hrDur) * cal.getMaxSubHr() + subHrDur;
+	}
+	
+	/**
+	 * Returns a new duration as long as this one repeated a number of times
+	 * @param times the number of times to repeat this duration
+	 * @return the repeated duration
+	 */
+	public WorldTimeDuration getMultiple(long times) {
+		long total = getTotalSubHours() * times;
+		long subHrsPerDay = (long)cal.getMaxHr() * cal.getMaxSubHr();
+		return new WorldTimeDuration(cal,
+				(int)(total / subHrsPerDay),
+				(int)(total % subHrsPerDay / cal.getMaxSubHr()),
+				(int)(total % cal.getMaxSubHr()));
+	}
+	
 	public boolean longerThanOther(WorldTimeDuration other) {
 		if (this.dayDur > other.getDayDuration()) {
 			return true;